@@ -26,6 +26,8 @@ import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
 import java.util.Arrays;
 import java.util.Random;
 import java.util.Timer;
@@ -255,6 +257,7 @@ public class BenchThroughputLatency implements AddCallback, Runnable {
         options.addOption("skipwarmup", false, "Skip warm up, default false");
         options.addOption("sendlimit", true, "Max number of entries to send. Default 20000000");
         options.addOption("latencyFile", true, "File to dump latencies. Default is latencyDump.dat");
+        options.addOption("iouring", false, "Use the Netty io_uring transport instead of Epoll, default false");
         options.addOption("help", false, "This message");
 
         CommandLineParser parser = new PosixParser();
@@ -306,7 +309,8 @@ public class BenchThroughputLatency implements AddCallback, Runnable {
                 + ", throttle: " + throttle
                 + ", number of ledgers: " + ledgers
                 + ", zk servers: " + servers
-                + ", latency file: " + latencyFile);
+                + ", latency file: " + latencyFile
+                + ", io_uring: " + cmd.hasOption("iouring"));
 
         long totalTime = runningTime * 1000;
 
@@ -318,6 +322,7 @@ public class BenchThroughputLatency implements AddCallback, Runnable {
 
         ClientConfiguration conf = new ClientConfiguration();
         conf.setThrottleValue(throttle).setReadTimeout(sockTimeout).setZkServers(servers);
+        conf.setIoUringEnabled(cmd.hasOption("iouring"));
 
         if (!cmd.hasOption("skipwarmup")) {
             long throughput;
@@ -365,10 +370,12 @@ public class BenchThroughputLatency implements AddCallback, Runnable {
             latch.await();
             LOG.info("Coordination znode created");
         }
+        long startCpuTime = getProcessCpuTime();
         thread.start();
         Thread.sleep(totalTime);
         thread.interrupt();
         thread.join();
+        long cpuTime = getProcessCpuTime() - startCpuTime;
 
         LOG.info("Calculating percentiles");
 
@@ -392,6 +399,9 @@ public class BenchThroughputLatency implements AddCallback, Runnable {
         long tp = (long) ((double) (numcompletions * 1000.0) / (double) bench.getDuration());
 
         LOG.info(numcompletions + " completions in " + bench.getDuration() + " milliseconds: " + tp + " ops/sec");
+        if (cpuTime >= 0 && numcompletions > 0) {
+            LOG.info("Client CPU time per completion: {} us", cpuTime / 1000 / numcompletions);
+        }
 
         if (zk != null) {
             zk.create(coordinationZnode + "/worker-",
@@ -417,6 +427,15 @@ public class BenchThroughputLatency implements AddCallback, Runnable {
         timeouter.cancel();
     }
 
+    // the CPU time used by the process in nanoseconds, or -1 if not supported by the JVM
+    private static long getProcessCpuTime() {
+        OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+        if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) osBean).getProcessCpuTime();
+        }
+        return -1L;
+    }
+
     private static double percentile(long[] latency, int percentile) {
         int size = latency.length;
         double percent = (double) percentile / 100;
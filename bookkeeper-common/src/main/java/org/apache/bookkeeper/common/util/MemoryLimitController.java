@@ -18,6 +18,7 @@
  */
 package org.apache.bookkeeper.common.util;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
@@ -67,6 +68,37 @@ public class MemoryLimitController {
         }
     }
 
+    /**
+     * Reserves memory, waiting at most <i>timeout</i> for the memory to be available.
+     *
+     * @return whether the memory was reserved
+     */
+    public boolean reserveMemory(long size, long timeout, TimeUnit unit) throws InterruptedException {
+        if (tryReserveMemory(size)) {
+            return true;
+        }
+        long remainingNanos = unit.toNanos(timeout);
+        mutex.lock();
+        try {
+            while (!tryReserveMemory(size)) {
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                remainingNanos = condition.awaitNanos(remainingNanos);
+            }
+            return true;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Reserves memory regardless of the limit, e.g. for memory which is already allocated.
+     */
+    public void forceReserveMemory(long size) {
+        currentUsage.addAndGet(size);
+    }
+
     public void releaseMemory(long size) {
         long newUsage = currentUsage.addAndGet(-size);
         if (newUsage + size > memoryLimit && newUsage <= memoryLimit) {
@@ -30,17 +30,25 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import lombok.extern.slf4j.Slf4j;
@@ -67,12 +75,22 @@ import org.slf4j.MDC;
  * basic amount of ordering we want (e.g. , per ledger handle). Ordering is
  * achieved by hashing the key objects to threads by their {@link #hashCode()}
  * method.
+ *
+ * <p>In work-stealing mode, the keys are hashed to key queues instead, several per
+ * thread. A key queue is run by one thread at a time, its home thread unless an
+ * idle thread steals it from the queue of a busy thread. So a few hot keys hashed
+ * to the same thread are spread over the idle threads, while the tasks of a key
+ * are still executed in order.
  */
 @Slf4j
 public class OrderedExecutor implements ExecutorService {
     public static final int NO_TASK_LIMIT = -1;
     private static final int DEFAULT_MAX_ARRAY_QUEUE_SIZE = 10_000;
     protected static final long WARN_TIME_MICRO_SEC_DEFAULT = TimeUnit.SECONDS.toMicros(1);
+    // the number of key queues per thread in work-stealing mode
+    private static final int KEY_QUEUES_PER_THREAD = 16;
+    // the maximum number of tasks of a key queue run in a row, before the other key queues of the thread
+    private static final int KEY_QUEUE_MAX_BATCH = 64;
 
     final String name;
     final ExecutorService[] threads;
@@ -85,6 +103,12 @@ public class OrderedExecutor implements ExecutorService {
     final long warnTimeMicroSec;
     final int maxTasksInQueue;
     final boolean enableBusyWait;
+    final boolean enableWorkStealing;
+    // the threads, the key queues, and the number of pending tasks of the key queues of each thread,
+    // in work-stealing mode
+    final ThreadPoolExecutor[] workers;
+    final KeyQueue[] keyQueues;
+    final AtomicInteger[] pendingKeyQueueTasks;
 
     public static Builder newBuilder() {
         return new Builder();
@@ -102,7 +126,8 @@ public class OrderedExecutor implements ExecutorService {
             }
             return new OrderedExecutor(name, numThreads, threadFactory, statsLogger,
                                            traceTaskExecution, preserveMdcForTaskExecution,
-                                           warnTimeMicroSec, maxTasksInQueue, enableBusyWait);
+                                           warnTimeMicroSec, maxTasksInQueue, enableBusyWait,
+                                           enableWorkStealing);
         }
     }
 
@@ -119,6 +144,7 @@ public class OrderedExecutor implements ExecutorService {
         protected long warnTimeMicroSec = WARN_TIME_MICRO_SEC_DEFAULT;
         protected int maxTasksInQueue = NO_TASK_LIMIT;
         protected boolean enableBusyWait = false;
+        protected boolean enableWorkStealing = false;
 
         public AbstractBuilder<T> name(String name) {
             this.name = name;
@@ -165,6 +191,11 @@ public class OrderedExecutor implements ExecutorService {
             return this;
         }
 
+        public AbstractBuilder<T> enableWorkStealing(boolean enableWorkStealing) {
+            this.enableWorkStealing = enableWorkStealing;
+            return this;
+        }
+
         @SuppressWarnings("unchecked")
         public T build() {
             if (null == threadFactory) {
@@ -179,7 +210,8 @@ public class OrderedExecutor implements ExecutorService {
                 preserveMdcForTaskExecution,
                 warnTimeMicroSec,
                 maxTasksInQueue,
-                enableBusyWait);
+                enableBusyWait,
+                enableWorkStealing);
         }
     }
 
@@ -287,9 +319,222 @@ public class OrderedExecutor implements ExecutorService {
         }
     }
 
+    /**
+     * The tasks of the ordering keys hashed to a key queue, in work-stealing mode.
+     *
+     * <p>A key queue is queued on at most one thread at a time, which runs its tasks
+     * in order. Once it ran a batch of tasks, it is queued again on the same thread
+     * if it has more tasks, so that the other key queues of the thread are not
+     * starved.
+     */
+    class KeyQueue extends AbstractExecutorService {
+        final int homeThread;
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean queued = new AtomicBoolean(false);
+        final Runnable runTasks = this::runTasks;
+        // the id of the thread running the tasks, -1 if not running
+        volatile long runningThreadId = -1;
+
+        KeyQueue(int homeThread) {
+            this.homeThread = homeThread;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            AtomicInteger pendingTasks = pendingKeyQueueTasks[homeThread];
+            if (maxTasksInQueue > 0 && pendingTasks.get() >= maxTasksInQueue) {
+                throw new RejectedExecutionException("Queue at limit of " + maxTasksInQueue + " items");
+            }
+            Runnable task = timedRunnable(command);
+            pendingTasks.incrementAndGet();
+            tasks.add(task);
+            if (queued.compareAndSet(false, true)) {
+                try {
+                    workers[homeThread].execute(runTasks);
+                } catch (RejectedExecutionException e) {
+                    queued.set(false);
+                    if (tasks.remove(task)) {
+                        pendingTasks.decrementAndGet();
+                    }
+                    throw e;
+                }
+            }
+        }
+
+        private void runTasks() {
+            while (true) {
+                runningThreadId = Thread.currentThread().getId();
+                try {
+                    for (int i = 0; i < KEY_QUEUE_MAX_BATCH; i++) {
+                        Runnable task = tasks.poll();
+                        if (task == null) {
+                            break;
+                        }
+                        pendingKeyQueueTasks[homeThread].decrementAndGet();
+                        try {
+                            task.run();
+                        } catch (Throwable t) {
+                            log.error("Task {} of executor {} failed", task, name, t);
+                        }
+                    }
+                } finally {
+                    runningThreadId = -1;
+                    queued.set(false);
+                }
+                if (tasks.isEmpty() || !queued.compareAndSet(false, true)) {
+                    return;
+                }
+                try {
+                    workers[currentWorker()].execute(runTasks);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // the executor is shutting down, run the remaining tasks right away
+                }
+            }
+        }
+
+        private int currentWorker() {
+            long threadId = Thread.currentThread().getId();
+            for (int i = 0; i < threadIds.length; i++) {
+                if (threadIds[i] == threadId) {
+                    return i;
+                }
+            }
+            return homeThread;
+        }
+
+        /**
+         * A key queue is shut down with its executor.
+         */
+        @Override
+        public void shutdown() {
+            throw new UnsupportedOperationException("A key queue is shut down with its executor");
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            throw new UnsupportedOperationException("A key queue is shut down with its executor");
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return workers[homeThread].isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return workers[homeThread].isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return workers[homeThread].awaitTermination(timeout, unit);
+        }
+    }
+
+    /**
+     * The task queue of a thread in work-stealing mode.
+     *
+     * <p>Once its own queue is empty, a thread takes the oldest task queued on a busy
+     * thread, if any. An idle thread is woken up when a task is queued on a busy
+     * thread.
+     */
+    static class WorkStealingQueue extends LinkedBlockingQueue<Runnable> {
+        private static final Runnable WAKE_UP = () -> { };
+
+        private final AtomicBoolean idle = new AtomicBoolean(false);
+        private final LongAdder stolenTasks = new LongAdder();
+        // the queues of all the threads, set once the threads are started
+        private volatile WorkStealingQueue[] queues = null;
+
+        void setQueues(WorkStealingQueue[] queues) {
+            this.queues = queues;
+        }
+
+        long getStolenTasks() {
+            return stolenTasks.sum();
+        }
+
+        @Override
+        public boolean offer(Runnable task) {
+            boolean added = super.offer(task);
+            // a busy thread doesn't take the task before it is done with the current one, even if the task is
+            // alone in its queue
+            if (added && !idle.get()) {
+                wakeUpIdleThread();
+            }
+            return added;
+        }
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            while (true) {
+                Runnable task = poll();
+                if (task == null) {
+                    task = steal();
+                }
+                if (task == null) {
+                    idle.set(true);
+                    try {
+                        // steal the tasks queued before the thread was seen idle
+                        task = steal();
+                        if (task == null) {
+                            task = super.take();
+                        }
+                    } finally {
+                        idle.set(false);
+                    }
+                }
+                if (task != WAKE_UP) {
+                    return task;
+                }
+            }
+        }
+
+        private Runnable steal() {
+            WorkStealingQueue[] queues = this.queues;
+            if (queues == null) {
+                return null;
+            }
+            int start = ThreadLocalRandom.current().nextInt(queues.length);
+            for (int i = 0; i < queues.length; i++) {
+                WorkStealingQueue queue = queues[(start + i) % queues.length];
+                if (queue != this && !queue.idle.get() && !queue.isEmpty()) {
+                    Runnable task = queue.poll();
+                    if (task != null && task != WAKE_UP) {
+                        stolenTasks.increment();
+                        return task;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void wakeUpIdleThread() {
+            WorkStealingQueue[] queues = this.queues;
+            if (queues == null) {
+                return;
+            }
+            int start = ThreadLocalRandom.current().nextInt(queues.length);
+            for (int i = 0; i < queues.length; i++) {
+                WorkStealingQueue queue = queues[(start + i) % queues.length];
+                if (queue != this && queue.idle.compareAndSet(true, false)) {
+                    queue.wakeUp();
+                    return;
+                }
+            }
+        }
+
+        private void wakeUp() {
+            super.offer(WAKE_UP);
+        }
+    }
+
     protected ThreadPoolExecutor createSingleThreadExecutor(ThreadFactory factory) {
         BlockingQueue<Runnable> queue;
-        if (enableBusyWait) {
+        if (enableWorkStealing) {
+            queue = new WorkStealingQueue();
+        } else if (enableBusyWait) {
             // Use queue with busy-wait polling strategy
             queue = new BlockingMpscQueue<>(maxTasksInQueue > 0 ? maxTasksInQueue : DEFAULT_MAX_ARRAY_QUEUE_SIZE);
         } else {
@@ -382,20 +627,43 @@ public class OrderedExecutor implements ExecutorService {
                                 StatsLogger statsLogger, boolean traceTaskExecution,
                                 boolean preserveMdcForTaskExecution, long warnTimeMicroSec, int maxTasksInQueue,
                                 boolean enableBusyWait) {
+        this(baseName, numThreads, threadFactory, statsLogger, traceTaskExecution, preserveMdcForTaskExecution,
+                warnTimeMicroSec, maxTasksInQueue, enableBusyWait, false);
+    }
+
+    /**
+     * Constructs Safe executor.
+     *
+     * @param enableWorkStealing
+     *            - should idle threads steal the key queues of busy threads. It is
+     *              not supported with busy-wait
+     * @see #OrderedExecutor(String, int, ThreadFactory, StatsLogger, boolean, boolean, long, int, boolean)
+     */
+    protected OrderedExecutor(String baseName, int numThreads, ThreadFactory threadFactory,
+                                StatsLogger statsLogger, boolean traceTaskExecution,
+                                boolean preserveMdcForTaskExecution, long warnTimeMicroSec, int maxTasksInQueue,
+                                boolean enableBusyWait, boolean enableWorkStealing) {
         checkArgument(numThreads > 0);
         checkArgument(!StringUtils.isBlank(baseName));
 
         this.maxTasksInQueue = maxTasksInQueue;
         this.warnTimeMicroSec = warnTimeMicroSec;
         this.enableBusyWait = enableBusyWait;
+        if (enableWorkStealing && enableBusyWait) {
+            log.warn("Work stealing is not supported with busy-wait, it is disabled for executor {}", baseName);
+        }
+        // there is nothing to steal from a single thread
+        this.enableWorkStealing = enableWorkStealing && !enableBusyWait && numThreads > 1;
         name = baseName;
         threads = new ExecutorService[numThreads];
         threadIds = new long[numThreads];
+        workers = new ThreadPoolExecutor[numThreads];
         for (int i = 0; i < numThreads; i++) {
             ThreadPoolExecutor thread = createSingleThreadExecutor(
                     new ThreadFactoryBuilder().setNameFormat(name + "-" + getClass().getSimpleName() + "-" + i + "-%d")
                     .setThreadFactory(threadFactory).build());
 
+            workers[i] = thread;
             threads[i] = addExecutorDecorators(getBoundedExecutor(thread));
 
             final int idx = i;
@@ -456,6 +724,42 @@ public class OrderedExecutor implements ExecutorService {
                     return thread.getTaskCount();
                 }
             });
+            if (this.enableWorkStealing) {
+                WorkStealingQueue queue = (WorkStealingQueue) thread.getQueue();
+                statsLogger.registerGauge(String.format("%s-stolen-tasks-%d", name, idx), new Gauge<Number>() {
+                    @Override
+                    public Number getDefaultValue() {
+                        return 0;
+                    }
+
+                    @Override
+                    public Number getSample() {
+                        return queue.getStolenTasks();
+                    }
+                });
+            }
+        }
+
+        if (this.enableWorkStealing) {
+            WorkStealingQueue[] queues = new WorkStealingQueue[numThreads];
+            for (int i = 0; i < numThreads; i++) {
+                queues[i] = (WorkStealingQueue) workers[i].getQueue();
+            }
+            // the threads only steal tasks once they are all started
+            for (WorkStealingQueue queue : queues) {
+                queue.setQueues(queues);
+            }
+            keyQueues = new KeyQueue[numThreads * KEY_QUEUES_PER_THREAD];
+            for (int i = 0; i < keyQueues.length; i++) {
+                keyQueues[i] = new KeyQueue(i % numThreads);
+            }
+            pendingKeyQueueTasks = new AtomicInteger[numThreads];
+            for (int i = 0; i < numThreads; i++) {
+                pendingKeyQueueTasks[i] = new AtomicInteger();
+            }
+        } else {
+            keyQueues = null;
+            pendingKeyQueueTasks = null;
         }
 
         // Stats
@@ -517,7 +821,20 @@ public class OrderedExecutor implements ExecutorService {
     }
 
 
+    /**
+     * Get the id of the thread running the tasks of the key.
+     *
+     * <p>In work-stealing mode, the thread of a key is only known while it runs
+     * the tasks of the key, otherwise -1 is returned.
+     *
+     * @param orderingKey long ordering key
+     * @return the id of the thread running the tasks of the key
+     */
     public long getThreadID(long orderingKey) {
+        if (enableWorkStealing) {
+            return keyQueues[MathUtils.signSafeMod(orderingKey, keyQueues.length)].runningThreadId;
+        }
+
         // skip hashcode generation in this special case
         if (threadIds.length == 1) {
             return threadIds[0];
@@ -543,6 +860,8 @@ public class OrderedExecutor implements ExecutorService {
 
         if (null == orderingKey) {
             return threads[rand.nextInt(threads.length)];
+        } else if (enableWorkStealing) {
+            return keyQueues[MathUtils.signSafeMod(orderingKey.hashCode(), keyQueues.length)];
         } else {
             return threads[MathUtils.signSafeMod(orderingKey.hashCode(), threads.length)];
         }
@@ -555,6 +874,10 @@ public class OrderedExecutor implements ExecutorService {
      * @return the thread for executing this order key
      */
     public ExecutorService chooseThread(long orderingKey) {
+        if (enableWorkStealing) {
+            return keyQueues[MathUtils.signSafeMod(orderingKey, keyQueues.length)];
+        }
+
         if (threads.length == 1) {
             return threads[0];
         }
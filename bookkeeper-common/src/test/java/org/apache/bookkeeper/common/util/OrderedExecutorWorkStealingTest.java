@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that {@link OrderedExecutor} runs the tasks of a key in order, one at a time, when idle threads steal the
+ * tasks of busy threads.
+ */
+public class OrderedExecutorWorkStealingTest {
+
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_PRODUCERS = 4;
+    private static final int TASKS_PER_PRODUCER = 20000;
+
+    private OrderedExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = OrderedExecutor.newBuilder()
+                .name("work-stealing-test")
+                .numThreads(NUM_THREADS)
+                .enableWorkStealing(true)
+                .build();
+        assertTrue(executor.enableWorkStealing);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testKeyOrderWhenOneThreadIsBusy() throws Exception {
+        // all the keys are hashed to the key queues of the first thread
+        int keyQueuesPerThread = executor.keyQueues.length / NUM_THREADS;
+        long[] keys = new long[keyQueuesPerThread - 1];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (long) i * NUM_THREADS;
+        }
+        // and the first thread is kept busy by the last of its key queues, so that the tasks of the keys can only
+        // run once stolen by the other threads
+        CountDownLatch release = new CountDownLatch(1);
+        executor.executeOrdered((long) keys.length * NUM_THREADS, () -> Uninterruptibles.awaitUninterruptibly(release));
+        try {
+            runInterleavedTasks(keys);
+        } finally {
+            release.countDown();
+        }
+        assertTrue("No task was stolen", getStolenTasks() > 0);
+    }
+
+    @Test
+    public void testTaskAloneBehindBusyThreadIsStolen() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        // both keys are hashed to key queues of the first thread
+        executor.executeOrdered(0L, () -> Uninterruptibles.awaitUninterruptibly(release));
+        try {
+            executor.executeOrdered((long) NUM_THREADS, done::countDown);
+            assertTrue("The task wasn't stolen", done.await(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testKeyOrderWithRandomKeys() throws Exception {
+        long[] keys = new long[256];
+        Random random = new Random(1);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+        runInterleavedTasks(keys);
+    }
+
+    /**
+     * Submit tasks for the keys from several threads at once, and check that the tasks of each key submitted by a
+     * thread run in the order they were submitted, and that no two tasks of a key run at the same time.
+     */
+    private void runInterleavedTasks(long[] keys) throws Exception {
+        int[][] lastSeq = new int[keys.length][NUM_PRODUCERS];
+        AtomicIntegerArray running = new AtomicIntegerArray(keys.length);
+        Queue<String> errors = new ConcurrentLinkedQueue<>();
+        CountDownLatch done = new CountDownLatch(NUM_PRODUCERS * TASKS_PER_PRODUCER);
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < NUM_PRODUCERS; p++) {
+            final int producer = p;
+            producers.add(new Thread(() -> {
+                Random random = new Random(producer);
+                int[] seq = new int[keys.length];
+                for (int i = 0; i < TASKS_PER_PRODUCER; i++) {
+                    // a few hot keys get half of the tasks
+                    int k = random.nextBoolean() ? random.nextInt(4) : random.nextInt(keys.length);
+                    int expected = ++seq[k];
+                    SafeRunnable task = () -> {
+                        if (running.incrementAndGet(k) != 1) {
+                            errors.add("Tasks of key " + keys[k] + " ran concurrently");
+                        }
+                        if (lastSeq[k][producer] != expected - 1) {
+                            errors.add("Task " + expected + " of key " + keys[k] + " from producer " + producer
+                                    + " ran after task " + lastSeq[k][producer]);
+                        }
+                        lastSeq[k][producer] = expected;
+                        // make the tasks long enough for the queues to build up
+                        long deadline = System.nanoTime() + ThreadLocalRandom.current().nextInt(2000);
+                        while (System.nanoTime() < deadline) {
+                            // busy wait
+                        }
+                        running.decrementAndGet(k);
+                        done.countDown();
+                    };
+                    // the tasks executed and submitted for a key share its order
+                    if (i % 2 == 0) {
+                        executor.executeOrdered(keys[k], task);
+                    } else {
+                        executor.submitOrdered(keys[k], () -> {
+                            task.run();
+                            return null;
+                        });
+                    }
+                }
+            }, "producer-" + p));
+        }
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        assertTrue("Tasks didn't complete", done.await(60, TimeUnit.SECONDS));
+        assertEquals(String.valueOf(errors.peek()), 0, errors.size());
+    }
+
+    private long getStolenTasks() {
+        long stolenTasks = 0;
+        for (int i = 0; i < NUM_THREADS; i++) {
+            stolenTasks += ((OrderedExecutor.WorkStealingQueue) executor.workers[i].getQueue()).getStolenTasks();
+        }
+        return stolenTasks;
+    }
+}
@@ -38,6 +38,8 @@ public interface BookKeeperServerStats {
 
     // Stats
     String CHANNEL_WRITE = "CHANNEL_WRITE";
+    String CHANNEL_WRITE_MESSAGES = "CHANNEL_WRITE_MESSAGES";
+    String CHANNEL_FLUSHES = "CHANNEL_FLUSHES";
 
     //
     // Server Operations
@@ -58,6 +60,12 @@ public interface BookKeeperServerStats {
     String READ_ENTRY_LONG_POLL_PRE_WAIT = "READ_ENTRY_LONG_POLL_PRE_WAIT";
     String READ_ENTRY_LONG_POLL_WAIT = "READ_ENTRY_LONG_POLL_WAIT";
     String READ_ENTRY_LONG_POLL_READ = "READ_ENTRY_LONG_POLL_READ";
+    String RANGE_READ_ENTRY_REQUEST = "RANGE_READ_ENTRY_REQUEST";
+    String RANGE_READ_ENTRY = "RANGE_READ_ENTRY";
+    String RANGE_READ_ENTRY_NUM_ENTRIES = "RANGE_READ_ENTRY_NUM_ENTRIES";
+    String RANGE_ADD_ENTRY_REQUEST = "RANGE_ADD_ENTRY_REQUEST";
+    String RANGE_ADD_ENTRY = "RANGE_ADD_ENTRY";
+    String RANGE_ADD_ENTRY_NUM_ENTRIES = "RANGE_ADD_ENTRY_NUM_ENTRIES";
     String WRITE_LAC_REQUEST = "WRITE_LAC_REQUEST";
     String WRITE_LAC = "WRITE_LAC";
     String READ_LAC_REQUEST = "READ_LAC_REQUEST";
@@ -94,6 +102,7 @@ public interface BookKeeperServerStats {
     String READ_ENTRY_IN_PROGRESS = "READ_ENTRY_IN_PROGRESS";
     String READ_ENTRY_BLOCKED = "READ_ENTRY_BLOCKED";
     String READ_ENTRY_BLOCKED_WAIT = "READ_ENTRY_BLOCKED_WAIT";
+    String VIRTUAL_THREAD_PINNED = "VIRTUAL_THREAD_PINNED";
 
     //
     // Journal Stats (scoped under SERVER_SCOPE)
@@ -115,6 +124,9 @@ public interface BookKeeperServerStats {
     String JOURNAL_CREATION_LATENCY = "JOURNAL_CREATION_LATENCY";
     String JOURNAL_MEMORY_MAX = "JOURNAL_MEMORY_MAX";
     String JOURNAL_MEMORY_USED = "JOURNAL_MEMORY_USED";
+    String JOURNAL_INDEX_LABEL = "journalIndex";
+    String JOURNAL_DEVICE_QUEUE_DEPTH = "JOURNAL_DEVICE_QUEUE_DEPTH";
+    String JOURNAL_DEVICE_FSYNC_LATENCY = "JOURNAL_DEVICE_FSYNC_LATENCY";
 
     // Ledger Storage Stats
     String STORAGE_GET_OFFSET = "STORAGE_GET_OFFSET";
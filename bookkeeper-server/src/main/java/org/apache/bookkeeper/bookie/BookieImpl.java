@@ -33,6 +33,7 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.FileRegion;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
@@ -82,6 +83,7 @@ import org.apache.bookkeeper.meta.exceptions.MetadataException;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
 import org.apache.bookkeeper.net.DNS;
+import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.proto.SimpleBookieServiceInfoProvider;
 import org.apache.bookkeeper.stats.Gauge;
@@ -1281,6 +1283,82 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
 
         // journal `addEntry` should happen after the entry is added to ledger storage.
         // otherwise the journal entry can potentially be rolled before the ledger is created in ledger storage.
+        logMasterKeyIfNeeded(ledgerId, masterKey);
+
+        if (!writeDataToJournal) {
+            cb.writeComplete(0, ledgerId, entryId, null, ctx);
+            return;
+        }
+
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Adding {}@{}", entryId, ledgerId);
+        }
+        getJournal(ledgerId).logAddEntry(entry, ackBeforeSync, cb, ctx);
+    }
+
+    /**
+     * Add a batch of entries to a ledger as specified by handle.
+     *
+     * <p>The entries added to the ledger storage before one of them fails are still journaled, and the entries
+     * from the failed one on are completed with {@link BookieProtocol#EIO}. An exception is only thrown when none
+     * of the entries was added.
+     *
+     * @return the number of entries added to the ledger storage
+     */
+    private int addEntriesInternal(LedgerDescriptor handle, List<ByteBuf> entries,
+                                   boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
+            throws IOException, BookieException, InterruptedException {
+        long ledgerId = handle.getLedgerId();
+        for (ByteBuf entry : entries) {
+            long entryLedgerId = entry.getLong(entry.readerIndex());
+            if (entryLedgerId != ledgerId) {
+                throw new IOException("Entry of ledger " + entryLedgerId + " in a batch of ledger " + ledgerId);
+            }
+        }
+        int numAdded = 0;
+        Exception addFailure = null;
+        try {
+            for (ByteBuf entry : entries) {
+                handle.addEntry(entry);
+                bookieStats.getWriteBytes().add(entry.readableBytes());
+                numAdded++;
+            }
+        } catch (IOException | BookieException e) {
+            if (numAdded == 0) {
+                throw e;
+            }
+            addFailure = e;
+        }
+        List<ByteBuf> addedEntries = numAdded == entries.size() ? entries : entries.subList(0, numAdded);
+
+        logMasterKeyIfNeeded(ledgerId, masterKey);
+
+        if (!writeDataToJournal) {
+            for (ByteBuf entry : addedEntries) {
+                cb.writeComplete(0, ledgerId, entry.getLong(entry.readerIndex() + 8), null, ctx);
+            }
+        } else {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Adding {} entries to {}", addedEntries.size(), ledgerId);
+            }
+            getJournal(ledgerId).logAddEntries(addedEntries, ackBeforeSync, cb, ctx);
+        }
+
+        if (null != addFailure) {
+            LOG.error("Failed to add entry {} of ledger {}, rejecting the last {} entries of the batch",
+                    entries.get(numAdded).getLong(entries.get(numAdded).readerIndex() + 8), ledgerId,
+                    entries.size() - numAdded, addFailure);
+            if (addFailure instanceof NoWritableLedgerDirException) {
+                stateManager.transitionToReadOnlyMode();
+            }
+            for (ByteBuf entry : entries.subList(numAdded, entries.size())) {
+                cb.writeComplete(BookieProtocol.EIO, ledgerId, entry.getLong(entry.readerIndex() + 8), null, ctx);
+            }
+        }
+        return numAdded;
+    }
+
+    private void logMasterKeyIfNeeded(long ledgerId, byte[] masterKey) throws InterruptedException {
         if (masterKeyCache.get(ledgerId) == null) {
             // Force the load into masterKey cache
             byte[] oldValue = masterKeyCache.putIfAbsent(ledgerId, masterKey);
@@ -1296,16 +1374,6 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
                 getJournal(ledgerId).logAddEntry(bb, false /* ackBeforeSync */, new NopWriteCallback(), null);
             }
         }
-
-        if (!writeDataToJournal) {
-            cb.writeComplete(0, ledgerId, entryId, null, ctx);
-            return;
-        }
-
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("Adding {}@{}", entryId, ledgerId);
-        }
-        getJournal(ledgerId).logAddEntry(entry, ackBeforeSync, cb, ctx);
     }
 
     /**
@@ -1430,6 +1498,49 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         }
     }
 
+    /**
+     * Add a batch of consecutive entries of the same ledger. The entries are added to the ledger under a single
+     * lock of the ledger, and queued together to the journal, <i>cb</i> is called once per entry.
+     *
+     * <p>The ledger storage can't take back the entries it was given, so if adding an entry fails, the entries
+     * before it are still journaled and acknowledged, and <i>cb</i> is called with {@link BookieProtocol#EIO} for
+     * it and the entries after it. If this method throws, none of the entries was added and <i>cb</i> is not
+     * called.
+     */
+    public void addEntries(List<ByteBuf> entries, boolean ackBeforeSync, WriteCallback cb, Object ctx,
+                           byte[] masterKey)
+            throws IOException, BookieException, InterruptedException {
+        long requestNanos = MathUtils.nowInNano();
+        int numAdded = 0;
+        try {
+            LedgerDescriptor handle = getLedgerForEntry(entries.get(0), masterKey);
+            synchronized (handle) {
+                if (handle.isFenced()) {
+                    throw BookieException
+                            .create(BookieException.Code.LedgerFencedException);
+                }
+                numAdded = addEntriesInternal(handle, entries, ackBeforeSync, cb, ctx, masterKey);
+            }
+        } catch (NoWritableLedgerDirException e) {
+            stateManager.transitionToReadOnlyMode();
+            throw new IOException(e);
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            for (int i = 0; i < entries.size(); i++) {
+                ByteBuf entry = entries.get(i);
+                if (i < numAdded) {
+                    bookieStats.getAddEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getAddBytesStats().registerSuccessfulValue(entry.readableBytes());
+                } else {
+                    bookieStats.getAddEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getAddBytesStats().registerFailedValue(entry.readableBytes());
+                }
+
+                entry.release();
+            }
+        }
+    }
+
     /**
      * Fences a ledger. From this point on, clients will be unable to
      * write to this ledger. Only recoveryAddEntry will be
@@ -1470,6 +1581,29 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         }
     }
 
+    /**
+     * Get a region of the file storing an entry, to transfer the entry without reading it in memory.
+     *
+     * @return the file region, or null if the entry is smaller than {@code minSize} or the ledger storage
+     *         cannot provide it as a file region, in which case it has to be read with {@link #readEntry}
+     */
+    @Override
+    public FileRegion readEntryRegion(long ledgerId, long entryId, int minSize)
+            throws IOException, NoLedgerException {
+        long requestNanos = MathUtils.nowInNano();
+        LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Reading region of {}@{}", entryId, ledgerId);
+        }
+        FileRegion region = handle.readEntryRegion(entryId, minSize);
+        if (region != null) {
+            bookieStats.getReadBytes().add(region.count());
+            bookieStats.getReadEntryStats().registerSuccessfulEvent(MathUtils.elapsedNanos(requestNanos),
+                    TimeUnit.NANOSECONDS);
+        }
+        return region;
+    }
+
     public long readLastAddConfirmed(long ledgerId) throws IOException {
         LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
         return handle.getLastAddConfirmed();
@@ -0,0 +1,195 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link BufferedChannel} that writes to the file with direct I/O, bypassing the page cache.
+ *
+ * <p>Direct I/O requires the file position, the length and the memory address of every write to be
+ * aligned to the block size of the file system. The write buffer is therefore allocated aligned, and it
+ * always starts at an aligned file position: a flush writes the buffer up to the next block boundary,
+ * zero-padded, and keeps the trailing partial block at the head of the buffer, so that the next flush
+ * rewrites it completed. Setting the journal alignment size to the block size of the journal device
+ * makes every flush end on a block boundary and avoids these rewrites.
+ *
+ * <p>Reads and fsyncs still go through the regular file channel, which refers to the same file.
+ */
+class DirectBufferedChannel extends BufferedChannel {
+    private static final Logger LOG = LoggerFactory.getLogger(DirectBufferedChannel.class);
+
+    // ExtendedOpenOption.DIRECT is only available since JDK 10
+    private static final OpenOption DIRECT_OPEN_OPTION = loadDirectOpenOption();
+
+    private final FileChannel directChannel;
+    private final int alignment;
+
+    private DirectBufferedChannel(FileChannel fc, FileChannel directChannel, ByteBuf writeBuffer,
+                                  int alignment) throws IOException {
+        super(fc, writeBuffer, writeBuffer.capacity(), writeBuffer.capacity(), 0L);
+        this.directChannel = directChannel;
+        this.alignment = alignment;
+
+        // Start the write buffer at a block boundary, with the bytes already in the file before the
+        // current position, so the first flush rewrites that block in full.
+        long alignedStartPosition = position - position % alignment;
+        int length = (int) (position - alignedStartPosition);
+        if (length > 0) {
+            ByteBuffer head = writeBuffer.internalNioBuffer(0, length);
+            while (head.hasRemaining()) {
+                if (fc.read(head, alignedStartPosition + head.position()) < 0) {
+                    throw new IOException("Short read before position " + position);
+                }
+            }
+            writeBuffer.writerIndex(length);
+            writeBufferStartPosition.set(alignedStartPosition);
+        }
+    }
+
+    /**
+     * Whether the JVM is able to open files with direct I/O.
+     */
+    static boolean isSupported() {
+        return DIRECT_OPEN_OPTION != null;
+    }
+
+    /**
+     * Open a buffered channel writing to {@code file} with direct I/O.
+     *
+     * @param allocator allocator of the write buffer
+     * @param file the file to write
+     * @param fc a regular file channel of the file, positioned at the next write
+     * @param capacity the minimum capacity of the write buffer
+     * @throws IOException if the file system does not support direct I/O
+     */
+    static BufferedChannel open(ByteBufAllocator allocator, File file, FileChannel fc, int capacity)
+            throws IOException {
+        if (!isSupported()) {
+            throw new IOException("Direct I/O is not supported by this JVM");
+        }
+        int alignment = getBlockSize(file);
+        int alignedCapacity = Math.max(alignment, (capacity + alignment - 1) / alignment * alignment);
+
+        FileChannel directChannel;
+        try {
+            directChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, DIRECT_OPEN_OPTION);
+        } catch (UnsupportedOperationException e) {
+            throw new IOException("Direct I/O is not supported for " + file, e);
+        }
+
+        ByteBuf buffer = allocator.directBuffer(alignedCapacity + alignment, alignedCapacity + alignment);
+        try {
+            if (!buffer.hasMemoryAddress()) {
+                throw new IOException("Unable to get the memory address of direct buffers");
+            }
+            int offset = (int) ((alignment - buffer.memoryAddress() % alignment) % alignment);
+            ByteBuf writeBuffer = buffer.slice(offset, alignedCapacity).clear();
+            return new DirectBufferedChannel(fc, directChannel, writeBuffer, alignment);
+        } catch (IOException | RuntimeException e) {
+            ReferenceCountUtil.safeRelease(buffer);
+            directChannel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        int length = writeBuffer.writerIndex();
+        if (length == 0) {
+            return;
+        }
+        int alignedLength = (length + alignment - 1) / alignment * alignment;
+        writeBuffer.setZero(length, alignedLength - length);
+
+        ByteBuffer toWrite = writeBuffer.internalNioBuffer(0, alignedLength);
+        long writePosition = writeBufferStartPosition.get();
+        // the read buffer may hold the partial block about to be rewritten, as it was before
+        if (readBufferStartPosition + readBuffer.writerIndex() > writePosition) {
+            readBuffer.clear();
+            readBufferStartPosition = Long.MIN_VALUE;
+        }
+        while (toWrite.hasRemaining()) {
+            writePosition += directChannel.write(toWrite, writePosition);
+        }
+
+        // keep the partial block at the end of the buffer, it will be rewritten by the next flush
+        int fullBlocksLength = length - length % alignment;
+        int tailLength = length - fullBlocksLength;
+        if (tailLength > 0 && fullBlocksLength > 0) {
+            writeBuffer.setBytes(0, writeBuffer, fullBlocksLength, tailLength);
+        }
+        writeBuffer.clear().writerIndex(tailLength);
+        writeBufferStartPosition.addAndGet(fullBlocksLength);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            directChannel.close();
+        }
+    }
+
+    private static int getBlockSize(File file) throws IOException {
+        FileStore store = Files.getFileStore(file.toPath());
+        try {
+            long blockSize = (long) FileStore.class.getMethod("getBlockSize").invoke(store);
+            if (blockSize <= 0 || blockSize > Integer.MAX_VALUE || Long.bitCount(blockSize) != 1) {
+                throw new IOException("Unexpected block size " + blockSize + " of " + store);
+            }
+            return (int) blockSize;
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unable to get the block size of " + store, e);
+        }
+    }
+
+    private static OpenOption loadDirectOpenOption() {
+        try {
+            Class<?> clazz = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+            for (Object option : clazz.getEnumConstants()) {
+                if ("DIRECT".equals(((Enum<?>) option).name())) {
+                    return (OpenOption) option;
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            // not available on this JVM
+        }
+        LOG.debug("Direct I/O is not supported by this JVM");
+        return null;
+    }
+}
@@ -21,6 +21,10 @@
 
 package org.apache.bookkeeper.bookie;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
 import java.util.function.LongPredicate;
 
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
@@ -29,6 +33,8 @@ import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
  * Records the total size, remaining size and the set of ledgers that comprise a entry log.
  */
 public class EntryLogMetadata {
+    private static final short DEFAULT_SERIALIZATION_VERSION = 0;
+
     private final long entryLogId;
     private long totalSize;
     private long remainingSize;
@@ -88,6 +94,47 @@ public class EntryLogMetadata {
         });
     }
 
+    /**
+     * Serialize the metadata, so that it can be stored in a persistent {@link EntryLogMetadataMap}.
+     *
+     * @param out the stream to write the metadata to
+     * @throws IOException
+     */
+    public void serialize(DataOutputStream out) throws IOException {
+        Map<Long, Long> ledgers = ledgersMap.asMap();
+        out.writeShort(DEFAULT_SERIALIZATION_VERSION);
+        out.writeLong(entryLogId);
+        out.writeLong(totalSize);
+        out.writeLong(remainingSize);
+        out.writeInt(ledgers.size());
+        for (Map.Entry<Long, Long> ledger : ledgers.entrySet()) {
+            out.writeLong(ledger.getKey());
+            out.writeLong(ledger.getValue());
+        }
+    }
+
+    /**
+     * Read back metadata written by {@link #serialize(DataOutputStream)}.
+     *
+     * @param in the stream to read the metadata from
+     * @return the entry log metadata
+     * @throws IOException if the metadata is corrupted or has an unknown version
+     */
+    public static EntryLogMetadata deserialize(DataInputStream in) throws IOException {
+        short version = in.readShort();
+        if (version != DEFAULT_SERIALIZATION_VERSION) {
+            throw new IOException("Unsupported entry log metadata version " + version);
+        }
+        EntryLogMetadata meta = new EntryLogMetadata(in.readLong());
+        meta.totalSize = in.readLong();
+        meta.remainingSize = in.readLong();
+        int numLedgers = in.readInt();
+        for (int i = 0; i < numLedgers; i++) {
+            meta.ledgersMap.put(in.readLong(), in.readLong());
+        }
+        return meta;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
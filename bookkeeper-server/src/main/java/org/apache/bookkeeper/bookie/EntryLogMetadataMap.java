@@ -0,0 +1,85 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.BiConsumer;
+
+/**
+ * Map-store used by the garbage collector to keep the {@link EntryLogMetadata} of the entry logs.
+ *
+ * <p>Implementations that do not keep the metadata on heap hand out a fresh copy on every lookup,
+ * so modifications to an {@link EntryLogMetadata} have to be written back with {@link #put}.
+ */
+public interface EntryLogMetadataMap extends Closeable {
+
+    /**
+     * Check whether the metadata of the given entry log is in the map.
+     *
+     * @param entryLogId the entry log id
+     * @return true if the map contains the metadata of the entry log
+     * @throws IOException
+     */
+    boolean containsKey(long entryLogId) throws IOException;
+
+    /**
+     * Add or replace the metadata of an entry log.
+     *
+     * @param entryLogId the entry log id
+     * @param entryLogMeta the entry log metadata
+     * @throws IOException
+     */
+    void put(long entryLogId, EntryLogMetadata entryLogMeta) throws IOException;
+
+    /**
+     * Get the metadata of an entry log.
+     *
+     * @param entryLogId the entry log id
+     * @return the entry log metadata, or null if the entry log is not in the map
+     * @throws IOException
+     */
+    EntryLogMetadata get(long entryLogId) throws IOException;
+
+    /**
+     * Perform the given action on the metadata of each entry log.
+     *
+     * @param action the action to perform
+     * @throws IOException
+     */
+    void forEach(BiConsumer<Long, EntryLogMetadata> action) throws IOException;
+
+    /**
+     * Remove the metadata of an entry log.
+     *
+     * @param entryLogId the entry log id
+     * @throws IOException
+     */
+    void remove(long entryLogId) throws IOException;
+
+    /**
+     * @return the number of entry logs in the map
+     * @throws IOException
+     */
+    int size() throws IOException;
+}
@@ -25,6 +25,8 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.MapMaker;
 import com.google.common.collect.Sets;
 
@@ -32,6 +34,9 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+import io.netty.util.AbstractReferenceCounted;
 import io.netty.util.concurrent.FastThreadLocal;
 import java.io.BufferedReader;
 import java.io.File;
@@ -54,6 +59,7 @@ import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.NullStatsLogger;
@@ -284,6 +290,16 @@ public class EntryLogger {
 
     private final ByteBufAllocator allocator;
 
+    // Marker of the entry logs which are too large to be mapped
+    private static final ByteBuf NOT_MAPPABLE = Unpooled.EMPTY_BUFFER;
+
+    /**
+     * Read-only mappings of the finalized entry logs, weighted by their size. Entries read through
+     * a mapping are slices of it, so an evicted mapping is only unmapped by the garbage collector
+     * once all of its slices are released. Null if memory mapped reads are disabled.
+     */
+    private final Cache<Long, ByteBuf> mappedEntryLogs;
+
     final ServerConfiguration conf;
     /**
      * Scan entries in a entry log file.
@@ -343,6 +359,14 @@ public class EntryLogger {
         // but the protocol varies so an exact value is difficult to determine
         this.maxSaneEntrySize = conf.getNettyMaxFrameSizeBytes() - 500;
         this.allocator = allocator;
+        if (conf.isEntryLogMmapReadEnabled()) {
+            this.mappedEntryLogs = CacheBuilder.newBuilder()
+                    .maximumWeight(conf.getEntryLogMmapMaxBytes())
+                    .weigher((Long logId, ByteBuf mappedLog) -> mappedLog.capacity())
+                    .build();
+        } else {
+            this.mappedEntryLogs = null;
+        }
         this.ledgerDirsManager = ledgerDirsManager;
         this.conf = conf;
         entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
@@ -441,7 +465,55 @@ public class EntryLogger {
      * and don't cause a change in the channel's position. We use this map to store the file channels. Each
      * file channel is mapped to a log id which represents an open log file.
      */
-    private final ConcurrentMap<Long, FileChannel> logid2FileChannel = new ConcurrentHashMap<Long, FileChannel>();
+    private final ConcurrentMap<Long, SharedFileChannel> logid2FileChannel =
+            new ConcurrentHashMap<Long, SharedFileChannel>();
+
+    /**
+     * A file channel shared by the readers of a log file. The map of the open log files holds a reference to it,
+     * and each file region being transferred from the log file holds another one, so that the channel is closed
+     * once the log file is removed and the last of its regions is transferred.
+     */
+    private static class SharedFileChannel extends AbstractReferenceCounted {
+        private final long logId;
+        private final FileChannel channel;
+
+        SharedFileChannel(long logId, FileChannel channel) {
+            this.logId = logId;
+            this.channel = channel;
+        }
+
+        @Override
+        protected void deallocate() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.warn("Exception while closing channel for log file:" + logId);
+            }
+        }
+
+        @Override
+        public SharedFileChannel touch(Object hint) {
+            return this;
+        }
+    }
+
+    /**
+     * A region of a log file, which releases its reference to the shared channel of the log file once transferred,
+     * instead of closing the channel.
+     */
+    private static class SharedFileRegion extends DefaultFileRegion {
+        private final SharedFileChannel sharedChannel;
+
+        SharedFileRegion(SharedFileChannel sharedChannel, long position, long count) {
+            super(sharedChannel.channel, position, count);
+            this.sharedChannel = sharedChannel;
+        }
+
+        @Override
+        protected void deallocate() {
+            sharedChannel.release();
+        }
+    }
 
     /**
      * Put the logId, bc pair in the map responsible for the current thread.
@@ -458,13 +530,10 @@ public class EntryLogger {
      * @param logId
      */
     public void removeFromChannelsAndClose(long logId) {
-        FileChannel fileChannel = logid2FileChannel.remove(logId);
+        SharedFileChannel fileChannel = logid2FileChannel.remove(logId);
         if (null != fileChannel) {
-            try {
-                fileChannel.close();
-            } catch (IOException e) {
-                LOG.warn("Exception while closing channel for log file:" + logId);
-            }
+            // closed once the regions being transferred from the log file are released
+            fileChannel.release();
         }
     }
 
@@ -525,6 +594,9 @@ public class EntryLogger {
      */
     protected boolean removeEntryLog(long entryLogId) {
         removeFromChannelsAndClose(entryLogId);
+        if (mappedEntryLogs != null) {
+            mappedEntryLogs.invalidate(entryLogId);
+        }
         File entryLogFile;
         try {
             entryLogFile = findFile(entryLogId);
@@ -585,7 +657,7 @@ public class EntryLogger {
      * Flushes all rotated log channels. After log channels are flushed,
      * move leastUnflushedLogId ptr to current logId.
      */
-    void checkpoint() throws IOException {
+    public void checkpoint() throws IOException {
         entryLogManager.checkpoint();
     }
 
@@ -818,6 +890,12 @@ public class EntryLogger {
         long entryLogId = logIdForOffset(location);
         long pos = posForOffset(location);
 
+        if (mappedEntryLogs != null) {
+            ByteBuf mappedLog = getMappedEntryLog(entryLogId);
+            if (mappedLog != null) {
+                return readMappedEntry(mappedLog, ledgerId, entryId, entryLogId, pos, validateEntry);
+            }
+        }
 
         BufferedReadChannel fc = null;
         int entrySize = -1;
@@ -860,6 +938,130 @@ public class EntryLogger {
         return internalReadEntry(ledgerId, entryId, location, true /* validateEntry */);
     }
 
+    /**
+     * Get the mapping of an entry log, mapping it if needed.
+     *
+     * @return the mapping, or null if the entry log is still being written or cannot be mapped
+     */
+    private ByteBuf getMappedEntryLog(long entryLogId) {
+        ByteBuf mappedLog = mappedEntryLogs.getIfPresent(entryLogId);
+        if (mappedLog == null) {
+            if (!isImmutableEntryLog(entryLogId)) {
+                return null;
+            }
+            try {
+                mappedLog = mappedEntryLogs.get(entryLogId, () -> mapEntryLog(entryLogId));
+            } catch (ExecutionException e) {
+                // let the regular read path report the error
+                LOG.debug("Failed to map entry log {}", entryLogId, e.getCause());
+                return null;
+            }
+        }
+        return mappedLog == NOT_MAPPABLE ? null : mappedLog;
+    }
+
+    @VisibleForTesting
+    boolean isEntryLogMapped(long entryLogId) {
+        return mappedEntryLogs != null && mappedEntryLogs.getIfPresent(entryLogId) != null;
+    }
+
+    /**
+     * Only the entry logs which have been rotated and flushed are immutable.
+     */
+    private boolean isImmutableEntryLog(long entryLogId) {
+        return entryLogId < recentlyCreatedEntryLogsStatus.getLeastUnflushedLogId()
+                && entryLogManager.getCurrentLogIfPresent(entryLogId) == null;
+    }
+
+    /**
+     * Get the region of the entry log file holding an entry, so that the entry can be transferred
+     * without being read in memory. The region shares the read channel of the entry log, which stays
+     * open until the region is released even if the entry log is removed in the meantime.
+     *
+     * @return the file region, or null if the entry log is still being written or the entry is
+     *         smaller than {@code minSize}
+     */
+    public FileRegion readEntryRegion(long ledgerId, long entryId, long location, int minSize)
+            throws IOException {
+        long entryLogId = logIdForOffset(location);
+        long pos = posForOffset(location);
+        if (!isImmutableEntryLog(entryLogId)) {
+            return null;
+        }
+
+        int entrySize;
+        try {
+            BufferedReadChannel fc = getFCForEntryInternal(ledgerId, entryId, entryLogId, pos);
+            ByteBuf sizeBuff = readEntrySize(ledgerId, entryId, entryLogId, pos, fc);
+            entrySize = sizeBuff.getInt(0);
+            validateEntry(ledgerId, entryId, entryLogId, pos, sizeBuff);
+        } catch (EntryLookupException.MissingEntryException entryLookupError) {
+            throw new Bookie.NoEntryException("Short read from entrylog " + entryLogId,
+                    ledgerId, entryId);
+        } catch (EntryLookupException e) {
+            throw new IOException(e.toString());
+        }
+        if (entrySize < minSize) {
+            return null;
+        }
+
+        // retained atomically with the lookup, so that it isn't closed by a concurrent removal of the entry log
+        SharedFileChannel regionChannel = logid2FileChannel.computeIfPresent(entryLogId, (logId, sharedChannel) -> {
+            sharedChannel.retain();
+            return sharedChannel;
+        });
+        if (regionChannel == null) {
+            // the entry log was removed in the meantime, let the regular read path report it
+            return null;
+        }
+        try {
+            if (pos + entrySize > regionChannel.channel.size()) {
+                throw new Bookie.NoEntryException("Short read for " + ledgerId + "@"
+                                                  + entryId + " in " + entryLogId + "@"
+                                                  + pos + "(" + entrySize + ")", ledgerId, entryId);
+            }
+            return new SharedFileRegion(regionChannel, pos, entrySize);
+        } catch (IOException | RuntimeException e) {
+            regionChannel.release();
+            throw e;
+        }
+    }
+
+    private ByteBuf mapEntryLog(long entryLogId) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(findFile(entryLogId), "r");
+             FileChannel fc = file.getChannel()) {
+            long size = fc.size();
+            if (size > Integer.MAX_VALUE) {
+                return NOT_MAPPABLE;
+            }
+            return Unpooled.wrappedBuffer(fc.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    private ByteBuf readMappedEntry(ByteBuf mappedLog, long ledgerId, long entryId, long entryLogId, long pos,
+                                   boolean validateEntry) throws IOException {
+        long entrySizePos = pos - 4;
+        if (entrySizePos < 0 || entrySizePos + sizeBuffer.get().capacity() > mappedLog.capacity()) {
+            throw new Bookie.NoEntryException("Short read from entrylog " + entryLogId, ledgerId, entryId);
+        }
+        ByteBuf sizeBuff = mappedLog.slice((int) entrySizePos, sizeBuffer.get().capacity());
+        int entrySize = sizeBuff.getInt(0);
+        if (validateEntry) {
+            try {
+                validateEntry(ledgerId, entryId, entryLogId, pos, sizeBuff);
+            } catch (EntryLookupException e) {
+                throw new IOException(e.toString());
+            }
+        }
+        if (entrySize < 0 || pos + entrySize > mappedLog.capacity()) {
+            throw new Bookie.NoEntryException("Short read for " + ledgerId + "@"
+                                              + entryId + " in " + entryLogId + "@"
+                                              + pos + "(" + (mappedLog.capacity() - pos) + "!=" + entrySize + ")",
+                                              ledgerId, entryId);
+        }
+        return mappedLog.retainedSlice((int) pos, entrySize);
+    }
+
     /**
      * Read the header of an entry log.
      */
@@ -896,10 +1098,10 @@ public class EntryLogger {
         // get channel is used to open an existing entry log file
         // it would be better to open using read mode
         FileChannel newFc = new RandomAccessFile(file, "r").getChannel();
-        FileChannel oldFc = logid2FileChannel.putIfAbsent(entryLogId, newFc);
+        SharedFileChannel oldFc = logid2FileChannel.putIfAbsent(entryLogId, new SharedFileChannel(entryLogId, newFc));
         if (null != oldFc) {
             newFc.close();
-            newFc = oldFc;
+            newFc = oldFc.channel;
         }
         // We set the position of the write buffer of this buffered channel to Long.MAX_VALUE
         // so that there are no overlaps with the write buffer while reading
@@ -1160,11 +1362,14 @@ public class EntryLogger {
         LOG.info("Stopping EntryLogger");
         try {
             flush();
-            for (FileChannel fc : logid2FileChannel.values()) {
-                fc.close();
+            for (SharedFileChannel fc : logid2FileChannel.values()) {
+                fc.channel.close();
             }
             // clear the mapping, so we don't need to go through the channels again in finally block in normal case.
             logid2FileChannel.clear();
+            if (mappedEntryLogs != null) {
+                mappedEntryLogs.invalidateAll();
+            }
             entryLogManager.close();
             synchronized (compactionLogLock) {
                 if (compactionLogChannel != null) {
@@ -1176,8 +1381,8 @@ public class EntryLogger {
             // we have no idea how to avoid io exception during shutting down, so just ignore it
             LOG.error("Error flush entry log during shutting down, which may cause entry log corrupted.", ie);
         } finally {
-            for (FileChannel fc : logid2FileChannel.values()) {
-                IOUtils.close(LOG, fc);
+            for (SharedFileChannel fc : logid2FileChannel.values()) {
+                IOUtils.close(LOG, fc.channel);
             }
 
             entryLogManager.forceClose();
@@ -22,25 +22,28 @@
 package org.apache.bookkeeper.bookie;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import lombok.Getter;
 import org.apache.bookkeeper.bookie.GarbageCollector.GarbageCleaner;
+import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
 import org.apache.bookkeeper.bookie.stats.GarbageCollectorStats;
+import org.apache.bookkeeper.bookie.storage.ldb.PersistentEntryLogMetadataMap;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -56,9 +59,10 @@ import org.slf4j.LoggerFactory;
 public class GarbageCollectorThread extends SafeRunnable {
     private static final Logger LOG = LoggerFactory.getLogger(GarbageCollectorThread.class);
     private static final int SECOND = 1000;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
 
     // Maps entry log files to the set of ledgers that comprise the file and the size usage per ledger
-    private Map<Long, EntryLogMetadata> entryLogMetaMap = new ConcurrentHashMap<Long, EntryLogMetadata>();
+    private final EntryLogMetadataMap entryLogMetaMap;
 
     private final ScheduledExecutorService gcExecutor;
     Future<?> scheduledFuture = null;
@@ -153,6 +157,7 @@ public class GarbageCollectorThread extends SafeRunnable {
         this.entryLogger = ledgerStorage.getEntryLogger();
         this.ledgerStorage = ledgerStorage;
         this.gcWaitTime = conf.getGcWaitTime();
+        this.entryLogMetaMap = createEntryLogMetadataMap();
 
         this.numActiveEntryLogs = 0;
         this.totalEntryLogSize = 0L;
@@ -250,6 +255,51 @@ public class GarbageCollectorThread extends SafeRunnable {
         lastMinorCompactionTime = lastMajorCompactionTime = System.currentTimeMillis();
     }
 
+    private EntryLogMetadataMap createEntryLogMetadataMap() throws IOException {
+        if (!conf.isGcEntryLogMetadataCacheEnabled()) {
+            return new InMemoryEntryLogMetadataMap();
+        }
+
+        String cachePath = conf.getGcEntryLogMetadataCachePath();
+        String baseDir;
+        if (Strings.isNullOrEmpty(cachePath)) {
+            // keep the cache next to the entry logs it describes, in a dir the entry logger can write to
+            File ledgerDir;
+            try {
+                ledgerDir = selectEntryLogMetadataDir();
+            } catch (NoWritableLedgerDirException e) {
+                LOG.warn("No writable ledger dir for the entry log metadata cache, keeping the metadata in memory",
+                        e);
+                return new InMemoryEntryLogMetadataMap();
+            }
+            baseDir = ledgerDir.getPath();
+        } else {
+            File ledgerDir = entryLogger.getLedgerDirsManager().getAllLedgerDirs().get(0);
+            baseDir = new File(cachePath, ledgerDir.getAbsolutePath().replace(File.separatorChar, '_')).getPath();
+        }
+        try {
+            return new PersistentEntryLogMetadataMap(baseDir, conf);
+        } catch (IOException e) {
+            LOG.error("Failed to initialize the entry log metadata cache at {}, remove {} to rebuild it",
+                    baseDir, new File(baseDir, PersistentEntryLogMetadataMap.METADATA_CACHE), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Pick the ledger dir holding the entry log metadata cache among the dirs where a new entry log could be
+     * created, preferring the one holding the cache of a previous run.
+     */
+    private File selectEntryLogMetadataDir() throws NoWritableLedgerDirException {
+        List<File> writableDirs = entryLogger.getLedgerDirsManager().getWritableLedgerDirsForNewLog();
+        for (File dir : writableDirs) {
+            if (new File(dir, PersistentEntryLogMetadataMap.METADATA_CACHE).exists()) {
+                return dir;
+            }
+        }
+        return writableDirs.get(ThreadLocalRandom.current().nextInt(writableDirs.size()));
+    }
+
     public void enableForceGC() {
         if (forceGarbageCollection.compareAndSet(false, true)) {
             LOG.info("Forced garbage collection triggered by thread: {}", Thread.currentThread().getName());
@@ -345,7 +395,7 @@ public class GarbageCollectorThread extends SafeRunnable {
 
         // Extract all of the ledger ID's that comprise all of the entry logs
         // (except for the current new one which is still being written to).
-        entryLogMetaMap = extractMetaFromEntryLogs(entryLogMetaMap);
+        extractMetaFromEntryLogs();
 
         // gc inactive/deleted ledgers
         doGcLedgers();
@@ -408,23 +458,44 @@ public class GarbageCollectorThread extends SafeRunnable {
     private void doGcEntryLogs() {
         // Get a cumulative count, don't update until complete
         AtomicLong totalEntryLogSizeAcc = new AtomicLong(0L);
+        AtomicInteger numActiveEntryLogsAcc = new AtomicInteger(0);
 
         // Loop through all of the entry logs and remove the non-active ledgers.
-        entryLogMetaMap.forEach((entryLogId, meta) -> {
-           removeIfLedgerNotExists(meta);
-           if (meta.isEmpty()) {
-               // This means the entry log is not associated with any active ledgers anymore.
-               // We can remove this entry log file now.
-               LOG.info("Deleting entryLogId " + entryLogId + " as it has no active ledgers!");
-               removeEntryLog(entryLogId);
-               gcStats.getReclaimedSpaceViaDeletes().add(meta.getTotalSize());
-           }
-
-           totalEntryLogSizeAcc.getAndAdd(meta.getRemainingSize());
-        });
+        try {
+            entryLogMetaMap.forEach((entryLogId, meta) -> {
+               long priorRemainingSize = meta.getRemainingSize();
+               removeIfLedgerNotExists(meta);
+               if (meta.isEmpty()) {
+                   // This means the entry log is not associated with any active ledgers anymore.
+                   // We can remove this entry log file now.
+                   LOG.info("Deleting entryLogId " + entryLogId + " as it has no active ledgers!");
+                   removeEntryLog(entryLogId);
+                   gcStats.getReclaimedSpaceViaDeletes().add(meta.getTotalSize());
+               } else {
+                   if (meta.getRemainingSize() != priorRemainingSize) {
+                       // write back the updated usage, the map may hold a copy of the metadata
+                       updateEntryLogMetadata(entryLogId, meta);
+                   }
+                   numActiveEntryLogsAcc.incrementAndGet();
+               }
+
+               totalEntryLogSizeAcc.getAndAdd(meta.getRemainingSize());
+            });
+        } catch (IOException e) {
+            LOG.error("Error iterating over the entry log metadata", e);
+            return;
+        }
 
         this.totalEntryLogSize = totalEntryLogSizeAcc.get();
-        this.numActiveEntryLogs = entryLogMetaMap.keySet().size();
+        this.numActiveEntryLogs = numActiveEntryLogsAcc.get();
+    }
+
+    private void updateEntryLogMetadata(long entryLogId, EntryLogMetadata meta) {
+        try {
+            entryLogMetaMap.put(entryLogId, meta);
+        } catch (IOException e) {
+            LOG.error("Error updating the metadata of entry log {}", entryLogId, e);
+        }
     }
 
     private void removeIfLedgerNotExists(EntryLogMetadata meta) {
@@ -452,10 +523,18 @@ public class GarbageCollectorThread extends SafeRunnable {
     void doCompactEntryLogs(double threshold, long maxTimeMillis) {
         LOG.info("Do compaction to compact those files lower than {}", threshold);
 
-        // sort the ledger meta by usage in ascending order.
-        List<EntryLogMetadata> logsToCompact = new ArrayList<EntryLogMetadata>();
-        logsToCompact.addAll(entryLogMetaMap.values());
-        logsToCompact.sort(Comparator.comparing(EntryLogMetadata::getUsage));
+        // sort the entry logs by usage in ascending order. only the id and usage of each entry log
+        // are kept, the metadata is looked up again when the entry log is compacted.
+        List<EntryLogUsage> logsToCompact = new ArrayList<EntryLogUsage>();
+        try {
+            entryLogMetaMap.forEach((entryLogId, meta) -> {
+                logsToCompact.add(new EntryLogUsage(entryLogId, meta.getUsage()));
+            });
+        } catch (IOException e) {
+            LOG.error("Error iterating over the entry log metadata", e);
+            return;
+        }
+        logsToCompact.sort(Comparator.comparingDouble(EntryLogUsage::getUsage));
 
         final int numBuckets = 10;
         int[] entryLogUsageBuckets = new int[numBuckets];
@@ -465,25 +544,51 @@ public class GarbageCollectorThread extends SafeRunnable {
         long end = start;
         long timeDiff = 0;
 
-        for (EntryLogMetadata meta : logsToCompact) {
-            int bucketIndex = calculateUsageIndex(numBuckets, meta.getUsage());
+        for (EntryLogUsage logUsage : logsToCompact) {
+            int bucketIndex = calculateUsageIndex(numBuckets, logUsage.getUsage());
             entryLogUsageBuckets[bucketIndex]++;
 
             if (timeDiff < maxTimeMillis) {
                 end = System.currentTimeMillis();
                 timeDiff = end - start;
             }
-            if (meta.getUsage() >= threshold || (maxTimeMillis > 0 && timeDiff > maxTimeMillis) || !running) {
+            if (logUsage.getUsage() >= threshold || (maxTimeMillis > 0 && timeDiff > maxTimeMillis) || !running) {
                 // We allow the usage limit calculation to continue so that we get a accurate
                 // report of where the usage was prior to running compaction.
                 continue;
             }
+
+            EntryLogMetadata meta;
+            try {
+                meta = entryLogMetaMap.get(logUsage.getEntryLogId());
+            } catch (IOException e) {
+                LOG.error("Error reading the metadata of entry log {}", logUsage.getEntryLogId(), e);
+                continue;
+            }
+            if (meta == null) {
+                // the entry log was removed in the meantime
+                continue;
+            }
+
+            // the ledgers deleted since the last gc are not copied, and the updated usage is written back before
+            // compacting, since a failed compaction leaves the entry log and its metadata in place
+            long priorRemainingSize = meta.getRemainingSize();
+            removeIfLedgerNotExists(meta);
+            if (meta.isEmpty()) {
+                LOG.info("Deleting entryLogId {} as it has no active ledgers!", meta.getEntryLogId());
+                removeEntryLog(meta.getEntryLogId());
+                gcStats.getReclaimedSpaceViaDeletes().add(meta.getTotalSize());
+                continue;
+            }
+            if (meta.getRemainingSize() != priorRemainingSize) {
+                updateEntryLogMetadata(meta.getEntryLogId(), meta);
+            }
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Compacting entry log {} with usage {} below threshold {}",
                         meta.getEntryLogId(), meta.getUsage(), threshold);
             }
 
-            long priorRemainingSize = meta.getRemainingSize();
+            priorRemainingSize = meta.getRemainingSize();
             compactEntryLog(meta);
             gcStats.getReclaimedSpaceViaCompaction().add(meta.getTotalSize() - priorRemainingSize);
             compactedBuckets[bucketIndex]++;
@@ -501,6 +606,27 @@ public class GarbageCollectorThread extends SafeRunnable {
                 entryLogUsageBuckets, compactedBuckets);
     }
 
+    /**
+     * The usage of an entry log, used to pick the entry logs to compact.
+     */
+    private static class EntryLogUsage {
+        private final long entryLogId;
+        private final double usage;
+
+        EntryLogUsage(long entryLogId, double usage) {
+            this.entryLogId = entryLogId;
+            this.usage = usage;
+        }
+
+        long getEntryLogId() {
+            return entryLogId;
+        }
+
+        double getUsage() {
+            return usage;
+        }
+    }
+
     /**
      * Calculate the index for the batch based on the usage between 0 and 1.
      *
@@ -530,6 +656,18 @@ public class GarbageCollectorThread extends SafeRunnable {
 
         // Interrupt GC executor thread
         gcExecutor.shutdownNow();
+
+        // only close the metadata map once the gc thread is done with it
+        if (gcExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            try {
+                entryLogMetaMap.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the entry log metadata map", e);
+            }
+        } else {
+            LOG.warn("GarbageCollectorThread didn't stop within {} seconds, not closing the entry log metadata map",
+                    SHUTDOWN_TIMEOUT_SECONDS);
+        }
     }
 
     /**
@@ -542,7 +680,15 @@ public class GarbageCollectorThread extends SafeRunnable {
         // remove entry log file successfully
         if (entryLogger.removeEntryLog(entryLogId)) {
             LOG.info("Removing entry log metadata for {}", entryLogId);
+            removeEntryLogMetadata(entryLogId);
+        }
+    }
+
+    private void removeEntryLogMetadata(long entryLogId) {
+        try {
             entryLogMetaMap.remove(entryLogId);
+        } catch (IOException e) {
+            LOG.error("Error removing the metadata of entry log {}", entryLogId, e);
         }
     }
 
@@ -577,26 +723,34 @@ public class GarbageCollectorThread extends SafeRunnable {
     /**
      * Method to read in all of the entry logs (those that we haven't done so yet),
      * and find the set of ledger ID's that make up each entry log file.
-     *
-     * @param entryLogMetaMap
-     *          Existing EntryLogs to Meta
-     * @throws IOException
      */
-    protected Map<Long, EntryLogMetadata> extractMetaFromEntryLogs(Map<Long, EntryLogMetadata> entryLogMetaMap) {
+    protected void extractMetaFromEntryLogs() {
         // Extract it for every entry log except for the current one.
         // Entry Log ID's are just a long value that starts at 0 and increments
         // by 1 when the log fills up and we roll to a new one.
         long curLogId = entryLogger.getLeastUnflushedLogId();
         boolean hasExceptionWhenScan = false;
         for (long entryLogId = scannedLogId; entryLogId < curLogId; entryLogId++) {
-            // Comb the current entry log file if it has not already been extracted.
-            if (entryLogMetaMap.containsKey(entryLogId)) {
-                continue;
+            boolean hasMeta;
+            try {
+                hasMeta = entryLogMetaMap.containsKey(entryLogId);
+            } catch (IOException e) {
+                LOG.warn("Error reading the metadata of entry log {}", entryLogId, e);
+                break;
             }
 
             // check whether log file exists or not
             // if it doesn't exist, this log file might have been garbage collected.
             if (!entryLogger.logExists(entryLogId)) {
+                if (hasMeta) {
+                    // the metadata was persisted but the log was removed before the metadata
+                    removeEntryLogMetadata(entryLogId);
+                }
+                continue;
+            }
+
+            // Comb the current entry log file if it has not already been extracted.
+            if (hasMeta) {
                 continue;
             }
 
@@ -624,13 +778,17 @@ public class GarbageCollectorThread extends SafeRunnable {
                 ++scannedLogId;
             }
         }
-        return entryLogMetaMap;
     }
 
     CompactableLedgerStorage getLedgerStorage() {
         return ledgerStorage;
     }
 
+    @VisibleForTesting
+    EntryLogMetadataMap getEntryLogMetaMap() {
+        return entryLogMetaMap;
+    }
+
     public GarbageCollectionStatus getGarbageCollectionStatus() {
         return GarbageCollectionStatus.builder()
             .forceCompacting(forceGarbageCollection.get())
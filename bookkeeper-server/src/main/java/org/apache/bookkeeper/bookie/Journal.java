@@ -92,6 +92,13 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                 int capacity) -> new BufferedChannel(UnpooledByteBufAllocator.DEFAULT, fc, capacity);
 
         BufferedChannel create(FileChannel fc, int capacity) throws IOException;
+
+        /**
+         * Create the buffered channel used to write the journal file {@code file}.
+         */
+        default BufferedChannel create(File file, FileChannel fc, int capacity) throws IOException {
+            return create(fc, capacity);
+        }
     }
 
 
@@ -307,7 +314,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
         OpStatsLogger journalAddEntryStats;
         Counter journalCbQueueSize;
-
+        // the next entry of the batch queued with this one, written to the journal along with it
+        QueueEntry nextInBatch;
 
         static QueueEntry create(ByteBuf entry, boolean ackBeforeSync, long ledgerId, long entryId,
                 WriteCallback cb, Object ctx, long enqueueTime, OpStatsLogger journalAddEntryStats,
@@ -322,6 +330,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             qe.enqueueTime = enqueueTime;
             qe.journalAddEntryStats = journalAddEntryStats;
             qe.journalCbQueueSize = journalCbQueueSize;
+            qe.nextInBatch = null;
             return qe;
         }
 
@@ -380,8 +389,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                 if (shouldForceWrite) {
                     long startTime = MathUtils.nowInNano();
                     this.logFile.forceWrite(false);
+                    long syncLatencyNanos = MathUtils.elapsedNanos(startTime);
                     journalStats.getJournalSyncStats()
-                        .registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                        .registerSuccessfulEvent(syncLatencyNanos, TimeUnit.NANOSECONDS);
+                    journalStats.getJournalDeviceFsyncStats()
+                        .registerSuccessfulEvent(syncLatencyNanos, TimeUnit.NANOSECONDS);
+                    updateAvgSyncLatency(syncLatencyNanos);
                 }
                 lastLogMark.setCurLogMark(this.logId, this.lastFlushedPosition);
 
@@ -584,6 +597,11 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
     static final long MB = 1024 * 1024L;
     static final int KB = 1024;
+
+    // Weight of a new sample in the fsync latency moving average is 1 / SYNC_LATENCY_AVG_WEIGHT
+    private static final int SYNC_LATENCY_AVG_WEIGHT = 8;
+    // Lower bound of the adaptive group wait, so that a very fast device still gets some grouping
+    private static final long MIN_ADAPTIVE_GROUP_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
     // max journal file size
     final long maxJournalSize;
     // pre-allocation size for the journal files
@@ -598,6 +616,10 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     final ForceWriteThread forceWriteThread;
     // Time after which we will stop grouping and issue the flush
     private final long maxGroupWaitInNanos;
+    // Whether the group wait time is derived from the measured fsync latency of the journal device
+    private final boolean adaptiveGroupWait;
+    // Moving average of the fsync latency of the journal device
+    private volatile long avgSyncLatencyNanos;
     // Threshold after which we flush any buffered journal entries
     private final long bufferedEntriesThreshold;
     // Threshold after which we flush any buffered journal writes
@@ -606,6 +628,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     private final boolean flushWhenQueueEmpty;
     // should we hint the filesystem to remove pages from cache after force write
     private final boolean removePagesFromCache;
+    // should we write the journal files with direct I/O, reset if the journal device does not support it
+    private volatile boolean directIO;
     private final int journalFormatVersionToWrite;
     private final int journalAlignmentSize;
     // control PageCache flush interval when syncData disabled to reduce disk io util
@@ -670,6 +694,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         this.maxBackupJournals = conf.getMaxBackupJournals();
         this.forceWriteThread = new ForceWriteThread(this, conf.getJournalAdaptiveGroupWrites());
         this.maxGroupWaitInNanos = TimeUnit.MILLISECONDS.toNanos(conf.getJournalMaxGroupWaitMSec());
+        this.adaptiveGroupWait = conf.getJournalAdaptiveGroupWaitEnabled() && maxGroupWaitInNanos > 0;
+        this.avgSyncLatencyNanos = maxGroupWaitInNanos;
         this.bufferedWritesThreshold = conf.getJournalBufferedWritesThreshold();
         this.bufferedEntriesThreshold = conf.getJournalBufferedEntriesThreshold();
         this.journalFormatVersionToWrite = conf.getJournalFormatVersionToWrite();
@@ -686,6 +712,11 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         // we cannot skip flushing for queue empty
         this.flushWhenQueueEmpty = maxGroupWaitInNanos <= 0 || conf.getJournalFlushWhenQueueEmpty();
 
+        this.directIO = conf.getJournalDirectIOEnabled();
+        if (directIO && !DirectBufferedChannel.isSupported()) {
+            LOG.warn("Direct I/O is not supported by this JVM, the journal will use buffered I/O");
+            directIO = false;
+        }
         this.removePagesFromCache = conf.getJournalRemovePagesFromCache();
         // read last log mark
         if (conf.getJournalDirs().length == 1) {
@@ -699,13 +730,35 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         }
 
         // Expose Stats
-        this.journalStats = new JournalStats(statsLogger);
+        this.journalStats = new JournalStats(statsLogger, journalIndex);
     }
 
     JournalStats getJournalStats() {
         return this.journalStats;
     }
 
+    @VisibleForTesting
+    void updateAvgSyncLatency(long syncLatencyNanos) {
+        long avg = avgSyncLatencyNanos;
+        avgSyncLatencyNanos = avg + (syncLatencyNanos - avg) / SYNC_LATENCY_AVG_WEIGHT;
+    }
+
+    /**
+     * Get the time to wait for more entries before flushing a group.
+     *
+     * <p>In adaptive mode the wait follows the average fsync latency of the journal device: entries that
+     * arrive while a sync is in flight have to wait for the next sync anyway, so grouping them for about
+     * one sync period adds little latency on fast devices and still builds large batches on slow ones.
+     * The configured max group wait is always an upper bound.
+     */
+    @VisibleForTesting
+    long getGroupWaitNanos() {
+        if (!adaptiveGroupWait) {
+            return maxGroupWaitInNanos;
+        }
+        return Math.max(MIN_ADAPTIVE_GROUP_WAIT_NANOS, Math.min(maxGroupWaitInNanos, avgSyncLatencyNanos));
+    }
+
     public File getJournalDirectory() {
         return journalDirectory;
     }
@@ -879,6 +932,45 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                 journalStats.getJournalCbQueueSize()));
     }
 
+    /**
+     * record the add entry operations of a batch of entries in journal. The entries are queued as a single queue
+     * entry, which the journal thread writes at once, so they are written and synced to the journal by the same
+     * flush.
+     */
+    public void logAddEntries(List<ByteBuf> entries, boolean ackBeforeSync, WriteCallback cb, Object ctx)
+            throws InterruptedException {
+        long totalBytes = 0;
+        for (ByteBuf entry : entries) {
+            // Retain entry until it gets written to journal
+            entry.retain();
+            totalBytes += entry.readableBytes();
+        }
+
+        journalStats.getJournalQueueSize().add(entries.size());
+        journalStats.getJournalCbQueueSize().add(entries.size());
+
+        memoryLimitController.reserveMemory(totalBytes);
+
+        long enqueueTime = MathUtils.nowInNano();
+        QueueEntry first = null;
+        QueueEntry last = null;
+        for (ByteBuf entry : entries) {
+            long ledgerId = entry.getLong(entry.readerIndex() + 0);
+            long entryId = entry.getLong(entry.readerIndex() + 8);
+            QueueEntry qe = QueueEntry.create(
+                    entry, ackBeforeSync, ledgerId, entryId, cb, ctx, enqueueTime,
+                    journalStats.getJournalAddEntryStats(),
+                    journalStats.getJournalCbQueueSize());
+            if (first == null) {
+                first = qe;
+            } else {
+                last.nextInBatch = qe;
+            }
+            last = qe;
+        }
+        queue.put(first);
+    }
+
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx) {
         queue.add(QueueEntry.create(
                 null, false /* ackBeforeSync */, ledgerId,
@@ -976,6 +1068,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                             .registerSuccessfulEvent(MathUtils.elapsedNanos(dequeueStartTime), TimeUnit.NANOSECONDS);
                     }
 
+                    long groupWaitNanos = getGroupWaitNanos();
                     if (numEntriesToFlush == 0) {
                         qe = queue.take();
                         dequeueStartTime = MathUtils.nowInNano();
@@ -983,7 +1076,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                         journalStats.getJournalQueueStats()
                             .registerSuccessfulEvent(MathUtils.elapsedNanos(qe.enqueueTime), TimeUnit.NANOSECONDS);
                     } else {
-                        long pollWaitTimeNanos = maxGroupWaitInNanos
+                        long pollWaitTimeNanos = groupWaitNanos
                                 - MathUtils.elapsedNanos(toFlush.get(0).enqueueTime);
                         if (flushWhenQueueEmpty || pollWaitTimeNanos < 0) {
                             pollWaitTimeNanos = 0;
@@ -1000,12 +1093,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                         boolean shouldFlush = false;
                         // We should issue a forceWrite if any of the three conditions below holds good
                         // 1. If the oldest pending entry has been pending for longer than the max wait time
-                        if (maxGroupWaitInNanos > 0 && !groupWhenTimeout && (MathUtils
-                                .elapsedNanos(toFlush.get(0).enqueueTime) > maxGroupWaitInNanos)) {
+                        if (groupWaitNanos > 0 && !groupWhenTimeout && (MathUtils
+                                .elapsedNanos(toFlush.get(0).enqueueTime) > groupWaitNanos)) {
                             groupWhenTimeout = true;
-                        } else if (maxGroupWaitInNanos > 0 && groupWhenTimeout
+                        } else if (groupWaitNanos > 0 && groupWhenTimeout
                             && (qe == null // no entry to group
-                                || MathUtils.elapsedNanos(qe.enqueueTime) < maxGroupWaitInNanos)) {
+                                || MathUtils.elapsedNanos(qe.enqueueTime) < groupWaitNanos)) {
                             // when group timeout, it would be better to look forward, as there might be lots of
                             // entries already timeout
                             // due to a previous slow write (writing to filesystem which impacted by force write).
@@ -1063,6 +1156,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                                 }
                             }
 
+                            journalStats.getJournalDeviceQueueDepthStats()
+                                .registerSuccessfulValue(queue.size());
                             journalStats.getForceWriteBatchEntriesStats()
                                 .registerSuccessfulValue(numEntriesToFlush);
                             journalStats.getForceWriteBatchBytesStats()
@@ -1109,38 +1204,46 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                 if (qe == null) { // no more queue entry
                     continue;
                 }
-                if ((qe.entryId == BookieImpl.METAENTRY_ID_LEDGER_EXPLICITLAC)
-                        && (journalFormatVersionToWrite < JournalChannel.V6)) {
-                    /*
-                     * this means we are using new code which supports
-                     * persisting explicitLac, but "journalFormatVersionToWrite"
-                     * is set to some older value (< V6). In this case we
-                     * shouldn't write this special entry
-                     * (METAENTRY_ID_LEDGER_EXPLICITLAC) to Journal.
-                     */
-                    memoryLimitController.releaseMemory(qe.entry.readableBytes());
-                    qe.entry.release();
-                } else if (qe.entryId != BookieImpl.METAENTRY_ID_FORCE_LEDGER) {
-                    int entrySize = qe.entry.readableBytes();
-                    journalStats.getJournalWriteBytes().add(entrySize);
-
-                    batchSize += (4 + entrySize);
-
-                    lenBuff.clear();
-                    lenBuff.writeInt(entrySize);
-
-                    // preAlloc based on size
-                    logFile.preAllocIfNeeded(4 + entrySize);
-
-                    bc.write(lenBuff);
-                    bc.write(qe.entry);
-                    memoryLimitController.releaseMemory(qe.entry.readableBytes());
-                    qe.entry.release();
-                }
+                // the entries of a batch are written at once, so that they are flushed together
+                while (qe != null) {
+                    QueueEntry nextInBatch = qe.nextInBatch;
+                    qe.nextInBatch = null;
+                    if ((qe.entryId == BookieImpl.METAENTRY_ID_LEDGER_EXPLICITLAC)
+                            && (journalFormatVersionToWrite < JournalChannel.V6)) {
+                        /*
+                         * this means we are using new code which supports
+                         * persisting explicitLac, but "journalFormatVersionToWrite"
+                         * is set to some older value (< V6). In this case we
+                         * shouldn't write this special entry
+                         * (METAENTRY_ID_LEDGER_EXPLICITLAC) to Journal.
+                         */
+                        memoryLimitController.releaseMemory(qe.entry.readableBytes());
+                        qe.entry.release();
+                    } else if (qe.entryId != BookieImpl.METAENTRY_ID_FORCE_LEDGER) {
+                        int entrySize = qe.entry.readableBytes();
+                        journalStats.getJournalWriteBytes().add(entrySize);
+
+                        batchSize += (4 + entrySize);
 
-                toFlush.add(qe);
-                numEntriesToFlush++;
-                qe = null;
+                        lenBuff.clear();
+                        lenBuff.writeInt(entrySize);
+
+                        // preAlloc based on size
+                        logFile.preAllocIfNeeded(4 + entrySize);
+
+                        bc.write(lenBuff);
+                        bc.write(qe.entry);
+                        memoryLimitController.releaseMemory(qe.entry.readableBytes());
+                        qe.entry.release();
+                    }
+
+                    toFlush.add(qe);
+                    numEntriesToFlush++;
+                    if (nextInBatch != null) {
+                        journalStats.getJournalQueueSize().dec();
+                    }
+                    qe = nextInBatch;
+                }
             }
         } catch (IOException ioe) {
             LOG.error("I/O exception in Journal thread!", ioe);
@@ -1159,7 +1262,29 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     }
 
     public BufferedChannelBuilder getBufferedChannelBuilder() {
-        return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity);
+        if (!directIO) {
+            return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity);
+        }
+        return new BufferedChannelBuilder() {
+            @Override
+            public BufferedChannel create(FileChannel fc, int capacity) throws IOException {
+                return new BufferedChannel(allocator, fc, capacity);
+            }
+
+            @Override
+            public BufferedChannel create(File file, FileChannel fc, int capacity) throws IOException {
+                if (directIO) {
+                    try {
+                        return DirectBufferedChannel.open(allocator, file, fc, capacity);
+                    } catch (IOException e) {
+                        LOG.warn("Unable to write journal {} with direct I/O, falling back to buffered I/O",
+                                file, e);
+                        directIO = false;
+                    }
+                }
+                return create(fc, capacity);
+            }
+        };
     }
 
     /**
@@ -175,10 +175,10 @@ class JournalChannel implements Closeable {
             bb.clear();
             fc.write(bb);
 
-            bc = bcBuilder.create(fc, writeBufferSize);
+            bc = bcBuilder.create(fn, fc, writeBufferSize);
             forceWrite(true);
             nextPrealloc = this.preAllocSize;
-            fc.write(zeros, nextPrealloc - journalAlignSize);
+            preAlloc(nextPrealloc);
         } else {  // open an existing file
             randomAccessFile = new RandomAccessFile(fn, "r");
             fc = openFileChannel(randomAccessFile);
@@ -251,8 +251,18 @@ class JournalChannel implements Closeable {
     void preAllocIfNeeded(long size) throws IOException {
         if (bc.position() + size > nextPrealloc) {
             nextPrealloc += preAllocSize;
-            zeros.clear();
-            fc.write(zeros, nextPrealloc - journalAlignSize);
+            preAlloc(nextPrealloc);
+        }
+    }
+
+    /**
+     * Extend the file with zeros up to the given length. The file is extended without writing the zeros, which
+     * would go through the page cache while the journal may be written with direct I/O, and force the kernel to
+     * write back and invalidate the cached pages on the next direct writes.
+     */
+    private void preAlloc(long length) throws IOException {
+        if (randomAccessFile.length() < length) {
+            randomAccessFile.setLength(length);
         }
     }
 
@@ -24,6 +24,7 @@ package org.apache.bookkeeper.bookie;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -117,6 +118,17 @@ public interface LedgerStorage {
      */
     ByteBuf getEntry(long ledgerId, long entryId) throws IOException;
 
+    /**
+     * Get a region of the file storing an entry, so that the entry can be transferred to the network
+     * without being read in memory. Only entries stored in immutable files can be returned as regions.
+     *
+     * @param minSize the min size of the entry, smaller entries are not worth a file region
+     * @return the file region, or null if the entry has to be read with {@link #getEntry(long, long)}
+     */
+    default FileRegion getEntryRegion(long ledgerId, long entryId, int minSize) throws IOException {
+        return null;
+    }
+
     /**
      * Get last add confirmed.
      *
@@ -25,6 +25,8 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_CB_QUEUE_SIZE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_CREATION_LATENCY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_DEVICE_FSYNC_LATENCY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_DEVICE_QUEUE_DEPTH;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FLUSH_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_BATCH_BYTES;
@@ -162,8 +164,23 @@ public class JournalStats {
         help = "The number of bytes appended to the journal"
     )
     private final Counter journalWriteBytes;
+    @StatsDoc(
+        name = JOURNAL_DEVICE_QUEUE_DEPTH,
+        help = "The distribution of the journal queue depth of a journal device, sampled on every flush"
+    )
+    private final OpStatsLogger journalDeviceQueueDepthStats;
+    @StatsDoc(
+        name = JOURNAL_DEVICE_FSYNC_LATENCY,
+        help = "operation stats of syncing data to a journal device",
+        parent = JOURNAL_SYNC
+    )
+    private final OpStatsLogger journalDeviceFsyncStats;
 
     public JournalStats(StatsLogger statsLogger) {
+        this(statsLogger, 0);
+    }
+
+    public JournalStats(StatsLogger statsLogger, int journalIndex) {
         journalAddEntryStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_ADD_ENTRY);
         journalForceLedgerStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_FORCE_LEDGER);
         journalSyncStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_SYNC);
@@ -185,6 +202,13 @@ public class JournalStats {
                 statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_OUTSTANDING_BYTES);
         flushEmptyQueueCounter = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_EMPTY_QUEUE);
         journalWriteBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_WRITE_BYTES);
+
+        StatsLogger deviceStatsLogger = statsLogger.scopeLabel(
+                BookKeeperServerStats.JOURNAL_INDEX_LABEL, String.valueOf(journalIndex));
+        journalDeviceQueueDepthStats =
+                deviceStatsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_DEVICE_QUEUE_DEPTH);
+        journalDeviceFsyncStats =
+                deviceStatsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_DEVICE_FSYNC_LATENCY);
     }
 
 }
@@ -20,6 +20,7 @@
  */
 package org.apache.bookkeeper.bookie.storage.ldb;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -28,6 +29,7 @@ import com.google.common.collect.Lists;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
 import io.netty.util.concurrent.DefaultThreadFactory;
 //CHECKSTYLE.OFF: IllegalImport
 import io.netty.util.internal.PlatformDependent;
@@ -38,8 +40,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
@@ -78,6 +84,13 @@ public class DbLedgerStorage implements LedgerStorage {
 
     static final String MAX_THROTTLE_TIME_MILLIS = "dbStorage_maxThrottleTimeMs";
 
+    static final String DIRECTORIES_FLUSH_THREADS = "dbStorage_directoriesFlushThreads";
+    private static final int DEFAULT_DIRECTORIES_FLUSH_THREADS = 1;
+
+    static final String LOCATIONS_INDEX_STORAGE = "dbStorage_locationsIndexStorage";
+    static final String LOCATIONS_INDEX_STORAGE_ROCKSDB = "rocksdb";
+    static final String LOCATIONS_INDEX_STORAGE_SEGMENTS = "segments";
+
     private static final int MB = 1024 * 1024;
 
     private static final long DEFAULT_WRITE_CACHE_MAX_SIZE_MB = (long) (0.25 * PlatformDependent.maxDirectMemory())
@@ -89,6 +102,9 @@ public class DbLedgerStorage implements LedgerStorage {
 
     // Keep 1 single Bookie GC thread so the the compactions from multiple individual directories are serialized
     private ScheduledExecutorService gcExecutor;
+    // Executor flushing the directories concurrently, null if they are flushed one after the other
+    private ExecutorService directoriesFlushExecutor;
+    private CheckpointSource checkpointSource;
     private DbLedgerStorageStats stats;
 
     protected ByteBufAllocator allocator;
@@ -103,6 +119,7 @@ public class DbLedgerStorage implements LedgerStorage {
                 DEFAULT_READ_CACHE_MAX_SIZE_MB) * MB;
 
         this.allocator = allocator;
+        this.checkpointSource = checkpointSource;
         this.numberOfDirs = ledgerDirsManager.getAllLedgerDirs().size();
 
         log.info("Started Db Ledger Storage");
@@ -119,6 +136,14 @@ public class DbLedgerStorage implements LedgerStorage {
 
         gcExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("GarbageCollector"));
 
+        int directoriesFlushThreads = Math.min(numberOfDirs,
+                conf.getInt(DIRECTORIES_FLUSH_THREADS, DEFAULT_DIRECTORIES_FLUSH_THREADS));
+        if (directoriesFlushThreads > 1) {
+            log.info(" - Directories flush threads: {}", directoriesFlushThreads);
+            directoriesFlushExecutor = Executors.newFixedThreadPool(directoriesFlushThreads,
+                    new DefaultThreadFactory("db-storage-directories-flush"));
+        }
+
         ledgerStorageList = Lists.newArrayList();
         for (File ledgerDir : ledgerDirsManager.getAllLedgerDirs()) {
             // Create a ledger dirs manager for the single directory
@@ -137,7 +162,9 @@ public class DbLedgerStorage implements LedgerStorage {
             () -> ledgerStorageList.stream().mapToLong(SingleDirectoryDbLedgerStorage::getWriteCacheSize).sum(),
             () -> ledgerStorageList.stream().mapToLong(SingleDirectoryDbLedgerStorage::getWriteCacheCount).sum(),
             () -> ledgerStorageList.stream().mapToLong(SingleDirectoryDbLedgerStorage::getReadCacheSize).sum(),
-            () -> ledgerStorageList.stream().mapToLong(SingleDirectoryDbLedgerStorage::getReadCacheCount).sum()
+            () -> ledgerStorageList.stream().mapToLong(SingleDirectoryDbLedgerStorage::getReadCacheCount).sum(),
+            SingleDirectoryDbLedgerStorage.getReadCachePolicy(conf),
+            ledgerDirsManager.getAllLedgerDirs()
         );
     }
 
@@ -162,6 +189,9 @@ public class DbLedgerStorage implements LedgerStorage {
         for (LedgerStorage ls : ledgerStorageList) {
             ls.shutdown();
         }
+        if (directoriesFlushExecutor != null) {
+            directoriesFlushExecutor.shutdown();
+        }
     }
 
     @Override
@@ -200,6 +230,11 @@ public class DbLedgerStorage implements LedgerStorage {
         return getLedgerSorage(ledgerId).getEntry(ledgerId, entryId);
     }
 
+    @Override
+    public FileRegion getEntryRegion(long ledgerId, long entryId, int minSize) throws IOException {
+        return getLedgerSorage(ledgerId).getEntryRegion(ledgerId, entryId, minSize);
+    }
+
     @Override
     public long getLastAddConfirmed(long ledgerId) throws IOException {
         return getLedgerSorage(ledgerId).getLastAddConfirmed(ledgerId);
@@ -220,15 +255,73 @@ public class DbLedgerStorage implements LedgerStorage {
 
     @Override
     public void flush() throws IOException {
-        for (LedgerStorage ls : ledgerStorageList) {
-            ls.flush();
-        }
+        // The checkpoint is only complete once all the directories are flushed
+        Checkpoint cp = checkpointSource.newCheckpoint();
+        checkpoint(cp);
+        checkpointSource.checkpointComplete(cp, true);
     }
 
+    /**
+     * Flush all the directories up to the checkpoint, concurrently if the directories flush executor is enabled.
+     * In both cases, this only returns once all the directories are flushed, so that the journal is not told that
+     * the checkpoint is complete before all the entries it covers are persisted.
+     */
     @Override
     public void checkpoint(Checkpoint checkpoint) throws IOException {
-        for (LedgerStorage ls : ledgerStorageList) {
-            ls.checkpoint(checkpoint);
+        if (directoriesFlushExecutor == null) {
+            for (int i = 0; i < ledgerStorageList.size(); i++) {
+                checkpointDirectory(i, checkpoint);
+            }
+            return;
+        }
+
+        List<Future<Void>> flushes = new ArrayList<>(ledgerStorageList.size());
+        for (int i = 0; i < ledgerStorageList.size(); i++) {
+            int dirIndex = i;
+            flushes.add(directoriesFlushExecutor.submit(() -> {
+                checkpointDirectory(dirIndex, checkpoint);
+                return null;
+            }));
+        }
+
+        // Wait for all the directories, even after a failure, and report the first failure
+        IOException failure = null;
+        for (Future<Void> flush : flushes) {
+            try {
+                flush.get();
+            } catch (ExecutionException e) {
+                IOException cause = e.getCause() instanceof IOException
+                        ? (IOException) e.getCause() : new IOException(e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while flushing the ledger directories", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void checkpointDirectory(int dirIndex, Checkpoint checkpoint) throws IOException {
+        long startTime = MathUtils.nowInNano();
+        boolean success = false;
+        try {
+            ledgerStorageList.get(dirIndex).checkpoint(checkpoint);
+            success = true;
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(startTime);
+            if (success) {
+                stats.getFlushDirectoryStats().get(dirIndex).registerSuccessfulEvent(elapsedNanos,
+                        TimeUnit.NANOSECONDS);
+            } else {
+                stats.getFlushDirectoryStats().get(dirIndex).registerFailedEvent(elapsedNanos,
+                        TimeUnit.NANOSECONDS);
+            }
         }
     }
 
@@ -313,10 +406,13 @@ public class DbLedgerStorage implements LedgerStorage {
         int dirIndex = MathUtils.signSafeMod(ledgerId, ledgerDirs.size());
         String ledgerBasePath = ledgerDirs.get(dirIndex).toString();
 
-        EntryLocationIndex entryLocationIndex = new EntryLocationIndex(serverConf,
-                (basePath, subPath, dbConfigType, conf1) ->
-                        new KeyValueStorageRocksDB(basePath, subPath, DbConfigType.Small, conf1, true),
-                ledgerBasePath, NullStatsLogger.INSTANCE);
+        KeyValueStorageFactory storageFactory = isLocationSegmentsIndex(serverConf)
+                ? (basePath, subPath, dbConfigType, conf1) ->
+                        new KeyValueStorageLocationSegments(basePath, subPath, conf1, true)
+                : (basePath, subPath, dbConfigType, conf1) ->
+                        new KeyValueStorageRocksDB(basePath, subPath, DbConfigType.Small, conf1, true);
+        EntryLocationIndex entryLocationIndex = new EntryLocationIndex(serverConf, storageFactory, ledgerBasePath,
+                NullStatsLogger.INSTANCE);
         try {
             long lastEntryId = entryLocationIndex.getLastEntryInLedger(ledgerId);
             for (long currentEntry = 0; currentEntry <= lastEntryId; currentEntry++) {
@@ -350,6 +446,21 @@ public class DbLedgerStorage implements LedgerStorage {
             .map(single -> single.getGarbageCollectionStatus().get(0)).collect(Collectors.toList());
     }
 
+    /**
+     * @return the factory of the key-value storage of the entry locations index
+     */
+    static KeyValueStorageFactory getLocationsIndexStorageFactory(ServerConfiguration conf) {
+        return isLocationSegmentsIndex(conf) ? KeyValueStorageLocationSegments.factory : KeyValueStorageRocksDB.factory;
+    }
+
+    private static boolean isLocationSegmentsIndex(ServerConfiguration conf) {
+        String storage = conf.getString(LOCATIONS_INDEX_STORAGE, LOCATIONS_INDEX_STORAGE_ROCKSDB);
+        checkArgument(LOCATIONS_INDEX_STORAGE_ROCKSDB.equals(storage)
+                || LOCATIONS_INDEX_STORAGE_SEGMENTS.equals(storage),
+                "Unknown " + LOCATIONS_INDEX_STORAGE + ": " + storage);
+        return LOCATIONS_INDEX_STORAGE_SEGMENTS.equals(storage);
+    }
+
     static long getLongVariableOrDefault(ServerConfiguration conf, String keyName, long defaultValue) {
         Object obj = conf.getProperty(keyName);
         if (obj instanceof Number) {
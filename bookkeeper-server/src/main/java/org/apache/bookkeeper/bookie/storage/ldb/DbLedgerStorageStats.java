@@ -23,7 +23,10 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_ADD_ENTR
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
 
+import java.io.File;
+import java.util.List;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import lombok.Getter;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
@@ -46,16 +49,30 @@ class DbLedgerStorageStats {
     private static final String READ_ENTRY = "read-entry";
     private static final String READ_CACHE_HITS = "read-cache-hits";
     private static final String READ_CACHE_MISSES = "read-cache-misses";
+    private static final String READ_ENTRY_REGION = "read-entry-region";
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
+    private static final String READAHEAD_ENTRIES = "readahead-entries";
+    private static final String READAHEAD_HITS = "readahead-hits";
+    private static final String READAHEAD_WASTED = "readahead-wasted";
+    private static final String READAHEAD_HIT_RATIO = "readahead-hit-ratio";
+    private static final String READAHEAD_WASTE_RATIO = "readahead-waste-ratio";
     private static final String FLUSH = "flush";
     private static final String FLUSH_SIZE = "flush-size";
+    private static final String FLUSH_SORT = "flush-sort";
+    private static final String FLUSH_ENTRYLOG_APPEND = "flush-entrylog-append";
+    private static final String FLUSH_ENTRYLOG_SYNC = "flush-entrylog-sync";
+    private static final String FLUSH_INDEX_BUILD = "flush-index-build";
+    private static final String FLUSH_INDEX = "flush-index";
+    private static final String FLUSH_DIRECTORY = "flush-directory";
+    private static final String FLUSH_DIRECTORY_LABEL = "directory";
     private static final String THROTTLED_WRITE_REQUESTS = "throttled-write-requests";
     private static final String REJECTED_WRITE_REQUESTS = "rejected-write-requests";
     private static final String WRITE_CACHE_SIZE = "write-cache-size";
     private static final String WRITE_CACHE_COUNT = "write-cache-count";
     private static final String READ_CACHE_SIZE = "read-cache-size";
     private static final String READ_CACHE_COUNT = "read-cache-count";
+    private static final String READ_CACHE_POLICY_LABEL = "policy";
 
     @StatsDoc(
         name = ADD_ENTRY,
@@ -71,16 +88,22 @@ class DbLedgerStorageStats {
     private final OpStatsLogger readEntryStats;
     @StatsDoc(
         name = READ_CACHE_HITS,
-        help = "operation stats of read cache hits",
+        help = "operation stats of read cache hits, labelled by read cache policy",
         parent = READ_ENTRY
     )
     private final OpStatsLogger readCacheHitStats;
     @StatsDoc(
         name = READ_CACHE_MISSES,
-        help = "operation stats of read cache misses",
+        help = "operation stats of read cache misses, labelled by read cache policy",
         parent = READ_ENTRY
     )
     private final OpStatsLogger readCacheMissStats;
+    @StatsDoc(
+        name = READ_ENTRY_REGION,
+        help = "operation stats of looking up the entry log regions of entries to transfer without reading them",
+        parent = READ_ENTRY
+    )
+    private final OpStatsLogger readEntryRegionStats;
     @StatsDoc(
         name = READAHEAD_BATCH_COUNT,
         help = "the distribution of num of entries to read in one readahead batch"
@@ -91,6 +114,32 @@ class DbLedgerStorageStats {
         help = "the distribution of num of bytes to read in one readahead batch"
     )
     private final OpStatsLogger readAheadBatchSizeStats;
+    @StatsDoc(
+        name = READAHEAD_ENTRIES,
+        help = "The number of entries read in the background by the asynchronous read-ahead"
+    )
+    private final Counter readAheadEntries;
+    @StatsDoc(
+        name = READAHEAD_HITS,
+        help = "The number of entries read by the asynchronous read-ahead that were then read by a reader"
+    )
+    private final Counter readAheadHits;
+    @StatsDoc(
+        name = READAHEAD_WASTED,
+        help = "The number of entries read by the asynchronous read-ahead that were not read by the reader"
+            + " before it moved elsewhere in the ledger or stopped reading it"
+    )
+    private final Counter readAheadWasted;
+    @StatsDoc(
+        name = READAHEAD_HIT_RATIO,
+        help = "Ratio of the entries read by the asynchronous read-ahead that were then read, since the bookie started"
+    )
+    private final Gauge<Double> readAheadHitRatioGauge;
+    @StatsDoc(
+        name = READAHEAD_WASTE_RATIO,
+        help = "Ratio of the entries read by the asynchronous read-ahead that were wasted, since the bookie started"
+    )
+    private final Gauge<Double> readAheadWasteRatioGauge;
     @StatsDoc(
         name = FLUSH,
         help = "operation stats of flushing write cache to entry log files"
@@ -101,6 +150,43 @@ class DbLedgerStorageStats {
         help = "the distribution of number of bytes flushed from write cache to entry log files"
     )
     private final OpStatsLogger flushSizeStats;
+    @StatsDoc(
+        name = FLUSH_SORT,
+        help = "operation stats of sorting a partition of the write cache during a pipelined flush",
+        parent = FLUSH
+    )
+    private final OpStatsLogger flushSortStats;
+    @StatsDoc(
+        name = FLUSH_ENTRYLOG_APPEND,
+        help = "operation stats of appending the write cache to entry log files during a flush,"
+            + " including the sort when the flush is not pipelined",
+        parent = FLUSH
+    )
+    private final OpStatsLogger flushEntryLogAppendStats;
+    @StatsDoc(
+        name = FLUSH_ENTRYLOG_SYNC,
+        help = "operation stats of syncing the entry log files to disk at the end of a flush",
+        parent = FLUSH
+    )
+    private final OpStatsLogger flushEntryLogSyncStats;
+    @StatsDoc(
+        name = FLUSH_INDEX_BUILD,
+        help = "operation stats of adding the entry locations to the index batch during a pipelined flush",
+        parent = FLUSH
+    )
+    private final OpStatsLogger flushIndexBuildStats;
+    @StatsDoc(
+        name = FLUSH_INDEX,
+        help = "operation stats of writing the entry locations and ledgers indexes during a flush",
+        parent = FLUSH
+    )
+    private final OpStatsLogger flushIndexStats;
+    @StatsDoc(
+        name = FLUSH_DIRECTORY,
+        help = "operation stats of flushing the write cache of each ledger directory, labelled by directory",
+        parent = FLUSH
+    )
+    private final List<OpStatsLogger> flushDirectoryStats;
     @StatsDoc(
         name = THROTTLED_WRITE_REQUESTS,
         help = "The number of requests throttled due to write cache is full"
@@ -137,15 +223,31 @@ class DbLedgerStorageStats {
                          Supplier<Long> writeCacheSizeSupplier,
                          Supplier<Long> writeCacheCountSupplier,
                          Supplier<Long> readCacheSizeSupplier,
-                         Supplier<Long> readCacheCountSupplier) {
+                         Supplier<Long> readCacheCountSupplier,
+                         String readCachePolicy,
+                         List<File> ledgerDirs) {
         addEntryStats = stats.getOpStatsLogger(ADD_ENTRY);
         readEntryStats = stats.getOpStatsLogger(READ_ENTRY);
-        readCacheHitStats = stats.getOpStatsLogger(READ_CACHE_HITS);
-        readCacheMissStats = stats.getOpStatsLogger(READ_CACHE_MISSES);
+        // labelled, so that the hit ratios of the policies can be compared across bookies
+        StatsLogger readCachePolicyStats = stats.scopeLabel(READ_CACHE_POLICY_LABEL, readCachePolicy);
+        readCacheHitStats = readCachePolicyStats.getOpStatsLogger(READ_CACHE_HITS);
+        readCacheMissStats = readCachePolicyStats.getOpStatsLogger(READ_CACHE_MISSES);
+        readEntryRegionStats = stats.getOpStatsLogger(READ_ENTRY_REGION);
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
         readAheadBatchSizeStats = stats.getOpStatsLogger(READAHEAD_BATCH_SIZE);
+        readAheadEntries = stats.getCounter(READAHEAD_ENTRIES);
+        readAheadHits = stats.getCounter(READAHEAD_HITS);
+        readAheadWasted = stats.getCounter(READAHEAD_WASTED);
         flushStats = stats.getOpStatsLogger(FLUSH);
         flushSizeStats = stats.getOpStatsLogger(FLUSH_SIZE);
+        flushSortStats = stats.getOpStatsLogger(FLUSH_SORT);
+        flushEntryLogAppendStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG_APPEND);
+        flushEntryLogSyncStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG_SYNC);
+        flushIndexBuildStats = stats.getOpStatsLogger(FLUSH_INDEX_BUILD);
+        flushIndexStats = stats.getOpStatsLogger(FLUSH_INDEX);
+        flushDirectoryStats = ledgerDirs.stream()
+            .map(dir -> stats.scopeLabel(FLUSH_DIRECTORY_LABEL, dir.getPath()).getOpStatsLogger(FLUSH_DIRECTORY))
+            .collect(Collectors.toList());
 
         throttledWriteRequests = stats.getCounter(THROTTLED_WRITE_REQUESTS);
         rejectedWriteRequests = stats.getCounter(REJECTED_WRITE_REQUESTS);
@@ -199,6 +301,33 @@ class DbLedgerStorageStats {
             }
         };
         stats.registerGauge(READ_CACHE_COUNT, readCacheCountGauge);
+
+        readAheadHitRatioGauge = new Gauge<Double>() {
+            @Override
+            public Double getDefaultValue() {
+                return 0.0;
+            }
+
+            @Override
+            public Double getSample() {
+                long entries = readAheadEntries.get();
+                return entries > 0 ? (double) readAheadHits.get() / entries : 0.0;
+            }
+        };
+        stats.registerGauge(READAHEAD_HIT_RATIO, readAheadHitRatioGauge);
+        readAheadWasteRatioGauge = new Gauge<Double>() {
+            @Override
+            public Double getDefaultValue() {
+                return 0.0;
+            }
+
+            @Override
+            public Double getSample() {
+                long entries = readAheadEntries.get();
+                return entries > 0 ? (double) readAheadWasted.get() / entries : 0.0;
+            }
+        };
+        stats.registerGauge(READAHEAD_WASTE_RATIO, readAheadWasteRatioGauge);
     }
 
 }
@@ -175,13 +175,7 @@ public class EntryLocationIndex implements Closeable {
         deletedLedgers.add(ledgerId);
     }
 
-    private static final int DELETE_ENTRIES_BATCH_SIZE = 100000;
-
     public void removeOffsetFromDeletedLedgers() throws IOException {
-        LongPairWrapper firstKeyWrapper = LongPairWrapper.get(-1, -1);
-        LongPairWrapper lastKeyWrapper = LongPairWrapper.get(-1, -1);
-        LongPairWrapper keyToDelete = LongPairWrapper.get(-1, -1);
-
         Set<Long> ledgersToDelete = deletedLedgers.items();
 
         if (ledgersToDelete.isEmpty()) {
@@ -190,81 +184,49 @@ public class EntryLocationIndex implements Closeable {
 
         log.info("Deleting indexes for ledgers: {}", ledgersToDelete);
         long startTime = System.nanoTime();
-        long deletedEntries = 0;
-        long deletedEntriesInBatch = 0;
+
+        long[] ledgerIds = ledgersToDelete.stream().mapToLong(Long::longValue).sorted().toArray();
+        LongPairWrapper firstKeyWrapper = LongPairWrapper.get(-1, -1);
+        LongPairWrapper lastKeyWrapper = LongPairWrapper.get(-1, -1);
+        int deletedRanges = 0;
 
         Batch batch = locationsDb.newBatch();
-        final byte[] firstDeletedKey = new byte[keyToDelete.array.length];
 
         try {
-            for (long ledgerId : ledgersToDelete) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Deleting indexes from ledger {}", ledgerId);
-                }
-
-                firstKeyWrapper.set(ledgerId, 0);
-                lastKeyWrapper.set(ledgerId, Long.MAX_VALUE);
-
-                Entry<byte[], byte[]> firstKeyRes = locationsDb.getCeil(firstKeyWrapper.array);
-                if (firstKeyRes == null || ArrayUtil.getLong(firstKeyRes.getKey(), 0) != ledgerId) {
-                    // No entries found for ledger
-                    if (log.isDebugEnabled()) {
-                        log.debug("No entries found for ledger {}", ledgerId);
-                    }
-                    continue;
+            // Delete the entries of each run of consecutive ledgers with a single range delete, so that the cost
+            // does not depend on the number of entries
+            int i = 0;
+            while (i < ledgerIds.length) {
+                long firstLedgerId = ledgerIds[i++];
+                long lastLedgerId = firstLedgerId;
+                while (i < ledgerIds.length && ledgerIds[i] == lastLedgerId + 1) {
+                    lastLedgerId = ledgerIds[i++];
                 }
 
-                long firstEntryId = ArrayUtil.getLong(firstKeyRes.getKey(), 8);
-                long lastEntryId;
-                try {
-                    lastEntryId = getLastEntryInLedgerInternal(ledgerId);
-                } catch (Bookie.NoEntryException nee) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("No last entry id found for ledger {}", ledgerId);
-                    }
-                    continue;
-                }
                 if (log.isDebugEnabled()) {
-                    log.debug("Deleting index for ledger {} entries ({} -> {})",
-                            ledgerId, firstEntryId, lastEntryId);
-                }
-
-                // Iterate over all the keys and remove each of them
-                for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
-                    keyToDelete.set(ledgerId, entryId);
-                    if (log.isDebugEnabled()) {
-                        log.debug("Deleting index for ({}, {})", keyToDelete.getFirst(), keyToDelete.getSecond());
-                    }
-                    batch.remove(keyToDelete.array);
-                    ++deletedEntriesInBatch;
-                    if (deletedEntries++ == 0) {
-                        System.arraycopy(keyToDelete.array, 0, firstDeletedKey, 0, firstDeletedKey.length);
-                    }
+                    log.debug("Deleting indexes from ledgers {} -> {}", firstLedgerId, lastLedgerId);
                 }
 
-                if (deletedEntriesInBatch > DELETE_ENTRIES_BATCH_SIZE) {
-                    batch.flush();
-                    batch.clear();
-                    deletedEntriesInBatch = 0;
-                }
+                firstKeyWrapper.set(firstLedgerId, 0);
+                lastKeyWrapper.set(lastLedgerId, Long.MAX_VALUE);
+                batch.deleteRange(firstKeyWrapper.array, lastKeyWrapper.array);
+                ++deletedRanges;
             }
+
+            batch.flush();
+
+            // Compaction drops the keys covered by the range deletes
+            firstKeyWrapper.set(ledgerIds[0], 0);
+            lastKeyWrapper.set(ledgerIds[ledgerIds.length - 1], Long.MAX_VALUE);
+            locationsDb.compact(firstKeyWrapper.array, lastKeyWrapper.array);
         } finally {
-            try {
-                batch.flush();
-                batch.clear();
-                if (deletedEntries != 0) {
-                    locationsDb.compact(firstDeletedKey, keyToDelete.array);
-                }
-            } finally {
-                firstKeyWrapper.recycle();
-                lastKeyWrapper.recycle();
-                keyToDelete.recycle();
-                batch.close();
-            }
+            firstKeyWrapper.recycle();
+            lastKeyWrapper.recycle();
+            batch.close();
         }
 
-        log.info("Deleted indexes for {} entries from {} ledgers in {} seconds", deletedEntries, ledgersToDelete.size(),
-                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) / 1000.0);
+        log.info("Deleted indexes from {} ledgers with {} range deletes in {} seconds", ledgerIds.length,
+                deletedRanges, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) / 1000.0);
 
         // Removed from pending set
         for (long ledgerId : ledgersToDelete) {
@@ -0,0 +1,126 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+/**
+ * TinyLFU-style admission policy, promoting the entries that were looked up more than once recently.
+ *
+ * <p>The access frequencies are estimated with a count-min sketch of 4-bit counters, so the memory
+ * used doesn't depend on the number of distinct entries. All the counters are halved once the number
+ * of recorded accesses reaches ten times the expected number of entries, so that the frequencies
+ * reflect the recent history.
+ *
+ * <p>Counters are updated without synchronization: concurrent updates may be lost, which only makes
+ * the estimates slightly less accurate.
+ */
+public class FrequencySketchAdmissionPolicy implements ReadCacheAdmissionPolicy {
+
+    // Number of accesses an entry needs before being promoted, the current access included
+    private static final int PROMOTION_THRESHOLD = 2;
+
+    private static final int MAX_TABLE_SIZE = 1 << 21;
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    /**
+     * Create a policy sized for the given number of entries.
+     *
+     * @param expectedEntries the number of entries the cache is expected to hold
+     */
+    public FrequencySketchAdmissionPolicy(long expectedEntries) {
+        int tableSize = (int) Math.min(MAX_TABLE_SIZE, Math.max(1024, Long.highestOneBit(expectedEntries - 1) << 1));
+        this.table = new long[tableSize];
+        this.tableMask = tableSize - 1;
+        this.sampleSize = 10 * tableSize;
+    }
+
+    @Override
+    public void recordAccess(long ledgerId, long entryId) {
+        long hash = hash(ledgerId, entryId);
+        int start = ((int) hash & 3) << 2;
+
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    @Override
+    public boolean shouldPromote(long ledgerId, long entryId) {
+        return frequency(ledgerId, entryId) >= PROMOTION_THRESHOLD;
+    }
+
+    int frequency(long ledgerId, long entryId) {
+        long hash = hash(ledgerId, entryId);
+        int start = ((int) hash & 3) << 2;
+
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int offset = (start + i) << 2;
+            int count = (int) ((table[indexOf(hash, i)] >>> offset) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        long value = table[index];
+        if ((value & mask) != mask) {
+            table[index] = value + (1L << offset);
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = size / 2;
+    }
+
+    private int indexOf(long hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    private static long hash(long ledgerId, long entryId) {
+        long h = ledgerId * 0x9E3779B97F4A7C15L + entryId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -96,6 +96,26 @@ public interface KeyValueStorage extends Closeable {
      */
     void delete(byte[] key) throws IOException;
 
+    /**
+     * Delete all the keys within a specified range.
+     *
+     * <p>The default implementation deletes the keys one by one, implementations supporting native range deletes
+     * should override it so that the cost does not depend on the number of keys in the range.
+     *
+     * @param beginKey
+     *            the first key in the range (included)
+     * @param endKey
+     *            the last key in the range (not included)
+     */
+    default void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+        try (CloseableIterator<byte[]> iterator = keys(beginKey, endKey); Batch batch = newBatch()) {
+            while (iterator.hasNext()) {
+                batch.remove(iterator.next());
+            }
+            batch.flush();
+        }
+    }
+
     /**
      * Compact storage within a specified range.
      *
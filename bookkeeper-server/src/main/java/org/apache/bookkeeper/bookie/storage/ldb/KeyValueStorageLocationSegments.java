@@ -0,0 +1,1405 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of the KeyValueStorage dedicated to the entry locations index.
+ *
+ * <p>The keys are the 16 bytes (ledgerId, entryId) pairs and the values the 8 bytes entry locations. The updates are
+ * buffered in a memtable and appended to a {@link LocationsWriteAheadLog}, which a batch flush syncs to disk. Once
+ * the memtable holds enough locations, or on {@link #sync()}, it is written into a new immutable
+ * {@link LocationSegment}, where the locations of each ledger are stored as contiguous arrays. The newest segments
+ * are merged together in background once they grow to a size comparable to the older ones, so that each location
+ * is only rewritten a few times.
+ *
+ * <p>Deleting a range of keys only records the range, and the keys it hides are dropped when the segments holding
+ * them are merged. The values 0 and {@link Long#MIN_VALUE}, which are not valid entry locations, are reserved.
+ */
+public class KeyValueStorageLocationSegments implements KeyValueStorage {
+
+    static final KeyValueStorageFactory factory = (defaultBasePath, subPath, dbConfigType, conf) ->
+            dbConfigType == DbConfigType.Huge
+                    ? new KeyValueStorageLocationSegments(defaultBasePath, subPath, conf)
+                    : KeyValueStorageRocksDB.factory.newKeyValueStorage(defaultBasePath, subPath, dbConfigType, conf);
+
+    // Location of a deleted key
+    static final long TOMBSTONE = 0;
+    // Location of a key which is not in a level
+    static final long ABSENT = Long.MIN_VALUE;
+
+    private static final int KEY_SIZE = 16;
+    private static final int VALUE_SIZE = 8;
+
+    // Each update is recorded as: type, ledger id, entry id, location or end ledger id, end entry id
+    private static final int UPDATE_SIZE = 5;
+    private static final int PUT = 0;
+    private static final int DELETE = 1;
+    private static final int DELETE_RANGE = 2;
+
+    private static final String SIZE_RATIO = "dbStorage_locationSegments_sizeRatio";
+    private static final int DEFAULT_SIZE_RATIO = 4;
+    private static final String MAX_SEGMENTS = "dbStorage_locationSegments_maxSegments";
+    private static final int DEFAULT_MAX_SEGMENTS = 16;
+    private static final String MAX_BUFFERED_LOCATIONS = "dbStorage_locationSegments_maxBufferedLocations";
+    private static final long DEFAULT_MAX_BUFFERED_LOCATIONS = 4 * 1024 * 1024;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("([0-9a-f]{16})-([0-9a-f]{16})\\.seg");
+    private static final Pattern WAL_NAME = Pattern.compile("([0-9a-f]{16})\\.wal");
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final boolean readOnly;
+    private final int sizeRatio;
+    private final int maxSegments;
+    private final long maxBufferedLocations;
+
+    // Writers apply their updates to the memtable under the read lock, a sync swaps it under the write lock
+    private final ReentrantReadWriteLock memtableLock = new ReentrantReadWriteLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Object stateLock = new Object();
+    private volatile State state;
+
+    private final ExecutorService mergeExecutor;
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean(false);
+    private volatile boolean fullMergeRequested = false;
+    // Set under the state lock, so that a merge running while closing does not update the state
+    private volatile boolean closed = false;
+    private long nextSeq;
+
+    // Bytes written to the segment files, including the merges
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    public KeyValueStorageLocationSegments(String basePath, String subPath, ServerConfiguration conf)
+            throws IOException {
+        this(basePath, subPath, conf, false);
+    }
+
+    public KeyValueStorageLocationSegments(String basePath, String subPath, ServerConfiguration conf,
+            boolean readOnly) throws IOException {
+        this.directory = new File(basePath, subPath);
+        this.readOnly = readOnly;
+        this.sizeRatio = conf.getInt(SIZE_RATIO, DEFAULT_SIZE_RATIO);
+        this.maxSegments = conf.getInt(MAX_SEGMENTS, DEFAULT_MAX_SEGMENTS);
+        this.maxBufferedLocations = conf.getLong(MAX_BUFFERED_LOCATIONS, DEFAULT_MAX_BUFFERED_LOCATIONS);
+        checkArgument(sizeRatio > 0, SIZE_RATIO + " must be greater than 0");
+        checkArgument(maxSegments > 1, MAX_SEGMENTS + " must be greater than 1");
+
+        if (!readOnly && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create directory " + directory);
+        }
+        if (new File(directory, "CURRENT").exists()) {
+            throw new IOException("Directory " + directory + " holds a RocksDB database, the locations index"
+                    + " needs to be rebuilt to switch to the location segments");
+        }
+
+        List<LocationSegment> segments = openSegments();
+        this.nextSeq = segments.isEmpty() ? 0 : segments.get(0).getLastSeq() + 1;
+        Memtable recovered = recoverWriteAheadLogs();
+        if (readOnly) {
+            this.state = new State(recovered, null, segments);
+            segments.forEach(LocationSegment::release);
+        } else {
+            if (!recovered.isEmpty()) {
+                // Write the recovered updates to a segment, so that the old logs can be deleted
+                LocationSegment segment = writeSegment(recovered, !segments.isEmpty());
+                List<LocationSegment> withRecovered = new ArrayList<>(segments.size() + 1);
+                withRecovered.add(segment);
+                withRecovered.addAll(segments);
+                segments = Collections.unmodifiableList(withRecovered);
+            }
+            deleteWriteAheadLogs(recovered.firstSeq, recovered.seq);
+            this.state = new State(newMemtable(), null, segments);
+            segments.forEach(LocationSegment::release);
+        }
+        this.mergeExecutor = readOnly ? null
+                : Executors.newSingleThreadExecutor(new DefaultThreadFactory("db-storage-location-segments"));
+
+        log.info("Opened location segments in {}: {} segments, {} locations", directory, state.segments.size(),
+                state.segments.stream().mapToLong(LocationSegment::getLocationsCount).sum());
+        scheduleMerge();
+    }
+
+    /**
+     * Open the segments of the directory, newest first, dropping the leftovers of interrupted merges.
+     */
+    private List<LocationSegment> openSegments() throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        List<long[]> seqs = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(TMP_SUFFIX)) {
+                if (!readOnly) {
+                    Files.deleteIfExists(file.toPath());
+                }
+                continue;
+            }
+
+            Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+            if (matcher.matches()) {
+                seqs.add(new long[] { Long.parseLong(matcher.group(1), 16), Long.parseLong(matcher.group(2), 16) });
+            }
+        }
+
+        // The inputs of a merge are only deleted once the merged segment is complete
+        List<LocationSegment> segments = new ArrayList<>();
+        seqs.sort((s1, s2) -> Long.compare(s2[1], s1[1]));
+        for (long[] seq : seqs) {
+            File file = segmentFile(seq[0], seq[1]);
+            boolean merged = seqs.stream()
+                    .anyMatch(other -> other != seq && other[0] <= seq[0] && seq[1] <= other[1]);
+            if (merged) {
+                if (!readOnly) {
+                    log.info("Deleting location segment {} which was merged", file);
+                    Files.deleteIfExists(file.toPath());
+                }
+            } else {
+                segments.add(new LocationSegment(file, seq[0], seq[1]));
+            }
+        }
+        return Collections.unmodifiableList(segments);
+    }
+
+    /**
+     * Replay the write-ahead logs of the updates which were not written to a segment, deleting the other ones.
+     */
+    private Memtable recoverWriteAheadLogs() throws IOException {
+        File[] files = directory.listFiles();
+        List<Long> seqs = new ArrayList<>();
+        for (File file : files != null ? files : new File[0]) {
+            Matcher matcher = WAL_NAME.matcher(file.getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+
+            long seq = Long.parseLong(matcher.group(1), 16);
+            if (seq < nextSeq) {
+                // The updates of the log were written to a segment before the log was deleted
+                if (!readOnly) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            } else {
+                seqs.add(seq);
+            }
+        }
+        Collections.sort(seqs);
+
+        Memtable recovered = new Memtable(nextSeq, seqs.isEmpty() ? nextSeq - 1 : seqs.get(seqs.size() - 1), null);
+        for (long seq : seqs) {
+            int records = LocationsWriteAheadLog.replay(walFile(seq), recovered::applyWithoutLogging);
+            log.info("Replayed {} records of the write-ahead log {}", records, walFile(seq));
+        }
+        nextSeq = recovered.seq + 1;
+        return recovered;
+    }
+
+    private Memtable newMemtable() throws IOException {
+        long seq = nextSeq++;
+        return new Memtable(seq, seq, new LocationsWriteAheadLog(walFile(seq)));
+    }
+
+    private void deleteWriteAheadLogs(long firstSeq, long lastSeq) throws IOException {
+        for (long seq = firstSeq; seq <= lastSeq; seq++) {
+            Files.deleteIfExists(walFile(seq).toPath());
+        }
+    }
+
+    private File segmentFile(long firstSeq, long lastSeq) {
+        return new File(directory, String.format("%016x-%016x%s", firstSeq, lastSeq, LocationSegment.SUFFIX));
+    }
+
+    /**
+     * Take a reference to the current state, so that its segments stay mapped while they are read.
+     */
+    private State acquireState() {
+        while (true) {
+            State s = state;
+            try {
+                s.retain();
+                return s;
+            } catch (IllegalReferenceCountException e) {
+                // The state was replaced and released in the meantime, unless the storage is closed
+                checkState(state != s, "Location segments in %s are closed", directory);
+            }
+        }
+    }
+
+    /**
+     * Replace the state, under the state lock. The segments only used by the previous state are unmapped once its
+     * readers are done.
+     */
+    private void setState(State newState) {
+        State previous = state;
+        state = newState;
+        previous.release();
+    }
+
+    private File walFile(long seq) {
+        return new File(directory, String.format("%016x%s", seq, LocationsWriteAheadLog.SUFFIX));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!readOnly) {
+            sync();
+            state.memtable.wal.close();
+        }
+
+        synchronized (stateLock) {
+            closed = true;
+        }
+        if (mergeExecutor != null) {
+            // A merge interrupted before it completes leaves a temporary file, deleted at the next open
+            mergeExecutor.shutdownNow();
+            boolean terminated;
+            try {
+                terminated = mergeExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the merge of location segments in " + directory,
+                        e);
+            }
+            if (!terminated) {
+                throw new IOException("Timed out waiting for the merge of location segments in " + directory);
+            }
+        }
+
+        // The segments are unmapped once the iterators still reading them are closed
+        synchronized (stateLock) {
+            state.release();
+        }
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) throws IOException {
+        checkKey(key);
+        apply(new long[] { PUT, ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8), toLocation(value), 0 },
+                UPDATE_SIZE, false);
+    }
+
+    /**
+     * Apply updates to the memtable, and log them to its write-ahead log.
+     *
+     * @param durable whether to sync the write-ahead log before returning
+     */
+    private void apply(long[] updates, int size, boolean durable) throws IOException {
+        checkWritable();
+        Memtable memtable;
+        memtableLock.readLock().lock();
+        try {
+            memtable = state.memtable;
+            memtable.apply(updates, size);
+            if (durable) {
+                memtable.wal.force();
+            }
+        } finally {
+            memtableLock.readLock().unlock();
+        }
+
+        if (memtable.size() >= maxBufferedLocations) {
+            sync(memtable);
+        }
+    }
+
+    @Override
+    public byte[] get(byte[] key) throws IOException {
+        State s = acquireState();
+        long location;
+        try {
+            location = get(s.levels(), key);
+        } finally {
+            s.release();
+        }
+        if (location == TOMBSTONE) {
+            return null;
+        }
+
+        byte[] value = new byte[VALUE_SIZE];
+        ArrayUtil.setLong(value, 0, location);
+        return value;
+    }
+
+    @Override
+    public int get(byte[] key, byte[] value) throws IOException {
+        if (value.length < VALUE_SIZE) {
+            throw new IOException("Value array is too small to fit the result");
+        }
+
+        State s = acquireState();
+        long location;
+        try {
+            location = get(s.levels(), key);
+        } finally {
+            s.release();
+        }
+        if (location == TOMBSTONE) {
+            return -1;
+        }
+
+        ArrayUtil.setLong(value, 0, location);
+        return VALUE_SIZE;
+    }
+
+    private static long get(Level[] levels, byte[] key) {
+        checkKey(key);
+        return get(levels, ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8));
+    }
+
+    /**
+     * @return the location of the key, or {@link #TOMBSTONE} if it is not found
+     */
+    private static long get(Level[] levels, long ledgerId, long entryId) {
+        for (Level level : levels) {
+            long location = level.get(ledgerId, entryId);
+            if (location != ABSENT) {
+                return location;
+            }
+            if (level.getDeletedRange(ledgerId, entryId) != null) {
+                return TOMBSTONE;
+            }
+        }
+        return TOMBSTONE;
+    }
+
+    @Override
+    public Entry<byte[], byte[]> getFloor(byte[] key) throws IOException {
+        checkKey(key);
+        State s = acquireState();
+        try {
+            Level[] levels = s.levels();
+            return toEntry(levels, floor(levels, new Key(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8))));
+        } finally {
+            s.release();
+        }
+    }
+
+    @Override
+    public Entry<byte[], byte[]> getCeil(byte[] key) throws IOException {
+        checkKey(key);
+        State s = acquireState();
+        try {
+            Level[] levels = s.levels();
+            return toEntry(levels, ceil(levels, new Key(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8))));
+        } finally {
+            s.release();
+        }
+    }
+
+    /**
+     * @return the smallest key not lower than the given one which is not deleted, or null
+     */
+    private static Key ceil(Level[] levels, Key key) {
+        Key best = null;
+        for (int i = 0; i < levels.length; i++) {
+            Key candidate = levels[i].ceil(key);
+            while (candidate != null && (best == null || candidate.compareTo(best) < 0)) {
+                if (levels[i].get(candidate.ledgerId, candidate.entryId) == TOMBSTONE) {
+                    candidate = ceil(levels[i], candidate.next());
+                    continue;
+                }
+
+                Range hidingRange = null;
+                boolean hidden = false;
+                for (int j = 0; j < i && !hidden; j++) {
+                    if (levels[j].get(candidate.ledgerId, candidate.entryId) != ABSENT) {
+                        // The key of the newer level is considered when looking at that level
+                        hidden = true;
+                    } else {
+                        hidingRange = levels[j].getDeletedRange(candidate.ledgerId, candidate.entryId);
+                        hidden = hidingRange != null;
+                    }
+                }
+
+                if (!hidden) {
+                    best = candidate;
+                    break;
+                }
+                candidate = ceil(levels[i], hidingRange != null ? hidingRange.end : candidate.next());
+            }
+        }
+        return best;
+    }
+
+    private static Key ceil(Level level, Key key) {
+        return key != null ? level.ceil(key) : null;
+    }
+
+    /**
+     * @return the biggest key lower than the given one which is not deleted, or null
+     */
+    private static Key floor(Level[] levels, Key key) {
+        Key best = null;
+        for (int i = 0; i < levels.length; i++) {
+            Key candidate = levels[i].floor(key);
+            while (candidate != null && (best == null || candidate.compareTo(best) > 0)) {
+                if (levels[i].get(candidate.ledgerId, candidate.entryId) == TOMBSTONE) {
+                    candidate = levels[i].floor(candidate);
+                    continue;
+                }
+
+                Range hidingRange = null;
+                boolean hidden = false;
+                for (int j = 0; j < i && !hidden; j++) {
+                    if (levels[j].get(candidate.ledgerId, candidate.entryId) != ABSENT) {
+                        hidden = true;
+                    } else {
+                        hidingRange = levels[j].getDeletedRange(candidate.ledgerId, candidate.entryId);
+                        hidden = hidingRange != null;
+                    }
+                }
+
+                if (!hidden) {
+                    best = candidate;
+                    break;
+                }
+                candidate = levels[i].floor(hidingRange != null ? hidingRange.begin : candidate);
+            }
+        }
+        return best;
+    }
+
+    private static Entry<byte[], byte[]> toEntry(Level[] levels, Key key) {
+        if (key == null) {
+            return null;
+        }
+
+        byte[] value = new byte[VALUE_SIZE];
+        ArrayUtil.setLong(value, 0, get(levels, key.ledgerId, key.entryId));
+        return new SimpleImmutableEntry<>(key.toArray(), value);
+    }
+
+    @Override
+    public void delete(byte[] key) throws IOException {
+        checkKey(key);
+        apply(new long[] { DELETE, ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8), 0, 0 }, UPDATE_SIZE, false);
+    }
+
+    @Override
+    public void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+        checkKey(beginKey);
+        checkKey(endKey);
+        apply(new long[] { DELETE_RANGE, ArrayUtil.getLong(beginKey, 0), ArrayUtil.getLong(beginKey, 8),
+                ArrayUtil.getLong(endKey, 0), ArrayUtil.getLong(endKey, 8) }, UPDATE_SIZE, false);
+    }
+
+    /**
+     * Merge all the segments holding deleted keys, so that the keys they hide are dropped. The buffered deletes are
+     * first written to a segment, and the merge is done in background.
+     */
+    @Override
+    public void compact(byte[] firstKey, byte[] lastKey) throws IOException {
+        if (!readOnly && state.memtable.hasDeletes()) {
+            sync();
+        }
+        if (state.segments.stream().anyMatch(LocationSegment::hasDeletes)) {
+            fullMergeRequested = true;
+            scheduleMerge();
+        }
+    }
+
+    @Override
+    public CloseableIterator<byte[]> keys() {
+        return keys(new Key(0, 0), null);
+    }
+
+    @Override
+    public CloseableIterator<byte[]> keys(byte[] firstKey, byte[] lastKey) {
+        checkKey(firstKey);
+        checkKey(lastKey);
+        return keys(new Key(ArrayUtil.getLong(firstKey, 0), ArrayUtil.getLong(firstKey, 8)),
+                new Key(ArrayUtil.getLong(lastKey, 0), ArrayUtil.getLong(lastKey, 8)));
+    }
+
+    private CloseableIterator<byte[]> keys(Key firstKey, Key lastKey) {
+        LocationsIterator iterator = new LocationsIterator(acquireState(), firstKey, lastKey);
+        return new CloseableIterator<byte[]>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public byte[] next() {
+                return iterator.next().toArray();
+            }
+
+            @Override
+            public void close() {
+                iterator.close();
+            }
+        };
+    }
+
+    @Override
+    public CloseableIterator<Entry<byte[], byte[]>> iterator() {
+        LocationsIterator iterator = new LocationsIterator(acquireState(), new Key(0, 0), null);
+        return new CloseableIterator<Entry<byte[], byte[]>>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() {
+                return toEntry(iterator.levels, iterator.next());
+            }
+
+            @Override
+            public void close() {
+                iterator.close();
+            }
+        };
+    }
+
+    /**
+     * Write the buffered updates to a new segment, and delete their write-ahead log.
+     */
+    @Override
+    public void sync() throws IOException {
+        sync(null);
+    }
+
+    /**
+     * @param full the memtable found full by a writer, which may already have been written by another one
+     */
+    private void sync(Memtable full) throws IOException {
+        checkWritable();
+        syncLock.lock();
+        try {
+            Memtable memtable;
+            memtableLock.writeLock().lock();
+            try {
+                synchronized (stateLock) {
+                    memtable = state.memtable;
+                    if (memtable.isEmpty() || (full != null && memtable != full)) {
+                        return;
+                    }
+                    setState(new State(newMemtable(), memtable, state.segments));
+                }
+                // No more updates are appended to the log once the memtable is swapped
+                memtable.wal.close();
+            } finally {
+                memtableLock.writeLock().unlock();
+            }
+
+            LocationSegment segment;
+            try {
+                // Deletes only need to be kept to hide the keys of older segments
+                segment = writeSegment(memtable, !state.segments.isEmpty());
+            } catch (IOException e) {
+                // Give the updates back to the next sync, their log is kept until then
+                memtableLock.writeLock().lock();
+                try {
+                    synchronized (stateLock) {
+                        state.memtable.addOlder(memtable);
+                        setState(new State(state.memtable, null, state.segments));
+                    }
+                } finally {
+                    memtableLock.writeLock().unlock();
+                }
+                throw e;
+            }
+
+            synchronized (stateLock) {
+                List<LocationSegment> segments = new ArrayList<>(state.segments.size() + 1);
+                segments.add(segment);
+                segments.addAll(state.segments);
+                setState(new State(state.memtable, null, Collections.unmodifiableList(segments)));
+            }
+            segment.release();
+            deleteWriteAheadLogs(memtable.firstSeq, memtable.seq);
+        } finally {
+            syncLock.unlock();
+        }
+
+        scheduleMerge();
+    }
+
+    /**
+     * Write a memtable to a new segment, named after the write-ahead logs it replaces.
+     */
+    private LocationSegment writeSegment(Memtable memtable, boolean keepDeletes) throws IOException {
+        long firstSeq = memtable.firstSeq;
+        long seq = memtable.seq;
+
+        File file = segmentFile(firstSeq, seq);
+        File tmpFile = new File(file.getPath() + TMP_SUFFIX);
+        try (LocationSegment.Writer writer = new LocationSegment.Writer(tmpFile)) {
+            long[] entryIds = new long[1024];
+            long[] locations = new long[1024];
+            int count = 0;
+            long ledgerId = 0;
+
+            for (Map.Entry<Key, Long> e : memtable.locations.entrySet()) {
+                Key key = e.getKey();
+                long location = e.getValue();
+                if (count > 0 && key.ledgerId != ledgerId) {
+                    writer.addLedger(ledgerId, entryIds, locations, count);
+                    count = 0;
+                }
+                if (location == TOMBSTONE && !keepDeletes) {
+                    continue;
+                }
+
+                if (count == entryIds.length) {
+                    entryIds = Arrays.copyOf(entryIds, count * 2);
+                    locations = Arrays.copyOf(locations, count * 2);
+                }
+                ledgerId = key.ledgerId;
+                entryIds[count] = key.entryId;
+                locations[count] = location;
+                count++;
+            }
+            writer.addLedger(ledgerId, entryIds, locations, count);
+
+            bytesWritten.addAndGet(writer.finish(keepDeletes ? memtable.getDeletedRanges() : Collections.emptyList()));
+        }
+
+        return publishSegmentFile(tmpFile, file, firstSeq, seq);
+    }
+
+    private LocationSegment publishSegmentFile(File tmpFile, File file, long firstSeq, long lastSeq)
+            throws IOException {
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Syncing a directory is not supported on all platforms
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to sync directory {}", directory, e);
+            }
+        }
+        return new LocationSegment(file, firstSeq, lastSeq);
+    }
+
+    private void scheduleMerge() {
+        if (mergeExecutor != null && !closed && mergeScheduled.compareAndSet(false, true)) {
+            mergeExecutor.execute(() -> {
+                mergeScheduled.set(false);
+                try {
+                    mergeSegments();
+                } catch (Throwable t) {
+                    log.error("Failed to merge location segments in {}", directory, t);
+                }
+            });
+        }
+    }
+
+    /**
+     * Wait for the merges scheduled so far to complete.
+     */
+    @VisibleForTesting
+    void awaitMerges() throws IOException {
+        if (mergeExecutor == null) {
+            return;
+        }
+
+        // The merges run on a single thread, so they complete before the following task
+        try {
+            mergeExecutor.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the merge of location segments in " + directory, e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Merge the newest segments while they are comparable in size to the next older one, or when there are too
+     * many of them. A full merge drops all the deleted keys.
+     */
+    private void mergeSegments() throws IOException {
+        while (!closed) {
+            State s = acquireState();
+            try {
+                if (!mergeSegments(s.segments)) {
+                    return;
+                }
+            } finally {
+                s.release();
+            }
+        }
+    }
+
+    /**
+     * @return whether segments were merged
+     */
+    private boolean mergeSegments(List<LocationSegment> segments) throws IOException {
+        List<LocationSegment> toMerge;
+        if (fullMergeRequested) {
+            fullMergeRequested = false;
+            if (segments.isEmpty() || (segments.size() == 1 && !segments.get(0).hasDeletes())) {
+                return true;
+            }
+            toMerge = segments;
+        } else if (segments.size() >= 2
+                && (segments.get(0).getSizeInBytes() * sizeRatio >= segments.get(1).getSizeInBytes()
+                    || segments.size() > maxSegments)) {
+            toMerge = segments.subList(0, 2);
+        } else {
+            return false;
+        }
+
+        long startTime = System.nanoTime();
+        boolean includesOldest = toMerge.get(toMerge.size() - 1) == segments.get(segments.size() - 1);
+        LocationSegment merged = merge(toMerge, includesOldest);
+
+        synchronized (stateLock) {
+            if (closed) {
+                // The merged segment replaces its inputs at the next open
+                merged.release();
+                return false;
+            }
+            List<LocationSegment> newSegments = new ArrayList<>(state.segments);
+            int idx = newSegments.indexOf(toMerge.get(0));
+            newSegments.subList(idx, idx + toMerge.size()).clear();
+            newSegments.add(idx, merged);
+            setState(new State(state.memtable, state.flushingMemtable, Collections.unmodifiableList(newSegments)));
+        }
+        merged.release();
+
+        // The merged segments are unmapped once the readers still using them are done
+        for (LocationSegment segment : toMerge) {
+            Files.deleteIfExists(segment.getFile().toPath());
+        }
+
+        log.info("Merged {} location segments into {} ({} locations, {} bytes) in {} ms", toMerge.size(),
+                merged.getFile().getName(), merged.getLocationsCount(), merged.getSizeInBytes(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        return true;
+    }
+
+    /**
+     * Merge consecutive segments, newest first.
+     *
+     * @param dropDeletes whether the oldest segment is merged, in which case the deleted keys are dropped
+     */
+    private LocationSegment merge(List<LocationSegment> segments, boolean dropDeletes) throws IOException {
+        long firstSeq = segments.get(segments.size() - 1).getFirstSeq();
+        long lastSeq = segments.get(0).getLastSeq();
+        File file = segmentFile(firstSeq, lastSeq);
+        File tmpFile = new File(file.getPath() + TMP_SUFFIX);
+
+        try (LocationSegment.Writer writer = new LocationSegment.Writer(tmpFile)) {
+            for (long ledgerId : unionOfLedgerIds(segments)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Merge of location segments in " + directory + " interrupted");
+                }
+
+                // Apply the segments from the oldest to the newest
+                long[] entryIds = new long[0];
+                long[] locations = new long[0];
+                int count = 0;
+                for (int i = segments.size() - 1; i >= 0; i--) {
+                    LocationSegment segment = segments.get(i);
+
+                    int removed = 0;
+                    for (int j = 0; j < count; j++) {
+                        if (segment.getDeletedRange(ledgerId, entryIds[j]) != null) {
+                            removed++;
+                        } else {
+                            entryIds[j - removed] = entryIds[j];
+                            locations[j - removed] = locations[j];
+                        }
+                    }
+                    count -= removed;
+
+                    int ledgerIdx = segment.findLedger(ledgerId);
+                    if (ledgerIdx >= 0) {
+                        long[][] ledger = segment.readLedger(ledgerIdx);
+                        long[][] res = mergeSorted(entryIds, locations, count, ledger[0], ledger[1]);
+                        entryIds = res[0];
+                        locations = res[1];
+                        count = entryIds.length;
+                    }
+                }
+
+                if (dropDeletes) {
+                    int removed = 0;
+                    for (int j = 0; j < count; j++) {
+                        if (locations[j] == TOMBSTONE) {
+                            removed++;
+                        } else {
+                            entryIds[j - removed] = entryIds[j];
+                            locations[j - removed] = locations[j];
+                        }
+                    }
+                    count -= removed;
+                }
+
+                writer.addLedger(ledgerId, entryIds, locations, count);
+            }
+
+            List<Range> deletedRanges = new ArrayList<>();
+            if (!dropDeletes) {
+                for (LocationSegment segment : segments) {
+                    deletedRanges.addAll(Arrays.asList(segment.getDeletedRanges()));
+                }
+            }
+            bytesWritten.addAndGet(writer.finish(Range.normalize(deletedRanges)));
+        } catch (IOException e) {
+            Files.deleteIfExists(tmpFile.toPath());
+            throw e;
+        }
+
+        return publishSegmentFile(tmpFile, file, firstSeq, lastSeq);
+    }
+
+    private static long[] unionOfLedgerIds(List<LocationSegment> segments) {
+        // Sort as unsigned, like the keys
+        long[] ledgerIds = segments.stream().flatMapToLong(s -> Arrays.stream(s.getLedgerIds()))
+                .map(id -> id ^ Long.MIN_VALUE).sorted().distinct().map(id -> id ^ Long.MIN_VALUE).toArray();
+        return ledgerIds;
+    }
+
+    /**
+     * Merge two sorted arrays of locations, the newer locations replacing the older ones.
+     */
+    private static long[][] mergeSorted(long[] olderEntryIds, long[] olderLocations, int olderCount,
+            long[] newerEntryIds, long[] newerLocations) {
+        long[] entryIds = new long[olderCount + newerEntryIds.length];
+        long[] locations = new long[entryIds.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < olderCount || j < newerEntryIds.length) {
+            int cmp = i == olderCount ? 1
+                    : j == newerEntryIds.length ? -1
+                    : Long.compareUnsigned(olderEntryIds[i], newerEntryIds[j]);
+            if (cmp < 0) {
+                entryIds[count] = olderEntryIds[i];
+                locations[count++] = olderLocations[i++];
+            } else {
+                if (cmp == 0) {
+                    i++;
+                }
+                entryIds[count] = newerEntryIds[j];
+                locations[count++] = newerLocations[j++];
+            }
+        }
+        return new long[][] { Arrays.copyOf(entryIds, count), Arrays.copyOf(locations, count) };
+    }
+
+    @Override
+    public long count() throws IOException {
+        State s = state;
+        long count = s.memtable.size() + (s.flushingMemtable != null ? s.flushingMemtable.size() : 0);
+        for (LocationSegment segment : s.segments) {
+            count += segment.getLocationsCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the segments of the current state, newest first
+     */
+    @VisibleForTesting
+    List<LocationSegment> getSegments() {
+        return state.segments;
+    }
+
+    /**
+     * @return the number of bytes written to segment files since the storage was opened
+     */
+    long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @Override
+    public Batch newBatch() {
+        return new LocationsBatch();
+    }
+
+    private void checkWritable() throws IOException {
+        if (readOnly) {
+            throw new IOException("Location segments in " + directory + " are opened in read-only mode");
+        }
+    }
+
+    private static void checkKey(byte[] key) {
+        checkArgument(key.length == KEY_SIZE, "Invalid key size: %s", key.length);
+    }
+
+    private static long toLocation(byte[] value) {
+        checkArgument(value.length == VALUE_SIZE, "Invalid value size: %s", value.length);
+        long location = ArrayUtil.getLong(value, 0);
+        checkArgument(location != TOMBSTONE && location != ABSENT, "Reserved location: %s", location);
+        return location;
+    }
+
+    /**
+     * Batch recording the updates until they are flushed, as the key and value arrays are reused by the callers.
+     */
+    private class LocationsBatch implements Batch {
+        private long[] updates = new long[UPDATE_SIZE * 1024];
+        private int size = 0;
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            checkKey(key);
+            add(PUT, ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8), toLocation(value), 0);
+        }
+
+        @Override
+        public void remove(byte[] key) throws IOException {
+            checkKey(key);
+            add(DELETE, ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8), 0, 0);
+        }
+
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+            checkKey(beginKey);
+            checkKey(endKey);
+            add(DELETE_RANGE, ArrayUtil.getLong(beginKey, 0), ArrayUtil.getLong(beginKey, 8),
+                    ArrayUtil.getLong(endKey, 0), ArrayUtil.getLong(endKey, 8));
+        }
+
+        private void add(long type, long a, long b, long c, long d) {
+            if (size + UPDATE_SIZE > updates.length) {
+                updates = Arrays.copyOf(updates, updates.length * 2);
+            }
+            updates[size++] = type;
+            updates[size++] = a;
+            updates[size++] = b;
+            updates[size++] = c;
+            updates[size++] = d;
+        }
+
+        @Override
+        public void clear() {
+            size = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // Like the RocksDB batches, the flushed updates are durable once their log is synced
+            apply(updates, size, true);
+        }
+
+        @Override
+        public void close() {
+            updates = null;
+        }
+    }
+
+    /**
+     * Iterator over the keys which are not deleted, within a range.
+     */
+    private static class LocationsIterator {
+        private final State state;
+        private final Level[] levels;
+        private final Key lastKey;
+        private Key next;
+        private boolean closed = false;
+
+        /**
+         * @param state a reference to the state to iterate over, released when the iterator is closed
+         */
+        LocationsIterator(State state, Key firstKey, Key lastKey) {
+            this.state = state;
+            this.levels = state.levels();
+            this.lastKey = lastKey;
+            try {
+                advance(firstKey);
+            } catch (RuntimeException e) {
+                state.release();
+                throw e;
+            }
+        }
+
+        boolean hasNext() {
+            return next != null;
+        }
+
+        Key next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Key key = next;
+            advance(key.next());
+            return key;
+        }
+
+        private void advance(Key from) {
+            next = from != null ? ceil(levels, from) : null;
+            if (next != null && lastKey != null && next.compareTo(lastKey) >= 0) {
+                next = null;
+            }
+        }
+
+        void close() {
+            if (!closed) {
+                closed = true;
+                state.release();
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the levels of the storage, from the newest to the oldest. The storage holds a reference to its
+     * current state and the readers take one while reading, and the state holds a reference to each of its segments.
+     */
+    private static final class State extends AbstractReferenceCounted {
+        private final Memtable memtable;
+        private final Memtable flushingMemtable;
+        private final List<LocationSegment> segments;
+        private final Level[] levels;
+
+        State(Memtable memtable, Memtable flushingMemtable, List<LocationSegment> segments) {
+            this.memtable = memtable;
+            this.flushingMemtable = flushingMemtable;
+            this.segments = segments;
+
+            List<Level> levels = new ArrayList<>(segments.size() + 2);
+            levels.add(memtable);
+            if (flushingMemtable != null) {
+                levels.add(flushingMemtable);
+            }
+            levels.addAll(segments);
+            this.levels = levels.toArray(new Level[0]);
+            segments.forEach(LocationSegment::retain);
+        }
+
+        Level[] levels() {
+            return levels;
+        }
+
+        @Override
+        protected void deallocate() {
+            segments.forEach(LocationSegment::release);
+        }
+
+        @Override
+        public State touch(Object hint) {
+            return this;
+        }
+    }
+
+    /**
+     * A level of the storage, which hides the keys of the older levels.
+     */
+    interface Level {
+        /**
+         * @return the location of the key, {@link #TOMBSTONE} if it is deleted by this level or {@link #ABSENT}
+         */
+        long get(long ledgerId, long entryId);
+
+        /**
+         * @return the range deleted by this level, which hides the key in the older levels, or null
+         */
+        Range getDeletedRange(long ledgerId, long entryId);
+
+        /**
+         * @return the smallest key of this level not lower than the given one, including the deleted keys
+         */
+        Key ceil(Key key);
+
+        /**
+         * @return the biggest key of this level lower than the given one, including the deleted keys
+         */
+        Key floor(Key key);
+    }
+
+    /**
+     * In-memory level with the updates since the last sync.
+     */
+    private static final class Memtable implements Level {
+        private final ConcurrentSkipListMap<Key, Long> locations = new ConcurrentSkipListMap<>();
+        // Deleted ranges by begin key, which do not overlap
+        private final ConcurrentSkipListMap<Key, Key> deletedRanges = new ConcurrentSkipListMap<>();
+        private final AtomicLong size = new AtomicLong();
+        private volatile boolean hasDeletes = false;
+
+        // Sequence numbers of the write-ahead logs holding the updates, this memtable logging into the last one
+        private volatile long firstSeq;
+        private final long seq;
+        private final LocationsWriteAheadLog wal;
+
+        Memtable(long firstSeq, long seq, LocationsWriteAheadLog wal) {
+            this.firstSeq = firstSeq;
+            this.seq = seq;
+            this.wal = wal;
+        }
+
+        /**
+         * Log the updates and apply them, in the same order for all the writers.
+         */
+        synchronized void apply(long[] updates, int size) throws IOException {
+            wal.append(updates, size);
+            applyWithoutLogging(updates, size);
+        }
+
+        void applyWithoutLogging(long[] updates, int size) {
+            for (int i = 0; i < size; i += UPDATE_SIZE) {
+                switch ((int) updates[i]) {
+                case PUT:
+                    put(updates[i + 1], updates[i + 2], updates[i + 3]);
+                    break;
+                case DELETE:
+                    put(updates[i + 1], updates[i + 2], TOMBSTONE);
+                    hasDeletes = true;
+                    break;
+                default:
+                    deleteRange(new Key(updates[i + 1], updates[i + 2]), new Key(updates[i + 3], updates[i + 4]));
+                    hasDeletes = true;
+                }
+            }
+        }
+
+        void put(long ledgerId, long entryId, long location) {
+            if (locations.put(new Key(ledgerId, entryId), location) == null) {
+                size.incrementAndGet();
+            }
+        }
+
+        void deleteRange(Key begin, Key end) {
+            if (begin.compareTo(end) >= 0) {
+                return;
+            }
+
+            addDeletedRange(begin, end);
+            // The deleted range only hides the keys of the older levels
+            Map<Key, Long> deleted = locations.subMap(begin, end);
+            size.addAndGet(-deleted.size());
+            deleted.clear();
+        }
+
+        private synchronized void addDeletedRange(Key begin, Key end) {
+            Map.Entry<Key, Key> previous = deletedRanges.floorEntry(begin);
+            if (previous != null && previous.getValue().compareTo(begin) >= 0) {
+                begin = previous.getKey();
+                if (previous.getValue().compareTo(end) > 0) {
+                    end = previous.getValue();
+                }
+            }
+
+            Map.Entry<Key, Key> following;
+            while ((following = deletedRanges.ceilingEntry(begin)) != null && following.getKey().compareTo(end) <= 0) {
+                deletedRanges.remove(following.getKey());
+                if (following.getValue().compareTo(end) > 0) {
+                    end = following.getValue();
+                }
+            }
+            deletedRanges.put(begin, end);
+        }
+
+        /**
+         * Add the updates of an older memtable, which are hidden by the updates of this one.
+         */
+        void addOlder(Memtable older) {
+            firstSeq = older.firstSeq;
+            older.locations.forEach((key, location) -> {
+                if (!locations.containsKey(key) && getDeletedRange(key.ledgerId, key.entryId) == null) {
+                    put(key.ledgerId, key.entryId, location);
+                }
+            });
+            older.deletedRanges.forEach(this::addDeletedRange);
+            hasDeletes |= older.hasDeletes;
+        }
+
+        List<Range> getDeletedRanges() {
+            List<Range> ranges = new ArrayList<>(deletedRanges.size());
+            deletedRanges.forEach((begin, end) -> ranges.add(new Range(begin, end)));
+            return ranges;
+        }
+
+        boolean isEmpty() {
+            return locations.isEmpty() && deletedRanges.isEmpty();
+        }
+
+        boolean hasDeletes() {
+            return hasDeletes;
+        }
+
+        long size() {
+            return size.get();
+        }
+
+        @Override
+        public long get(long ledgerId, long entryId) {
+            Long location = locations.get(new Key(ledgerId, entryId));
+            return location != null ? location : ABSENT;
+        }
+
+        @Override
+        public Range getDeletedRange(long ledgerId, long entryId) {
+            if (deletedRanges.isEmpty()) {
+                return null;
+            }
+
+            Map.Entry<Key, Key> range = deletedRanges.floorEntry(new Key(ledgerId, entryId));
+            return range != null && range.getValue().compareTo(ledgerId, entryId) > 0
+                    ? new Range(range.getKey(), range.getValue()) : null;
+        }
+
+        @Override
+        public Key ceil(Key key) {
+            return locations.ceilingKey(key);
+        }
+
+        @Override
+        public Key floor(Key key) {
+            return locations.lowerKey(key);
+        }
+    }
+
+    /**
+     * A (ledgerId, entryId) key, compared like the big-endian key arrays.
+     */
+    static final class Key implements Comparable<Key> {
+        final long ledgerId;
+        final long entryId;
+
+        Key(long ledgerId, long entryId) {
+            this.ledgerId = ledgerId;
+            this.entryId = entryId;
+        }
+
+        /**
+         * @return the key following this one, or null if this is the last possible key
+         */
+        Key next() {
+            if (entryId != -1L) {
+                return new Key(ledgerId, entryId + 1);
+            } else if (ledgerId != -1L) {
+                return new Key(ledgerId + 1, 0);
+            } else {
+                return null;
+            }
+        }
+
+        byte[] toArray() {
+            byte[] array = new byte[KEY_SIZE];
+            ArrayUtil.setLong(array, 0, ledgerId);
+            ArrayUtil.setLong(array, 8, entryId);
+            return array;
+        }
+
+        int compareTo(long otherLedgerId, long otherEntryId) {
+            int res = Long.compareUnsigned(ledgerId, otherLedgerId);
+            return res != 0 ? res : Long.compareUnsigned(entryId, otherEntryId);
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            return compareTo(other.ledgerId, other.entryId);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return ledgerId == other.ledgerId && entryId == other.entryId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(ledgerId) * 31 + Long.hashCode(entryId);
+        }
+
+        @Override
+        public String toString() {
+            return ledgerId + "@" + entryId;
+        }
+    }
+
+    /**
+     * A range of deleted keys, from begin (included) to end (excluded).
+     */
+    static final class Range {
+        final Key begin;
+        final Key end;
+
+        Range(Key begin, Key end) {
+            this.begin = begin;
+            this.end = end;
+        }
+
+        /**
+         * @return the ranges sorted by begin key, with the overlapping ranges merged together
+         */
+        static List<Range> normalize(List<Range> ranges) {
+            List<Range> sorted = new ArrayList<>(ranges);
+            sorted.sort((r1, r2) -> r1.begin.compareTo(r2.begin));
+
+            List<Range> res = new ArrayList<>(sorted.size());
+            for (Range range : sorted) {
+                Range last = res.isEmpty() ? null : res.get(res.size() - 1);
+                if (last != null && last.end.compareTo(range.begin) >= 0) {
+                    if (range.end.compareTo(last.end) > 0) {
+                        res.set(res.size() - 1, new Range(last.begin, range.end));
+                    }
+                } else {
+                    res.add(range);
+                }
+            }
+            return res;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(KeyValueStorageLocationSegments.class);
+}
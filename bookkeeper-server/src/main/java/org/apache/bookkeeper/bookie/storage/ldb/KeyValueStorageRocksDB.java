@@ -287,6 +287,15 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
         }
     }
 
+    @Override
+    public void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+        try {
+            db.deleteRange(optionDontSync, beginKey, endKey);
+        } catch (RocksDBException e) {
+            throw new IOException("Error in RocksDB deleteRange", e);
+        }
+    }
+
     @Override
     public void compact(byte[] firstKey, byte[] lastKey) throws IOException {
         try {
@@ -32,6 +32,7 @@ import java.util.Arrays;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
 
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.BookieException;
@@ -225,28 +226,47 @@ public class LedgerMetadataIndex implements Closeable {
     }
 
     public void removeDeletedLedgers() throws IOException {
-        LongWrapper key = LongWrapper.get();
-        final byte[] startKey = new byte[key.array.length];
-
-        int deletedLedgers = 0;
+        LongStream.Builder polledLedgers = LongStream.builder();
         while (!pendingDeletedLedgers.isEmpty()) {
-            long ledgerId = pendingDeletedLedgers.poll();
-            key.set(ledgerId);
-            ledgersDb.delete(key.array);
-            if (deletedLedgers++ == 0) {
-                System.arraycopy(key.array, 0, startKey, 0, startKey.length);
-            }
+            polledLedgers.add(pendingDeletedLedgers.poll());
         }
+        long[] ledgerIds = polledLedgers.build().distinct().sorted().toArray();
 
         if (log.isDebugEnabled()) {
-            log.debug("Persisting deletes of ledgers {}", deletedLedgers);
+            log.debug("Persisting deletes of ledgers {}", ledgerIds.length);
         }
 
-        ledgersDb.sync();
-        if (deletedLedgers != 0) {
-            ledgersDb.compact(startKey, key.array);
+        LongWrapper firstKey = LongWrapper.get();
+        LongWrapper lastKey = LongWrapper.get();
+
+        try {
+            // Delete each run of consecutive ledgers with a single range delete
+            int i = 0;
+            while (i < ledgerIds.length) {
+                long firstLedgerId = ledgerIds[i++];
+                long lastLedgerId = firstLedgerId;
+                while (i < ledgerIds.length && ledgerIds[i] == lastLedgerId + 1) {
+                    lastLedgerId = ledgerIds[i++];
+                }
+
+                lastKey.set(lastLedgerId);
+                if (lastLedgerId != firstLedgerId) {
+                    firstKey.set(firstLedgerId);
+                    ledgersDb.deleteRange(firstKey.array, lastKey.array);
+                }
+                ledgersDb.delete(lastKey.array);
+            }
+
+            ledgersDb.sync();
+            if (ledgerIds.length != 0) {
+                firstKey.set(ledgerIds[0]);
+                lastKey.set(ledgerIds[ledgerIds.length - 1]);
+                ledgersDb.compact(firstKey.array, lastKey.array);
+            }
+        } finally {
+            firstKey.recycle();
+            lastKey.recycle();
         }
-        key.recycle();
     }
 
     private static final Logger log = LoggerFactory.getLogger(LedgerMetadataIndex.class);
@@ -0,0 +1,481 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageLocationSegments.ABSENT;
+import static org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageLocationSegments.TOMBSTONE;
+
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageLocationSegments.Key;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageLocationSegments.Level;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageLocationSegments.Range;
+
+/**
+ * Immutable, memory-mapped file of entry locations of a {@link KeyValueStorageLocationSegments}.
+ *
+ * <p>The locations of a ledger are stored as contiguous arrays, one for each run of consecutive entry ids. The file
+ * is made of big-endian longs only:
+ * <pre>
+ * header:  MAGIC, VERSION
+ * ledgers: for each ledger, sorted by ledger id:
+ *            number of runs, number of locations
+ *            for each run: first entry id, index of the first location of the run
+ *            locations of all the runs
+ * deletes: for each deleted range: begin ledger id, begin entry id, end ledger id, end entry id
+ * index:   for each ledger: ledger id, offset of the ledger
+ * footer:  number of ledgers, index offset, number of deleted ranges, deleted ranges offset,
+ *          number of locations, number of deleted locations, MAGIC
+ * </pre>
+ *
+ * <p>Only the sparse index, with one record per ledger, and the deleted ranges are kept on the heap. A location of
+ * 0 marks an entry deleted by this segment, and a deleted range hides the entries of the older segments only.
+ *
+ * <p>The segment is reference counted: each state of the storage using it holds a reference, and the file is
+ * unmapped once the last one is released.
+ */
+class LocationSegment extends AbstractReferenceCounted implements Level {
+
+    static final String SUFFIX = ".seg";
+
+    private static final long MAGIC = 0x424b4c4f43534547L; // "BKLOCSEG"
+    private static final long VERSION = 1;
+    private static final int HEADER_SIZE = 2 * Long.BYTES;
+    private static final int FOOTER_SIZE = 7 * Long.BYTES;
+
+    // Longs are 8-bytes aligned in the file, so a long never spans two mappings
+    private static final int MAPPING_SHIFT = 30;
+    private static final long MAPPING_MASK = (1L << MAPPING_SHIFT) - 1;
+
+    private final File file;
+    private final long firstSeq;
+    private final long lastSeq;
+    private final long sizeInBytes;
+    private final MappedByteBuffer[] mappings;
+
+    private final long[] ledgerIds;
+    private final long[] ledgerOffsets;
+    private final Range[] deletedRanges;
+    private final long locationsCount;
+    private final long deletedLocationsCount;
+
+    LocationSegment(File file, long firstSeq, long lastSeq) throws IOException {
+        this.file = file;
+        this.firstSeq = firstSeq;
+        this.lastSeq = lastSeq;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            sizeInBytes = channel.size();
+            if (sizeInBytes < HEADER_SIZE + FOOTER_SIZE) {
+                throw new IOException("Truncated location segment " + file);
+            }
+
+            // The mappings stay valid once the channel is closed
+            mappings = new MappedByteBuffer[(int) ((sizeInBytes - 1) >>> MAPPING_SHIFT) + 1];
+            for (int i = 0; i < mappings.length; i++) {
+                long position = (long) i << MAPPING_SHIFT;
+                mappings[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(1L << MAPPING_SHIFT, sizeInBytes - position));
+            }
+        }
+
+        long footer = sizeInBytes - FOOTER_SIZE;
+        if (getLong(0) != MAGIC || getLong(8) != VERSION || getLong(footer + 6 * Long.BYTES) != MAGIC) {
+            throw new IOException("Invalid location segment " + file);
+        }
+
+        int ledgersCount = (int) getLong(footer);
+        long indexOffset = getLong(footer + Long.BYTES);
+        int deletedRangesCount = (int) getLong(footer + 2 * Long.BYTES);
+        long deletedRangesOffset = getLong(footer + 3 * Long.BYTES);
+        locationsCount = getLong(footer + 4 * Long.BYTES);
+        deletedLocationsCount = getLong(footer + 5 * Long.BYTES);
+
+        ledgerIds = new long[ledgersCount];
+        ledgerOffsets = new long[ledgersCount];
+        for (int i = 0; i < ledgersCount; i++) {
+            ledgerIds[i] = getLong(indexOffset + i * 2L * Long.BYTES);
+            ledgerOffsets[i] = getLong(indexOffset + (i * 2L + 1) * Long.BYTES);
+        }
+
+        deletedRanges = new Range[deletedRangesCount];
+        for (int i = 0; i < deletedRangesCount; i++) {
+            long offset = deletedRangesOffset + i * 4L * Long.BYTES;
+            deletedRanges[i] = new Range(new Key(getLong(offset), getLong(offset + 8)),
+                    new Key(getLong(offset + 16), getLong(offset + 24)));
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getFirstSeq() {
+        return firstSeq;
+    }
+
+    long getLastSeq() {
+        return lastSeq;
+    }
+
+    long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    long getLocationsCount() {
+        return locationsCount;
+    }
+
+    boolean hasDeletes() {
+        return deletedRanges.length > 0 || deletedLocationsCount > 0;
+    }
+
+    long[] getLedgerIds() {
+        return ledgerIds;
+    }
+
+    Range[] getDeletedRanges() {
+        return deletedRanges;
+    }
+
+    @Override
+    public long get(long ledgerId, long entryId) {
+        int ledgerIdx = findLedger(ledgerId);
+        if (ledgerIdx < 0) {
+            return ABSENT;
+        }
+
+        long offset = ledgerOffsets[ledgerIdx];
+        long runsCount = getLong(offset);
+        long count = getLong(offset + 8);
+        long runsOffset = offset + 16;
+
+        long run = findRun(runsOffset, runsCount, entryId);
+        if (run < 0) {
+            return ABSENT;
+        }
+
+        long firstEntryId = runFirstEntryId(runsOffset, run);
+        long start = runStart(runsOffset, run);
+        long end = run + 1 < runsCount ? runStart(runsOffset, run + 1) : count;
+        long delta = entryId - firstEntryId;
+        if (Long.compareUnsigned(delta, end - start) >= 0) {
+            return ABSENT;
+        }
+
+        return getLong(runsOffset + runsCount * 16 + (start + delta) * 8);
+    }
+
+    @Override
+    public Range getDeletedRange(long ledgerId, long entryId) {
+        // The deleted ranges are sorted and do not overlap
+        int low = 0;
+        int high = deletedRanges.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Range range = deletedRanges[mid];
+            if (range.begin.compareTo(ledgerId, entryId) > 0) {
+                high = mid - 1;
+            } else if (range.end.compareTo(ledgerId, entryId) <= 0) {
+                low = mid + 1;
+            } else {
+                return range;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Key ceil(Key key) {
+        int ledgerIdx = ledgerCeilIndex(key.ledgerId);
+        if (ledgerIdx >= ledgerIds.length) {
+            return null;
+        }
+
+        if (ledgerIds[ledgerIdx] == key.ledgerId) {
+            long offset = ledgerOffsets[ledgerIdx];
+            long runsCount = getLong(offset);
+            long count = getLong(offset + 8);
+            long runsOffset = offset + 16;
+
+            long run = findRun(runsOffset, runsCount, key.entryId);
+            if (run >= 0) {
+                long end = run + 1 < runsCount ? runStart(runsOffset, run + 1) : count;
+                long lastEntryId = runFirstEntryId(runsOffset, run) + end - runStart(runsOffset, run) - 1;
+                if (Long.compareUnsigned(key.entryId, lastEntryId) <= 0) {
+                    return key;
+                }
+            }
+
+            if (run + 1 < runsCount) {
+                return new Key(key.ledgerId, runFirstEntryId(runsOffset, run + 1));
+            }
+
+            if (++ledgerIdx >= ledgerIds.length) {
+                return null;
+            }
+        }
+
+        return new Key(ledgerIds[ledgerIdx], runFirstEntryId(ledgerOffsets[ledgerIdx] + 16, 0));
+    }
+
+    @Override
+    public Key floor(Key key) {
+        int ledgerIdx = ledgerCeilIndex(key.ledgerId);
+
+        if (ledgerIdx < ledgerIds.length && ledgerIds[ledgerIdx] == key.ledgerId && key.entryId != 0) {
+            long offset = ledgerOffsets[ledgerIdx];
+            long runsCount = getLong(offset);
+            long count = getLong(offset + 8);
+            long runsOffset = offset + 16;
+
+            long run = findRun(runsOffset, runsCount, key.entryId - 1);
+            if (run >= 0) {
+                long end = run + 1 < runsCount ? runStart(runsOffset, run + 1) : count;
+                long lastEntryId = runFirstEntryId(runsOffset, run) + end - runStart(runsOffset, run) - 1;
+                if (Long.compareUnsigned(key.entryId - 1, lastEntryId) < 0) {
+                    lastEntryId = key.entryId - 1;
+                }
+                return new Key(key.ledgerId, lastEntryId);
+            }
+        }
+
+        // Last entry of the previous ledger
+        if (--ledgerIdx < 0) {
+            return null;
+        }
+        long offset = ledgerOffsets[ledgerIdx];
+        long runsCount = getLong(offset);
+        long count = getLong(offset + 8);
+        long runsOffset = offset + 16;
+        long lastRun = runsCount - 1;
+        return new Key(ledgerIds[ledgerIdx],
+                runFirstEntryId(runsOffset, lastRun) + count - runStart(runsOffset, lastRun) - 1);
+    }
+
+    /**
+     * Read the entry ids and locations of the ledger at the given position of the index.
+     */
+    long[][] readLedger(int ledgerIdx) {
+        long offset = ledgerOffsets[ledgerIdx];
+        long runsCount = getLong(offset);
+        int count = (int) getLong(offset + 8);
+        long runsOffset = offset + 16;
+        long locationsOffset = runsOffset + runsCount * 16;
+
+        long[] entryIds = new long[count];
+        long[] locations = new long[count];
+        for (long run = 0; run < runsCount; run++) {
+            long firstEntryId = runFirstEntryId(runsOffset, run);
+            int start = (int) runStart(runsOffset, run);
+            int end = run + 1 < runsCount ? (int) runStart(runsOffset, run + 1) : count;
+            for (int i = start; i < end; i++) {
+                entryIds[i] = firstEntryId + i - start;
+                locations[i] = getLong(locationsOffset + i * 8L);
+            }
+        }
+        return new long[][] { entryIds, locations };
+    }
+
+    int findLedger(long ledgerId) {
+        int idx = ledgerCeilIndex(ledgerId);
+        return idx < ledgerIds.length && ledgerIds[idx] == ledgerId ? idx : -1;
+    }
+
+    /**
+     * @return the index of the first ledger whose id is not lower than the given one
+     */
+    private int ledgerCeilIndex(long ledgerId) {
+        int low = 0;
+        int high = ledgerIds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(ledgerIds[mid], ledgerId) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the last run starting at or before the given entry, or -1
+     */
+    private long findRun(long runsOffset, long runsCount, long entryId) {
+        long low = 0;
+        long high = runsCount - 1;
+        long res = -1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(runFirstEntryId(runsOffset, mid), entryId) <= 0) {
+                res = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return res;
+    }
+
+    private long runFirstEntryId(long runsOffset, long run) {
+        return getLong(runsOffset + run * 16);
+    }
+
+    private long runStart(long runsOffset, long run) {
+        return getLong(runsOffset + run * 16 + 8);
+    }
+
+    /**
+     * Unmap the file, once the segment is no longer read.
+     */
+    @Override
+    protected void deallocate() {
+        for (int i = 0; i < mappings.length; i++) {
+            MappedByteBuffer mapping = mappings[i];
+            mappings[i] = null;
+            PlatformDependent.freeDirectBuffer(mapping);
+        }
+    }
+
+    @Override
+    public LocationSegment touch(Object hint) {
+        return this;
+    }
+
+    private long getLong(long position) {
+        return mappings[(int) (position >>> MAPPING_SHIFT)].getLong((int) (position & MAPPING_MASK));
+    }
+
+    /**
+     * Sequential writer of a segment file. The ledgers must be added in increasing order of ledger ids.
+     */
+    static class Writer implements AutoCloseable {
+        private final FileOutputStream fileStream;
+        private final DataOutputStream out;
+        private long position = 0;
+
+        private long[] index = new long[1024];
+        private int ledgersCount = 0;
+        private long locationsCount = 0;
+        private long deletedLocationsCount = 0;
+
+        Writer(File file) throws IOException {
+            fileStream = new FileOutputStream(file);
+            out = new DataOutputStream(new BufferedOutputStream(fileStream, 1024 * 1024));
+            writeLong(MAGIC);
+            writeLong(VERSION);
+        }
+
+        /**
+         * Add the locations of a ledger, sorted by entry id.
+         */
+        void addLedger(long ledgerId, long[] entryIds, long[] locations, int count) throws IOException {
+            if (count == 0) {
+                return;
+            }
+
+            if (index.length < (ledgersCount + 1) * 2) {
+                index = Arrays.copyOf(index, index.length * 2);
+            }
+            index[ledgersCount * 2] = ledgerId;
+            index[ledgersCount * 2 + 1] = position;
+            ledgersCount++;
+
+            int runsCount = 1;
+            for (int i = 1; i < count; i++) {
+                if (entryIds[i] != entryIds[i - 1] + 1) {
+                    runsCount++;
+                }
+            }
+
+            writeLong(runsCount);
+            writeLong(count);
+            writeLong(entryIds[0]);
+            writeLong(0);
+            for (int i = 1; i < count; i++) {
+                if (entryIds[i] != entryIds[i - 1] + 1) {
+                    writeLong(entryIds[i]);
+                    writeLong(i);
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                writeLong(locations[i]);
+                if (locations[i] == TOMBSTONE) {
+                    deletedLocationsCount++;
+                }
+            }
+            locationsCount += count;
+        }
+
+        /**
+         * Write the deleted ranges and the index, and sync the file to disk.
+         */
+        long finish(List<Range> deletedRanges) throws IOException {
+            long deletedRangesOffset = position;
+            for (Range range : deletedRanges) {
+                writeLong(range.begin.ledgerId);
+                writeLong(range.begin.entryId);
+                writeLong(range.end.ledgerId);
+                writeLong(range.end.entryId);
+            }
+
+            long indexOffset = position;
+            for (int i = 0; i < ledgersCount * 2; i++) {
+                writeLong(index[i]);
+            }
+
+            writeLong(ledgersCount);
+            writeLong(indexOffset);
+            writeLong(deletedRanges.size());
+            writeLong(deletedRangesOffset);
+            writeLong(locationsCount);
+            writeLong(deletedLocationsCount);
+            writeLong(MAGIC);
+
+            out.flush();
+            fileStream.getChannel().force(true);
+            return position;
+        }
+
+        private void writeLong(long value) throws IOException {
+            out.writeLong(value);
+            position += Long.BYTES;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
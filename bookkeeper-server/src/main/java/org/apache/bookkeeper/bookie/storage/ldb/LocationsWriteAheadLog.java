@@ -0,0 +1,156 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-ahead log of the updates buffered in the memtable of a {@link KeyValueStorageLocationSegments}.
+ *
+ * <p>Each append writes a record of the updates, as longs, preceded by their number and their CRC32. A record which
+ * is truncated or corrupted, because the bookie crashed while writing it, ends the replay of the log.
+ */
+class LocationsWriteAheadLog implements Closeable {
+
+    static final String SUFFIX = ".wal";
+
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final File file;
+    private final FileChannel channel;
+    private final CRC32 checksum = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    LocationsWriteAheadLog(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Append a record of updates to the log, without syncing it.
+     */
+    synchronized void append(long[] updates, int size) throws IOException {
+        int recordSize = RECORD_HEADER_SIZE + size * Long.BYTES;
+        if (buffer.capacity() < recordSize) {
+            buffer = ByteBuffer.allocate(Math.max(recordSize, buffer.capacity() * 2));
+        }
+
+        buffer.clear();
+        buffer.position(RECORD_HEADER_SIZE);
+        for (int i = 0; i < size; i++) {
+            buffer.putLong(updates[i]);
+        }
+        checksum.reset();
+        checksum.update(buffer.array(), RECORD_HEADER_SIZE, size * Long.BYTES);
+        buffer.putInt(0, size);
+        buffer.putInt(Integer.BYTES, (int) checksum.getValue());
+
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Sync the records appended so far to disk.
+     */
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Consumer of the records of a log.
+     */
+    interface RecordConsumer {
+        void accept(long[] updates, int size);
+    }
+
+    /**
+     * Read back the complete records of a log.
+     *
+     * @return the number of records read
+     */
+    static int replay(File file, RecordConsumer consumer) throws IOException {
+        long remaining = file.length();
+        int records = 0;
+        CRC32 checksum = new CRC32();
+        long[] updates = new long[1024];
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1024 * 1024))) {
+            while (remaining >= RECORD_HEADER_SIZE) {
+                int size = in.readInt();
+                int expectedChecksum = in.readInt();
+                remaining -= RECORD_HEADER_SIZE;
+                if (size < 0 || (long) size * Long.BYTES > remaining) {
+                    break;
+                }
+
+                byte[] payload = new byte[size * Long.BYTES];
+                in.readFully(payload);
+                remaining -= payload.length;
+                checksum.reset();
+                checksum.update(payload, 0, payload.length);
+                if ((int) checksum.getValue() != expectedChecksum) {
+                    break;
+                }
+
+                if (updates.length < size) {
+                    updates = new long[size];
+                }
+                ByteBuffer.wrap(payload).asLongBuffer().get(updates, 0, size);
+                consumer.accept(updates, size);
+                records++;
+            }
+        } catch (EOFException e) {
+            // The file was truncated while it was read
+        }
+
+        if (remaining > 0) {
+            log.warn("Ignoring the last {} bytes of the incomplete write-ahead log {}", remaining, file);
+        }
+        return records;
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(LocationsWriteAheadLog.class);
+}
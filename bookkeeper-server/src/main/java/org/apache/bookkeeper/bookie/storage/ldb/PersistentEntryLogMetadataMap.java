@@ -0,0 +1,147 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map.Entry;
+import java.util.function.BiConsumer;
+
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.EntryLogMetadataMap;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent {@link EntryLogMetadataMap} backed by a {@link KeyValueStorage}.
+ *
+ * <p>The key is the entry log id and the value is the serialized {@link EntryLogMetadata}. Only the
+ * entry being processed is deserialized on heap, and the metadata survives bookie restarts, so the
+ * garbage collector doesn't need to scan all the entry logs again after a restart.
+ */
+public class PersistentEntryLogMetadataMap implements EntryLogMetadataMap {
+
+    public static final String METADATA_CACHE = "entrylog-metadata-cache";
+
+    private final KeyValueStorage metadataMapDB;
+
+    public PersistentEntryLogMetadataMap(String metadataPath, ServerConfiguration conf) throws IOException {
+        this(metadataPath, conf, KeyValueStorageRocksDB.factory);
+    }
+
+    public PersistentEntryLogMetadataMap(String metadataPath, ServerConfiguration conf,
+            KeyValueStorageFactory storageFactory) throws IOException {
+        log.info("Loading persistent entry log metadata map from {}", metadataPath);
+        Files.createDirectories(Paths.get(metadataPath));
+        this.metadataMapDB = storageFactory.newKeyValueStorage(metadataPath, METADATA_CACHE, DbConfigType.Small,
+                conf);
+    }
+
+    @Override
+    public boolean containsKey(long entryLogId) throws IOException {
+        LongWrapper key = LongWrapper.get(entryLogId);
+        try {
+            return metadataMapDB.get(key.array) != null;
+        } finally {
+            key.recycle();
+        }
+    }
+
+    @Override
+    public void put(long entryLogId, EntryLogMetadata entryLogMeta) throws IOException {
+        ByteArrayOutputStream value = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(value)) {
+            entryLogMeta.serialize(out);
+        }
+        LongWrapper key = LongWrapper.get(entryLogId);
+        try {
+            metadataMapDB.put(key.array, value.toByteArray());
+        } finally {
+            key.recycle();
+        }
+    }
+
+    @Override
+    public EntryLogMetadata get(long entryLogId) throws IOException {
+        LongWrapper key = LongWrapper.get(entryLogId);
+        try {
+            byte[] value = metadataMapDB.get(key.array);
+            return value != null ? deserialize(value) : null;
+        } finally {
+            key.recycle();
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<Long, EntryLogMetadata> action) throws IOException {
+        CloseableIterator<Entry<byte[], byte[]>> iterator = metadataMapDB.iterator();
+        try {
+            while (iterator.hasNext()) {
+                Entry<byte[], byte[]> entry = iterator.next();
+                long entryLogId = ArrayUtil.getLong(entry.getKey(), 0);
+                action.accept(entryLogId, deserialize(entry.getValue()));
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+
+    @Override
+    public void remove(long entryLogId) throws IOException {
+        LongWrapper key = LongWrapper.get(entryLogId);
+        try {
+            metadataMapDB.delete(key.array);
+        } finally {
+            key.recycle();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The count is estimated by the underlying storage.
+     */
+    @Override
+    public int size() throws IOException {
+        return (int) metadataMapDB.count();
+    }
+
+    @Override
+    public void close() throws IOException {
+        metadataMapDB.close();
+    }
+
+    private static EntryLogMetadata deserialize(byte[] value) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            return EntryLogMetadata.deserialize(in);
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(PersistentEntryLogMetadataMap.class);
+}
@@ -0,0 +1,323 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.bookie.EntryLogger;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous read-ahead of the entries of a {@link SingleDirectoryDbLedgerStorage}.
+ *
+ * <p>The reads of each ledger are tracked as a single stream. A read that continues the stream doubles its
+ * read-ahead window, up to a maximum, while a read that jumps elsewhere in the ledger halves it, down to no
+ * read-ahead at all for ledgers read at random. The windows are read into the read cache by a pool of threads, so
+ * the reader does not wait for them, and the next window is read as soon as the reader gets into the last one.
+ *
+ * <p>A window reads the entries of the ledger that follow each other in the entry log. When it reaches the end of
+ * the entry log, or an entry which is not the next one of the ledger, it continues from the location of the next
+ * entry in the {@link EntryLocationIndex}.
+ */
+class ReadAheadManager implements Closeable {
+
+    private final EntryLogger entryLogger;
+    private final EntryLocationIndex entryLocationIndex;
+    private final ReadCache readCache;
+    private final DbLedgerStorageStats stats;
+    private final ExecutorService executor;
+
+    private final int minWindow;
+    private final int maxWindow;
+    private final long maxWindowBytes;
+    private final long maxIdleTimeNanos;
+
+    private final ConcurrentLongHashMap<ReadAheadStream> streams;
+
+    ReadAheadManager(EntryLogger entryLogger, EntryLocationIndex entryLocationIndex, ReadCache readCache,
+            DbLedgerStorageStats stats, int numThreads, int minWindow, int maxWindow, long maxWindowBytes,
+            long maxIdleTimeMillis) {
+        this(entryLogger, entryLocationIndex, readCache, stats,
+                Executors.newFixedThreadPool(numThreads, new DefaultThreadFactory("db-storage-read-ahead")),
+                minWindow, maxWindow, maxWindowBytes, maxIdleTimeMillis);
+    }
+
+    @VisibleForTesting
+    ReadAheadManager(EntryLogger entryLogger, EntryLocationIndex entryLocationIndex, ReadCache readCache,
+            DbLedgerStorageStats stats, ExecutorService executor, int minWindow, int maxWindow, long maxWindowBytes,
+            long maxIdleTimeMillis) {
+        this.entryLogger = entryLogger;
+        this.entryLocationIndex = entryLocationIndex;
+        this.readCache = readCache;
+        this.stats = stats;
+        this.executor = executor;
+        this.minWindow = minWindow;
+        this.maxWindow = Math.max(minWindow, maxWindow);
+        this.maxWindowBytes = maxWindowBytes;
+        this.maxIdleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleTimeMillis);
+        this.streams = new ConcurrentLongHashMap<>(16 * 1024, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Record a read of an entry found in the read cache.
+     */
+    void onCacheHit(long ledgerId, long entryId) {
+        ReadAheadStream stream = streams.get(ledgerId);
+        if (stream != null) {
+            stream.onCacheHit(entryId);
+        }
+    }
+
+    /**
+     * Record a read of an entry which was not in the read cache.
+     *
+     * @param entryLocation the location the entry was read from
+     * @param entrySize the size of the entry
+     */
+    void onCacheMiss(long ledgerId, long entryId, long entryLocation, int entrySize) {
+        ReadAheadStream stream = streams.computeIfAbsent(ledgerId, ReadAheadStream::new);
+        stream.onCacheMiss(entryId, entryLocation + 4 /* size header */ + entrySize);
+    }
+
+    void deleteLedger(long ledgerId) {
+        streams.remove(ledgerId);
+    }
+
+    /**
+     * Stop tracking the ledgers which were not read recently.
+     */
+    void removeIdleStreams() {
+        long now = System.nanoTime();
+        streams.removeIf((ledgerId, stream) -> stream.removeIfIdle(now));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class ReadAheadStream {
+        private final long ledgerId;
+
+        // Last entry read from the ledger
+        private long lastEntryId = -1;
+        // Number of entries of the next window, 0 when the ledger is read at random
+        private int window = 0;
+        // First entry of the last window
+        private long windowStartEntryId = -1;
+        // Last entry of the last window, requested or read once the window is complete
+        private long windowEndEntryId = -1;
+        // Location of the entry following the last window, 0 when unknown
+        private long nextLocation = 0;
+        // Incremented for each window, so that a window started before a jump does not update the stream
+        private int generation = 0;
+        private boolean windowInProgress = false;
+        private boolean endOfLedger = false;
+        private long lastAccessNanos;
+
+        ReadAheadStream(long ledgerId) {
+            this.ledgerId = ledgerId;
+            this.lastAccessNanos = System.nanoTime();
+        }
+
+        synchronized void onCacheHit(long entryId) {
+            lastAccessNanos = System.nanoTime();
+            if (entryId <= lastEntryId || entryId > windowEndEntryId) {
+                // The entry was not read ahead for this stream
+                return;
+            }
+
+            stats.getReadAheadHits().inc();
+            lastEntryId = entryId;
+
+            if (!windowInProgress && !endOfLedger && entryId >= windowStartEntryId) {
+                // The reader got into the last window, read the next one while it consumes it
+                window = Math.min(maxWindow, Math.max(minWindow, window * 2));
+                startWindow(windowEndEntryId + 1, nextLocation);
+            }
+        }
+
+        synchronized void onCacheMiss(long entryId, long followingLocation) {
+            lastAccessNanos = System.nanoTime();
+            boolean sequential = lastEntryId >= 0 && entryId > lastEntryId
+                    && entryId <= Math.max(lastEntryId + 1, windowEndEntryId);
+
+            if (sequential && windowInProgress && entryId <= windowEndEntryId) {
+                // The reader caught up with the window being read
+                lastEntryId = entryId;
+                return;
+            }
+
+            if (sequential) {
+                // The reader got past the read-ahead, the window was too small
+                window = Math.min(maxWindow, Math.max(minWindow, window * 2));
+            } else if (lastEntryId < 0) {
+                window = minWindow;
+            } else {
+                if (!windowInProgress && windowEndEntryId > lastEntryId) {
+                    stats.getReadAheadWasted().add(windowEndEntryId - lastEntryId);
+                }
+                window = window / 2 >= minWindow ? window / 2 : 0;
+            }
+            lastEntryId = entryId;
+
+            if (window > 0) {
+                startWindow(entryId + 1, followingLocation);
+            } else {
+                // Forget about the window started before the jump
+                generation++;
+                windowInProgress = false;
+                windowStartEntryId = -1;
+                windowEndEntryId = -1;
+            }
+        }
+
+        private void startWindow(long firstEntryId, long firstLocation) {
+            int windowGeneration = ++generation;
+            int windowSize = window;
+            windowInProgress = true;
+            endOfLedger = false;
+            windowStartEntryId = firstEntryId;
+            windowEndEntryId = firstEntryId + windowSize - 1;
+
+            try {
+                executor.execute(() -> readWindow(this, windowGeneration, firstEntryId, firstLocation, windowSize));
+            } catch (RejectedExecutionException e) {
+                // The storage is shutting down
+                windowInProgress = false;
+                windowEndEntryId = lastEntryId;
+            }
+        }
+
+        synchronized void windowComplete(int windowGeneration, long nextEntryId, long nextLocation,
+                boolean endOfLedger, int count) {
+            if (windowGeneration != generation) {
+                // The reader moved elsewhere while the window was read
+                stats.getReadAheadWasted().add(count);
+                return;
+            }
+
+            this.windowInProgress = false;
+            this.windowEndEntryId = nextEntryId - 1;
+            this.nextLocation = nextLocation;
+            this.endOfLedger = endOfLedger;
+        }
+
+        synchronized boolean removeIfIdle(long now) {
+            if (windowInProgress || now - lastAccessNanos < maxIdleTimeNanos) {
+                return false;
+            }
+
+            if (windowEndEntryId > lastEntryId) {
+                stats.getReadAheadWasted().add(windowEndEntryId - lastEntryId);
+            }
+            return true;
+        }
+    }
+
+    private void readWindow(ReadAheadStream stream, int generation, long firstEntryId, long firstLocation,
+            int window) {
+        long ledgerId = stream.ledgerId;
+        long entryId = firstEntryId;
+        long location = firstLocation;
+        boolean locationFromIndex = false;
+        boolean endOfLedger = false;
+        int count = 0;
+        long size = 0;
+
+        try {
+            while (count < window && size < maxWindowBytes) {
+                if (location == 0) {
+                    location = entryLocationIndex.getLocation(ledgerId, entryId);
+                    if (location == 0) {
+                        // The entry is past the end of the ledger, or not flushed yet
+                        endOfLedger = true;
+                        break;
+                    }
+                    locationFromIndex = true;
+                }
+
+                ByteBuf entry;
+                try {
+                    entry = entryLogger.internalReadEntry(ledgerId, entryId, location, false /* validateEntry */);
+                } catch (IOException e) {
+                    if (locationFromIndex) {
+                        throw e;
+                    }
+                    // Reached the end of the entry log, continue wherever the next entry is
+                    location = 0;
+                    continue;
+                }
+
+                try {
+                    if (entry.getLong(0) != ledgerId || entry.getLong(8) != entryId) {
+                        if (locationFromIndex) {
+                            endOfLedger = true;
+                            break;
+                        }
+                        // The next entry of the ledger is not the next one in the entry log
+                        location = 0;
+                        continue;
+                    }
+
+                    readCache.put(ledgerId, entryId, entry);
+
+                    count++;
+                    size += entry.readableBytes();
+                    entryId++;
+                    location += 4 + entry.readableBytes();
+                    locationFromIndex = false;
+                } finally {
+                    entry.release();
+                }
+            }
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Exception during read ahead for ledger: {}", ledgerId, e);
+            }
+            endOfLedger = true;
+        }
+
+        stats.getReadAheadEntries().add(count);
+        stats.getReadAheadBatchCountStats().registerSuccessfulValue(count);
+        stats.getReadAheadBatchSizeStats().registerSuccessfulValue(size);
+        stream.windowComplete(generation, entryId, endOfLedger ? 0 : location, endOfLedger, count);
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ReadAheadManager.class);
+}
@@ -28,6 +28,7 @@ import io.netty.buffer.Unpooled;
 
 import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -47,7 +48,7 @@ import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.Long
  */
 public class ReadCache implements Closeable {
 
-    private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
+    static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
     private final List<ByteBuf> cacheSegments;
     private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
@@ -78,6 +79,16 @@ public class ReadCache implements Closeable {
         }
     }
 
+    /**
+     * Constructor for read cache variants that manage their own memory.
+     */
+    protected ReadCache(ByteBufAllocator allocator) {
+        this.allocator = allocator;
+        this.segmentSize = 0;
+        this.cacheSegments = Collections.emptyList();
+        this.cacheIndexes = Collections.emptyList();
+    }
+
     @Override
     public void close() {
         cacheSegments.forEach(ByteBuf::release);
@@ -155,6 +166,24 @@ public class ReadCache implements Closeable {
         return null;
     }
 
+    /**
+     * @return whether the entry is cached, without copying it
+     */
+    public boolean hasEntry(long ledgerId, long entryId) {
+        lock.readLock().lock();
+
+        try {
+            for (int i = 0; i < cacheIndexes.size(); i++) {
+                if (cacheIndexes.get(i).get(ledgerId, entryId) != null) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     /**
      * @return the total size of cached entries
      */
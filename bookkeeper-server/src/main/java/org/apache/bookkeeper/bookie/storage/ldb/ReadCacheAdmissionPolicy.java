@@ -0,0 +1,48 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+/**
+ * Policy deciding which entries of a {@link SegmentedReadCache} are worth keeping in its protected area.
+ *
+ * <p>All the entries are first inserted in the probationary area of the cache. The policy sees every
+ * lookup, and is asked whether an entry found in the probationary area should be promoted to the
+ * protected area, which is not affected by the entries streaming through the probationary area.
+ */
+public interface ReadCacheAdmissionPolicy {
+
+    /**
+     * Record a lookup of an entry, whether it was found in the cache or not.
+     *
+     * @param ledgerId the ledger id
+     * @param entryId the entry id
+     */
+    void recordAccess(long ledgerId, long entryId);
+
+    /**
+     * Whether an entry found in the probationary area should be promoted to the protected area.
+     *
+     * @param ledgerId the ledger id
+     * @param entryId the entry id
+     * @return true to promote the entry
+     */
+    boolean shouldPromote(long ledgerId, long entryId);
+}
@@ -0,0 +1,97 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * Read cache split in a probationary and a protected area, to resist scans.
+ *
+ * <p>New entries are always inserted in the probationary area, so a reader scanning through old
+ * ledgers only rotates the probationary segments. Entries found in the probationary area are copied
+ * to the protected area when the {@link ReadCacheAdmissionPolicy} says they are worth keeping, and the
+ * protected segments are only rotated by such promotions.
+ *
+ * <p>Both areas are themselves {@link ReadCache} instances and keep evicting whole segments in FIFO order.
+ */
+public class SegmentedReadCache extends ReadCache {
+
+    private final ReadCache probationCache;
+    private final ReadCache protectedCache;
+    private final ReadCacheAdmissionPolicy admissionPolicy;
+
+    public SegmentedReadCache(ByteBufAllocator allocator, ReadCache probationCache, ReadCache protectedCache,
+                              ReadCacheAdmissionPolicy admissionPolicy) {
+        super(allocator);
+        this.probationCache = probationCache;
+        this.protectedCache = protectedCache;
+        this.admissionPolicy = admissionPolicy;
+    }
+
+    @Override
+    public void close() {
+        probationCache.close();
+        protectedCache.close();
+    }
+
+    @Override
+    public void put(long ledgerId, long entryId, ByteBuf entry) {
+        probationCache.put(ledgerId, entryId, entry);
+    }
+
+    @Override
+    public ByteBuf get(long ledgerId, long entryId) {
+        admissionPolicy.recordAccess(ledgerId, entryId);
+
+        ByteBuf entry = protectedCache.get(ledgerId, entryId);
+        if (entry != null) {
+            return entry;
+        }
+
+        entry = probationCache.get(ledgerId, entryId);
+        if (entry != null && admissionPolicy.shouldPromote(ledgerId, entryId)) {
+            protectedCache.put(ledgerId, entryId, entry);
+        }
+        return entry;
+    }
+
+    @Override
+    public boolean hasEntry(long ledgerId, long entryId) {
+        return protectedCache.hasEntry(ledgerId, entryId) || probationCache.hasEntry(ledgerId, entryId);
+    }
+
+    /**
+     * @return the total size of cached entries
+     */
+    @Override
+    public long size() {
+        return probationCache.size() + protectedCache.size();
+    }
+
+    /**
+     * @return the total number of cached entries
+     */
+    @Override
+    public long count() {
+        return probationCache.count() + protectedCache.count();
+    }
+}
@@ -29,6 +29,7 @@ import com.google.protobuf.ByteString;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.File;
@@ -36,12 +37,16 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.StampedLock;
 
@@ -102,6 +107,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     // Cache where we insert entries for speculative reading
     private final ReadCache readCache;
 
+    // Background read-ahead into the read cache, null if the read-ahead is done by the reading thread
+    private final ReadAheadManager readAheadManager;
+
     private final StampedLock writeCacheRotationLock = new StampedLock();
 
     protected final ReentrantLock flushMutex = new ReentrantLock();
@@ -111,6 +119,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private final ExecutorService executor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("db-storage"));
 
+    // Executor running the stages of the pipelined flushes, null if the flushes are not pipelined
+    private final ExecutorService flushExecutor;
+    // Whether the rotated entry logs are synced while the flush is appending to the next ones
+    private final boolean syncRotatedEntryLogsOnFlush;
+
     // Executor used to for db index cleanup
     private final ScheduledExecutorService cleanupExecutor = Executors
             .newSingleThreadScheduledExecutor(new DefaultThreadFactory("db-storage-cleanup"));
@@ -132,8 +145,36 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     static final String READ_AHEAD_CACHE_BATCH_SIZE = "dbStorage_readAheadCacheBatchSize";
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE = 100;
 
+    static final String READ_AHEAD_THREADS = "dbStorage_readAheadThreads";
+    private static final int DEFAULT_READ_AHEAD_THREADS = 0;
+
+    static final String READ_AHEAD_MIN_WINDOW = "dbStorage_readAheadMinWindow";
+    private static final int DEFAULT_READ_AHEAD_MIN_WINDOW = 4;
+
+    static final String READ_AHEAD_CACHE_STRIPES = "dbStorage_readAheadCacheStripes";
+    private static final int DEFAULT_READ_AHEAD_CACHE_STRIPES = 1;
+
+    static final String READ_AHEAD_CACHE_POLICY = "dbStorage_readAheadCachePolicy";
+    static final String READ_AHEAD_CACHE_POLICY_FIFO = "fifo";
+    static final String READ_AHEAD_CACHE_POLICY_TINY_LFU = "tinylfu";
+
+    static final String READ_AHEAD_CACHE_PROTECTED_RATIO = "dbStorage_readAheadCacheProtectedRatio";
+    private static final double DEFAULT_READ_AHEAD_CACHE_PROTECTED_RATIO = 0.5;
+
+    // Average entry size assumed to size the read cache admission policy
+    private static final int READ_AHEAD_CACHE_EXPECTED_ENTRY_SIZE = 1024;
+
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
+    static final String FLUSH_THREADS = "dbStorage_flushThreads";
+    private static final int DEFAULT_FLUSH_THREADS = 0;
+
+    // Number of partitions of the write cache sorted in parallel during a pipelined flush
+    private static final int FLUSH_SORT_PARTITIONS = 16;
+    // Number of entry locations added to the index batch by each task of a pipelined flush
+    private static final int FLUSH_LOCATIONS_CHUNK_SIZE = 1024;
+    private static final int FLUSH_MAX_PENDING_LOCATIONS_CHUNKS = 64;
+
     private final long maxReadAheadBytesSize;
 
     public SingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
@@ -157,17 +198,34 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         readCacheMaxSize = readCacheSize;
         readAheadCacheBatchSize = conf.getInt(READ_AHEAD_CACHE_BATCH_SIZE, DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE);
 
-        // Do not attempt to perform read-ahead more than half the total size of the cache
-        maxReadAheadBytesSize = readCacheMaxSize / 2;
+        String readCachePolicy = getReadCachePolicy(conf);
+        long readCacheInsertSize = readCacheMaxSize;
+        if (READ_AHEAD_CACHE_POLICY_TINY_LFU.equals(readCachePolicy)) {
+            double protectedRatio = conf.getDouble(READ_AHEAD_CACHE_PROTECTED_RATIO,
+                    DEFAULT_READ_AHEAD_CACHE_PROTECTED_RATIO);
+            checkArgument(protectedRatio > 0 && protectedRatio < 1,
+                    READ_AHEAD_CACHE_PROTECTED_RATIO + " must be between 0 and 1");
+            long protectedSize = (long) (readCacheMaxSize * protectedRatio);
+            readCacheInsertSize = readCacheMaxSize - protectedSize;
+            readCache = new SegmentedReadCache(allocator,
+                    newReadCache(conf, allocator, readCacheInsertSize),
+                    newReadCache(conf, allocator, protectedSize),
+                    new FrequencySketchAdmissionPolicy(readCacheMaxSize / READ_AHEAD_CACHE_EXPECTED_ENTRY_SIZE));
+        } else {
+            readCache = newReadCache(conf, allocator, readCacheMaxSize);
+        }
+        log.info("Read cache policy: {}", readCachePolicy);
+
+        // Do not attempt to perform read-ahead more than half the size of the cache new entries are inserted into
+        maxReadAheadBytesSize = readCacheInsertSize / 2;
 
         long maxThrottleTimeMillis = conf.getLong(DbLedgerStorage.MAX_THROTTLE_TIME_MILLIS,
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
-
         ledgerIndex = new LedgerMetadataIndex(conf, KeyValueStorageRocksDB.factory, baseDir, statsLogger);
-        entryLocationIndex = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, baseDir, statsLogger);
+        entryLocationIndex = new EntryLocationIndex(conf, DbLedgerStorage.getLocationsIndexStorageFactory(conf),
+                baseDir, statsLogger);
 
         transientLedgerInfoCache = new ConcurrentLongHashMap<>(16 * 1024,
                 Runtime.getRuntime().availableProcessors() * 2);
@@ -176,6 +234,13 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES, TimeUnit.MINUTES);
 
         entryLogger = new EntryLogger(conf, ledgerDirsManager, null, statsLogger, allocator);
+
+        int flushThreads = conf.getInt(FLUSH_THREADS, DEFAULT_FLUSH_THREADS);
+        flushExecutor = flushThreads > 0
+                ? Executors.newFixedThreadPool(flushThreads, new DefaultThreadFactory("db-storage-flush"))
+                : null;
+        // With an entry log per ledger, syncing the rotated entry logs syncs the current ones as well
+        syncRotatedEntryLogsOnFlush = !conf.isEntryLogPerLedgerEnabled();
         gcThread = new GarbageCollectorThread(conf, ledgerManager, this, statsLogger);
 
         dbLedgerStorageStats = new DbLedgerStorageStats(
@@ -183,8 +248,22 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             () -> writeCache.size() + writeCacheBeingFlushed.size(),
             () -> writeCache.count() + writeCacheBeingFlushed.count(),
             () -> readCache.size(),
-            () -> readCache.count()
+            () -> readCache.count(),
+            readCachePolicy,
+            Collections.emptyList()
         );
+
+        int readAheadThreads = conf.getInt(READ_AHEAD_THREADS, DEFAULT_READ_AHEAD_THREADS);
+        if (readAheadThreads > 0) {
+            int readAheadMinWindow = conf.getInt(READ_AHEAD_MIN_WINDOW, DEFAULT_READ_AHEAD_MIN_WINDOW);
+            checkArgument(readAheadMinWindow > 0, READ_AHEAD_MIN_WINDOW + " must be greater than 0");
+            readAheadManager = new ReadAheadManager(entryLogger, entryLocationIndex, readCache,
+                    dbLedgerStorageStats, readAheadThreads, readAheadMinWindow, readAheadCacheBatchSize,
+                    maxReadAheadBytesSize,
+                    TimeUnit.MINUTES.toMillis(TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES));
+        } else {
+            readAheadManager = null;
+        }
         ledgerDirsManager.addLedgerDirsListener(getLedgerDirsListener());
     }
 
@@ -208,6 +287,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
             return isStale;
         });
+
+        if (readAheadManager != null) {
+            readAheadManager.removeIdleStreams();
+        }
     }
 
     @Override
@@ -231,6 +314,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             flush();
 
             gcThread.shutdown();
+            if (readAheadManager != null) {
+                readAheadManager.close();
+            }
             entryLogger.shutdown();
 
             cleanupExecutor.shutdown();
@@ -243,6 +329,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             writeCacheBeingFlushed.close();
             readCache.close();
             executor.shutdown();
+            if (flushExecutor != null) {
+                flushExecutor.shutdown();
+            }
 
         } catch (IOException e) {
             log.error("Error closing db storage", e);
@@ -437,6 +526,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // Try reading from read-ahead cache
         entry = readCache.get(ledgerId, entryId);
         if (entry != null) {
+            if (readAheadManager != null) {
+                readAheadManager.onCacheHit(ledgerId, entryId);
+            }
             recordSuccessfulEvent(dbLedgerStorageStats.getReadCacheHitStats(), startTime);
             recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
             return entry;
@@ -458,14 +550,44 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         readCache.put(ledgerId, entryId, entry);
 
         // Try to read more entries
-        long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        if (readAheadManager != null) {
+            readAheadManager.onCacheMiss(ledgerId, entryId, entryLocation, entry.readableBytes());
+        } else {
+            long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
+            fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        }
 
         recordSuccessfulEvent(dbLedgerStorageStats.getReadCacheMissStats(), startTime);
         recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
         return entry;
     }
 
+    @Override
+    public FileRegion getEntryRegion(long ledgerId, long entryId, int minSize) throws IOException {
+        if (entryId == BookieProtocol.LAST_ADD_CONFIRMED) {
+            return null;
+        }
+
+        long startTime = MathUtils.nowInNano();
+        // The cached entries are served from memory by the regular read path
+        if (writeCache.hasEntry(ledgerId, entryId)
+                || writeCacheBeingFlushed.hasEntry(ledgerId, entryId)
+                || readCache.hasEntry(ledgerId, entryId)) {
+            return null;
+        }
+
+        // The entry logger only hands out regions of rotated entry logs, so the file content is final
+        long entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
+        if (entryLocation == 0) {
+            return null;
+        }
+        FileRegion region = entryLogger.readEntryRegion(ledgerId, entryId, entryLocation, minSize);
+        if (region != null) {
+            recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryRegionStats(), startTime);
+        }
+        return region;
+    }
+
     private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation) {
         try {
             long firstEntryLogId = (firstEntryLocation >> 32);
@@ -512,6 +634,23 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
+    private static ReadCache newReadCache(ServerConfiguration conf, ByteBufAllocator allocator, long maxCacheSize) {
+        int readCacheStripes = conf.getInt(READ_AHEAD_CACHE_STRIPES, DEFAULT_READ_AHEAD_CACHE_STRIPES);
+        if (readCacheStripes > 1) {
+            return new StripedReadCache(allocator, maxCacheSize, readCacheStripes);
+        } else {
+            return new ReadCache(allocator, maxCacheSize);
+        }
+    }
+
+    static String getReadCachePolicy(ServerConfiguration conf) {
+        String readCachePolicy = conf.getString(READ_AHEAD_CACHE_POLICY, READ_AHEAD_CACHE_POLICY_FIFO);
+        checkArgument(READ_AHEAD_CACHE_POLICY_FIFO.equals(readCachePolicy)
+                || READ_AHEAD_CACHE_POLICY_TINY_LFU.equals(readCachePolicy),
+                "Unknown " + READ_AHEAD_CACHE_POLICY + ": " + readCachePolicy);
+        return readCachePolicy;
+    }
+
     public ByteBuf getLastEntry(long ledgerId) throws IOException {
         long startTime = MathUtils.nowInNano();
 
@@ -573,7 +712,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     boolean isFlushRequired() {
         long stamp = writeCacheRotationLock.readLock();
         try {
-            return !writeCache.isEmpty();
+            return !writeCache.isEmpty() || !writeCacheBeingFlushed.isEmpty();
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
         }
@@ -592,61 +731,22 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         flushMutex.lock();
 
         try {
+            if (!writeCacheBeingFlushed.isEmpty()) {
+                // The previous flush failed, and its entries are older than the ones in the write cache, so they
+                // are flushed first
+                log.info("Flushing the entries left in the write cache by a failed flush");
+                flushWriteCacheBeingFlushed();
+            }
+
             // Swap the write cache so that writes can continue to happen while the flush is
             // ongoing
             swapWriteCache();
 
             long sizeToFlush = writeCacheBeingFlushed.size();
-            if (log.isDebugEnabled()) {
-                log.debug("Flushing entries. count: {} -- size {} Mb", writeCacheBeingFlushed.count(),
-                        sizeToFlush / 1024.0 / 1024);
-            }
-
-            // Write all the pending entries into the entry logger and collect the offset
-            // position for each entry
-
-            Batch batch = entryLocationIndex.newBatch();
-            writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
-                try {
-                    long location = entryLogger.addEntry(ledgerId, entry, true);
-                    entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
-
-            entryLogger.flush();
-
-            long batchFlushStarTime = System.nanoTime();
-            batch.flush();
-            batch.close();
-            if (log.isDebugEnabled()) {
-                log.debug("DB batch flushed time : {} s",
-                        MathUtils.elapsedNanos(batchFlushStarTime) / (double) TimeUnit.SECONDS.toNanos(1));
-            }
-
-            ledgerIndex.flush();
-
-            cleanupExecutor.execute(() -> {
-                // There can only be one single cleanup task running because the cleanupExecutor
-                // is single-threaded
-                try {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Removing deleted ledgers from db indexes");
-                    }
-
-                    entryLocationIndex.removeOffsetFromDeletedLedgers();
-                    ledgerIndex.removeDeletedLedgers();
-                } catch (Throwable t) {
-                    log.warn("Failed to cleanup db indexes", t);
-                }
-            });
+            flushWriteCacheBeingFlushed();
 
             lastCheckpoint = thisCheckpoint;
 
-            // Discard all the entry from the write cache, since they're now persisted
-            writeCacheBeingFlushed.clear();
-
             double flushTimeSeconds = MathUtils.elapsedNanos(startTime) / (double) TimeUnit.SECONDS.toNanos(1);
             double flushThroughput = sizeToFlush / 1024.0 / 1024.0 / flushTimeSeconds;
 
@@ -655,7 +755,6 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             }
 
             recordSuccessfulEvent(dbLedgerStorageStats.getFlushStats(), startTime);
-            dbLedgerStorageStats.getFlushSizeStats().registerSuccessfulValue(sizeToFlush);
         } catch (IOException e) {
             // Leave IOExecption as it is
             throw e;
@@ -671,6 +770,236 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
+    /**
+     * Append the entries of the write cache being flushed to the entry logs and add their locations to the index.
+     * The write cache is only cleared once its entries are persisted, so that they are flushed again by the next
+     * checkpoint after a failure.
+     */
+    private void flushWriteCacheBeingFlushed() throws IOException {
+        long sizeToFlush = writeCacheBeingFlushed.size();
+        if (log.isDebugEnabled()) {
+            log.debug("Flushing entries. count: {} -- size {} Mb", writeCacheBeingFlushed.count(),
+                    sizeToFlush / 1024.0 / 1024);
+        }
+
+        // Write all the pending entries into the entry logger and collect the offset
+        // position for each entry
+
+        Batch batch = newLocationsBatch();
+        PipelinedFlush pipelinedFlush = flushExecutor != null ? new PipelinedFlush(batch) : null;
+        long batchFlushStarTime;
+        try {
+            long appendStartTime = MathUtils.nowInNano();
+            if (pipelinedFlush != null) {
+                writeCacheBeingFlushed.forEach(pipelinedFlush, flushExecutor, FLUSH_SORT_PARTITIONS,
+                        dbLedgerStorageStats.getFlushSortStats());
+                pipelinedFlush.appendComplete();
+            } else {
+                writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
+                    try {
+                        long location = appendEntry(ledgerId, entry);
+                        entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogAppendStats(), appendStartTime);
+
+            long syncStartTime = MathUtils.nowInNano();
+            entryLogger.flush();
+            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogSyncStats(), syncStartTime);
+
+            if (pipelinedFlush != null) {
+                pipelinedFlush.awaitIndexBuilt();
+            }
+
+            batchFlushStarTime = System.nanoTime();
+            batch.flush();
+        } catch (IOException | RuntimeException e) {
+            // The entries are left in the write cache being flushed, to be flushed again by the next checkpoint
+            if (pipelinedFlush != null) {
+                pipelinedFlush.abort();
+            } else {
+                closeAbortedBatch(batch);
+            }
+            throw e;
+        }
+        batch.close();
+        if (log.isDebugEnabled()) {
+            log.debug("DB batch flushed time : {} s",
+                    MathUtils.elapsedNanos(batchFlushStarTime) / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        ledgerIndex.flush();
+        recordSuccessfulEvent(dbLedgerStorageStats.getFlushIndexStats(), batchFlushStarTime);
+
+        cleanupExecutor.execute(() -> {
+            // There can only be one single cleanup task running because the cleanupExecutor
+            // is single-threaded
+            try {
+                if (log.isDebugEnabled()) {
+                    log.debug("Removing deleted ledgers from db indexes");
+                }
+
+                entryLocationIndex.removeOffsetFromDeletedLedgers();
+                ledgerIndex.removeDeletedLedgers();
+            } catch (Throwable t) {
+                log.warn("Failed to cleanup db indexes", t);
+            }
+        });
+
+        // Discard all the entry from the write cache, since they're now persisted
+        writeCacheBeingFlushed.clear();
+        dbLedgerStorageStats.getFlushSizeStats().registerSuccessfulValue(sizeToFlush);
+    }
+
+    private static void closeAbortedBatch(Batch batch) {
+        try {
+            batch.close();
+        } catch (IOException e) {
+            log.warn("Failed to close the index batch of an aborted flush", e);
+        }
+    }
+
+    @VisibleForTesting
+    Batch newLocationsBatch() {
+        return entryLocationIndex.newBatch();
+    }
+
+    @VisibleForTesting
+    long appendEntry(long ledgerId, ByteBuf entry) throws IOException {
+        return entryLogger.addEntry(ledgerId, entry, true);
+    }
+
+    /**
+     * A flush of the write cache pipelined on the flush executor.
+     *
+     * <p>The flushing thread appends the entries to the entry logs, while the next partitions of the write cache are
+     * sorted on the flush executor, and the locations of the entries already appended are added to the index batch
+     * on the flush executor as well. The batch is not thread safe, so the locations are added by chained tasks. The
+     * entry logs rotated by the appends are synced on the flush executor while the entries are appended to the next
+     * ones, so that only the current entry logs are left to sync at the end of the appends.
+     */
+    private class PipelinedFlush implements WriteCache.EntryConsumer {
+
+        private final Batch batch;
+        // Bounds the memory used by the locations waiting to be added to the batch
+        private final Semaphore pendingChunks = new Semaphore(FLUSH_MAX_PENDING_LOCATIONS_CHUNKS);
+        private final LongAdder indexBuildNanos = new LongAdder();
+        private CompletableFuture<Void> indexBuilt = CompletableFuture.completedFuture(null);
+        private volatile Exception indexBuildFailure = null;
+        private volatile boolean aborted = false;
+        private CompletableFuture<Void> rotatedEntryLogsSynced = CompletableFuture.completedFuture(null);
+        private long[] locations = new long[FLUSH_LOCATIONS_CHUNK_SIZE * 3];
+        private int locationsIdx = 0;
+        private long currentEntryLogId = -1;
+
+        PipelinedFlush(Batch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void accept(long ledgerId, long entryId, ByteBuf entry) {
+            long location;
+            try {
+                location = appendEntry(ledgerId, entry);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+
+            long entryLogId = location >> 32;
+            if (entryLogId != currentEntryLogId) {
+                if (currentEntryLogId != -1) {
+                    maybeSyncRotatedEntryLogs();
+                }
+                currentEntryLogId = entryLogId;
+            }
+
+            locations[locationsIdx++] = ledgerId;
+            locations[locationsIdx++] = entryId;
+            locations[locationsIdx++] = location;
+            if (locationsIdx == locations.length) {
+                addLocationsToBatch();
+            }
+        }
+
+        private void maybeSyncRotatedEntryLogs() {
+            // A failed sync is reported at the end of the appends, and a sync still running covers the next ones
+            if (syncRotatedEntryLogsOnFlush && rotatedEntryLogsSynced.isDone()
+                    && !rotatedEntryLogsSynced.isCompletedExceptionally()) {
+                rotatedEntryLogsSynced = CompletableFuture.runAsync(() -> {
+                    try {
+                        entryLogger.checkpoint();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }, flushExecutor);
+            }
+        }
+
+        private void addLocationsToBatch() {
+            long[] chunk = locations;
+            int chunkSize = locationsIdx;
+            pendingChunks.acquireUninterruptibly();
+            // The tasks never fail, so that each one releases its permit even after a failure
+            indexBuilt = indexBuilt.thenRunAsync(() -> {
+                try {
+                    if (indexBuildFailure == null && !aborted) {
+                        long startTime = MathUtils.nowInNano();
+                        for (int i = 0; i < chunkSize; i += 3) {
+                            entryLocationIndex.addLocation(batch, chunk[i], chunk[i + 1], chunk[i + 2]);
+                        }
+                        indexBuildNanos.add(MathUtils.elapsedNanos(startTime));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    indexBuildFailure = e;
+                } finally {
+                    pendingChunks.release();
+                }
+            }, flushExecutor);
+            locations = new long[FLUSH_LOCATIONS_CHUNK_SIZE * 3];
+            locationsIdx = 0;
+        }
+
+        /**
+         * Called once all the entries are appended, before syncing the entry logs.
+         */
+        void appendComplete() throws IOException {
+            if (locationsIdx > 0) {
+                addLocationsToBatch();
+            }
+            // Do not sync the rotated entry logs concurrently with the final sync
+            try {
+                rotatedEntryLogsSynced.join();
+            } catch (CompletionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+
+        /**
+         * Called when the flush failed. The locations still queued are not added to the index batch, which is closed
+         * once the task adding locations to it, if any, is done.
+         */
+        void abort() {
+            aborted = true;
+            indexBuilt.join();
+            closeAbortedBatch(batch);
+        }
+
+        /**
+         * Wait for all the entry locations to be added to the index batch.
+         */
+        void awaitIndexBuilt() throws IOException {
+            indexBuilt.join();
+            if (indexBuildFailure != null) {
+                throw new IOException(indexBuildFailure);
+            }
+            dbLedgerStorageStats.getFlushIndexBuildStats()
+                    .registerSuccessfulEvent(indexBuildNanos.sum(), TimeUnit.NANOSECONDS);
+        }
+    }
+
     /**
      * Swap the current write cache with the replacement cache.
      */
@@ -727,6 +1056,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         if (tli != null) {
             tli.close();
         }
+
+        if (readAheadManager != null) {
+            readAheadManager.deleteLedger(ledgerId);
+        }
     }
 
     @Override
@@ -901,6 +1234,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return readCache.count();
     }
 
+    @VisibleForTesting
+    ReadCache getReadCache() {
+        return readCache;
+    }
+
     @Override
     public List<GarbageCollectionStatus> getGarbageCollectionStatus() {
         return Collections.singletonList(gcThread.getGarbageCollectionStatus());
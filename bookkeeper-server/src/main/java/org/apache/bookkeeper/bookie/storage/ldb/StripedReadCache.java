@@ -0,0 +1,271 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.align64;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+
+/**
+ * Read cache implementation that splits the memory in multiple independent stripes.
+ *
+ * <p>Each stripe has its own ring of segments, index maps and write offset, and the stripe of an
+ * entry is picked by hashing its ledger id. Inserts only contend with inserts on the same stripe,
+ * and lookups don't take any lock: they copy the entry optimistically and validate that the stripe
+ * didn't roll over a segment in the meantime, falling back to the stripe read lock otherwise.
+ *
+ * <p>Since all the entries of a ledger go to the same stripe, a single ledger can only use
+ * {@code 1 / numStripes} of the cache.
+ */
+public class StripedReadCache extends ReadCache {
+
+    private final Stripe[] stripes;
+
+    public StripedReadCache(ByteBufAllocator allocator, long maxCacheSize, int numStripes) {
+        this(allocator, maxCacheSize, numStripes, DEFAULT_MAX_SEGMENT_SIZE);
+    }
+
+    public StripedReadCache(ByteBufAllocator allocator, long maxCacheSize, int numStripes, int maxSegmentSize) {
+        super(allocator);
+        checkArgument(numStripes > 0, "The number of stripes must be positive");
+        long stripeSize = maxCacheSize / numStripes;
+        int segmentsCount = Math.max(2, (int) (stripeSize / maxSegmentSize));
+        int segmentSize = (int) (stripeSize / segmentsCount);
+
+        stripes = new Stripe[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            stripes[i] = new Stripe(allocator, segmentsCount, segmentSize);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Stripe stripe : stripes) {
+            stripe.close();
+        }
+    }
+
+    @Override
+    public void put(long ledgerId, long entryId, ByteBuf entry) {
+        getStripe(ledgerId).put(ledgerId, entryId, entry);
+    }
+
+    @Override
+    public ByteBuf get(long ledgerId, long entryId) {
+        return getStripe(ledgerId).get(ledgerId, entryId);
+    }
+
+    @Override
+    public boolean hasEntry(long ledgerId, long entryId) {
+        return getStripe(ledgerId).hasEntry(ledgerId, entryId);
+    }
+
+    /**
+     * @return the total size of cached entries
+     */
+    @Override
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the total number of cached entries
+     */
+    @Override
+    public long count() {
+        long count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.count();
+        }
+        return count;
+    }
+
+    private Stripe getStripe(long ledgerId) {
+        // Spread consecutive ledger ids over the stripes
+        long hash = ledgerId * 0x9E3779B97F4A7C15L;
+        return stripes[(int) ((hash >>> 32) % stripes.length)];
+    }
+
+    /**
+     * A ring of segments with its own index, equivalent to a non-striped {@link ReadCache}.
+     */
+    private static final class Stripe {
+        private final ByteBufAllocator allocator;
+        private final ByteBuf[] cacheSegments;
+        private final ConcurrentLongLongPairHashMap[] cacheIndexes;
+        private final int segmentSize;
+
+        private volatile int currentSegmentIdx;
+        private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
+
+        // Read lock is held by inserts, write lock by segment roll-overs. Lookups are optimistic.
+        private final StampedLock lock = new StampedLock();
+
+        Stripe(ByteBufAllocator allocator, int segmentsCount, int segmentSize) {
+            this.allocator = allocator;
+            this.segmentSize = segmentSize;
+            this.cacheSegments = new ByteBuf[segmentsCount];
+            this.cacheIndexes = new ConcurrentLongLongPairHashMap[segmentsCount];
+
+            for (int i = 0; i < segmentsCount; i++) {
+                cacheSegments[i] = Unpooled.directBuffer(segmentSize, segmentSize);
+                cacheIndexes[i] = new ConcurrentLongLongPairHashMap(1024, 4);
+            }
+        }
+
+        void close() {
+            for (ByteBuf segment : cacheSegments) {
+                segment.release();
+            }
+        }
+
+        void put(long ledgerId, long entryId, ByteBuf entry) {
+            int entrySize = entry.readableBytes();
+            int alignedSize = align64(entrySize);
+
+            long stamp = lock.readLock();
+            try {
+                int offset = currentSegmentOffset.getAndAdd(alignedSize);
+                if (offset + entrySize <= segmentSize) {
+                    // Copy entry into read cache segment
+                    int segmentIdx = currentSegmentIdx;
+                    cacheSegments[segmentIdx].setBytes(offset, entry, entry.readerIndex(), entrySize);
+                    cacheIndexes[segmentIdx].put(ledgerId, entryId, offset, entrySize);
+                    return;
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+
+            // We could not insert in segment, we to get the write lock and roll-over to
+            // next segment
+            stamp = lock.writeLock();
+            try {
+                int offset = currentSegmentOffset.getAndAdd(alignedSize);
+                if (offset + entrySize > segmentSize) {
+                    // Rollover to next segment
+                    currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.length;
+                    currentSegmentOffset.set(alignedSize);
+                    cacheIndexes[currentSegmentIdx].clear();
+                    offset = 0;
+                }
+
+                // Copy entry into read cache segment
+                cacheSegments[currentSegmentIdx].setBytes(offset, entry, entry.readerIndex(), entrySize);
+                cacheIndexes[currentSegmentIdx].put(ledgerId, entryId, offset, entrySize);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        ByteBuf get(long ledgerId, long entryId) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                ByteBuf entry = lookup(ledgerId, entryId);
+                if (lock.validate(stamp)) {
+                    return entry;
+                }
+
+                // A segment was recycled while copying, the entry might be corrupted
+                ReferenceCountUtil.release(entry);
+            }
+
+            stamp = lock.readLock();
+            try {
+                return lookup(ledgerId, entryId);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        boolean hasEntry(long ledgerId, long entryId) {
+            // the indexes are concurrent maps, a segment recycled meanwhile only makes the answer stale
+            for (ConcurrentLongLongPairHashMap index : cacheIndexes) {
+                if (index.get(ledgerId, entryId) != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private ByteBuf lookup(long ledgerId, long entryId) {
+            // We need to check all the segments, starting from the current one and looking
+            // backward to minimize the checks for recently inserted entries
+            int current = currentSegmentIdx;
+            int size = cacheSegments.length;
+            for (int i = 0; i < size; i++) {
+                int segmentIdx = (current + (size - i)) % size;
+
+                LongPair res = cacheIndexes[segmentIdx].get(ledgerId, entryId);
+                if (res != null) {
+                    int entryOffset = (int) res.first;
+                    int entryLen = (int) res.second;
+
+                    ByteBuf entry = allocator.directBuffer(entryLen, entryLen);
+                    entry.writeBytes(cacheSegments[segmentIdx], entryOffset, entryLen);
+                    return entry;
+                }
+            }
+
+            // Entry not found in any segment
+            return null;
+        }
+
+        long size() {
+            long stamp = lock.readLock();
+            try {
+                long size = 0;
+                for (int i = 0; i < cacheIndexes.length; i++) {
+                    if (i == currentSegmentIdx) {
+                        size += Math.min(currentSegmentOffset.get(), segmentSize);
+                    } else if (!cacheIndexes[i].isEmpty()) {
+                        size += segmentSize;
+                    }
+                }
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        long count() {
+            long count = 0;
+            for (ConcurrentLongLongPairHashMap index : cacheIndexes) {
+                count += index.size();
+            }
+            return count;
+        }
+    }
+}
@@ -27,11 +27,17 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
@@ -196,6 +202,10 @@ public class WriteCache implements Closeable {
         return entry;
     }
 
+    public boolean hasEntry(long ledgerId, long entryId) {
+        return index.get(ledgerId, entryId) != null;
+    }
+
     public ByteBuf getLastEntry(long ledgerId) {
         long lastEntryId = lastEntryMap.get(ledgerId);
         if (lastEntryId == -1) {
@@ -250,23 +260,7 @@ public class WriteCache implements Closeable {
             }
             startTime = MathUtils.nowInNano();
 
-            ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
-            for (int i = 0; i < segmentsCount; i++) {
-                entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
-            }
-
-            for (int i = 0; i < sortedEntriesIdx; i += 4) {
-                long ledgerId = sortedEntries[i];
-                long entryId = sortedEntries[i + 1];
-                long offset = sortedEntries[i + 2];
-                long length = sortedEntries[i + 3];
-
-                int localOffset = (int) (offset & segmentOffsetMask);
-                int segmentIdx = (int) (offset >>> segmentOffsetBits);
-                ByteBuf entry = entrySegments[segmentIdx];
-                entry.setIndex(localOffset, localOffset + (int) length);
-                consumer.accept(ledgerId, entryId, entry);
-            }
+            forEachSorted(entrySegments(), 0, sortedEntriesIdx, consumer);
 
             if (log.isDebugEnabled()) {
                 log.debug("entry log adding {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
@@ -276,6 +270,108 @@ public class WriteCache implements Closeable {
         }
     }
 
+    /**
+     * Iterate over the entries like {@link #forEach(EntryConsumer)}, while sorting them on an executor.
+     *
+     * <p>The ledgers are split into partitions by ledger id, and each partition is sorted by (ledgerId, entryId)
+     * on the executor while the entries of the partitions already sorted are passed to the consumer. So the
+     * entries of each ledger are still consumed in order and next to each other, but the ledgers are only
+     * consumed in order within a partition.
+     *
+     * @param consumer the consumer of the entries
+     * @param sortExecutor the executor sorting the partitions
+     * @param partitions the number of partitions
+     * @param sortStats the stats of the sort of the partitions
+     */
+    public void forEach(EntryConsumer consumer, Executor sortExecutor, int partitions, OpStatsLogger sortStats) {
+        sortedEntriesLock.lock();
+
+        List<CompletableFuture<Void>> sortedPartitions = new ArrayList<>(partitions);
+        try {
+            // Count the entries of each partition, to lay out the partitions in the array
+            int[] partitionEnds = new int[partitions];
+            index.forEach((ledgerId, entryId, offset, length) -> {
+                if (!deletedLedgers.contains(ledgerId)) {
+                    partitionEnds[MathUtils.signSafeMod(ledgerId, partitions)] += 4;
+                }
+            });
+            int[] partitionStarts = new int[partitions];
+            int arrayLen = 0;
+            for (int p = 0; p < partitions; p++) {
+                partitionStarts[p] = arrayLen;
+                arrayLen += partitionEnds[p];
+                partitionEnds[p] = partitionStarts[p];
+            }
+            if (sortedEntries == null || sortedEntries.length < arrayLen) {
+                sortedEntries = new long[arrayLen * 2];
+            }
+            long[] entries = sortedEntries;
+
+            index.forEach((ledgerId, entryId, offset, length) -> {
+                if (deletedLedgers.contains(ledgerId)) {
+                    // Ignore deleted ledgers
+                    return;
+                }
+
+                int partition = MathUtils.signSafeMod(ledgerId, partitions);
+                int idx = partitionEnds[partition];
+                entries[idx] = ledgerId;
+                entries[idx + 1] = entryId;
+                entries[idx + 2] = offset;
+                entries[idx + 3] = length;
+                partitionEnds[partition] += 4;
+            });
+
+            for (int p = 0; p < partitions; p++) {
+                int start = partitionStarts[p];
+                int length = partitionEnds[p] - start;
+                sortedPartitions.add(CompletableFuture.runAsync(() -> {
+                    long startTime = MathUtils.nowInNano();
+                    groupSorter.sort(entries, start, length);
+                    sortStats.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                }, sortExecutor));
+            }
+
+            ByteBuf[] entrySegments = entrySegments();
+            for (int p = 0; p < partitions; p++) {
+                sortedPartitions.get(p).join();
+                forEachSorted(entrySegments, partitionStarts[p], partitionEnds[p], consumer);
+            }
+        } finally {
+            try {
+                // Do not release the sorted entries array while it's still being sorted
+                CompletableFuture.allOf(sortedPartitions.toArray(new CompletableFuture<?>[0]))
+                    .handle((result, cause) -> null)
+                    .join();
+            } finally {
+                sortedEntriesLock.unlock();
+            }
+        }
+    }
+
+    private ByteBuf[] entrySegments() {
+        ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+        }
+        return entrySegments;
+    }
+
+    private void forEachSorted(ByteBuf[] entrySegments, int start, int end, EntryConsumer consumer) {
+        for (int i = start; i < end; i += 4) {
+            long ledgerId = sortedEntries[i];
+            long entryId = sortedEntries[i + 1];
+            long offset = sortedEntries[i + 2];
+            long length = sortedEntries[i + 3];
+
+            int localOffset = (int) (offset & segmentOffsetMask);
+            int segmentIdx = (int) (offset >>> segmentOffsetBits);
+            ByteBuf entry = entrySegments[segmentIdx];
+            entry.setIndex(localOffset, localOffset + (int) length);
+            consumer.accept(ledgerId, entryId, entry);
+        }
+    }
+
     public long size() {
         return cacheSize.get();
     }
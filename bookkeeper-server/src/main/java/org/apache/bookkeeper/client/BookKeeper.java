@@ -73,6 +73,7 @@ import org.apache.bookkeeper.conf.AbstractConfiguration;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.feature.FeatureProvider;
 import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.meta.CachingLedgerManager;
 import org.apache.bookkeeper.meta.CleanupLedgerManager;
 import org.apache.bookkeeper.meta.LedgerIdGenerator;
 import org.apache.bookkeeper.meta.LedgerManager;
@@ -88,6 +89,7 @@ import org.apache.bookkeeper.proto.BookieAddressResolver;
 import org.apache.bookkeeper.proto.BookieClient;
 import org.apache.bookkeeper.proto.BookieClientImpl;
 import org.apache.bookkeeper.proto.DataFormats;
+import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.EventLoopUtil;
@@ -121,6 +123,8 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
     // The stats logger for this client.
     private final StatsLogger statsLogger;
     private final BookKeeperClientStats clientStats;
+    private final ClientMemoryLimiter memoryLimiter;
+    private final ClientEntryCache entryCache;
     private final double bookieQuarantineRatio;
 
     // whether the event loop group is one we created, or is owned by whoever
@@ -441,6 +445,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         // initialize stats logger
         this.statsLogger = rootStatsLogger.scope(BookKeeperClientStats.CLIENT_SCOPE);
         this.clientStats = BookKeeperClientStats.newInstance(this.statsLogger);
+        this.memoryLimiter = ClientMemoryLimiter.fromConfig(conf, clientStats);
 
         // initialize metadata driver
         try {
@@ -484,6 +489,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
                     .leakDetectionPolicy(conf.getAllocatorLeakDetectionPolicy())
                     .build();
         }
+        this.entryCache = ClientEntryCache.fromConfig(conf, allocator, clientStats);
 
 
         if (null == requestTimer) {
@@ -536,13 +542,34 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         } catch (MetadataException e) {
             throw new IOException("Failed to initialize ledger manager factory", e);
         }
-        this.ledgerManager = new CleanupLedgerManager(ledgerManagerFactory.newLedgerManager());
+        this.ledgerManager = new CleanupLedgerManager(newLedgerManager(conf));
         this.ledgerIdGenerator = ledgerManagerFactory.newLedgerIdGenerator();
 
         this.bookieQuarantineRatio = conf.getBookieQuarantineRatio();
         scheduleBookieHealthCheckIfEnabled(conf);
     }
 
+    private LedgerManager newLedgerManager(ClientConfiguration conf) {
+        LedgerManager lm = ledgerManagerFactory.newLedgerManager();
+        if (conf.getLedgerMetadataCacheMaxEntries() <= 0) {
+            return lm;
+        }
+        CachingLedgerManager cachingLm = new CachingLedgerManager(lm, conf.getLedgerMetadataCacheMaxEntries(),
+                clientStats.getLedgerMetadataCacheHitsCounter(), clientStats.getLedgerMetadataCacheMissesCounter());
+        clientStats.registerLedgerMetadataCacheSizeGauge(new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return cachingLm.getCachedLedgersCount();
+            }
+        });
+        return cachingLm;
+    }
+
     /**
      * Allow to extend BookKeeper for mocking in unit tests.
      */
@@ -552,6 +579,8 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         internalConf = ClientInternalConf.fromConfig(conf);
         statsLogger = NullStatsLogger.INSTANCE;
         clientStats = BookKeeperClientStats.newInstance(statsLogger);
+        memoryLimiter = ClientMemoryLimiter.UNLIMITED;
+        entryCache = ClientEntryCache.DISABLED;
         scheduler = null;
         requestTimer = null;
         metadataDriver = null;
@@ -1464,6 +1493,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         if (ownEventLoopGroup) {
             eventLoopGroup.shutdownGracefully();
         }
+        entryCache.close();
         this.metadataDriver.close();
     }
 
@@ -1635,6 +1665,16 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
                 return clientStats;
             }
 
+            @Override
+            public ClientMemoryLimiter getMemoryLimiter() {
+                return memoryLimiter;
+            }
+
+            @Override
+            public ClientEntryCache getEntryCache() {
+                return entryCache;
+            }
+
             @Override
             public boolean isClientClosed() {
                 return BookKeeper.this.isClosed();
@@ -65,12 +65,25 @@ public interface BookKeeperClientStats {
     String SPECULATIVE_READ_COUNT = "SPECULATIVE_READ_COUNT";
     String READ_REQUESTS_REORDERED = "READ_REQUESTS_REORDERED";
     String GET_LIST_OF_ENTRIES_OF_LEDGER_OP = "GET_LIST_OF_ENTRIES_OF_LEDGER";
+    String MEMORY_LIMIT_WAIT = "MEMORY_LIMIT_WAIT";
+    String MEMORY_LIMIT_USAGE = "MEMORY_LIMIT_USAGE_BYTES";
+    String ENTRY_CACHE_HITS = "ENTRY_CACHE_HITS";
+    String ENTRY_CACHE_MISSES = "ENTRY_CACHE_MISSES";
+    String ENTRY_CACHE_READ_AHEAD = "ENTRY_CACHE_READ_AHEAD";
+    String ENTRY_CACHE_SIZE = "ENTRY_CACHE_SIZE_BYTES";
+    String LEDGER_METADATA_CACHE_HITS = "LEDGER_METADATA_CACHE_HITS";
+    String LEDGER_METADATA_CACHE_MISSES = "LEDGER_METADATA_CACHE_MISSES";
+    String LEDGER_METADATA_CACHE_SIZE = "LEDGER_METADATA_CACHE_SIZE";
 
     // per channel stats
     String CHANNEL_SCOPE = "per_channel_bookie_client";
 
     String CHANNEL_READ_OP = "READ_ENTRY";
     String CHANNEL_TIMEOUT_READ = "TIMEOUT_READ_ENTRY";
+    String CHANNEL_RANGE_READ_OP = "RANGE_READ_ENTRY";
+    String CHANNEL_TIMEOUT_RANGE_READ = "TIMEOUT_RANGE_READ_ENTRY";
+    String CHANNEL_RANGE_ADD_OP = "RANGE_ADD_ENTRY";
+    String CHANNEL_TIMEOUT_RANGE_ADD = "TIMEOUT_RANGE_ADD_ENTRY";
     String CHANNEL_ADD_OP = "ADD_ENTRY";
     String CHANNEL_TIMEOUT_ADD = "TIMEOUT_ADD_ENTRY";
     String CHANNEL_WRITE_LAC_OP = "WRITE_LAC";
@@ -85,6 +98,8 @@ public interface BookKeeperClientStats {
     String TIMEOUT_GET_LIST_OF_ENTRIES_OF_LEDGER = "TIMEOUT_GET_LIST_OF_ENTRIES_OF_LEDGER";
 
     String NETTY_EXCEPTION_CNT = "NETTY_EXCEPTION_CNT";
+    String CHANNEL_WRITE_MESSAGES = "CHANNEL_WRITE_MESSAGES";
+    String CHANNEL_FLUSHES = "CHANNEL_FLUSHES";
     String CLIENT_CHANNEL_WRITE_WAIT = "CLIENT_CHANNEL_WRITE_WAIT";
     String CLIENT_CONNECT_TIMER = "CLIENT_CONNECT_TIMER";
     String ADD_OP_OUTSTANDING = "ADD_OP_OUTSTANDING";
@@ -129,7 +144,16 @@ public interface BookKeeperClientStats {
     OpStatsLogger getWriteDelayedDueToNotEnoughFaultDomainsLatency();
     Counter getWriteDelayedDueToNotEnoughFaultDomains();
     Counter getWriteTimedOutDueToNotEnoughFaultDomains();
+    OpStatsLogger getMemoryLimitWaitLogger();
+    Counter getEntryCacheHitsCounter();
+    Counter getEntryCacheMissesCounter();
+    Counter getEntryCacheReadAheadCounter();
+    Counter getLedgerMetadataCacheHitsCounter();
+    Counter getLedgerMetadataCacheMissesCounter();
     void registerPendingAddsGauge(Gauge<Integer> gauge);
+    void registerMemoryUsageGauge(Gauge<Long> gauge);
+    void registerEntryCacheSizeGauge(Gauge<Long> gauge);
+    void registerLedgerMetadataCacheSizeGauge(Gauge<Long> gauge);
 
     static BookKeeperClientStats newInstance(StatsLogger stats) {
         return new BookKeeperClientStatsImpl(stats);
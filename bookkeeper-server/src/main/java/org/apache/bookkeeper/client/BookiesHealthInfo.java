@@ -44,4 +44,15 @@ public interface BookiesHealthInfo {
      */
     long getBookiePendingRequests(BookieId bookieSocketAddress);
 
+    /**
+     * Returns a percentile of the recent read latencies of a bookie.
+     *
+     * @param bookieSocketAddress
+     * @param percentile the percentile, in (0, 100]
+     * @return read latency in nanoseconds, -1 if it is not known
+     */
+    default long getBookieReadLatencyNanos(BookieId bookieSocketAddress, double percentile) {
+        return -1L;
+    }
+
 }
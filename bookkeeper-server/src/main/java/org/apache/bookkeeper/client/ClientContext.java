@@ -43,5 +43,7 @@ interface ClientContext {
     OrderedExecutor getMainWorkerPool();
     OrderedScheduler getScheduler();
     BookKeeperClientStats getClientStats();
+    ClientMemoryLimiter getMemoryLimiter();
+    ClientEntryCache getEntryCache();
     boolean isClientClosed();
 }
@@ -0,0 +1,302 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+
+/**
+ * Entry cache shared by the ledger handles of a client.
+ *
+ * <p>Like the read cache of the bookies, the memory is split in segments of direct memory used in a ring-buffer
+ * fashion, each paired with an index of the entries it holds. When the cache is full, the oldest segment is dropped
+ * and replaced by a new one.
+ *
+ * <p>The entries are served as slices of the segments, without copying them. A slice retains its segment, so a
+ * dropped segment is only freed once the entries served from it are released.
+ *
+ * @see ClientConfiguration#getEntryCacheSizeBytes()
+ */
+class ClientEntryCache {
+
+    static final ClientEntryCache DISABLED = new ClientEntryCache();
+
+    static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+    // an entry is stored after the length of the ledger up to the entry
+    private static final int ENTRY_HEADER_SIZE = Long.BYTES;
+
+    static ClientEntryCache fromConfig(ClientConfiguration conf, ByteBufAllocator allocator,
+                                       BookKeeperClientStats clientStats) {
+        if (conf.getEntryCacheSizeBytes() <= 0) {
+            return DISABLED;
+        }
+        ClientEntryCache cache = new ClientEntryCache(allocator, conf.getEntryCacheSizeBytes(), MAX_SEGMENT_SIZE,
+                clientStats.getEntryCacheHitsCounter(), clientStats.getEntryCacheMissesCounter());
+        clientStats.registerEntryCacheSizeGauge(new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return cache.size();
+            }
+        });
+        return cache;
+    }
+
+    private final ByteBufAllocator allocator;
+    private final int segmentSize;
+    // the segments are allocated once they are needed
+    private final ByteBuf[] segments;
+    private final ConcurrentLongLongPairHashMap[] indexes;
+    private final Counter hitsCounter;
+    private final Counter missesCounter;
+
+    private int currentSegmentIdx = 0;
+    private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
+    private boolean closed = false;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private ClientEntryCache() {
+        this.allocator = null;
+        this.segmentSize = 0;
+        this.segments = new ByteBuf[0];
+        this.indexes = new ConcurrentLongLongPairHashMap[0];
+        this.hitsCounter = null;
+        this.missesCounter = null;
+    }
+
+    ClientEntryCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize,
+                     Counter hitsCounter, Counter missesCounter) {
+        this.allocator = allocator;
+        int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
+        this.segmentSize = (int) (maxCacheSize / segmentsCount);
+        this.segments = new ByteBuf[segmentsCount];
+        this.indexes = new ConcurrentLongLongPairHashMap[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            indexes[i] = new ConcurrentLongLongPairHashMap(4096, 2 * Runtime.getRuntime().availableProcessors());
+        }
+        this.segments[0] = allocator.directBuffer(segmentSize, segmentSize);
+        this.hitsCounter = hitsCounter;
+        this.missesCounter = missesCounter;
+    }
+
+    boolean isEnabled() {
+        return segments.length > 0;
+    }
+
+    /**
+     * Add the entries to the cache, copying them, except the entries after <i>lastAddConfirmed</i> which are not
+     * known to be part of the ledger yet.
+     */
+    void putEntries(LedgerEntries entries, long lastAddConfirmed) {
+        for (LedgerEntry entry : entries) {
+            if (entry.getEntryId() > lastAddConfirmed) {
+                break;
+            }
+            put(entry.getLedgerId(), entry.getEntryId(), entry.getLength(), entry.getEntryBuffer());
+        }
+    }
+
+    void put(long ledgerId, long entryId, long length, ByteBuf data) {
+        int size = ENTRY_HEADER_SIZE + data.readableBytes();
+        if (!isEnabled() || size > segmentSize || contains(ledgerId, entryId)) {
+            return;
+        }
+
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            int offset = currentSegmentOffset.getAndAdd(size);
+            if (offset + size <= segmentSize) {
+                write(currentSegmentIdx, offset, ledgerId, entryId, length, data);
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // the current segment is full, roll over to the next one under the write lock
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            int offset = currentSegmentOffset.getAndAdd(size);
+            if (offset + size > segmentSize) {
+                currentSegmentIdx = (currentSegmentIdx + 1) % segments.length;
+                indexes[currentSegmentIdx].clear();
+                if (segments[currentSegmentIdx] != null) {
+                    // the entries being read from the dropped segment keep it alive until they are released
+                    segments[currentSegmentIdx].release();
+                }
+                segments[currentSegmentIdx] = allocator.directBuffer(segmentSize, segmentSize);
+                currentSegmentOffset.set(size);
+                offset = 0;
+            }
+            write(currentSegmentIdx, offset, ledgerId, entryId, length, data);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void write(int segmentIdx, int offset, long ledgerId, long entryId, long length, ByteBuf data) {
+        ByteBuf segment = segments[segmentIdx];
+        segment.setLong(offset, length);
+        segment.setBytes(offset + ENTRY_HEADER_SIZE, data, data.readerIndex(), data.readableBytes());
+        indexes[segmentIdx].put(ledgerId, entryId, offset, data.readableBytes());
+    }
+
+    boolean contains(long ledgerId, long entryId) {
+        for (ConcurrentLongLongPairHashMap index : indexes) {
+            if (index.containsKey(ledgerId, entryId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drop the cached entries of a ledger.
+     *
+     * <p>The entries up to the last add confirmed of a ledger never change, but a deleted ledger id may be reused by
+     * a new ledger, and a forced recovery may close a ledger at another entry than the one it was closed at.
+     */
+    void invalidate(long ledgerId) {
+        if (!isEnabled()) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            for (ConcurrentLongLongPairHashMap index : indexes) {
+                List<Long> entryIds = new ArrayList<>();
+                index.forEach((cachedLedgerId, entryId, offset, size) -> {
+                    if (cachedLedgerId == ledgerId) {
+                        entryIds.add(entryId);
+                    }
+                });
+                entryIds.forEach(entryId -> index.remove(ledgerId, entryId));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the cached entries from <i>firstEntry</i>, up to <i>lastEntry</i> or the first entry not in the cache.
+     *
+     * @return the cached entries, which the caller has to close
+     */
+    List<LedgerEntry> getEntries(long ledgerId, long firstEntry, long lastEntry) {
+        if (!isEnabled()) {
+            return Collections.emptyList();
+        }
+        List<LedgerEntry> entries = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (long entryId = firstEntry; entryId <= lastEntry && !closed; entryId++) {
+                LedgerEntry entry = get(ledgerId, entryId);
+                if (entry == null) {
+                    break;
+                }
+                entries.add(entry);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        hitsCounter.add(entries.size());
+        missesCounter.add(lastEntry - firstEntry + 1 - entries.size());
+        return entries;
+    }
+
+    private LedgerEntry get(long ledgerId, long entryId) {
+        // look for recently added entries first
+        int size = segments.length;
+        for (int i = 0; i < size; i++) {
+            int segmentIdx = (currentSegmentIdx + (size - i)) % size;
+            LongPair res = indexes[segmentIdx].get(ledgerId, entryId);
+            if (res != null) {
+                ByteBuf segment = segments[segmentIdx];
+                int offset = (int) res.first;
+                int entrySize = (int) res.second;
+                return LedgerEntryImpl.create(ledgerId, entryId, segment.getLong(offset),
+                        segment.retainedSlice(offset + ENTRY_HEADER_SIZE, entrySize).asReadOnly());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the size of the cached entries, including the free space of the segments dropped last
+     */
+    long size() {
+        lock.readLock().lock();
+        try {
+            long size = 0;
+            for (int i = 0; i < segments.length; i++) {
+                if (i == currentSegmentIdx) {
+                    size += Math.min(currentSegmentOffset.get(), segmentSize);
+                } else if (segments[i] != null && !indexes[i].isEmpty()) {
+                    size += segmentSize;
+                }
+            }
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (int i = 0; i < segments.length; i++) {
+                indexes[i].clear();
+                if (segments[i] != null) {
+                    segments[i].release();
+                    segments[i] = null;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -41,6 +41,10 @@ class ClientInternalConf {
     final boolean enableParallelRecoveryRead;
     final boolean enableReorderReadSequence;
     final boolean enableStickyReads;
+    final boolean enableRangeReads;
+    final int rangeReadMaxEntries;
+    final long rangeReadMaxSizeBytes;
+    final int entryCacheReadAheadEntries;
     final int recoveryReadBatchSize;
     final int throttleValue;
     final int bookieFailureHistoryExpirationMSec;
@@ -82,9 +86,19 @@ class ClientInternalConf {
         this.enableBookieFailureTracking = conf.getEnableBookieFailureTracking();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
         this.enableStickyReads = conf.isStickyReadsEnabled();
+        this.enableRangeReads = conf.isRangeReadEnabled() && !conf.getUseV2WireProtocol();
+        this.rangeReadMaxEntries = conf.getRangeReadMaxEntries();
+        this.rangeReadMaxSizeBytes = conf.getRangeReadMaxSizeBytes();
+        this.entryCacheReadAheadEntries = conf.getEntryCacheReadAheadEntries();
         this.enforceMinNumFaultDomainsForWrite = conf.getEnforceMinNumFaultDomainsForWrite();
 
-        if (conf.getFirstSpeculativeReadTimeout() > 0) {
+        if (conf.getFirstSpeculativeReadTimeout() > 0 && conf.getSpeculativeReadLatencyPercentile() > 0) {
+            this.readSpeculativeRequestPolicy =
+                    Optional.of(new LatencyBasedSpeculativeRequestExecutionPolicy(
+                                        conf.getSpeculativeReadLatencyPercentile(),
+                                        conf.getFirstSpeculativeReadTimeout(),
+                                        conf.getMaxSpeculativeReadTimeout()));
+        } else if (conf.getFirstSpeculativeReadTimeout() > 0) {
             this.readSpeculativeRequestPolicy =
                     Optional.of(new DefaultSpeculativeRequestExecutionPolicy(
                                         conf.getFirstSpeculativeReadTimeout(),
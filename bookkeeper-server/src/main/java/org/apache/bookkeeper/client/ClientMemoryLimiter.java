@@ -0,0 +1,144 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
+
+/**
+ * Client-wide memory budget shared by the pending adds and reads of a client.
+ *
+ * <p>Adds reserve the size of their payload before being sent and release it once the payload is released. Reads
+ * are admitted while the budget has room, and are charged for the entries they receive until they complete, as the
+ * size of the responses isn't known up front.
+ *
+ * @see ClientConfiguration#getClientMemoryLimitBytes()
+ */
+class ClientMemoryLimiter {
+
+    static final ClientMemoryLimiter UNLIMITED = new ClientMemoryLimiter(null, 0, null);
+
+    static ClientMemoryLimiter fromConfig(ClientConfiguration conf, BookKeeperClientStats clientStats) {
+        if (conf.getClientMemoryLimitBytes() <= 0) {
+            return UNLIMITED;
+        }
+        ClientMemoryLimiter limiter = new ClientMemoryLimiter(
+                new MemoryLimitController(conf.getClientMemoryLimitBytes()),
+                conf.getClientMemoryLimitWaitTimeoutMillis(),
+                clientStats.getMemoryLimitWaitLogger());
+        clientStats.registerMemoryUsageGauge(new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return limiter.currentUsage();
+            }
+        });
+        return limiter;
+    }
+
+    // null if the memory isn't limited
+    private final MemoryLimitController controller;
+    private final long waitTimeoutMillis;
+    private final OpStatsLogger waitStats;
+
+    private ClientMemoryLimiter(MemoryLimitController controller, long waitTimeoutMillis, OpStatsLogger waitStats) {
+        this.controller = controller;
+        this.waitTimeoutMillis = waitTimeoutMillis;
+        this.waitStats = waitStats;
+    }
+
+    boolean isEnabled() {
+        return controller != null;
+    }
+
+    /**
+     * Reserves <i>size</i> bytes, waiting for the budget to have room if it is exhausted.
+     *
+     * @return whether the memory was reserved, if not the request should fail
+     */
+    boolean reserve(long size) {
+        if (controller == null || controller.tryReserveMemory(size)) {
+            return true;
+        }
+        long startTimeNanos = MathUtils.nowInNano();
+        boolean reserved;
+        try {
+            if (waitTimeoutMillis < 0) {
+                controller.reserveMemory(size);
+                reserved = true;
+            } else {
+                reserved = controller.reserveMemory(size, waitTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reserved = false;
+        }
+        if (reserved) {
+            waitStats.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        } else {
+            waitStats.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        }
+        return reserved;
+    }
+
+    /**
+     * Waits for the budget to have room, without reserving anything.
+     *
+     * @return whether the budget has room, if not the request should fail
+     */
+    boolean awaitAvailable() {
+        return reserve(0);
+    }
+
+    /**
+     * @return whether the budget has room, without waiting for it
+     */
+    boolean hasRoom() {
+        return controller == null || controller.tryReserveMemory(0);
+    }
+
+    /**
+     * Reserves <i>size</i> bytes regardless of the budget, for memory which is already allocated.
+     */
+    void forceReserve(long size) {
+        if (controller != null) {
+            controller.forceReserveMemory(size);
+        }
+    }
+
+    void release(long size) {
+        if (controller != null && size > 0) {
+            controller.releaseMemory(size);
+        }
+    }
+
+    long currentUsage() {
+        return controller == null ? 0 : controller.currentUsage();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SpeculativeRequestExecutionPolicy} timing the speculative requests on the latencies of the bookies.
+ *
+ * <p>A speculative request is issued once the outstanding request took longer than a percentile of the recent
+ * latencies of its bookie (see {@link SpeculativeRequestExecutor#getExpectedLatencyNanos(double)}), bounded by
+ * {@code maxSpeculativeRequestTimeout}. So a slow bookie is given up on as soon as it is late compared to its own
+ * history. If the latencies of the bookie are not known, {@code defaultSpeculativeRequestTimeout} is used.
+ */
+public class LatencyBasedSpeculativeRequestExecutionPolicy implements SpeculativeRequestExecutionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(LatencyBasedSpeculativeRequestExecutionPolicy.class);
+    final double latencyPercentile;
+    final int defaultSpeculativeRequestTimeout;
+    final int maxSpeculativeRequestTimeout;
+
+    public LatencyBasedSpeculativeRequestExecutionPolicy(double latencyPercentile,
+            int defaultSpeculativeRequestTimeout, int maxSpeculativeRequestTimeout) {
+        if (latencyPercentile <= 0 || latencyPercentile > 100) {
+            throw new IllegalArgumentException("Invalid value provided for latencyPercentile");
+        }
+        this.latencyPercentile = latencyPercentile;
+        this.defaultSpeculativeRequestTimeout = defaultSpeculativeRequestTimeout;
+        this.maxSpeculativeRequestTimeout = maxSpeculativeRequestTimeout;
+    }
+
+    /**
+     * Initialize the speculative request execution policy.
+     *
+     * @param scheduler The scheduler service to issue the speculative request
+     * @param requestExecutor The executor is used to issue the actual speculative requests
+     * @return ScheduledFuture, in case caller needs to cancel it.
+     */
+    @Override
+    public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
+            final SpeculativeRequestExecutor requestExecutor) {
+        return scheduleSpeculativeRead(scheduler, requestExecutor);
+    }
+
+    long getSpeculativeRequestTimeoutNanos(SpeculativeRequestExecutor requestExecutor) {
+        long maxTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(maxSpeculativeRequestTimeout);
+        long expectedLatencyNanos = requestExecutor.getExpectedLatencyNanos(latencyPercentile);
+        if (expectedLatencyNanos < 0) {
+            return Math.min(TimeUnit.MILLISECONDS.toNanos(defaultSpeculativeRequestTimeout), maxTimeoutNanos);
+        }
+        return Math.min(expectedLatencyNanos, maxTimeoutNanos);
+    }
+
+    private ScheduledFuture<?> scheduleSpeculativeRead(final ScheduledExecutorService scheduler,
+                                                       final SpeculativeRequestExecutor requestExecutor) {
+        final long speculativeRequestTimeoutNanos = getSpeculativeRequestTimeoutNanos(requestExecutor);
+        try {
+            return scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    ListenableFuture<Boolean> issueNextRequest = requestExecutor.issueSpeculativeRequest();
+                    Futures.addCallback(issueNextRequest, new FutureCallback<Boolean>() {
+                        @Override
+                        public void onSuccess(Boolean issueNextRequest) {
+                            if (issueNextRequest) {
+                                // the next request is timed on the bookie the speculative request was sent to
+                                scheduleSpeculativeRead(scheduler, requestExecutor);
+                            } else {
+                                if (LOG.isTraceEnabled()) {
+                                    LOG.trace("Stopped issuing speculative requests for {}, "
+                                        + "speculativeReadTimeoutNanos = {}", requestExecutor,
+                                        speculativeRequestTimeoutNanos);
+                                }
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(Throwable thrown) {
+                            LOG.warn("Failed to issue speculative request for {}, speculativeReadTimeoutNanos = {} : ",
+                                    requestExecutor, speculativeRequestTimeoutNanos, thrown);
+                        }
+                    }, directExecutor());
+                }
+            }, speculativeRequestTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException re) {
+            if (!scheduler.isShutdown()) {
+                LOG.warn("Failed to schedule speculative request for {}, speculativeReadTimeoutNanos = {} : ",
+                        requestExecutor, speculativeRequestTimeoutNanos, re);
+            }
+        }
+        return null;
+    }
+}
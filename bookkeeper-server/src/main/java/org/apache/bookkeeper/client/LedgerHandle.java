@@ -34,6 +34,7 @@ import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -72,6 +73,7 @@ import org.apache.bookkeeper.client.api.LedgerEntries;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
 import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
 import org.apache.bookkeeper.common.concurrent.FutureEventListener;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
@@ -136,6 +138,15 @@ public class LedgerHandle implements WriteHandle {
      */
     private int stickyBookieIndex;
 
+    /**
+     * The last entry of the latest read, to detect the sequential reads which are read ahead into the entry cache.
+     */
+    private volatile long lastReadEntryId = INVALID_ENTRY_ID;
+    /**
+     * The last entry read ahead into the entry cache.
+     */
+    private volatile long lastReadAheadEntryId = INVALID_ENTRY_ID;
+
     long length;
     final DigestManager macManager;
     final DistributionSchedule distributionSchedule;
@@ -239,6 +250,11 @@ public class LedgerHandle implements WriteHandle {
             public long getBookiePendingRequests(BookieId bookieSocketAddress) {
                 return clientCtx.getBookieClient().getNumPendingRequests(bookieSocketAddress, ledgerId);
             }
+
+            @Override
+            public long getBookieReadLatencyNanos(BookieId bookieSocketAddress, double percentile) {
+                return clientCtx.getBookieClient().getReadLatencyNanos(bookieSocketAddress, percentile);
+            }
         };
 
         ensembleChangeCounter = clientCtx.getClientStats().getEnsembleChangeCounter();
@@ -863,9 +879,116 @@ public class LedgerHandle implements WriteHandle {
     CompletableFuture<LedgerEntries> readEntriesInternalAsync(long firstEntry,
                                                               long lastEntry,
                                                               boolean isRecoveryRead) {
+        ClientEntryCache entryCache = clientCtx.getEntryCache();
+        if (!isRecoveryRead && entryCache.isEnabled() && !clientCtx.isClientClosed()) {
+            return readEntriesThroughCacheAsync(entryCache, firstEntry, lastEntry);
+        }
+        return readEntriesFromBookiesAsync(firstEntry, lastEntry, isRecoveryRead);
+    }
+
+    /**
+     * Read the entries from the entry cache, and the ones which are not cached from the bookies.
+     *
+     * <p>The entries read from the bookies are added to the cache, as long as they are confirmed. If the read
+     * follows the previous one, the next entries are read ahead into the cache.
+     *
+     * <p>The entries after the last add confirmed of the handle are always read from the bookies, even if another
+     * handle of the ledger cached them.
+     */
+    private CompletableFuture<LedgerEntries> readEntriesThroughCacheAsync(ClientEntryCache entryCache,
+                                                                          long firstEntry,
+                                                                          long lastEntry) {
+        long lastCachedEntry = Math.min(lastEntry, getLastAddConfirmed());
+        List<org.apache.bookkeeper.client.api.LedgerEntry> cachedEntries = firstEntry <= lastCachedEntry
+                ? entryCache.getEntries(ledgerId, firstEntry, lastCachedEntry)
+                : new ArrayList<>();
+        maybeReadAhead(entryCache, firstEntry, lastEntry);
+        long firstMissingEntry = firstEntry + cachedEntries.size();
+        if (firstMissingEntry > lastEntry) {
+            return FutureUtils.value(LedgerEntriesImpl.create(cachedEntries));
+        }
+
+        CompletableFuture<LedgerEntries> result = new CompletableFuture<>();
+        readEntriesFromBookiesAsync(firstMissingEntry, lastEntry, false).whenComplete((entries, cause) -> {
+            if (cause != null) {
+                cachedEntries.forEach(org.apache.bookkeeper.client.api.LedgerEntry::close);
+                result.completeExceptionally(cause);
+                return;
+            }
+            entryCache.putEntries(entries, getLastAddConfirmed());
+            if (cachedEntries.isEmpty()) {
+                result.complete(entries);
+            } else {
+                entries.forEach(entry -> cachedEntries.add(entry.duplicate()));
+                entries.close();
+                result.complete(LedgerEntriesImpl.create(cachedEntries));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Read ahead into the entry cache the entries after <i>lastEntry</i>, if the read of <i>firstEntry</i> to
+     * <i>lastEntry</i> follows the previous read of the handle.
+     *
+     * <p>The entries are read in batches: a batch is started once the reader reaches the middle of the previous one.
+     * The entries already in the cache, e.g. read ahead by another handle of the ledger, are not read again.
+     */
+    private void maybeReadAhead(ClientEntryCache entryCache, long firstEntry, long lastEntry) {
+        int readAheadEntries = clientCtx.getConf().entryCacheReadAheadEntries;
+        long previousLastEntry = lastReadEntryId;
+        lastReadEntryId = lastEntry;
+        if (readAheadEntries <= 0 || firstEntry != previousLastEntry + 1) {
+            return;
+        }
+        long fromEntry = Math.max(lastEntry, lastReadAheadEntryId) + 1;
+        if (fromEntry - lastEntry > readAheadEntries / 2) {
+            return;
+        }
+        final long lac = getLastAddConfirmed();
+        final long toEntry = Math.min(lastEntry + readAheadEntries, lac);
+        while (fromEntry <= toEntry && entryCache.contains(ledgerId, fromEntry)) {
+            fromEntry++;
+        }
+        if (fromEntry > toEntry) {
+            return;
+        }
+        // the read-ahead must not wait for the client memory budget
+        if (clientCtx.getMemoryLimiter().isEnabled() && !clientCtx.getMemoryLimiter().hasRoom()) {
+            return;
+        }
+        final long firstReadAheadEntry = fromEntry;
+        lastReadAheadEntryId = toEntry;
+        clientCtx.getClientStats().getEntryCacheReadAheadCounter().add(toEntry - firstReadAheadEntry + 1);
+        readEntriesFromBookiesAsync(firstReadAheadEntry, toEntry, false).whenComplete((entries, cause) -> {
+            if (cause != null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to read ahead entries {} to {} of ledger {}",
+                            firstReadAheadEntry, toEntry, ledgerId, cause);
+                }
+                return;
+            }
+            entryCache.putEntries(entries, lac);
+            entries.close();
+        });
+    }
+
+    private CompletableFuture<LedgerEntries> readEntriesFromBookiesAsync(long firstEntry,
+                                                                         long lastEntry,
+                                                                         boolean isRecoveryRead) {
         PendingReadOp op = new PendingReadOp(this, clientCtx,
                                              firstEntry, lastEntry, isRecoveryRead);
         if (!clientCtx.isClientClosed()) {
+            ClientMemoryLimiter memoryLimiter = clientCtx.getMemoryLimiter();
+            if (!isRecoveryRead && memoryLimiter.isEnabled()) {
+                // the size of the entries is only known once they are received, so the read is admitted
+                // while the budget has room and charged for its entries as they arrive
+                if (!memoryLimiter.awaitAvailable()) {
+                    op.future().completeExceptionally(BKException.create(BKException.Code.TooManyRequestsException));
+                    return op.future();
+                }
+                op.enableMemoryLimit();
+            }
             // Waiting on the first one.
             // This is not very helpful if there are multiple ensembles or if bookie goes into unresponsive
             // state later after N requests sent.
@@ -1297,6 +1420,10 @@ public class LedgerHandle implements WriteHandle {
         if (throttler != null) {
             throttler.acquire();
         }
+        if (!op.reserveMemory()) {
+            failAddOverMemoryLimit(op, INVALID_ENTRY_ID);
+            return;
+        }
 
         boolean wasClosed = false;
         synchronized (this) {
@@ -1315,6 +1442,7 @@ public class LedgerHandle implements WriteHandle {
         }
 
         if (wasClosed) {
+            op.releaseMemory();
             // make sure the callback is triggered in main worker pool
             try {
                 clientCtx.getMainWorkerPool().executeOrdered(ledgerId, new SafeRunnable() {
@@ -1356,6 +1484,33 @@ public class LedgerHandle implements WriteHandle {
         }
     }
 
+    /**
+     * Fail an add which didn't get the memory of its payload in the client memory budget.
+     */
+    void failAddOverMemoryLimit(final PendingAddOp op, final long entryId) {
+        ReferenceCountUtil.release(op.payload);
+        op.payload = null;
+        // make sure the callback is triggered in main worker pool
+        try {
+            clientCtx.getMainWorkerPool().executeOrdered(ledgerId, new SafeRunnable() {
+                @Override
+                public void safeRun() {
+                    op.cb.addCompleteWithLatency(BKException.Code.TooManyRequestsException,
+                            LedgerHandle.this, entryId, 0, op.ctx);
+                }
+
+                @Override
+                public String toString() {
+                    return String.format("AsyncAddEntryOverMemoryLimit(lid=%d)", ledgerId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            op.cb.addCompleteWithLatency(BookKeeper.getReturnRc(clientCtx.getBookieClient(),
+                                                                BKException.Code.InterruptedException),
+                    LedgerHandle.this, entryId, 0, op.ctx);
+        }
+    }
+
     synchronized void updateLastConfirmed(long lac, long len) {
         if (lac > lastAddConfirmed) {
             lastAddConfirmed = lac;
@@ -225,6 +225,10 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
         if (throttler != null) {
             throttler.acquire();
         }
+        if (!op.reserveMemory()) {
+            failAddOverMemoryLimit(op, op.getEntryId());
+            return;
+        }
 
         boolean wasClosed = false;
         synchronized (this) {
@@ -241,6 +245,7 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
         }
 
         if (wasClosed) {
+            op.releaseMemory();
             // make sure the callback is triggered in main worker pool
             try {
                 clientCtx.getMainWorkerPool().submit(new SafeRunnable() {
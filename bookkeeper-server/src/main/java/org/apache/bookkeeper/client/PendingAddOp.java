@@ -64,6 +64,8 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
     Object ctx;
     long entryId;
     int entryLength;
+    // memory of the payload reserved in the client memory budget
+    int reservedMemory;
 
     DistributionSchedule.AckSet ackSet;
     boolean completed = false;
@@ -129,6 +131,29 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
         return this;
     }
 
+    /**
+     * Reserve the memory of the payload in the client memory budget, recovery adds are not limited.
+     *
+     * @return false if the add has to fail as the budget has no room
+     */
+    boolean reserveMemory() {
+        if (isRecoveryAdd) {
+            return true;
+        }
+        if (!clientCtx.getMemoryLimiter().reserve(entryLength)) {
+            return false;
+        }
+        reservedMemory = entryLength;
+        return true;
+    }
+
+    void releaseMemory() {
+        if (reservedMemory > 0) {
+            clientCtx.getMemoryLimiter().release(reservedMemory);
+            reservedMemory = 0;
+        }
+    }
+
     PendingAddOp allowFailFastOnUnwritableChannel() {
         allowFailFast = true;
         return this;
@@ -492,6 +517,7 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
         if (hasRun && callbackTriggered) {
             ReferenceCountUtil.release(toSend);
             toSend = null;
+            releaseMemory();
         }
         // only recycle a pending add op after it has been run.
         if (hasRun && toSend == null && pendingWriteRequests == 0) {
@@ -506,6 +532,7 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
             ReferenceCountUtil.release(payload);
             payload = null;
         }
+        releaseMemory();
         cb = null;
         ctx = null;
         ensemble = null;
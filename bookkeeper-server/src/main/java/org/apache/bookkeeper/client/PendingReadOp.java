@@ -33,6 +33,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.bookkeeper.client.BKException.BKDigestMatchException;
 import org.apache.bookkeeper.client.api.LedgerEntries;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
@@ -41,6 +42,7 @@ import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
 import org.apache.bookkeeper.common.util.SafeRunnable;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallbackCtx;
 import org.apache.bookkeeper.proto.checksum.DigestManager;
@@ -54,8 +56,12 @@ import org.slf4j.LoggerFactory;
  * This class could be improved because we could start pushing data to the
  * application as soon as it arrives rather than waiting for the whole thing.
  *
+ * <p>When range reads are enabled and every bookie of the ensemble stores all the
+ * entries, contiguous entries are first requested from a single bookie with one
+ * range read request. Entries that are not returned by the range read fall back
+ * to the usual per-entry sequence of replicas.
  */
-class PendingReadOp implements ReadEntryCallback, SafeRunnable {
+class PendingReadOp implements ReadEntryCallback, ReadEntriesCallback, SafeRunnable {
     private static final Logger LOG = LoggerFactory.getLogger(PendingReadOp.class);
 
     private ScheduledFuture<?> speculativeTask = null;
@@ -76,8 +82,12 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
     final boolean isRecoveryRead;
 
     boolean parallelRead = false;
+    boolean rangeReadEnabled;
     final AtomicBoolean complete = new AtomicBoolean(false);
     boolean allowFailFast = false;
+    // whether the received entries are charged to the client memory budget, until the op completes
+    boolean memoryLimited = false;
+    final AtomicLong reservedMemory = new AtomicLong(0);
 
     abstract class LedgerEntryRequest implements SpeculativeRequestExecutor, AutoCloseable {
 
@@ -91,6 +101,8 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         final DistributionSchedule.WriteSet writeSet;
         final LedgerEntryImpl entryImpl;
         final long eId;
+        // the bookie the latest single entry read was sent to
+        volatile BookieId lastSentTo = null;
 
         LedgerEntryRequest(List<BookieId> ensemble, long lId, long eId) {
             this.entryImpl = LedgerEntryImpl.create(lId, eId);
@@ -131,16 +143,39 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
          *         otherwise return false if the read entry is not complete or it is already completed before
          */
         boolean complete(int bookieIndex, BookieId host, final ByteBuf buffer) {
+            return complete(bookieIndex, host, buffer, false);
+        }
+
+        /**
+         * Complete the read request from <i>host</i>.
+         *
+         * @param bookieIndex
+         *          bookie index
+         * @param host
+         *          host that respond the read
+         * @param buffer
+         *          the data buffer
+         * @param digestVerified
+         *          whether the digest of the buffer was already verified, and its reader index moved to the data
+         * @return return true if we managed to complete the entry;
+         *         otherwise return false if the read entry is not complete or it is already completed before
+         */
+        boolean complete(int bookieIndex, BookieId host, final ByteBuf buffer, boolean digestVerified) {
             ByteBuf content;
             if (isComplete()) {
                 return false;
             }
-            try {
-                content = lh.macManager.verifyDigestAndReturnData(eId, buffer);
-            } catch (BKDigestMatchException e) {
-                clientCtx.getClientStats().getReadOpDmCounter().inc();
-                logErrorAndReattemptRead(bookieIndex, host, "Mac mismatch", BKException.Code.DigestMatchException);
-                return false;
+            if (digestVerified) {
+                content = buffer;
+            } else {
+                try {
+                    content = lh.macManager.verifyDigestAndReturnData(eId, buffer);
+                } catch (BKDigestMatchException e) {
+                    clientCtx.getClientStats().getReadOpDmCounter().inc();
+                    logErrorAndReattemptRead(bookieIndex, host, "Mac mismatch",
+                            BKException.Code.DigestMatchException);
+                    return false;
+                }
             }
 
             if (!complete.getAndSet(true)) {
@@ -152,6 +187,9 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
                 entryImpl.setLength(buffer.getLong(DigestManager.METADATA_LENGTH - 8));
                 entryImpl.setEntryBuf(content);
                 writeSet.recycle();
+                if (memoryLimited) {
+                    reserveMemory(content.readableBytes());
+                }
                 return true;
             } else {
                 return false;
@@ -251,6 +289,15 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
             return String.format("L%d-E%d", lh.getId(), eId);
         }
 
+        @Override
+        public long getExpectedLatencyNanos(double percentile) {
+            BookieId bookie = lastSentTo;
+            if (null == bookie) {
+                return -1L;
+            }
+            return lh.getBookiesHealthInfo().getBookieReadLatencyNanos(bookie, percentile);
+        }
+
         /**
          * Issues a speculative request and indicates if more speculative
          * requests should be issued.
@@ -386,6 +433,28 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
             sendNextRead();
         }
 
+        /**
+         * Make the bookie at <i>bookieIndex</i> the first replica of this entry and
+         * record that the entry is being read from it by a range read.
+         *
+         * @param bookieIndex
+         *          bookie index the range read is sent to
+         * @return the bookie the range read is sent to
+         */
+        synchronized BookieId markRangeReadSent(int bookieIndex) {
+            int replica = writeSet.indexOf(bookieIndex);
+            if (replica > 0) {
+                writeSet.moveAndShift(replica, 0);
+            }
+            nextReplicaIndexToReadFrom = 1;
+            sentReplicas.set(0);
+
+            // lastSentTo is left unset, a range read takes longer than the single entry reads of the bookie
+            BookieId to = ensemble.get(bookieIndex);
+            sentToHosts.add(to);
+            return to;
+        }
+
         synchronized BookieId sendNextRead() {
             if (nextReplicaIndexToReadFrom >= getLedgerMetadata().getWriteQuorumSize()) {
                 // we are done, the read has failed from all replicas, just fail the
@@ -402,6 +471,7 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
 
             try {
                 BookieId to = ensemble.get(bookieIndex);
+                lastSentTo = to;
                 sendReadTo(bookieIndex, to, this);
                 sentToHosts.add(to);
                 sentReplicas.set(replica);
@@ -438,8 +508,8 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         }
 
         @Override
-        boolean complete(int bookieIndex, BookieId host, ByteBuf buffer) {
-            boolean completed = super.complete(bookieIndex, host, buffer);
+        boolean complete(int bookieIndex, BookieId host, ByteBuf buffer, boolean digestVerified) {
+            boolean completed = super.complete(bookieIndex, host, buffer, digestVerified);
             if (completed) {
                 int numReplicasTried = getNextReplicaIndexToReadFrom();
                 // Check if any speculative reads were issued and mark any slow bookies before
@@ -468,6 +538,7 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         this.isRecoveryRead = isRecoveryRead;
 
         this.allowFailFast = false;
+        this.rangeReadEnabled = clientCtx.getConf().enableRangeReads && !isRecoveryRead;
         numPendingEntries = endEntryId - startEntryId + 1;
         requiredBookiesMissingEntryForRecovery = getLedgerMetadata().getWriteQuorumSize()
                 - getLedgerMetadata().getAckQuorumSize() + 1;
@@ -479,6 +550,29 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         return future;
     }
 
+    /**
+     * Charge the entries received by this op to the client memory budget, until the op completes.
+     */
+    PendingReadOp enableMemoryLimit() {
+        memoryLimited = true;
+        return this;
+    }
+
+    private void reserveMemory(long size) {
+        clientCtx.getMemoryLimiter().forceReserve(size);
+        reservedMemory.addAndGet(size);
+        // the op may have completed meanwhile, in which case it may not have released this entry
+        if (complete.get()) {
+            releaseMemory();
+        }
+    }
+
+    private void releaseMemory() {
+        if (memoryLimited) {
+            clientCtx.getMemoryLimiter().release(reservedMemory.getAndSet(0));
+        }
+    }
+
     protected LedgerMetadata getLedgerMetadata() {
         return lh.getLedgerMetadata();
     }
@@ -526,11 +620,68 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
             i++;
         } while (i <= endEntryId);
         // read the entries.
-        for (LedgerEntryRequest entry : seq) {
-            entry.read();
-            if (!parallelRead && clientCtx.getConf().readSpeculativeRequestPolicy.isPresent()) {
-                speculativeTask = clientCtx.getConf().readSpeculativeRequestPolicy.get()
-                    .initiateSpeculativeRequest(clientCtx.getScheduler(), entry);
+        List<LedgerEntryRequest> requests = new ArrayList<>(seq);
+        int idx = 0;
+        while (idx < requests.size()) {
+            int numEntries = getRangeReadSize(requests, idx);
+            if (numEntries > 1) {
+                List<SequenceReadRequest> range = new ArrayList<>(numEntries);
+                for (int j = idx; j < idx + numEntries; j++) {
+                    range.add((SequenceReadRequest) requests.get(j));
+                }
+                initiateRangeRead(range);
+            } else {
+                requests.get(idx).read();
+            }
+            for (int j = idx; j < idx + numEntries; j++) {
+                if (!parallelRead && clientCtx.getConf().readSpeculativeRequestPolicy.isPresent()) {
+                    speculativeTask = clientCtx.getConf().readSpeculativeRequestPolicy.get()
+                        .initiateSpeculativeRequest(clientCtx.getScheduler(), requests.get(j));
+                }
+            }
+            idx += numEntries;
+        }
+    }
+
+    /**
+     * Get the number of entries, starting at <i>fromIdx</i>, that can be read with a single range read.
+     *
+     * <p>Entries can only be read together if they belong to the same ensemble and every bookie of the
+     * ensemble stores all the entries, i.e. the ensemble size is equal to the write quorum size, and if the bookie
+     * the range read goes to is not known to reject range reads.
+     */
+    private int getRangeReadSize(List<LedgerEntryRequest> requests, int fromIdx) {
+        if (!rangeReadEnabled || parallelRead) {
+            return 1;
+        }
+        LedgerEntryRequest first = requests.get(fromIdx);
+        if (first.ensemble.size() != getLedgerMetadata().getWriteQuorumSize()
+                || !clientCtx.getBookieClient().isRangeReadSupported(first.ensemble.get(first.writeSet.get(0)))) {
+            return 1;
+        }
+        int maxEntries = Math.max(1, clientCtx.getConf().rangeReadMaxEntries);
+        int numEntries = 1;
+        while (numEntries < maxEntries
+               && fromIdx + numEntries < requests.size()
+               && requests.get(fromIdx + numEntries).ensemble == first.ensemble) {
+            numEntries++;
+        }
+        return numEntries;
+    }
+
+    private void initiateRangeRead(List<SequenceReadRequest> range) {
+        int bookieIndex = range.get(0).writeSet.get(0);
+        BookieId to = null;
+        for (SequenceReadRequest entry : range) {
+            to = entry.markRangeReadSent(bookieIndex);
+        }
+        try {
+            sendRangeReadTo(bookieIndex, to, range);
+        } catch (InterruptedException ie) {
+            LOG.error("Interrupted reading entries {} : ", range, ie);
+            Thread.currentThread().interrupt();
+            for (SequenceReadRequest entry : range) {
+                entry.fail(BKException.Code.InterruptedException);
             }
         }
     }
@@ -563,6 +714,42 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         }
     }
 
+    private static class RangeReadContext implements ReadEntryCallbackCtx {
+        final int bookieIndex;
+        final BookieId to;
+        final List<SequenceReadRequest> entries;
+        long lac = LedgerHandle.INVALID_ENTRY_ID;
+
+        RangeReadContext(int bookieIndex, BookieId to, List<SequenceReadRequest> entries) {
+            this.bookieIndex = bookieIndex;
+            this.to = to;
+            this.entries = entries;
+        }
+
+        @Override
+        public void setLastAddConfirmed(long lac) {
+            this.lac = lac;
+        }
+
+        @Override
+        public long getLastAddConfirmed() {
+            return lac;
+        }
+    }
+
+    void sendRangeReadTo(int bookieIndex, BookieId to, List<SequenceReadRequest> entries)
+            throws InterruptedException {
+        if (lh.throttler != null) {
+            lh.throttler.acquire();
+        }
+
+        long firstEntryId = entries.get(0).eId;
+        long lastEntryId = entries.get(entries.size() - 1).eId;
+        clientCtx.getBookieClient().readEntries(to, lh.ledgerId, firstEntryId, lastEntryId,
+                entries.size(), clientCtx.getConf().rangeReadMaxSizeBytes,
+                this, new RangeReadContext(bookieIndex, to, entries), BookieProtocol.FLAG_NONE, allowFailFast);
+    }
+
     void sendReadTo(int bookieIndex, BookieId to, LedgerEntryRequest entry) throws InterruptedException {
         if (lh.throttler != null) {
             lh.throttler.acquire();
@@ -608,6 +795,83 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         }
     }
 
+    @Override
+    public void readEntriesComplete(int rc, long ledgerId, long firstEntryId, List<ByteBuf> buffers, Object ctx) {
+        final RangeReadContext rctx = (RangeReadContext) ctx;
+
+        if (rc == BKException.Code.IllegalOpException) {
+            // the bookie doesn't support range reads, read the entries one by one. The bookie client remembers it,
+            // the next reads are not sent to the bookie as range reads.
+            for (SequenceReadRequest entry : rctx.entries) {
+                if (entry.isComplete()) {
+                    continue;
+                }
+                try {
+                    sendReadTo(rctx.bookieIndex, rctx.to, entry);
+                } catch (InterruptedException ie) {
+                    LOG.error("Interrupted reading entry {} : ", entry, ie);
+                    Thread.currentThread().interrupt();
+                    entry.fail(BKException.Code.InterruptedException);
+                }
+            }
+            return;
+        }
+
+        if (rc != BKException.Code.OK || buffers.isEmpty()) {
+            if (rc == BKException.Code.OK) {
+                rc = BKException.Code.ReadException;
+            }
+            for (SequenceReadRequest entry : rctx.entries) {
+                if (entry.isComplete()) {
+                    continue;
+                }
+                entry.logErrorAndReattemptRead(rctx.bookieIndex, rctx.to,
+                        "Error: " + BKException.getMessage(rc), rc);
+            }
+            return;
+        }
+
+        heardFromHosts.add(rctx.to);
+        heardFromHostsBitSet.set(rctx.bookieIndex, true);
+
+        int numEntries = Math.min(buffers.size(), rctx.entries.size());
+        // verify the digests of the whole range at once, the entries that don't match are verified again, and
+        // reattempted, one by one
+        int numVerified = lh.macManager.verifyDigestsAndReturnData(rctx.entries.get(0).eId,
+                buffers.subList(0, numEntries));
+        for (int i = 0; i < numEntries; i++) {
+            final LedgerEntryRequest entry = rctx.entries.get(i);
+            final ByteBuf buffer = buffers.get(i);
+            buffer.retain();
+            if (entry.complete(rctx.bookieIndex, rctx.to, buffer, i < numVerified)) {
+                if (!isRecoveryRead) {
+                    // do not advance LastAddConfirmed for recovery reads
+                    lh.updateLastConfirmed(rctx.getLastAddConfirmed(), 0L);
+                }
+                submitCallback(BKException.Code.OK);
+            } else {
+                buffer.release();
+            }
+        }
+
+        if (numEntries < rctx.entries.size()) {
+            // the bookie hit a limit before the end of the range, ask for the remaining entries
+            List<SequenceReadRequest> remaining = rctx.entries.subList(numEntries, rctx.entries.size());
+            if (remaining.stream().allMatch(LedgerEntryRequest::isComplete)) {
+                return;
+            }
+            try {
+                sendRangeReadTo(rctx.bookieIndex, rctx.to, remaining);
+            } catch (InterruptedException ie) {
+                LOG.error("Interrupted reading entries {} : ", remaining, ie);
+                Thread.currentThread().interrupt();
+                for (SequenceReadRequest entry : remaining) {
+                    entry.fail(BKException.Code.InterruptedException);
+                }
+            }
+        }
+    }
+
     protected void submitCallback(int code) {
         if (BKException.Code.OK == code) {
             numPendingEntries--;
@@ -622,6 +886,7 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         }
 
         cancelSpeculativeTask(true);
+        releaseMemory();
 
         long latencyNanos = MathUtils.elapsedNanos(requestTimeNanos);
         if (code != BKException.Code.OK) {
@@ -645,7 +910,11 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
             future.completeExceptionally(BKException.create(code));
         } else {
             clientCtx.getClientStats().getReadOpLogger().registerSuccessfulEvent(latencyNanos, TimeUnit.NANOSECONDS);
-            future.complete(LedgerEntriesImpl.create(Lists.transform(seq, input -> input.entryImpl)));
+            LedgerEntries entries = LedgerEntriesImpl.create(Lists.transform(seq, input -> input.entryImpl));
+            if (!future.complete(entries)) {
+                // the read was cancelled, nobody is going to release the entries
+                entries.close();
+            }
         }
     }
 
@@ -105,6 +105,8 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     static final int UNAVAIL_MASK     = 0x40 << 24;
     static final int MASK_BITS        = 0xFFF << 20;
 
+    static final double READ_LATENCY_REORDER_PERCENTILE = 50.0;
+
     protected HashedWheelTimer timer;
     // Use a loading cache so slow bookies are expired. Use entryId as values.
     protected Cache<BookieId, Long> slowBookies;
@@ -113,6 +115,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     protected boolean enforceDurability = false;
     protected int stabilizePeriodSeconds = 0;
     protected int reorderThresholdPendingRequests = 0;
+    protected boolean reorderReadsByLatency = false;
     // looks like these only assigned in the same thread as constructor, immediately after constructor;
     // no need to make volatile
     protected StatsLogger statsLogger = null;
@@ -285,6 +288,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         if (dnsResolver != null) {
             dnsResolver.setBookieAddressResolver(bookieAddressResolver);
         }
+        reorderReadsByLatency = conf.isReorderReadsByLatencyEnabled();
         slowBookies = CacheBuilder.newBuilder()
             .expireAfterWrite(conf.getBookieFailureHistoryExpirationMSec(), TimeUnit.MILLISECONDS)
             .build(new CacheLoader<BookieId, Long>() {
@@ -803,6 +807,37 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             ensemble, writeSet, writeSetWithRegion, bookiesHealthInfo, false, "", writeSet.size());
     }
 
+    /**
+     * Sort the write set by predicted read latency, i.e. the median of the recent read latencies of the bookies.
+     * The sort is stable and the bookies whose latencies are not known yet are kept first, so that they are tried.
+     *
+     * @return whether the write set was reordered
+     */
+    private boolean reorderByReadLatency(List<BookieId> ensemble,
+                                         DistributionSchedule.WriteSet writeSet,
+                                         BookiesHealthInfo bookiesHealthInfo) {
+        long[] latencies = new long[writeSet.size()];
+        for (int i = 0; i < writeSet.size(); i++) {
+            latencies[i] = bookiesHealthInfo.getBookieReadLatencyNanos(ensemble.get(writeSet.get(i)),
+                    READ_LATENCY_REORDER_PERCENTILE);
+        }
+        boolean reordered = false;
+        for (int i = 1; i < latencies.length; i++) {
+            long latency = latencies[i];
+            int j = i;
+            while (j > 0 && latencies[j - 1] > latency) {
+                latencies[j] = latencies[j - 1];
+                j--;
+            }
+            if (j < i) {
+                latencies[j] = latency;
+                writeSet.moveAndShift(i, j);
+                reordered = true;
+            }
+        }
+        return reordered;
+    }
+
     /**
      * This function orders the read sequence with a given region. For region-unaware policies (e.g.
      * RackAware), we pass in false for regionAware and an empty myRegion. When this happens, any
@@ -862,6 +897,9 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         }
 
         boolean reordered = false;
+        if (reorderReadsByLatency) {
+            reordered = reorderByReadLatency(ensemble, writeSet, bookiesHealthInfo);
+        }
         if (reorderThresholdPendingRequests > 0) {
             // if there are no slow or unavailable bookies, capture each bookie's number of
             // pending request to reorder requests based on a threshold of pending requests
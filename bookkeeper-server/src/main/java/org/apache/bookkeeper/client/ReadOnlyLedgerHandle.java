@@ -291,6 +291,8 @@ class ReadOnlyLedgerHandle extends LedgerHandle implements LedgerMetadataListene
             })
             .thenCompose((ignore) -> closeRecovered())
             .whenComplete((ignore, ex) -> {
+                    // a forced recovery may close the ledger at another entry than the one it was closed at
+                    clientCtx.getEntryCache().invalidate(getId());
                     if (ex != null) {
                         cb.operationComplete(
                                 BKException.getExceptionCode(ex, BKException.Code.UnexpectedConditionException), null);
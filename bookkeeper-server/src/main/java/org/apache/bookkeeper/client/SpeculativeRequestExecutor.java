@@ -39,4 +39,15 @@ public interface SpeculativeRequestExecutor {
      * @return whether more speculative requests should be issued
      */
     ListenableFuture<Boolean> issueSpeculativeRequest();
+
+    /**
+     * Get a percentile of the recent latencies of the bookie the latest request was sent to, i.e. the expected
+     * latency of the outstanding request.
+     *
+     * @param percentile the percentile, in (0, 100]
+     * @return the latency in nanoseconds, or -1 if it is not known
+     */
+    default long getExpectedLatencyNanos(double percentile) {
+        return -1L;
+    }
 }
@@ -159,6 +159,37 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
     )
     private final Counter writeTimedOutDueToNotEnoughFaultDomains;
 
+    @StatsDoc(
+        name = MEMORY_LIMIT_WAIT,
+        help = "The latency distribution of waiting for the client memory budget, by adds and reads which found it"
+            + " exhausted. Failed events are requests rejected because no memory was released in time"
+    )
+    private final OpStatsLogger memoryLimitWaitStats;
+    @StatsDoc(
+        name = ENTRY_CACHE_HITS,
+        help = "The number of entries read from the client entry cache"
+    )
+    private final Counter entryCacheHitsCounter;
+    @StatsDoc(
+        name = ENTRY_CACHE_MISSES,
+        help = "The number of entries read from the bookies because they were not in the client entry cache"
+    )
+    private final Counter entryCacheMissesCounter;
+    @StatsDoc(
+        name = ENTRY_CACHE_READ_AHEAD,
+        help = "The number of entries read ahead of sequential readers into the client entry cache"
+    )
+    private final Counter entryCacheReadAheadCounter;
+    @StatsDoc(
+        name = LEDGER_METADATA_CACHE_HITS,
+        help = "The number of ledger metadata reads served from the client ledger metadata cache"
+    )
+    private final Counter ledgerMetadataCacheHitsCounter;
+    @StatsDoc(
+        name = LEDGER_METADATA_CACHE_MISSES,
+        help = "The number of ledger metadata reads sent to the metadata store because the metadata was not cached"
+    )
+    private final Counter ledgerMetadataCacheMissesCounter;
 
     public BookKeeperClientStatsImpl(StatsLogger stats) {
         this.stats = stats;
@@ -190,6 +221,12 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         this.writeDelayedDueToNotEnoughFaultDomains = stats.getCounter(WRITE_DELAYED_DUE_TO_NOT_ENOUGH_FAULT_DOMAINS);
         this.writeTimedOutDueToNotEnoughFaultDomains =
                 stats.getCounter(WRITE_TIMED_OUT_DUE_TO_NOT_ENOUGH_FAULT_DOMAINS);
+        this.memoryLimitWaitStats = stats.getOpStatsLogger(MEMORY_LIMIT_WAIT);
+        this.entryCacheHitsCounter = stats.getCounter(ENTRY_CACHE_HITS);
+        this.entryCacheMissesCounter = stats.getCounter(ENTRY_CACHE_MISSES);
+        this.entryCacheReadAheadCounter = stats.getCounter(ENTRY_CACHE_READ_AHEAD);
+        this.ledgerMetadataCacheHitsCounter = stats.getCounter(LEDGER_METADATA_CACHE_HITS);
+        this.ledgerMetadataCacheMissesCounter = stats.getCounter(LEDGER_METADATA_CACHE_MISSES);
     }
 
     @Override
@@ -292,4 +329,40 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
     public void registerPendingAddsGauge(Gauge<Integer> gauge) {
         stats.registerGauge(PENDING_ADDS, gauge);
     }
+    @Override
+    public OpStatsLogger getMemoryLimitWaitLogger() {
+        return memoryLimitWaitStats;
+    }
+    @Override
+    public void registerMemoryUsageGauge(Gauge<Long> gauge) {
+        stats.registerGauge(MEMORY_LIMIT_USAGE, gauge);
+    }
+    @Override
+    public Counter getEntryCacheHitsCounter() {
+        return entryCacheHitsCounter;
+    }
+    @Override
+    public Counter getEntryCacheMissesCounter() {
+        return entryCacheMissesCounter;
+    }
+    @Override
+    public Counter getEntryCacheReadAheadCounter() {
+        return entryCacheReadAheadCounter;
+    }
+    @Override
+    public void registerEntryCacheSizeGauge(Gauge<Long> gauge) {
+        stats.registerGauge(ENTRY_CACHE_SIZE, gauge);
+    }
+    @Override
+    public Counter getLedgerMetadataCacheHitsCounter() {
+        return ledgerMetadataCacheHitsCounter;
+    }
+    @Override
+    public Counter getLedgerMetadataCacheMissesCounter() {
+        return ledgerMetadataCacheMissesCounter;
+    }
+    @Override
+    public void registerLedgerMetadataCacheSizeGauge(Gauge<Long> gauge) {
+        stats.registerGauge(LEDGER_METADATA_CACHE_SIZE, gauge);
+    }
 }
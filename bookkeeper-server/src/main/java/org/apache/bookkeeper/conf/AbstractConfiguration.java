@@ -91,6 +91,7 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     protected static final String STORE_SYSTEMTIME_AS_LEDGER_CREATION_TIME = "storeSystemTimeAsLedgerCreationTime";
 
     protected static final String ENABLE_BUSY_WAIT = "enableBusyWait";
+    protected static final String ENABLE_IO_URING = "enableIoUring";
 
     // Metastore settings, only being used when LEDGER_MANAGER_FACTORY_CLASS is MSLedgerManagerFactory
     protected static final String METASTORE_IMPL_CLASS = "metastoreImplClass";
@@ -144,6 +145,9 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     //Netty configuration
     protected static final String NETTY_MAX_FRAME_SIZE = "nettyMaxFrameSizeBytes";
     protected static final int DEFAULT_NETTY_MAX_FRAME_SIZE = 5 * 1024 * 1024; // 5MB
+    protected static final String NETTY_FLUSH_CONSOLIDATION_ENABLED = "nettyFlushConsolidationEnabled";
+    protected static final String NETTY_FLUSH_CONSOLIDATION_MAX_PENDING_FLUSHES =
+            "nettyFlushConsolidationMaxPendingFlushes";
 
     // Zookeeper ACL settings
     protected static final String ZK_ENABLE_SECURITY = "zkEnableSecurity";
@@ -719,6 +723,61 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
         return getThis();
     }
 
+    /**
+     * Return whether the flushes of the netty channels are consolidated.
+     *
+     * @return whether the flushes are consolidated
+     * @see #setNettyFlushConsolidationEnabled(boolean)
+     */
+    public boolean isNettyFlushConsolidationEnabled() {
+        return getBoolean(NETTY_FLUSH_CONSOLIDATION_ENABLED, false);
+    }
+
+    /**
+     * Enable the consolidation of the flushes of the netty channels.
+     *
+     * <p>When enabled, the flushes of the messages written while the channel is reading are
+     * delayed until the read is complete, and the flushes of the messages written from other
+     * threads are delayed to the next run of the event loop of the channel. So the messages
+     * written in the same event loop iteration are sent with a single system call.
+     *
+     * <p>Default is false.
+     *
+     * @param enabled
+     *          whether to consolidate the flushes
+     * @return configuration object.
+     */
+    public T setNettyFlushConsolidationEnabled(boolean enabled) {
+        setProperty(NETTY_FLUSH_CONSOLIDATION_ENABLED, enabled);
+        return getThis();
+    }
+
+    /**
+     * Get the maximum number of flushes delayed on a netty channel before flushing anyway.
+     *
+     * @return the maximum number of delayed flushes
+     * @see #setNettyFlushConsolidationMaxPendingFlushes(int)
+     */
+    public int getNettyFlushConsolidationMaxPendingFlushes() {
+        return getInt(NETTY_FLUSH_CONSOLIDATION_MAX_PENDING_FLUSHES, 256);
+    }
+
+    /**
+     * Set the maximum number of flushes delayed on a netty channel before flushing anyway,
+     * which bounds the latency added by the consolidation of the flushes.
+     *
+     * <p>Default is 256.
+     *
+     * @param maxPendingFlushes
+     *          the maximum number of delayed flushes
+     * @return configuration object.
+     * @see #setNettyFlushConsolidationEnabled(boolean)
+     */
+    public T setNettyFlushConsolidationMaxPendingFlushes(int maxPendingFlushes) {
+        setProperty(NETTY_FLUSH_CONSOLIDATION_MAX_PENDING_FLUSHES, maxPendingFlushes);
+        return getThis();
+    }
+
     /**
      * Get the security provider factory class name. If this returns null, no security will be enforced on the channel.
      *
@@ -1140,6 +1199,37 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
         return getThis();
     }
 
+    /**
+     * Return whether the Netty io_uring transport is enabled.
+     *
+     * <p>Default is false
+     *
+     * @return the value of the option
+     */
+    public boolean isIoUringEnabled() {
+        return getBoolean(ENABLE_IO_URING, false);
+    }
+
+    /**
+     * Option to use the Netty io_uring transport instead of Epoll for the network IO.
+     *
+     * <p>The io_uring transport is not known to be faster than Epoll for the bookie workloads, compare both with
+     * {@code BenchThroughputLatency -iouring} before enabling it. It requires Linux 5.9 or later and the
+     * <i>netty-incubator-transport-native-io_uring</i> jar on the classpath, otherwise the Epoll transport is used.
+     * It is not used either if busy-wait is enabled.
+     *
+     * <p>Default is false.
+     *
+     * @param ioUringEnabled
+     *            whether to use the io_uring transport
+     * @return configuration object.
+     * @see #isIoUringEnabled()
+     */
+    public T setIoUringEnabled(boolean ioUringEnabled) {
+        setProperty(ENABLE_IO_URING, ioUringEnabled);
+        return getThis();
+    }
+
     /**
      * Return the flag indicating whether to limit stats logging.
      *
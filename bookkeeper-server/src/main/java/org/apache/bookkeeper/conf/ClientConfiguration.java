@@ -107,6 +107,7 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String MAX_SPECULATIVE_READ_TIMEOUT = "maxSpeculativeReadTimeout";
     protected static final String SPECULATIVE_READ_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadTimeoutBackoffMultiplier";
+    protected static final String SPECULATIVE_READ_LATENCY_PERCENTILE = "speculativeReadLatencyPercentile";
     protected static final String FIRST_SPECULATIVE_READ_LAC_TIMEOUT = "firstSpeculativeReadLACTimeout";
     protected static final String MAX_SPECULATIVE_READ_LAC_TIMEOUT = "maxSpeculativeReadLACTimeout";
     protected static final String SPECULATIVE_READ_LAC_TIMEOUT_BACKOFF_MULTIPLIER =
@@ -115,10 +116,19 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String RECOVERY_READ_BATCH_SIZE = "recoveryReadBatchSize";
     protected static final String REORDER_READ_SEQUENCE_ENABLED = "reorderReadSequenceEnabled";
     protected static final String STICKY_READS_ENABLED = "stickyReadSEnabled";
+    protected static final String RANGE_READ_ENABLED = "rangeReadEnabled";
+    protected static final String RANGE_READ_MAX_ENTRIES = "rangeReadMaxEntries";
+    protected static final String RANGE_READ_MAX_SIZE_BYTES = "rangeReadMaxSizeBytes";
+    protected static final String ENTRY_CACHE_SIZE_BYTES = "entryCacheSizeBytes";
+    protected static final String ENTRY_CACHE_READ_AHEAD_ENTRIES = "entryCacheReadAheadEntries";
+    protected static final String LEDGER_METADATA_CACHE_MAX_ENTRIES = "ledgerMetadataCacheMaxEntries";
     // Add Parameters
     protected static final String OPPORTUNISTIC_STRIPING = "opportunisticStriping";
     protected static final String DELAY_ENSEMBLE_CHANGE = "delayEnsembleChange";
     protected static final String MAX_ALLOWED_ENSEMBLE_CHANGES = "maxNumEnsembleChanges";
+    protected static final String RANGE_ADD_ENABLED = "rangeAddEnabled";
+    protected static final String RANGE_ADD_MAX_ENTRIES = "rangeAddMaxEntries";
+    protected static final String RANGE_ADD_MAX_SIZE_BYTES = "rangeAddMaxSizeBytes";
     // Timeout Setting
     protected static final String ADD_ENTRY_TIMEOUT_SEC = "addEntryTimeoutSec";
     protected static final String ADD_ENTRY_QUORUM_TIMEOUT_SEC = "addEntryQuorumTimeoutSec";
@@ -132,6 +142,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String TIMEOUT_TIMER_NUM_TICKS = "timeoutTimerNumTicks";
     // backpressure configuration
     protected static final String WAIT_TIMEOUT_ON_BACKPRESSURE = "waitTimeoutOnBackpressureMs";
+    protected static final String CLIENT_MEMORY_LIMIT_BYTES = "clientMemoryLimitBytes";
+    protected static final String CLIENT_MEMORY_LIMIT_WAIT_TIMEOUT_MS = "clientMemoryLimitWaitTimeoutMs";
 
     // Bookie health check settings
     protected static final String BOOKIE_HEALTH_CHECK_ENABLED = "bookieHealthCheckEnabled";
@@ -158,6 +170,7 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     public static final String ENSEMBLE_PLACEMENT_POLICY = "ensemblePlacementPolicy";
     protected static final String NETWORK_TOPOLOGY_STABILIZE_PERIOD_SECONDS = "networkTopologyStabilizePeriodSeconds";
     protected static final String READ_REORDER_THRESHOLD_PENDING_REQUESTS = "readReorderThresholdPendingRequests";
+    protected static final String READ_REORDER_BY_LATENCY = "readReorderByLatency";
     protected static final String ENSEMBLE_PLACEMENT_POLICY_ORDER_SLOW_BOOKIES =
         "ensemblePlacementPolicyOrderSlowBookies";
 
@@ -835,6 +848,61 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the memory budget, in bytes, shared by the payloads of the pending adds and the entries received by the
+     * pending reads of the client.
+     *
+     * <p>Once the budget is exhausted, new adds and reads wait for memory to be released, see
+     * {@link #getClientMemoryLimitWaitTimeoutMillis()}. Recovery adds and reads are not limited.
+     *
+     * @return the memory budget in bytes, 0 or a negative value disables it. Default is 0 (disabled)
+     */
+    public long getClientMemoryLimitBytes() {
+        return getLong(CLIENT_MEMORY_LIMIT_BYTES, 0);
+    }
+
+    /**
+     * Set the memory budget, in bytes, shared by the payloads of the pending adds and the entries received by the
+     * pending reads of the client.
+     *
+     * @param limitBytes
+     *        the memory budget in bytes, 0 or a negative value disables it
+     * @return client configuration.
+     */
+    public ClientConfiguration setClientMemoryLimitBytes(long limitBytes) {
+        setProperty(CLIENT_MEMORY_LIMIT_BYTES, limitBytes);
+        return this;
+    }
+
+    /**
+     * Timeout controlling how long adds and reads wait for memory when the client memory budget is exhausted,
+     * before failing with {@link org.apache.bookkeeper.client.BKException.Code#TooManyRequestsException}.
+     *
+     * <p>The wait happens in the thread adding or reading entries, which should not be a thread completing the
+     * requests of the client.
+     *
+     * @return timeout value
+     *        negative value to wait until memory is available
+     *        0 to allow request to fail immediately
+     *        Default is -1 (wait until memory is available)
+     */
+    public long getClientMemoryLimitWaitTimeoutMillis() {
+        return getLong(CLIENT_MEMORY_LIMIT_WAIT_TIMEOUT_MS, -1);
+    }
+
+    /**
+     * Timeout controlling how long adds and reads wait for memory when the client memory budget is exhausted.
+     *
+     * @param timeoutMillis
+     *        negative value to wait until memory is available
+     *        0 to allow request to fail immediately
+     * @return client configuration.
+     */
+    public ClientConfiguration setClientMemoryLimitWaitTimeoutMillis(long timeoutMillis) {
+        setProperty(CLIENT_MEMORY_LIMIT_WAIT_TIMEOUT_MS, timeoutMillis);
+        return this;
+    }
+
     /**
      * Get the number of worker threads. This is the number of
      * worker threads used by bookkeeper client to submit operations.
@@ -1014,6 +1082,35 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the percentile of the recent read latencies of a bookie after which a speculative read is sent to
+     * another bookie. If &lt;= zero, this feature is turned off and speculative reads are sent after
+     * {@link #getFirstSpeculativeReadTimeout()}, backing off up to {@link #getMaxSpeculativeReadTimeout()}.
+     *
+     * <p>When turned on, a speculative read is sent once the outstanding read took longer than this percentile of
+     * the latencies of its bookie, bounded by {@link #getMaxSpeculativeReadTimeout()}. The first speculative read
+     * timeout is used for the bookies whose latencies are not known yet. Speculative reads must be enabled, with a
+     * first speculative read timeout greater than zero.
+     *
+     * @return the percentile of the read latencies of a bookie after which a speculative read is sent.
+     */
+    public double getSpeculativeReadLatencyPercentile() {
+        return getDouble(SPECULATIVE_READ_LATENCY_PERCENTILE, 0);
+    }
+
+    /**
+     * Set the percentile of the recent read latencies of a bookie after which a speculative read is sent to
+     * another bookie, e.g. 95. If zero, this feature is turned off.
+     *
+     * @param percentile
+     *          the percentile of the read latencies of a bookie after which a speculative read is sent.
+     * @return client configuration.
+     */
+    public ClientConfiguration setSpeculativeReadLatencyPercentile(double percentile) {
+        setProperty(SPECULATIVE_READ_LATENCY_PERCENTILE, percentile);
+        return this;
+    }
+
     /**
      * Get the period of time after which the first speculative read last add confirmed and entry
      * should be triggered.
@@ -1174,6 +1271,155 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * If range reads are enabled or not.
+     *
+     * @return true if range reads are enabled, otherwise false.
+     */
+    public boolean isRangeReadEnabled() {
+        return getBoolean(RANGE_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable reading contiguous entries with a single range read request.
+     *
+     * <p>If this flag is enabled, and every bookie of an ensemble stores all the entries
+     * (ensemble size == write quorum size), the client will read a sequence of entries from
+     * one bookie using a single <i>RANGE_READ_ENTRY</i> request instead of one request per entry.
+     * Bookies that do not support range reads are handled by falling back to single entry reads.
+     *
+     * <p>Range reads are only available with the v3 wire protocol.
+     *
+     * @param enabled the flag to enable/disable range reads.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setRangeReadEnabled(boolean enabled) {
+        setProperty(RANGE_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the max number of entries requested by a single range read request.
+     *
+     * @return the max number of entries per range read request.
+     */
+    public int getRangeReadMaxEntries() {
+        return getInt(RANGE_READ_MAX_ENTRIES, 100);
+    }
+
+    /**
+     * Set the max number of entries requested by a single range read request.
+     *
+     * @param maxEntries the max number of entries per range read request.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setRangeReadMaxEntries(int maxEntries) {
+        setProperty(RANGE_READ_MAX_ENTRIES, maxEntries);
+        return this;
+    }
+
+    /**
+     * Get the max total size, in bytes, of the entries returned by a single range read response.
+     *
+     * @return the max size in bytes of a range read response.
+     */
+    public long getRangeReadMaxSizeBytes() {
+        return getLong(RANGE_READ_MAX_SIZE_BYTES, 1024 * 1024);
+    }
+
+    /**
+     * Set the max total size, in bytes, of the entries returned by a single range read response.
+     *
+     * <p>The bookie always returns at least one entry, and caps the response with its own
+     * max frame size.
+     *
+     * @param maxSizeBytes the max size in bytes of a range read response.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setRangeReadMaxSizeBytes(long maxSizeBytes) {
+        setProperty(RANGE_READ_MAX_SIZE_BYTES, maxSizeBytes);
+        return this;
+    }
+
+    /**
+     * Get the size, in bytes, of the entry cache of the client.
+     *
+     * <p>The entry cache is shared by all the ledger handles of the client. It keeps, in direct memory, the
+     * confirmed entries read from the bookies, so that readers of the same ledgers are served without reading them
+     * again from the bookies. When it is full, the oldest entries are evicted. Recovery reads bypass it.
+     *
+     * @return the size of the entry cache in bytes, 0 disables it. Default is 0 (disabled)
+     */
+    public long getEntryCacheSizeBytes() {
+        return getLong(ENTRY_CACHE_SIZE_BYTES, 0);
+    }
+
+    /**
+     * Set the size, in bytes, of the entry cache of the client.
+     *
+     * @param sizeBytes
+     *        the size of the entry cache in bytes, 0 disables it
+     * @return client configuration.
+     * @see #getEntryCacheSizeBytes()
+     */
+    public ClientConfiguration setEntryCacheSizeBytes(long sizeBytes) {
+        setProperty(ENTRY_CACHE_SIZE_BYTES, sizeBytes);
+        return this;
+    }
+
+    /**
+     * Get the number of entries read ahead into the entry cache for sequential readers.
+     *
+     * <p>Once a ledger handle reads entries right after the ones it read previously, the following entries, up to
+     * the last add confirmed, are read in the background into the entry cache. It only applies if the entry cache is
+     * enabled.
+     *
+     * @return the number of entries read ahead, 0 disables the read-ahead. Default is 100
+     * @see #getEntryCacheSizeBytes()
+     */
+    public int getEntryCacheReadAheadEntries() {
+        return getInt(ENTRY_CACHE_READ_AHEAD_ENTRIES, 100);
+    }
+
+    /**
+     * Set the number of entries read ahead into the entry cache for sequential readers.
+     *
+     * @param numEntries
+     *        the number of entries read ahead, 0 disables the read-ahead
+     * @return client configuration.
+     * @see #getEntryCacheReadAheadEntries()
+     */
+    public ClientConfiguration setEntryCacheReadAheadEntries(int numEntries) {
+        setProperty(ENTRY_CACHE_READ_AHEAD_ENTRIES, numEntries);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of ledgers whose metadata is cached by the client.
+     *
+     * <p>The client caches the metadata of the closed ledgers and of the ledgers it watches, so that opening them
+     * again does not read their metadata from the metadata store. The cached metadata is kept up to date by ledger
+     * metadata listeners. When the cache is full, the least recently used ledgers are evicted.
+     *
+     * @return the maximum number of ledgers whose metadata is cached, 0 disables the cache. Default is 0 (disabled)
+     */
+    public long getLedgerMetadataCacheMaxEntries() {
+        return getLong(LEDGER_METADATA_CACHE_MAX_ENTRIES, 0);
+    }
+
+    /**
+     * Set the maximum number of ledgers whose metadata is cached by the client.
+     *
+     * @param maxEntries
+     *        the maximum number of ledgers whose metadata is cached, 0 disables the cache
+     * @return client configuration.
+     * @see #getLedgerMetadataCacheMaxEntries()
+     */
+    public ClientConfiguration setLedgerMetadataCacheMaxEntries(long maxEntries) {
+        setProperty(LEDGER_METADATA_CACHE_MAX_ENTRIES, maxEntries);
+        return this;
+    }
+
     /**
      * Get Ensemble Placement Policy Class.
      *
@@ -1222,6 +1468,31 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether reads are sent first to the bookies with the lowest recent read latency. The latencies are tracked
+     * per bookie by the client, the bookies whose latencies are not known yet are tried first.
+     *
+     * <p>Reads are reordered by the rack and region aware placement policies, when
+     * {@link #isReorderReadSequenceEnabled()}.
+     *
+     * @return true if reads are reordered by latency of the bookies.
+     */
+    public boolean isReorderReadsByLatencyEnabled() {
+        return getBoolean(READ_REORDER_BY_LATENCY, false);
+    }
+
+    /**
+     * Enable or disable sending reads first to the bookies with the lowest recent read latency.
+     *
+     * @param enabled
+     *            whether to reorder reads by latency of the bookies.
+     * @return client configuration.
+     */
+    public ClientConfiguration setReorderReadsByLatencyEnabled(boolean enabled) {
+        setProperty(READ_REORDER_BY_LATENCY, enabled);
+        return this;
+    }
+
     /**
      * Get the network topology stabilize period in seconds. if it is zero, this feature is turned off.
      *
@@ -1903,6 +2174,75 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * If range adds are enabled or not.
+     *
+     * @return true if range adds are enabled, otherwise false.
+     */
+    public boolean isRangeAddEnabled() {
+        return getBoolean(RANGE_ADD_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable sending consecutive entries with a single range add request.
+     *
+     * <p>If this flag is enabled, the consecutive entries of a ledger added to a bookie while a previous
+     * batch is being flushed on the connection are sent with a single <i>RANGE_ADD_ENTRY</i> request instead
+     * of one request per entry. Bookies that do not support range adds are handled by falling back to single
+     * entry adds.
+     *
+     * <p>Range adds are only available with the v3 wire protocol.
+     *
+     * @param enabled the flag to enable/disable range adds.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setRangeAddEnabled(boolean enabled) {
+        setProperty(RANGE_ADD_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the max number of entries sent by a single range add request.
+     *
+     * @return the max number of entries per range add request.
+     */
+    public int getRangeAddMaxEntries() {
+        return getInt(RANGE_ADD_MAX_ENTRIES, 100);
+    }
+
+    /**
+     * Set the max number of entries sent by a single range add request.
+     *
+     * @param maxEntries the max number of entries per range add request.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setRangeAddMaxEntries(int maxEntries) {
+        setProperty(RANGE_ADD_MAX_ENTRIES, maxEntries);
+        return this;
+    }
+
+    /**
+     * Get the max total size, in bytes, of the entries sent by a single range add request.
+     *
+     * @return the max size in bytes of a range add request.
+     */
+    public long getRangeAddMaxSizeBytes() {
+        return getLong(RANGE_ADD_MAX_SIZE_BYTES, 1024 * 1024);
+    }
+
+    /**
+     * Set the max total size, in bytes, of the entries sent by a single range add request.
+     *
+     * <p>A request always holds at least one entry, so entries larger than this size are sent alone.
+     *
+     * @param maxSizeBytes the max size in bytes of a range add request.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setRangeAddMaxSizeBytes(long maxSizeBytes) {
+        setProperty(RANGE_ADD_MAX_SIZE_BYTES, maxSizeBytes);
+        return this;
+    }
+
     /**
      * Option to use Netty Pooled ByteBufs.
      *
@@ -91,6 +91,8 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         .build();
 
     protected static final String ENTRY_LOG_FILE_PREALLOCATION_ENABLED = "entryLogFilePreallocationEnabled";
+    protected static final String ENTRY_LOG_MMAP_READ_ENABLED = "entryLogMmapReadEnabled";
+    protected static final String ENTRY_LOG_MMAP_MAX_BYTES = "entryLogMmapMaxBytes";
 
 
     protected static final String FORCE_ALLOW_COMPACTION = "forceAllowCompaction";
@@ -112,6 +114,8 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String GC_OVERREPLICATED_LEDGER_WAIT_TIME = "gcOverreplicatedLedgerWaitTime";
     protected static final String USE_TRANSACTIONAL_COMPACTION = "useTransactionalCompaction";
     protected static final String VERIFY_METADATA_ON_GC = "verifyMetadataOnGC";
+    protected static final String GC_ENTRYLOG_METADATA_CACHE_ENABLED = "gcEntryLogMetadataCacheEnabled";
+    protected static final String GC_ENTRYLOG_METADATA_CACHE_PATH = "gcEntryLogMetadataCachePath";
     // Scrub Parameters
     protected static final String LOCAL_SCRUB_PERIOD = "localScrubInterval";
     protected static final String LOCAL_SCRUB_RATE_LIMIT = "localScrubRateLimit";
@@ -134,10 +138,12 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_WRITE_DATA = "journalWriteData";
     protected static final String JOURNAL_ADAPTIVE_GROUP_WRITES = "journalAdaptiveGroupWrites";
     protected static final String JOURNAL_MAX_GROUP_WAIT_MSEC = "journalMaxGroupWaitMSec";
+    protected static final String JOURNAL_ADAPTIVE_GROUP_WAIT_ENABLED = "journalAdaptiveGroupWaitEnabled";
     protected static final String JOURNAL_BUFFERED_WRITES_THRESHOLD = "journalBufferedWritesThreshold";
     protected static final String JOURNAL_BUFFERED_ENTRIES_THRESHOLD = "journalBufferedEntriesThreshold";
     protected static final String JOURNAL_FLUSH_WHEN_QUEUE_EMPTY = "journalFlushWhenQueueEmpty";
     protected static final String JOURNAL_REMOVE_FROM_PAGE_CACHE = "journalRemoveFromPageCache";
+    protected static final String JOURNAL_DIRECT_IO_ENABLED = "journalDirectIOEnabled";
     protected static final String JOURNAL_PRE_ALLOC_SIZE = "journalPreAllocSizeMB";
     protected static final String JOURNAL_WRITE_BUFFER_SIZE = "journalWriteBufferSizeKB";
     protected static final String JOURNAL_ALIGNMENT_SIZE = "journalAlignmentSize";
@@ -211,6 +217,11 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String NUM_LONG_POLL_WORKER_THREADS = "numLongPollWorkerThreads";
     protected static final String NUM_HIGH_PRIORITY_WORKER_THREADS = "numHighPriorityWorkerThreads";
     protected static final String READ_WORKER_THREADS_THROTTLING_ENABLED = "readWorkerThreadsThrottlingEnabled";
+    protected static final String WORKER_THREADS_WORK_STEALING_ENABLED = "workerThreadsWorkStealingEnabled";
+    protected static final String READ_WORKER_VIRTUAL_THREADS_ENABLED = "readWorkerVirtualThreadsEnabled";
+    protected static final String READ_WORKER_VIRTUAL_THREADS_MAX_CONCURRENCY =
+            "readWorkerVirtualThreadsMaxConcurrency";
+    protected static final String READ_ENTRY_FILE_REGION_MIN_SIZE = "readEntryFileRegionMinSize";
 
     // Long poll parameters
     protected static final String REQUEST_TIMER_TICK_DURATION_MILLISEC = "requestTimerTickDurationMs";
@@ -361,6 +372,49 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Are entries read from the rotated entry logs through memory mappings of the log files.
+     *
+     * @return whether memory mapped reads of entry logs are enabled or not.
+     */
+    public boolean isEntryLogMmapReadEnabled() {
+        return this.getBoolean(ENTRY_LOG_MMAP_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable reading entries from the rotated entry logs through memory mappings.
+     *
+     * @param enabled
+     *          enable/disable memory mapped reads of entry logs.
+     * @return server configuration object.
+     */
+    public ServerConfiguration setEntryLogMmapReadEnabled(boolean enabled) {
+        this.setProperty(ENTRY_LOG_MMAP_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the max total size of the entry logs which are kept mapped when memory mapped reads are
+     * enabled. The least recently used mappings are dropped above this size. Default is 4GB.
+     *
+     * @return max size of the mapped entry logs, in bytes.
+     */
+    public long getEntryLogMmapMaxBytes() {
+        return this.getLong(ENTRY_LOG_MMAP_MAX_BYTES, 4L * 1024 * 1024 * 1024);
+    }
+
+    /**
+     * Set the max total size of the entry logs which are kept mapped.
+     *
+     * @param maxBytes
+     *          max size of the mapped entry logs, in bytes.
+     * @return server configuration object.
+     */
+    public ServerConfiguration setEntryLogMmapMaxBytes(long maxBytes) {
+        this.setProperty(ENTRY_LOG_MMAP_MAX_BYTES, maxBytes);
+        return this;
+    }
+
     /**
      * Get Garbage collection wait time. Default value is 10 minutes.
      * The guideline is not to set a too low value for this, if using zookeeper based
@@ -450,6 +504,51 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get whether the garbage collector keeps the entry log metadata in a persistent,
+     * off-heap store instead of an in-memory map.
+     *
+     * @return true if the entry log metadata cache is enabled
+     */
+    public boolean isGcEntryLogMetadataCacheEnabled() {
+        return this.getBoolean(GC_ENTRYLOG_METADATA_CACHE_ENABLED, false);
+    }
+
+    /**
+     * Set whether the garbage collector keeps the entry log metadata in a persistent,
+     * off-heap store (RocksDB) instead of an in-memory map. The persisted metadata
+     * also avoids re-scanning all the entry logs after a bookie restart.
+     *
+     * @param gcEntryLogMetadataCacheEnabled
+     * @return server configuration
+     */
+    public ServerConfiguration setGcEntryLogMetadataCacheEnabled(boolean gcEntryLogMetadataCacheEnabled) {
+        this.setProperty(GC_ENTRYLOG_METADATA_CACHE_ENABLED, gcEntryLogMetadataCacheEnabled);
+        return this;
+    }
+
+    /**
+     * Get the directory where the entry log metadata cache is stored. If not set, the cache
+     * is stored in the first ledger directory used by the entry logger.
+     *
+     * @return entry log metadata cache path, or null to use the ledger directory
+     */
+    public String getGcEntryLogMetadataCachePath() {
+        return this.getString(GC_ENTRYLOG_METADATA_CACHE_PATH, null);
+    }
+
+    /**
+     * Set the directory where the entry log metadata cache is stored. Each ledger directory
+     * gets its own sub-directory under this path.
+     *
+     * @param gcEntryLogMetadataCachePath
+     * @return server configuration
+     */
+    public ServerConfiguration setGcEntryLogMetadataCachePath(String gcEntryLogMetadataCachePath) {
+        this.setProperty(GC_ENTRYLOG_METADATA_CACHE_PATH, gcEntryLogMetadataCachePath);
+        return this;
+    }
+
     /**
      * Get whether local scrub is enabled.
      *
@@ -1862,6 +1961,115 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getBoolean(READ_WORKER_THREADS_THROTTLING_ENABLED, true);
     }
 
+    /**
+     * Enable work stealing in the worker thread pools.
+     *
+     * <p>By default, the requests of a ledger are always handled by the same worker
+     * thread, so a few busy ledgers on the same thread can saturate it while the other
+     * threads are idle. With work stealing, the idle threads take over the ledgers
+     * queued on the busy threads, while the requests of a ledger are still handled
+     * in order. It is not supported with busy-wait.
+     *
+     * @param enabled
+     *          whether to enable work stealing in the worker thread pools
+     * @return server configuration
+     */
+    public ServerConfiguration setWorkerThreadsWorkStealingEnabled(boolean enabled) {
+        setProperty(WORKER_THREADS_WORK_STEALING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get whether work stealing is enabled in the worker thread pools.
+     *
+     * @return true if work stealing is enabled in the worker thread pools, default is false.
+     * @see #setWorkerThreadsWorkStealingEnabled(boolean)
+     */
+    public boolean isWorkerThreadsWorkStealingEnabled() {
+        return getBoolean(WORKER_THREADS_WORK_STEALING_ENABLED, false);
+    }
+
+    /**
+     * Process the read and long poll requests on virtual threads.
+     *
+     * <p>A read blocked on the disk then only holds a virtual thread, so the number of
+     * reads in flight is bounded by {@link #getReadWorkerVirtualThreadsMaxConcurrency()}
+     * instead of the number of read worker threads, and no long poll threads are
+     * needed. The high priority reads still run on the high priority threads, or on
+     * the I/O threads when there are none. It requires Java 21 or later, otherwise
+     * the read worker threads are used.
+     *
+     * <p>Unlike the read worker threads, the virtual threads don't process the reads
+     * of a ledger in order.
+     *
+     * @param enabled
+     *          whether to process the reads on virtual threads
+     * @return server configuration
+     */
+    public ServerConfiguration setReadWorkerVirtualThreadsEnabled(boolean enabled) {
+        setProperty(READ_WORKER_VIRTUAL_THREADS_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get whether the read and long poll requests are processed on virtual threads.
+     *
+     * @return true if the reads are processed on virtual threads, default is false.
+     * @see #setReadWorkerVirtualThreadsEnabled(boolean)
+     */
+    public boolean isReadWorkerVirtualThreadsEnabled() {
+        return getBoolean(READ_WORKER_VIRTUAL_THREADS_ENABLED, false);
+    }
+
+    /**
+     * Set the maximum number of reads processed at once by virtual threads.
+     *
+     * @param maxConcurrency
+     *          the maximum number of reads processed at once by virtual threads
+     * @return server configuration
+     * @see #setReadWorkerVirtualThreadsEnabled(boolean)
+     */
+    public ServerConfiguration setReadWorkerVirtualThreadsMaxConcurrency(int maxConcurrency) {
+        setProperty(READ_WORKER_VIRTUAL_THREADS_MAX_CONCURRENCY, maxConcurrency);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of reads processed at once by virtual threads. The other
+     * reads wait for their turn, up to {@link #getMaxPendingReadRequestPerThread()}
+     * times {@link #getNumReadWorkerThreads()} reads in total.
+     *
+     * @return the maximum number of reads processed at once by virtual threads, default is 256.
+     */
+    public int getReadWorkerVirtualThreadsMaxConcurrency() {
+        return getInt(READ_WORKER_VIRTUAL_THREADS_MAX_CONCURRENCY, 256);
+    }
+
+    /**
+     * Get the min size of the entries which are transferred straight from the entry log files to the
+     * socket (with sendfile), without being read in memory. It only applies to the v2 protocol over
+     * plain TCP connections, for entries stored in rotated entry logs of DbLedgerStorage.
+     * Default is 0, which disables it.
+     *
+     * @return min size of the entries sent from file regions, in bytes
+     */
+    public int getReadEntryFileRegionMinSize() {
+        return getInt(READ_ENTRY_FILE_REGION_MIN_SIZE, 0);
+    }
+
+    /**
+     * Set the min size of the entries which are transferred straight from the entry log files to the
+     * socket, 0 to disable it.
+     *
+     * @param minSize
+     *          min size of the entries sent from file regions, in bytes
+     * @return server configuration
+     */
+    public ServerConfiguration setReadEntryFileRegionMinSize(int minSize) {
+        setProperty(READ_ENTRY_FILE_REGION_MIN_SIZE, minSize);
+        return this;
+    }
+
 
 
     /**
@@ -2190,6 +2398,30 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the journal derives the time to wait for grouping writes from the measured
+     * fsync latency of the journal device. The max group wait remains the upper bound.
+     * Default is false.
+     *
+     * @return true if the adaptive group wait is enabled
+     */
+    public boolean getJournalAdaptiveGroupWaitEnabled() {
+        return getBoolean(JOURNAL_ADAPTIVE_GROUP_WAIT_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable deriving the journal group wait from the measured fsync latency
+     * of the journal device.
+     *
+     * @param enabled
+     *          flag to enable/disable the adaptive group wait.
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalAdaptiveGroupWaitEnabled(boolean enabled) {
+        setProperty(JOURNAL_ADAPTIVE_GROUP_WAIT_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Maximum bytes to buffer to impose on a journal write to achieve grouping.
      *
@@ -2745,6 +2977,30 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Should we write the journal files with direct I/O, bypassing the page cache.
+     * The journal falls back to buffered I/O if the JVM or the journal file system
+     * does not support direct I/O.
+     *
+     * @return true if the journal is written with direct I/O
+     */
+    @Beta
+    public boolean getJournalDirectIOEnabled() {
+        return getBoolean(JOURNAL_DIRECT_IO_ENABLED, false);
+    }
+
+    /**
+     * Sets whether we should write the journal files with direct I/O.
+     *
+     * @param enabled
+     *            - true to write the journal files with direct I/O. otherwise, false
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setJournalDirectIOEnabled(boolean enabled) {
+        setProperty(JOURNAL_DIRECT_IO_ENABLED, enabled);
+        return this;
+    }
+
     /*
      * Get the {@link LedgerStorage} implementation class name.
      *
@@ -0,0 +1,229 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.meta;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.Processor;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.versioning.Version;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.apache.zookeeper.AsyncCallback;
+
+/**
+ * A ledger manager that caches the metadata of the closed ledgers and of the watched ledgers.
+ *
+ * <p>The metadata of a closed ledger only changes when its ensembles are re-replicated or it is deleted, and the
+ * metadata of a watched ledger is already kept up to date by its listeners. So the cache registers a
+ * {@link LedgerMetadataListener} on each ledger it holds, which updates the cached metadata on changes and drops
+ * it once the ledger is deleted. The metadata of the other ledgers is always read from the metadata store.
+ *
+ * <p>A failed metadata write drops the cached metadata, so that a writer retrying on a version conflict reads the
+ * latest metadata from the store. The metadata read from the store while metadata was dropped is not cached, as it
+ * may be older than the one the writer conflicted with.
+ */
+public class CachingLedgerManager implements LedgerManager {
+
+    private final LedgerManager underlying;
+    private final Cache<Long, Versioned<LedgerMetadata>> cache;
+    // the ledgers on which the cache listener is registered
+    private final Set<Long> cacheWatches = ConcurrentHashMap.newKeySet();
+    // the listeners registered by the client on each ledger
+    private final ConcurrentMap<Long, Set<LedgerMetadataListener>> watchedLedgers = new ConcurrentHashMap<>();
+    private final LedgerMetadataListener cacheListener = this::onMetadataChanged;
+    // incremented when cached metadata is dropped because it may be stale
+    private final AtomicLong invalidations = new AtomicLong();
+    private final Counter hitsCounter;
+    private final Counter missesCounter;
+
+    public CachingLedgerManager(LedgerManager underlying, long maxCachedLedgers,
+                                Counter hitsCounter, Counter missesCounter) {
+        this.underlying = underlying;
+        this.cache = CacheBuilder.newBuilder()
+            // a single segment, for the least recently used ledgers to be evicted first
+            .concurrencyLevel(1)
+            .maximumSize(maxCachedLedgers)
+            .<Long, Versioned<LedgerMetadata>>removalListener(notification -> {
+                if (notification.wasEvicted()) {
+                    unwatch(notification.getKey());
+                }
+            })
+            .build();
+        this.hitsCounter = hitsCounter;
+        this.missesCounter = missesCounter;
+    }
+
+    @VisibleForTesting
+    public LedgerManager getUnderlying() {
+        return underlying;
+    }
+
+    public long getCachedLedgersCount() {
+        return cache.size();
+    }
+
+    @Override
+    public CompletableFuture<Versioned<LedgerMetadata>> createLedgerMetadata(long ledgerId, LedgerMetadata metadata) {
+        return underlying.createLedgerMetadata(ledgerId, metadata);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeLedgerMetadata(long ledgerId, Version version) {
+        return underlying.removeLedgerMetadata(ledgerId, version)
+            .whenComplete((result, cause) -> invalidate(ledgerId));
+    }
+
+    @Override
+    public CompletableFuture<Versioned<LedgerMetadata>> readLedgerMetadata(long ledgerId) {
+        Versioned<LedgerMetadata> metadata = cache.getIfPresent(ledgerId);
+        if (metadata != null) {
+            hitsCounter.inc();
+            return FutureUtils.value(metadata);
+        }
+        missesCounter.inc();
+        long invalidationsBeforeRead = invalidations.get();
+        return underlying.readLedgerMetadata(ledgerId)
+            .whenComplete((result, cause) -> {
+                if (cause == null && invalidations.get() == invalidationsBeforeRead) {
+                    maybeCache(ledgerId, result);
+                }
+            });
+    }
+
+    @Override
+    public CompletableFuture<Versioned<LedgerMetadata>> writeLedgerMetadata(long ledgerId, LedgerMetadata metadata,
+                                                                            Version currentVersion) {
+        return underlying.writeLedgerMetadata(ledgerId, metadata, currentVersion)
+            .whenComplete((result, cause) -> {
+                if (cause == null) {
+                    maybeCache(ledgerId, result);
+                } else {
+                    invalidate(ledgerId);
+                }
+            });
+    }
+
+    @Override
+    public void registerLedgerMetadataListener(long ledgerId, LedgerMetadataListener listener) {
+        if (null != listener) {
+            watchedLedgers.compute(ledgerId, (id, listeners) -> {
+                if (listeners == null) {
+                    listeners = ConcurrentHashMap.newKeySet();
+                }
+                listeners.add(listener);
+                return listeners;
+            });
+            // the cache listener is notified of the current metadata, which caches it
+            watch(ledgerId);
+        }
+        underlying.registerLedgerMetadataListener(ledgerId, listener);
+    }
+
+    @Override
+    public void unregisterLedgerMetadataListener(long ledgerId, LedgerMetadataListener listener) {
+        underlying.unregisterLedgerMetadataListener(ledgerId, listener);
+        Set<LedgerMetadataListener> listeners = watchedLedgers.computeIfPresent(ledgerId, (id, registered) -> {
+            registered.remove(listener);
+            return registered.isEmpty() ? null : registered;
+        });
+        if (listeners == null) {
+            Versioned<LedgerMetadata> metadata = cache.getIfPresent(ledgerId);
+            if (metadata == null || !metadata.getValue().isClosed()) {
+                invalidate(ledgerId);
+            }
+        }
+    }
+
+    @Override
+    public void asyncProcessLedgers(Processor<Long> processor, AsyncCallback.VoidCallback finalCb, Object context,
+                                    int successRc, int failureRc) {
+        underlying.asyncProcessLedgers(processor, finalCb, context, successRc, failureRc);
+    }
+
+    @Override
+    public LedgerRangeIterator getLedgerRanges(long zkOpTimeOutMs) {
+        return underlying.getLedgerRanges(zkOpTimeOutMs);
+    }
+
+    @Override
+    public void close() throws IOException {
+        cache.invalidateAll();
+        underlying.close();
+    }
+
+    private boolean isCacheable(long ledgerId, Versioned<LedgerMetadata> metadata) {
+        return metadata.getValue().isClosed() || watchedLedgers.containsKey(ledgerId);
+    }
+
+    private void maybeCache(long ledgerId, Versioned<LedgerMetadata> metadata) {
+        if (!isCacheable(ledgerId, metadata)) {
+            cache.invalidate(ledgerId);
+            unwatch(ledgerId);
+            return;
+        }
+        cache.asMap().merge(ledgerId, metadata, CachingLedgerManager::latest);
+        watch(ledgerId);
+    }
+
+    private void onMetadataChanged(long ledgerId, Versioned<LedgerMetadata> metadata) {
+        if (metadata == null) {
+            // the ledger is deleted, and the underlying ledger manager already dropped its listeners
+            cacheWatches.remove(ledgerId);
+            cache.invalidate(ledgerId);
+        } else if (isCacheable(ledgerId, metadata)) {
+            cache.asMap().merge(ledgerId, metadata, CachingLedgerManager::latest);
+        } else {
+            cache.invalidate(ledgerId);
+        }
+    }
+
+    private void invalidate(long ledgerId) {
+        invalidations.incrementAndGet();
+        cache.invalidate(ledgerId);
+        unwatch(ledgerId);
+    }
+
+    private void watch(long ledgerId) {
+        if (cacheWatches.add(ledgerId)) {
+            underlying.registerLedgerMetadataListener(ledgerId, cacheListener);
+        }
+    }
+
+    private void unwatch(long ledgerId) {
+        if (cacheWatches.remove(ledgerId)) {
+            underlying.unregisterLedgerMetadataListener(ledgerId, cacheListener);
+        }
+    }
+
+    private static Versioned<LedgerMetadata> latest(Versioned<LedgerMetadata> cached,
+                                                    Versioned<LedgerMetadata> metadata) {
+        return metadata.getVersion().compare(cached.getVersion()) == Version.Occurred.BEFORE ? cached : metadata;
+    }
+}
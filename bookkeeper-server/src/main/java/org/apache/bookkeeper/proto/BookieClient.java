@@ -28,6 +28,7 @@ import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
@@ -84,6 +85,29 @@ public interface BookieClient {
      */
     long getNumPendingRequests(BookieId address, long ledgerId);
 
+    /**
+     * Get a percentile of the recent latencies of the entry reads sent to a bookie at {@code address}.
+     * The latencies are only tracked when reads are reordered or speculatively sent based on them,
+     * see {@link org.apache.bookkeeper.conf.ClientConfiguration#isReorderReadsByLatencyEnabled()} and
+     * {@link org.apache.bookkeeper.conf.ClientConfiguration#getSpeculativeReadLatencyPercentile()}.
+     *
+     * @param address the address of the bookie
+     * @param percentile the percentile, in (0, 100]
+     * @return the latency in nanoseconds, or -1 if the latencies are not tracked or not known yet for the bookie
+     */
+    long getReadLatencyNanos(BookieId address, double percentile);
+
+    /**
+     * Check whether a bookie at {@code address} is expected to serve range reads.
+     * A bookie which rejected a range read as an unsupported operation is not sent
+     * range reads for a while, {@link #readEntries} failing immediately with
+     * {@link org.apache.bookkeeper.client.BKException.Code#IllegalOpException}.
+     *
+     * @param address the address of the bookie
+     * @return false if the bookie recently rejected a range read
+     */
+    boolean isRangeReadSupported(BookieId address);
+
     /**
      * Send a force request to the server. When complete all entries which have
      * been written for {@code ledgerId} to this bookie will be persisted on disk.
@@ -180,6 +204,31 @@ public interface BookieClient {
                    ReadEntryCallback cb, Object ctx, int flags, byte[] masterKey,
                    boolean allowFastFail);
 
+    /**
+     * Read the contiguous entries {@code [firstEntryId, lastEntryId]} from bookie at address
+     * {@code address} with a single request.
+     *
+     * <p>The bookie may return fewer entries than requested, either because an entry is missing
+     * or because the {@code maxCount} or {@code maxSize} limits were reached.
+     * Range reads are only supported by the v3 wire protocol.
+     *
+     * @param address address of the bookie to read from
+     * @param ledgerId id of the ledger the entries belong to
+     * @param firstEntryId id of the first entry we wish to read
+     * @param lastEntryId id of the last entry we wish to read
+     * @param maxCount max number of entries to return
+     * @param maxSize max total size, in bytes, of the entries to return
+     * @param cb the callback notified when the request completes
+     * @param ctx a context object passed to the callback on completion
+     * @param flags a bit mask of flags from BookieProtocol.FLAG_*
+     *              {@link org.apache.bookkeeper.proto.BookieProtocol}
+     * @param allowFastFail fail the read immediately if the channel is non-writable
+     *                      {@link #isWritable(BookieSocketAddress,long)}
+     */
+    void readEntries(BookieId address, long ledgerId, long firstEntryId, long lastEntryId,
+                     int maxCount, long maxSize, ReadEntriesCallback cb, Object ctx, int flags,
+                     boolean allowFastFail);
+
     /**
      * Send a long poll request to bookie, waiting for the last add confirmed
      * to be updated. The client can also request that the full entry is returned
@@ -23,6 +23,7 @@ package org.apache.bookkeeper.proto;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.bookkeeper.util.SafeRunnable.safeRun;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.protobuf.ExtensionRegistry;
 
@@ -36,6 +37,7 @@ import io.netty.util.Recycler.Handle;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -61,6 +63,7 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallba
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.FutureGetListOfEntriesOfLedger;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
@@ -71,6 +74,7 @@ import org.apache.bookkeeper.tls.SecurityException;
 import org.apache.bookkeeper.tls.SecurityHandlerFactory;
 import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
 import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.MathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -81,6 +85,13 @@ import org.slf4j.LoggerFactory;
 public class BookieClientImpl implements BookieClient, PerChannelBookieClientFactory {
     static final Logger LOG = LoggerFactory.getLogger(BookieClientImpl.class);
 
+    // the read latencies of a bookie are halved every half-life, so that they follow its recent behavior
+    private static final long READ_LATENCY_HALF_LIFE_MS = 10000;
+    private static final long READ_LATENCY_SNAPSHOT_INTERVAL_MS = 100;
+    private static final long READ_LATENCY_MIN_SAMPLES = 20;
+    // a bookie which rejected a range read is sent single entry reads until this long after, in case it got upgraded
+    private static final long RANGE_READ_RETRY_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(10);
+
     private final OrderedExecutor executor;
     private final ScheduledExecutorService scheduler;
     private final ScheduledFuture<?> timeoutFuture;
@@ -104,6 +115,13 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
 
     private final long bookieErrorThresholdPerInterval;
 
+    // recent read latencies per bookie, null if they are not tracked
+    private final ConcurrentHashMap<BookieId, DecayingLatencyHistogram> readLatencies;
+
+    // when each bookie which doesn't support range reads last rejected one
+    private final ConcurrentHashMap<BookieId, Long> rangeReadRejections = new ConcurrentHashMap<>();
+    private long rangeReadRetryIntervalNanos = RANGE_READ_RETRY_INTERVAL_NANOS;
+
     public BookieClientImpl(ClientConfiguration conf, EventLoopGroup eventLoopGroup,
                             ByteBufAllocator allocator,
                             OrderedExecutor executor, ScheduledExecutorService scheduler,
@@ -124,6 +142,11 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         this.statsLogger = statsLogger;
         this.numConnectionsPerBookie = conf.getNumChannelsPerBookie();
         this.bookieErrorThresholdPerInterval = conf.getBookieErrorThresholdPerInterval();
+        if (conf.isReorderReadsByLatencyEnabled() || conf.getSpeculativeReadLatencyPercentile() > 0) {
+            this.readLatencies = new ConcurrentHashMap<>();
+        } else {
+            this.readLatencies = null;
+        }
 
         this.scheduler = scheduler;
         if (conf.getAddEntryTimeout() > 0 || conf.getReadEntryTimeout() > 0) {
@@ -184,6 +207,50 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
     }
 
+    @Override
+    public long getReadLatencyNanos(BookieId address, double percentile) {
+        if (readLatencies == null) {
+            return -1L;
+        }
+        DecayingLatencyHistogram histogram = readLatencies.get(address);
+        return histogram == null ? -1L : histogram.getPercentileNanos(percentile);
+    }
+
+    @Override
+    public boolean isRangeReadSupported(BookieId address) {
+        Long rejectedNanos = rangeReadRejections.get(address);
+        if (rejectedNanos == null) {
+            return true;
+        }
+        if (MathUtils.elapsedNanos(rejectedNanos) < rangeReadRetryIntervalNanos) {
+            return false;
+        }
+        // try range reads again, the bookie may have been upgraded
+        rangeReadRejections.remove(address, rejectedNanos);
+        return true;
+    }
+
+    @VisibleForTesting
+    void recordRangeReadRejection(BookieId address) {
+        if (rangeReadRejections.put(address, MathUtils.nowInNano()) == null) {
+            LOG.info("Bookie {} doesn't support range reads, falling back to single entry reads", address);
+        }
+    }
+
+    @VisibleForTesting
+    void setRangeReadRetryIntervalNanos(long rangeReadRetryIntervalNanos) {
+        this.rangeReadRetryIntervalNanos = rangeReadRetryIntervalNanos;
+    }
+
+    private DecayingLatencyHistogram getReadLatencyHistogram(BookieId address) {
+        if (readLatencies == null) {
+            return null;
+        }
+        return readLatencies.computeIfAbsent(address, k -> new DecayingLatencyHistogram(
+                READ_LATENCY_HALF_LIFE_MS, READ_LATENCY_SNAPSHOT_INTERVAL_MS, TimeUnit.MILLISECONDS,
+                READ_LATENCY_MIN_SAMPLES));
+    }
+
     @Override
     public PerChannelBookieClient create(BookieId address, PerChannelBookieClientPool pcbcPool,
             SecurityHandlerFactory shFactory, boolean forceUseV3) throws SecurityException {
@@ -197,7 +264,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
         return new PerChannelBookieClient(clientConfiguration, executor, eventLoopGroup, allocator, address,
                                    statsLoggerForPCBC, authProviderFactory, registry, pcbcPool,
-                                   shFactory, bookieAddressResolver);
+                                   shFactory, bookieAddressResolver, getReadLatencyHistogram(address));
     }
 
     public PerChannelBookieClientPool lookupClient(BookieId addr) {
@@ -378,6 +445,24 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
     }
 
+    private void completeReadEntries(final int rc,
+                                     final long ledgerId,
+                                     final long firstEntryId,
+                                     final ReadEntriesCallback cb,
+                                     final Object ctx) {
+        try {
+            executor.executeOrdered(ledgerId, new SafeRunnable() {
+                @Override
+                public void safeRun() {
+                    cb.readEntriesComplete(rc, ledgerId, firstEntryId, Collections.emptyList(), ctx);
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            cb.readEntriesComplete(getRc(BKException.Code.InterruptedException),
+                                   ledgerId, firstEntryId, Collections.emptyList(), ctx);
+        }
+    }
+
     private static class ChannelReadyForAddEntryCallback
         implements GenericCallback<PerChannelBookieClient> {
         private final Handle<ChannelReadyForAddEntryCallback> recyclerHandle;
@@ -515,6 +600,37 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }, ledgerId);
     }
 
+    @Override
+    public void readEntries(final BookieId addr, final long ledgerId, final long firstEntryId,
+                            final long lastEntryId, final int maxCount, final long maxSize,
+                            final ReadEntriesCallback cb, final Object ctx, final int flags,
+                            final boolean allowFastFail) {
+        final PerChannelBookieClientPool client = lookupClient(addr);
+        if (client == null) {
+            cb.readEntriesComplete(getRc(BKException.Code.BookieHandleNotAvailableException),
+                                   ledgerId, firstEntryId, Collections.emptyList(), ctx);
+            return;
+        }
+
+        if (!isRangeReadSupported(addr)) {
+            completeReadEntries(BKException.Code.IllegalOpException, ledgerId, firstEntryId, cb, ctx);
+            return;
+        }
+
+        client.obtain((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                completeReadEntries(rc, ledgerId, firstEntryId, cb, ctx);
+            } else {
+                pcbc.readEntries(ledgerId, firstEntryId, lastEntryId, maxCount, maxSize,
+                        (readRc, readLedgerId, readFirstEntryId, entries, readCtx) -> {
+                            if (readRc == BKException.Code.IllegalOpException) {
+                                recordRangeReadRejection(addr);
+                            }
+                            cb.readEntriesComplete(readRc, readLedgerId, readFirstEntryId, entries, readCtx);
+                        }, ctx, flags, allowFastFail);
+            }
+        }, ledgerId);
+    }
 
     @Override
     public void readEntryWaitForLACUpdate(final BookieId addr,
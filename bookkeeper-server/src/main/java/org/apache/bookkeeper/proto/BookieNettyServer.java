@@ -20,6 +20,11 @@
  */
 package org.apache.bookkeeper.proto;
 
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_FLUSHES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_WRITE_MESSAGES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
+
 import com.google.common.annotations.VisibleForTesting;
 import com.google.protobuf.ExtensionRegistry;
 import io.netty.bootstrap.ServerBootstrap;
@@ -38,16 +43,12 @@ import io.netty.channel.DefaultEventLoopGroup;
 import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.WriteBufferWaterMark;
-import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.ChannelGroupFuture;
 import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.local.LocalAddress;
 import io.netty.channel.local.LocalChannel;
-import io.netty.channel.local.LocalServerChannel;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.codec.LengthFieldPrepender;
 import io.netty.handler.ssl.SslHandler;
@@ -77,6 +78,9 @@ import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
 import org.apache.bookkeeper.processor.RequestProcessor;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
 import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.EventLoopUtil;
 import org.apache.zookeeper.KeeperException;
@@ -86,6 +90,11 @@ import org.slf4j.LoggerFactory;
 /**
  * Netty server for serving bookie requests.
  */
+@StatsDoc(
+    name = SERVER_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Bookie netty server stats"
+)
 class BookieNettyServer {
 
     private static final Logger LOG = LoggerFactory.getLogger(BookieNettyServer.class);
@@ -109,9 +118,24 @@ class BookieNettyServer {
 
     private final ByteBufAllocator allocator;
 
-    BookieNettyServer(ServerConfiguration conf, RequestProcessor processor, ByteBufAllocator allocator)
+    @StatsDoc(
+        name = CHANNEL_WRITE_MESSAGES,
+        help = "The number of messages written on the channels of the clients"
+    )
+    private final Counter channelWriteMessagesCounter;
+    @StatsDoc(
+        name = CHANNEL_FLUSHES,
+        help = "The number of flushes of the channels of the clients, consolidated when nettyFlushConsolidationEnabled"
+            + " is set"
+    )
+    private final Counter channelFlushesCounter;
+
+    BookieNettyServer(ServerConfiguration conf, RequestProcessor processor, ByteBufAllocator allocator,
+                      StatsLogger statsLogger)
         throws IOException, KeeperException, InterruptedException, BookieException {
         this.allocator = allocator;
+        this.channelWriteMessagesCounter = statsLogger.getCounter(CHANNEL_WRITE_MESSAGES);
+        this.channelFlushesCounter = statsLogger.getCounter(CHANNEL_FLUSHES);
         this.maxFrameSize = conf.getNettyMaxFrameSizeBytes();
         this.conf = conf;
         this.requestProcessor = processor;
@@ -310,11 +334,7 @@ class BookieNettyServer {
             bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
                     conf.getServerWriteBufferLowWaterMark(), conf.getServerWriteBufferHighWaterMark()));
 
-            if (eventLoopGroup instanceof EpollEventLoopGroup) {
-                bootstrap.channel(EpollServerSocketChannel.class);
-            } else {
-                bootstrap.channel(NioServerSocketChannel.class);
-            }
+            bootstrap.channel(EventLoopUtil.getServerSocketChannelClass(eventLoopGroup));
 
             bootstrap.childHandler(new ChannelInitializer<SocketChannel>() {
                 @Override
@@ -337,6 +357,7 @@ class BookieNettyServer {
 
                     pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry));
                     pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.ResponseEncoder(registry));
+                    FlushStatsHandler.addLast(pipeline, conf, channelWriteMessagesCounter, channelFlushesCounter);
                     pipeline.addLast("bookieAuthHandler", new AuthHandler.ServerSideHandler(
                                 contextHandler.getConnectionPeer(), authProviderFactory));
 
@@ -372,13 +393,7 @@ class BookieNettyServer {
             jvmBootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
                     conf.getServerWriteBufferLowWaterMark(), conf.getServerWriteBufferHighWaterMark()));
 
-            if (jvmEventLoopGroup instanceof DefaultEventLoopGroup) {
-                jvmBootstrap.channel(LocalServerChannel.class);
-            } else if (jvmEventLoopGroup instanceof EpollEventLoopGroup) {
-                jvmBootstrap.channel(EpollServerSocketChannel.class);
-            } else {
-                jvmBootstrap.channel(NioServerSocketChannel.class);
-            }
+            jvmBootstrap.channel(EventLoopUtil.getServerSocketChannelClass(jvmEventLoopGroup));
 
             jvmBootstrap.childHandler(new ChannelInitializer<LocalChannel>() {
                 @Override
@@ -398,6 +413,7 @@ class BookieNettyServer {
 
                     pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry));
                     pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.ResponseEncoder(registry));
+                    FlushStatsHandler.addLast(pipeline, conf, channelWriteMessagesCounter, channelFlushesCounter);
                     pipeline.addLast("bookieAuthHandler", new AuthHandler.ServerSideHandler(
                                 contextHandler.getConnectionPeer(), authProviderFactory));
 
@@ -45,6 +45,7 @@ import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
 import org.apache.bookkeeper.proto.checksum.MacDigestManager;
 import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.FileRegionFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -250,7 +251,9 @@ public class BookieProtoEncoding {
                     buf.writeLong(r.getEntryId());
 
                     BookieProtocol.ReadResponse rr = (BookieProtocol.ReadResponse) r;
-                    if (rr.hasData()) {
+                    if (rr.getDataRegion() != null) {
+                        return new FileRegionFrame(buf, rr.getDataRegion());
+                    } else if (rr.hasData()) {
                         return ByteBufList.get(buf, rr.getData());
                     } else {
                         return buf;
@@ -22,6 +22,7 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
@@ -443,6 +444,7 @@ public interface BookieProtocol {
      */
     class ReadResponse extends Response {
         final ByteBuf data;
+        final FileRegion dataRegion;
 
         ReadResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId) {
             this(protocolVersion, errorCode, ledgerId, entryId, Unpooled.EMPTY_BUFFER);
@@ -451,6 +453,16 @@ public interface BookieProtocol {
         ReadResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId, ByteBuf data) {
             init(protocolVersion, READENTRY, errorCode, ledgerId, entryId);
             this.data = data;
+            this.dataRegion = null;
+        }
+
+        /**
+         * A read response whose entry is transferred from a file region, without being read in memory.
+         */
+        ReadResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId, FileRegion dataRegion) {
+            init(protocolVersion, READENTRY, errorCode, ledgerId, entryId);
+            this.data = Unpooled.EMPTY_BUFFER;
+            this.dataRegion = dataRegion;
         }
 
         boolean hasData() {
@@ -461,14 +473,24 @@ public interface BookieProtocol {
             return data;
         }
 
+        FileRegion getDataRegion() {
+            return dataRegion;
+        }
+
         @Override
         public void retain() {
             data.retain();
+            if (dataRegion != null) {
+                dataRegion.retain();
+            }
         }
 
         @Override
         public void release() {
             data.release();
+            if (dataRegion != null) {
+                dataRegion.release();
+            }
         }
     }
 
@@ -40,6 +40,7 @@ import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
@@ -51,6 +52,7 @@ import org.apache.bookkeeper.auth.AuthToken;
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.SafeRunnable;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.processor.RequestProcessor;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -87,6 +89,11 @@ public class BookieRequestProcessor implements RequestProcessor {
      */
     private final OrderedExecutor readThreadPool;
 
+    /**
+     * The executor running the reads and the long polls on virtual threads, null if not enabled.
+     */
+    private final ExecutorService virtualReadExecutor;
+
     /**
      * The threadpool used to execute all add entry requests issued to this server.
      */
@@ -130,6 +137,9 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private final boolean throttleReadResponses;
 
+    // Min size of the entries sent from a file region, 0 if disabled
+    private final int readEntryFileRegionMinSize;
+
     public BookieRequestProcessor(ServerConfiguration serverCfg, Bookie bookie, StatsLogger statsLogger,
             SecurityHandlerFactory shFactory, ByteBufAllocator allocator) throws SecurityException {
         this.serverCfg = serverCfg;
@@ -138,6 +148,7 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.preserveMdcForTaskExecution = serverCfg.getPreserveMdcForTaskExecution();
         this.bookie = bookie;
         this.throttleReadResponses = serverCfg.isReadWorkerThreadsThrottlingEnabled();
+        this.readEntryFileRegionMinSize = serverCfg.getReadEntryFileRegionMinSize();
         this.readThreadPool = createExecutor(
                 this.serverCfg.getNumReadWorkerThreads(),
                 "BookieReadThreadPool",
@@ -202,6 +213,32 @@ public class BookieRequestProcessor implements RequestProcessor {
 
         int maxReads = serverCfg.getMaxReadsInProgressLimit();
         readsSemaphore = maxReads > 0 ? new Semaphore(maxReads, true) : null;
+
+        this.virtualReadExecutor = createVirtualReadExecutor();
+    }
+
+    private ExecutorService createVirtualReadExecutor() {
+        if (!serverCfg.isReadWorkerVirtualThreadsEnabled()) {
+            return null;
+        }
+        ThreadFactory threadFactory = VirtualThreadExecutor.newVirtualThreadFactory("BookieReadVirtualThread");
+        if (null == threadFactory) {
+            LOG.warn("Virtual threads are not supported by the JVM, reads are processed by the read worker threads");
+            return null;
+        }
+        // the reads queued on virtual threads are bounded as a whole, as much as by all the read worker threads
+        int maxPendingReads = serverCfg.getMaxPendingReadRequestPerThread() > 0
+                ? serverCfg.getMaxPendingReadRequestPerThread() * Math.max(1, serverCfg.getNumReadWorkerThreads())
+                : 0;
+        LOG.info("Reads are processed by virtual threads, at most {} at once and {} pending, the reads of a ledger"
+                + " are not processed in order", serverCfg.getReadWorkerVirtualThreadsMaxConcurrency(),
+                maxPendingReads > 0 ? maxPendingReads : "unlimited");
+        if (null == highPriorityThreadPool) {
+            LOG.info("The high priority reads are not processed by virtual threads, but by the I/O threads since"
+                    + " there are no high priority worker threads");
+        }
+        return new VirtualThreadExecutor(threadFactory, serverCfg.getReadWorkerVirtualThreadsMaxConcurrency(),
+                maxPendingReads, requestStats.getVirtualThreadPinnedStats());
     }
 
     protected void onAddRequestStart(Channel channel) {
@@ -270,6 +307,7 @@ public class BookieRequestProcessor implements RequestProcessor {
             shutdownExecutor(longPollThreadPool);
         }
         shutdownExecutor(highPriorityThreadPool);
+        shutdownExecutor(virtualReadExecutor);
         requestTimer.stop();
     }
 
@@ -288,11 +326,12 @@ public class BookieRequestProcessor implements RequestProcessor {
                     .preserveMdcForTaskExecution(serverCfg.getPreserveMdcForTaskExecution())
                     .statsLogger(statsLogger)
                     .maxTasksInQueue(maxTasksInQueue)
+                    .enableWorkStealing(serverCfg.isWorkerThreadsWorkStealingEnabled())
                     .build();
         }
     }
 
-    private void shutdownExecutor(OrderedExecutor service) {
+    private void shutdownExecutor(ExecutorService service) {
         if (null != service) {
             service.shutdown();
         }
@@ -314,6 +353,12 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case READ_ENTRY:
                         processReadRequestV3(r, c);
                         break;
+                    case RANGE_READ_ENTRY:
+                        processRangeReadRequestV3(r, c);
+                        break;
+                    case RANGE_ADD_ENTRY:
+                        processRangeAddRequestV3(r, c);
+                        break;
                     case FORCE_LEDGER:
                         processForceLedgerRequestV3(r, c);
                         break;
@@ -454,6 +499,31 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processRangeAddRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
+        RangeAddEntryProcessorV3 rangeAdd = new RangeAddEntryProcessorV3(r, c, this);
+
+        final OrderedExecutor threadPool;
+        if (RequestUtils.isHighPriority(r)) {
+            threadPool = highPriorityThreadPool;
+        } else {
+            threadPool = writeThreadPool;
+        }
+
+        if (null == threadPool) {
+            rangeAdd.run();
+        } else {
+            try {
+                threadPool.executeOrdered(r.getRangeAddRequest().getLedgerId(), rangeAdd);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to add entries at {}:{}. Too many pending requests",
+                              r.getRangeAddRequest().getLedgerId(), r.getRangeAddRequest().getFirstEntryId());
+                }
+                rangeAdd.sendResponse(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+            }
+        }
+    }
+
     private void processForceLedgerRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
         ForceLedgerProcessorV3 forceLedger = new ForceLedgerProcessorV3(r, c, this);
 
@@ -496,19 +566,22 @@ public class BookieRequestProcessor implements RequestProcessor {
 
         final ReadEntryProcessorV3 read;
         final OrderedExecutor threadPool;
+        final boolean isHighPriority;
         if (RequestUtils.isLongPollReadRequest(r.getReadRequest())) {
-            ExecutorService lpThread = longPollThreadPool.chooseThread(c);
+            ExecutorService lpThread = null != virtualReadExecutor
+                    ? virtualReadExecutor : longPollThreadPool.chooseThread(c);
 
             read = new LongPollReadEntryProcessorV3(r, c, this, fenceThread,
                                                     lpThread, requestTimer);
             threadPool = longPollThreadPool;
+            isHighPriority = false;
         } else {
             read = new ReadEntryProcessorV3(r, c, this, fenceThread);
 
             // If it's a high priority read (fencing or as part of recovery process), we want to make sure it
             // gets executed as fast as possible, so bypass the normal readThreadPool
             // and execute in highPriorityThreadPool
-            boolean isHighPriority = RequestUtils.isHighPriority(r)
+            isHighPriority = RequestUtils.isHighPriority(r)
                 || hasFlag(r.getReadRequest(), BookkeeperProtocol.ReadRequest.Flag.FENCE_LEDGER);
             if (isHighPriority) {
                 threadPool = highPriorityThreadPool;
@@ -517,27 +590,62 @@ public class BookieRequestProcessor implements RequestProcessor {
             }
         }
 
-        if (null == threadPool) {
+        try {
+            executeReadRequest(threadPool, isHighPriority, r.getReadRequest().getLedgerId(), read);
+        } catch (RejectedExecutionException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests",
+                          r.getReadRequest().getLedgerId(), r.getReadRequest().getEntryId());
+            }
+            BookkeeperProtocol.ReadResponse.Builder readResponse = BookkeeperProtocol.ReadResponse.newBuilder()
+                .setLedgerId(r.getReadRequest().getLedgerId())
+                .setEntryId(r.getReadRequest().getEntryId())
+                .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+            BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder()
+                .setHeader(read.getHeader())
+                .setStatus(readResponse.getStatus())
+                .setReadResponse(readResponse);
+            BookkeeperProtocol.Response resp = response.build();
+            read.sendResponse(readResponse.getStatus(), resp, requestStats.getReadRequestStats());
+        }
+    }
+
+    /**
+     * Run a read request on the thread pool, or on a virtual thread if they are enabled and it is not a high
+     * priority read. The reads run on virtual threads are not ordered per ledger.
+     */
+    private void executeReadRequest(OrderedExecutor threadPool, boolean isHighPriority, long ledgerId,
+                                    SafeRunnable read) {
+        if (null != virtualReadExecutor && !isHighPriority) {
+            virtualReadExecutor.execute(read);
+        } else if (null == threadPool) {
             read.run();
         } else {
-            try {
-                threadPool.executeOrdered(r.getReadRequest().getLedgerId(), read);
-            } catch (RejectedExecutionException e) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests",
-                              r.getReadRequest().getLedgerId(), r.getReadRequest().getEntryId());
-                }
-                BookkeeperProtocol.ReadResponse.Builder readResponse = BookkeeperProtocol.ReadResponse.newBuilder()
-                    .setLedgerId(r.getReadRequest().getLedgerId())
-                    .setEntryId(r.getReadRequest().getEntryId())
-                    .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
-                BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder()
-                    .setHeader(read.getHeader())
-                    .setStatus(readResponse.getStatus())
-                    .setReadResponse(readResponse);
-                BookkeeperProtocol.Response resp = response.build();
-                read.sendResponse(readResponse.getStatus(), resp, requestStats.getReadRequestStats());
+            threadPool.executeOrdered(ledgerId, read);
+        }
+    }
+
+    private void processRangeReadRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
+        RangeReadEntryProcessorV3 rangeRead = new RangeReadEntryProcessorV3(r, c, this);
+
+        final boolean isHighPriority = RequestUtils.isHighPriority(r);
+        final OrderedExecutor threadPool = isHighPriority ? highPriorityThreadPool : readThreadPool;
+
+        try {
+            executeReadRequest(threadPool, isHighPriority, r.getRangeReadRequest().getLedgerId(), rangeRead);
+        } catch (RejectedExecutionException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to process request to range read entries at {}:[{}, {}]. "
+                        + "Too many pending requests", r.getRangeReadRequest().getLedgerId(),
+                        r.getRangeReadRequest().getFirstEntryId(), r.getRangeReadRequest().getLastEntryId());
             }
+            BookkeeperProtocol.RangeReadResponse rangeReadResponse =
+                    BookkeeperProtocol.RangeReadResponse.newBuilder()
+                    .setLedgerId(r.getRangeReadRequest().getLedgerId())
+                    .setFirstEntryId(r.getRangeReadRequest().getFirstEntryId())
+                    .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS)
+                    .build();
+            rangeRead.sendResponse(rangeReadResponse);
         }
     }
 
@@ -646,34 +754,27 @@ public class BookieRequestProcessor implements RequestProcessor {
     private void processReadRequest(final BookieProtocol.ReadRequest r, final Channel c) {
         ExecutorService fenceThreadPool =
                 null == highPriorityThreadPool ? null : highPriorityThreadPool.chooseThread(c);
-        ReadEntryProcessor read = ReadEntryProcessor.create(r, c, this, fenceThreadPool, throttleReadResponses);
+        ReadEntryProcessor read = ReadEntryProcessor.create(r, c, this, fenceThreadPool, throttleReadResponses,
+                readEntryFileRegionMinSize);
 
         // If it's a high priority read (fencing or as part of recovery process), we want to make sure it
         // gets executed as fast as possible, so bypass the normal readThreadPool
         // and execute in highPriorityThreadPool
-        final OrderedExecutor threadPool;
-        if (r.isHighPriority() || r.isFencing()) {
-            threadPool = highPriorityThreadPool;
-        } else {
-            threadPool = readThreadPool;
-        }
-
-        if (null == threadPool) {
-            read.run();
-        } else {
-            try {
-                threadPool.executeOrdered(r.getLedgerId(), read);
-            } catch (RejectedExecutionException e) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests", r.ledgerId,
-                            r.entryId);
-                }
-
-                read.sendResponse(
-                    BookieProtocol.ETOOMANYREQUESTS,
-                    ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
-                    requestStats.getReadRequestStats());
+        final boolean isHighPriority = r.isHighPriority() || r.isFencing();
+        final OrderedExecutor threadPool = isHighPriority ? highPriorityThreadPool : readThreadPool;
+
+        try {
+            executeReadRequest(threadPool, isHighPriority, r.getLedgerId(), read);
+        } catch (RejectedExecutionException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests", r.ledgerId,
+                        r.entryId);
             }
+
+            read.sendResponse(
+                BookieProtocol.ETOOMANYREQUESTS,
+                ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
+                requestStats.getReadRequestStats());
         }
     }
 
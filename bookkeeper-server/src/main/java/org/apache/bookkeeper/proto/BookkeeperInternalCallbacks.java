@@ -23,6 +23,7 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -101,6 +102,17 @@ public class BookkeeperInternalCallbacks {
         void forceLedgerComplete(int rc, long ledgerId, BookieId addr, Object ctx);
     }
 
+    /**
+     * A callback interface for range read requests.
+     *
+     * <p>On success, {@code entries} holds the contiguous entries starting at {@code firstEntryId}.
+     * It may hold fewer entries than requested. The buffers are only valid during the callback,
+     * implementations must retain the ones they keep.
+     */
+    public interface ReadEntriesCallback {
+        void readEntriesComplete(int rc, long ledgerId, long firstEntryId, List<ByteBuf> entries, Object ctx);
+    }
+
     /**
      * A callback interface for a STARTTLS command.
      */
@@ -0,0 +1,450 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * The completions of the requests sent on a channel, waiting for their response or for their timeout.
+ *
+ * <p>The completions are keyed by primitives, so that registering a request doesn't allocate a key: v3 completions
+ * by the txnId of their request, v2 completions by their (ledgerId, entryId, operation), packed into a long. Several
+ * v2 requests may be pending with the same key (e.g. speculative reads of an entry), the completions sharing a packed
+ * key are chained in registration order, and matched against their own ledgerId, entryId and operation.
+ *
+ * <p>The completions are also scheduled in a hashed timing wheel by deadline, so that {@link #expire} only visits the
+ * completions whose deadline is in the ticks elapsed since its previous run, instead of all the pending ones.
+ *
+ * <p>Each completion is claimed at most once: by a response ({@link #remove(long, int)} and
+ * {@link #removeV2(long, long, int)}), by an error ({@link #remove(Entry, long)} and {@link #removeAll(Consumer)}) or
+ * by its timeout ({@link #expire(long, Consumer)}). It is unlinked from the registry before being handed to its
+ * claimer, so that it may be recycled.
+ *
+ * <p>As a recycled completion may be registered again for another request, the registrations return an id, and a
+ * claimer which runs after the request was sent (e.g. the failure of its write) claims the completion by that id, so
+ * that it can't claim a later registration of the same completion.
+ */
+final class CompletionRegistry<T extends CompletionRegistry.Entry<T>> {
+
+    private static final int NOT_SCHEDULED = -1;
+    private static final int NUM_V2_LOCKS = 64;
+
+    /**
+     * The registration state of a completion, kept in the completion itself.
+     */
+    abstract static class Entry<T extends Entry<T>> {
+        // only accessed by the registry, the fields of the key are distinct from the ones of the completion
+        boolean isV2;
+        long keyTxnId;
+        long keyLedgerId;
+        long keyEntryId;
+        int keyOperation;
+        volatile boolean registered;
+        // the id of the current registration: the txnId of a v3 request, a negative sequence number for a v2 one
+        volatile long registrationId;
+        long numV2Registrations;
+        // the next pending v2 completion with the same packed key
+        T nextWithSameKey;
+
+        long deadlineNanos;
+        long timeoutTick;
+        volatile int bucket = NOT_SCHEDULED;
+        T wheelPrev;
+        T wheelNext;
+    }
+
+    private static final class Bucket<T> {
+        T head;
+    }
+
+    private final ConcurrentLongHashMap<T> v3Completions = new ConcurrentLongHashMap<>();
+    // the first completion registered with each packed v2 key
+    private final ConcurrentLongHashMap<T> v2Completions = new ConcurrentLongHashMap<>();
+    private final Object[] v2Locks;
+    private final LongAdder numV2Completions = new LongAdder();
+
+    private final long tickNanos;
+    private final Bucket<T>[] wheel;
+    private final int wheelMask;
+    // the completions of the ticks up to this one are expired, the new ones are scheduled after it
+    private volatile long processedTick;
+
+    @SuppressWarnings("unchecked")
+    CompletionRegistry(long tickNanos, int wheelSize, long nowNanos) {
+        checkArgument(tickNanos > 0, "tickNanos must be positive");
+        checkArgument(wheelSize >= 2 && Integer.bitCount(wheelSize) == 1, "wheelSize must be a power of 2");
+        this.tickNanos = tickNanos;
+        this.wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new Bucket<>();
+        }
+        this.wheelMask = wheelSize - 1;
+        this.processedTick = Math.floorDiv(nowNanos, tickNanos);
+        this.v2Locks = new Object[NUM_V2_LOCKS];
+        for (int i = 0; i < NUM_V2_LOCKS; i++) {
+            v2Locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Registers the completion of a v3 request.
+     *
+     * @return the id of the registration, i.e. the txnId, which must not be negative
+     */
+    long put(long txnId, int operation, T completion, long deadlineNanos) {
+        checkArgument(txnId >= 0, "txnId must not be negative");
+        completion.isV2 = false;
+        completion.keyTxnId = txnId;
+        completion.keyOperation = operation;
+        completion.registrationId = txnId;
+        completion.registered = true;
+        // scheduled first, so that a completion is always in the wheel when it can be claimed
+        schedule(completion, deadlineNanos);
+        v3Completions.put(txnId, completion);
+        return txnId;
+    }
+
+    /**
+     * Registers the completion of a v2 request.
+     *
+     * @return the id of the registration
+     */
+    long put(long ledgerId, long entryId, int operation, T completion, long deadlineNanos) {
+        long registrationId = -(++completion.numV2Registrations);
+        completion.isV2 = true;
+        completion.keyLedgerId = ledgerId;
+        completion.keyEntryId = entryId;
+        completion.keyOperation = operation;
+        completion.nextWithSameKey = null;
+        // set before the completion is linked under the lock of its key, where it is checked by remove(T, long)
+        completion.registrationId = registrationId;
+        completion.registered = true;
+        schedule(completion, deadlineNanos);
+        long key = v2Key(ledgerId, entryId, operation);
+        synchronized (v2Lock(key)) {
+            T head = v2Completions.putIfAbsent(key, completion);
+            if (head != null) {
+                T tail = head;
+                while (tail.nextWithSameKey != null) {
+                    tail = tail.nextWithSameKey;
+                }
+                tail.nextWithSameKey = completion;
+            }
+            numV2Completions.increment();
+        }
+        return registrationId;
+    }
+
+    /**
+     * Claims the completion of the v3 request with the given txnId and operation, if it is pending.
+     */
+    T remove(long txnId, int operation) {
+        T completion = v3Completions.get(txnId);
+        if (completion == null || completion.keyOperation != operation || !remove(completion)) {
+            return null;
+        }
+        return completion;
+    }
+
+    /**
+     * Claims the first registered completion of the pending v2 requests with the given key.
+     */
+    T removeV2(long ledgerId, long entryId, int operation) {
+        long key = v2Key(ledgerId, entryId, operation);
+        T completion;
+        synchronized (v2Lock(key)) {
+            T prev = null;
+            completion = v2Completions.get(key);
+            while (completion != null
+                    && (completion.keyLedgerId != ledgerId
+                        || completion.keyEntryId != entryId
+                        || completion.keyOperation != operation)) {
+                prev = completion;
+                completion = completion.nextWithSameKey;
+            }
+            if (completion == null) {
+                return null;
+            }
+            unlinkV2(key, prev, completion);
+        }
+        unschedule(completion);
+        return completion;
+    }
+
+    /**
+     * Claims the given registration of a completion, if it is still pending.
+     *
+     * @return whether the completion was claimed
+     */
+    boolean remove(T completion, long registrationId) {
+        if (!claim(completion, registrationId)) {
+            return false;
+        }
+        unschedule(completion);
+        return true;
+    }
+
+    /**
+     * Whether the given registration of a completion is still pending.
+     */
+    boolean isRegistered(T completion, long registrationId) {
+        if (registrationId >= 0) {
+            return v3Completions.get(registrationId) == completion;
+        } else {
+            return completion.registered && completion.registrationId == registrationId;
+        }
+    }
+
+    private boolean remove(T completion) {
+        if (!claim(completion)) {
+            return false;
+        }
+        unschedule(completion);
+        return true;
+    }
+
+    /**
+     * Claims all the pending completions.
+     */
+    void removeAll(Consumer<T> onRemoved) {
+        for (T completion : v3Completions.values()) {
+            if (remove(completion)) {
+                onRemoved.accept(completion);
+            }
+        }
+        for (long key : v2Completions.keys()) {
+            T completion;
+            do {
+                synchronized (v2Lock(key)) {
+                    completion = v2Completions.get(key);
+                    if (completion != null) {
+                        unlinkV2(key, null, completion);
+                    }
+                }
+                if (completion != null) {
+                    unschedule(completion);
+                    onRemoved.accept(completion);
+                }
+            } while (completion != null);
+        }
+    }
+
+    long size() {
+        return v3Completions.size() + numV2Completions.sum();
+    }
+
+    /**
+     * Claims the pending completions whose deadline is reached.
+     *
+     * <p>Only the buckets of the ticks elapsed since the previous call are visited, the completions of a visited bucket
+     * which aren't expired yet are moved to the bucket of the next tick.
+     *
+     * @return the number of expired completions
+     */
+    synchronized int expire(long nowNanos, Consumer<T> onExpired) {
+        long currentTick = Math.floorDiv(nowNanos, tickNanos);
+        long fromTick = processedTick + 1;
+        if (currentTick < fromTick) {
+            return 0;
+        }
+        // from now on, the new completions are scheduled after the current tick
+        processedTick = currentTick;
+
+        T expired = null;
+        int numExpired = 0;
+        long toTick = Math.min(currentTick, fromTick + wheel.length - 1);
+        for (long tick = fromTick; tick <= toTick; tick++) {
+            int index = (int) (tick & wheelMask);
+            Bucket<T> bucket = wheel[index];
+            synchronized (bucket) {
+                T completion = bucket.head;
+                while (completion != null) {
+                    T next = completion.wheelNext;
+                    if (completion.timeoutTick <= currentTick) {
+                        if (completion.deadlineNanos - nowNanos > 0) {
+                            unlink(bucket, completion);
+                            int nextIndex = (int) ((currentTick + 1) & wheelMask);
+                            Bucket<T> nextBucket = wheel[nextIndex];
+                            synchronized (nextBucket) {
+                                link(nextBucket, nextIndex, completion, currentTick + 1);
+                            }
+                        } else if (claim(completion)) {
+                            unlink(bucket, completion);
+                            completion.wheelNext = expired;
+                            expired = completion;
+                            numExpired++;
+                        }
+                        // otherwise it is being claimed by a response or an error, which unlinks it
+                    }
+                    completion = next;
+                }
+            }
+        }
+
+        // complete them out of the locks
+        while (expired != null) {
+            T completion = expired;
+            expired = completion.wheelNext;
+            completion.wheelNext = null;
+            onExpired.accept(completion);
+        }
+        return numExpired;
+    }
+
+    private boolean claim(T completion, long registrationId) {
+        if (registrationId >= 0) {
+            // txnIds are never reused, so the completion is only mapped to it by this registration
+            if (!v3Completions.remove(registrationId, completion)) {
+                return false;
+            }
+            completion.registered = false;
+            return true;
+        }
+        // the key is read from a completion which may be registered again concurrently, in which case this
+        // registration is already claimed: either the completion is not found, or its id doesn't match
+        long key = v2Key(completion.keyLedgerId, completion.keyEntryId, completion.keyOperation);
+        synchronized (v2Lock(key)) {
+            T prev = null;
+            T current = v2Completions.get(key);
+            while (current != null && current != completion) {
+                prev = current;
+                current = current.nextWithSameKey;
+            }
+            if (current == null || completion.registrationId != registrationId) {
+                return false;
+            }
+            unlinkV2(key, prev, completion);
+        }
+        return true;
+    }
+
+    private boolean claim(T completion) {
+        if (completion.isV2) {
+            long key = v2Key(completion.keyLedgerId, completion.keyEntryId, completion.keyOperation);
+            synchronized (v2Lock(key)) {
+                T prev = null;
+                T current = v2Completions.get(key);
+                while (current != null && current != completion) {
+                    prev = current;
+                    current = current.nextWithSameKey;
+                }
+                if (current == null) {
+                    return false;
+                }
+                unlinkV2(key, prev, completion);
+            }
+            return true;
+        } else {
+            if (!v3Completions.remove(completion.keyTxnId, completion)) {
+                return false;
+            }
+            completion.registered = false;
+            return true;
+        }
+    }
+
+    // must be called holding the lock of the key
+    private void unlinkV2(long key, T prev, T completion) {
+        T next = completion.nextWithSameKey;
+        if (prev != null) {
+            prev.nextWithSameKey = next;
+        } else if (next != null) {
+            v2Completions.put(key, next);
+        } else {
+            v2Completions.remove(key);
+        }
+        completion.nextWithSameKey = null;
+        completion.registered = false;
+        numV2Completions.decrement();
+    }
+
+    private void schedule(T completion, long deadlineNanos) {
+        completion.deadlineNanos = deadlineNanos;
+        long deadlineTick = Math.floorDiv(deadlineNanos, tickNanos);
+        while (true) {
+            long tick = Math.max(deadlineTick, processedTick + 1);
+            int index = (int) (tick & wheelMask);
+            Bucket<T> bucket = wheel[index];
+            synchronized (bucket) {
+                // otherwise the tick was expired in the meantime, and the bucket won't be visited again before long
+                if (tick > processedTick) {
+                    link(bucket, index, completion, tick);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void unschedule(T completion) {
+        while (true) {
+            int index = completion.bucket;
+            if (index == NOT_SCHEDULED) {
+                return;
+            }
+            Bucket<T> bucket = wheel[index];
+            synchronized (bucket) {
+                // the completion may have been moved to another bucket in the meantime
+                if (completion.bucket == index) {
+                    unlink(bucket, completion);
+                    return;
+                }
+            }
+        }
+    }
+
+    // must be called holding the lock of the bucket
+    private void link(Bucket<T> bucket, int index, T completion, long tick) {
+        completion.timeoutTick = tick;
+        completion.wheelPrev = null;
+        completion.wheelNext = bucket.head;
+        if (bucket.head != null) {
+            bucket.head.wheelPrev = completion;
+        }
+        bucket.head = completion;
+        completion.bucket = index;
+    }
+
+    // must be called holding the lock of the bucket
+    private void unlink(Bucket<T> bucket, T completion) {
+        if (completion.wheelPrev != null) {
+            completion.wheelPrev.wheelNext = completion.wheelNext;
+        } else {
+            bucket.head = completion.wheelNext;
+        }
+        if (completion.wheelNext != null) {
+            completion.wheelNext.wheelPrev = completion.wheelPrev;
+        }
+        completion.wheelPrev = null;
+        completion.wheelNext = null;
+        completion.bucket = NOT_SCHEDULED;
+    }
+
+    private Object v2Lock(long key) {
+        return v2Locks[Long.hashCode(key) & (NUM_V2_LOCKS - 1)];
+    }
+
+    private static long v2Key(long ledgerId, long entryId, int operation) {
+        long h = ledgerId * 0x9E3779B97F4A7C15L + entryId;
+        h ^= h >>> 29;
+        return h * 0xBF58476D1CE4E5B9L + operation;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of the recent latencies of the requests sent to a bookie, used to predict the latency of the next
+ * ones.
+ *
+ * <p>The latencies are counted in log-linear buckets of microseconds, four per power of two, so that a percentile is
+ * known within 25%. The counts are halved every half-life, so that the percentiles follow the recent behavior of
+ * the bookie, e.g. a bookie which slows down is noticed within a few half-lives.
+ *
+ * <p>Recording a latency only increments a bucket. The percentiles are computed from a snapshot of the cumulative
+ * counts, taken at most once per snapshot interval by a reader, which also applies the pending decay.
+ */
+final class DecayingLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // latencies above 2^40 microseconds (about 12 days) fall in the last bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final int NUM_BUCKETS = (MAX_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final Ticker ticker;
+    private final long halfLifeNanos;
+    private final long snapshotIntervalNanos;
+    private final long minSamples;
+    private final AtomicLong nextDecayNanos;
+    private final AtomicLong nextSnapshotNanos;
+    private volatile long[] cumulativeCounts = new long[NUM_BUCKETS];
+
+    DecayingLatencyHistogram(long halfLife, long snapshotInterval, TimeUnit unit, long minSamples) {
+        this(halfLife, snapshotInterval, unit, minSamples, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    DecayingLatencyHistogram(long halfLife, long snapshotInterval, TimeUnit unit, long minSamples, Ticker ticker) {
+        this.ticker = ticker;
+        this.halfLifeNanos = unit.toNanos(halfLife);
+        this.snapshotIntervalNanos = unit.toNanos(snapshotInterval);
+        this.minSamples = minSamples;
+        long now = ticker.read();
+        this.nextDecayNanos = new AtomicLong(now + halfLifeNanos);
+        this.nextSnapshotNanos = new AtomicLong(now);
+    }
+
+    void recordLatency(long latencyNanos) {
+        counts.incrementAndGet(bucketIndex(TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+    }
+
+    /**
+     * Get the given percentile of the recent latencies.
+     *
+     * @param percentile the percentile, in (0, 100]
+     * @return the upper bound of the percentile in nanoseconds, or -1 if too few latencies were recorded recently
+     */
+    long getPercentileNanos(double percentile) {
+        long[] cumulative = maybeTakeSnapshot();
+        long total = cumulative[NUM_BUCKETS - 1];
+        if (total < minSamples || total == 0) {
+            return -1L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100.0));
+        int low = 0;
+        int high = NUM_BUCKETS - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] >= rank) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return TimeUnit.MICROSECONDS.toNanos(bucketUpperBound(low));
+    }
+
+    private long[] maybeTakeSnapshot() {
+        long now = ticker.read();
+        long nextSnapshot = nextSnapshotNanos.get();
+        if (now - nextSnapshot < 0 || !nextSnapshotNanos.compareAndSet(nextSnapshot, now + snapshotIntervalNanos)) {
+            return cumulativeCounts;
+        }
+        maybeDecay(now);
+        long[] cumulative = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            total += counts.get(i);
+            cumulative[i] = total;
+        }
+        cumulativeCounts = cumulative;
+        return cumulative;
+    }
+
+    private void maybeDecay(long now) {
+        long nextDecay = nextDecayNanos.get();
+        if (now - nextDecay < 0) {
+            return;
+        }
+        long halvings = 1 + (now - nextDecay) / halfLifeNanos;
+        if (!nextDecayNanos.compareAndSet(nextDecay, nextDecay + halvings * halfLifeNanos)) {
+            return;
+        }
+        int shift = (int) Math.min(halvings, Long.SIZE - 1);
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            long count;
+            do {
+                count = counts.get(i);
+            } while (count != 0 && !counts.compareAndSet(i, count, count >>> shift));
+        }
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(micros, 0L);
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return NUM_BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return exponent * SUB_BUCKETS + subBucket;
+    }
+
+    // the largest latency, in microseconds, counted in a bucket
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS;
+        int subBucket = index % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
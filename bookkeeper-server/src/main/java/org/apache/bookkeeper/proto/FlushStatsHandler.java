@@ -0,0 +1,79 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.flush.FlushConsolidationHandler;
+
+import org.apache.bookkeeper.conf.AbstractConfiguration;
+import org.apache.bookkeeper.stats.Counter;
+
+/**
+ * Counts the messages written on a channel and the flushes passed down to the socket,
+ * so that the number of flushes per message shows how much the writes are coalesced.
+ */
+@Sharable
+class FlushStatsHandler extends ChannelOutboundHandlerAdapter {
+
+    /**
+     * Add the flush stats handler and, if enabled, the flush consolidation handler at the
+     * end of the pipeline. They must be added right after the encoder of the messages, so
+     * that the flushes of the handlers added later are consolidated before being counted.
+     *
+     * <p>The flushes are consolidated by a {@link FlushConsolidationHandler}: while a read
+     * is in progress on the channel, the flushes are delayed until the read is complete,
+     * and the flushes issued outside of a read, e.g. by the worker threads, are delayed to
+     * a task of the event loop, which flushes all the messages written in the meantime.
+     * The added latency is bounded by flushing anyway after a number of pending flushes.
+     */
+    static void addLast(ChannelPipeline pipeline, AbstractConfiguration<?> conf,
+                        Counter messagesCounter, Counter flushesCounter) {
+        pipeline.addLast("flushStats", new FlushStatsHandler(messagesCounter, flushesCounter));
+        if (conf.isNettyFlushConsolidationEnabled()) {
+            pipeline.addLast("flushConsolidation",
+                    new FlushConsolidationHandler(conf.getNettyFlushConsolidationMaxPendingFlushes(), true));
+        }
+    }
+
+    private final Counter messagesCounter;
+    private final Counter flushesCounter;
+
+    FlushStatsHandler(Counter messagesCounter, Counter flushesCounter) {
+        this.messagesCounter = messagesCounter;
+        this.flushesCounter = flushesCounter;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        messagesCounter.inc();
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        flushesCounter.inc();
+        ctx.flush();
+    }
+}
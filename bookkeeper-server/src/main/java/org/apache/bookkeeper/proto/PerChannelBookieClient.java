@@ -42,11 +42,7 @@ import io.netty.channel.ChannelPromise;
 import io.netty.channel.DefaultEventLoopGroup;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.WriteBufferWaterMark;
-import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.local.LocalAddress;
-import io.netty.channel.local.LocalChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.channel.unix.Errors.NativeIoException;
 import io.netty.handler.codec.CorruptedFrameException;
 import io.netty.handler.codec.DecoderException;
@@ -68,17 +64,18 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.function.BiPredicate;
+import java.util.function.Consumer;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import lombok.SneakyThrows;
@@ -97,6 +94,7 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallba
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetListOfEntriesOfLedgerCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallbackCtx;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
@@ -114,6 +112,10 @@ import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerRe
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
@@ -133,11 +135,10 @@ import org.apache.bookkeeper.tls.SecurityHandlerFactory;
 import org.apache.bookkeeper.tls.SecurityHandlerFactory.NodeType;
 import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
 import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.EventLoopUtil;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.SafeRunnable;
 import org.apache.bookkeeper.util.StringUtils;
-import org.apache.bookkeeper.util.collections.ConcurrentOpenHashMap;
-import org.apache.bookkeeper.util.collections.SynchronizedHashMultiMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -163,8 +164,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         BKException.Code.LedgerFencedException,
                         BKException.Code.LedgerExistException,
                         BKException.Code.DuplicateEntryIdException,
-                        BKException.Code.WriteOnReadOnlyBookieException));
+                        BKException.Code.WriteOnReadOnlyBookieException,
+                        BKException.Code.IllegalOpException));
     private static final int DEFAULT_HIGH_PRIORITY_VALUE = 100; // We may add finer grained priority later.
+    // number of buckets of the timeout wheel of the pending completions, whose tick is the timeout monitor interval
+    private static final int COMPLETION_TIMEOUT_WHEEL_SIZE = 64;
     private static final AtomicLong txnIdGenerator = new AtomicLong(0);
 
     final BookieId bookieId;
@@ -176,15 +180,17 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     final long readEntryTimeoutNanos;
     final int maxFrameSize;
     final long getBookieInfoTimeoutNanos;
+    final boolean rangeAddEnabled;
+    final int rangeAddMaxEntries;
+    final long rangeAddMaxSizeBytes;
+    // cleared once the bookie rejected a range add, i.e. it predates them
+    private volatile boolean rangeAddSupported = true;
+    // the consecutive adds of each ledger waiting to be sent with a single range add
+    private final Map<Long, PendingRangeAdd> pendingRangeAdds = new HashMap<>();
     final int startTLSTimeout;
 
-    private final ConcurrentOpenHashMap<CompletionKey, CompletionValue> completionObjects =
-        new ConcurrentOpenHashMap<CompletionKey, CompletionValue>();
-
-    // Map that hold duplicated read requests. The idea is to only use this map (synchronized) when there is a duplicate
-    // read request for the same ledgerId/entryId
-    private final SynchronizedHashMultiMap<CompletionKey, CompletionValue> completionObjectsV2Conflicts =
-        new SynchronizedHashMultiMap<>();
+    // the completions of the requests waiting for their response, keyed by txnId (v3) or by ledger/entry (v2)
+    private final CompletionRegistry<CompletionValue> completions;
 
     private final StatsLogger statsLogger;
     @StatsDoc(
@@ -197,11 +203,31 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         help = "timeout stats of read entries requests"
     )
     private final OpStatsLogger readTimeoutOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_RANGE_READ_OP,
+        help = "channel stats of range read entries requests"
+    )
+    private final OpStatsLogger rangeReadOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_TIMEOUT_RANGE_READ,
+        help = "timeout stats of range read entries requests"
+    )
+    private final OpStatsLogger rangeReadTimeoutOpLogger;
     @StatsDoc(
         name = BookKeeperClientStats.CHANNEL_ADD_OP,
         help = "channel stats of add entries requests"
     )
     private final OpStatsLogger addEntryOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_RANGE_ADD_OP,
+        help = "channel stats of range add entries requests"
+    )
+    private final OpStatsLogger rangeAddOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_TIMEOUT_RANGE_ADD,
+        help = "timeout stats of range add entries requests"
+    )
+    private final OpStatsLogger rangeAddTimeoutOpLogger;
     @StatsDoc(
         name = BookKeeperClientStats.CHANNEL_WRITE_LAC_OP,
         help = "channel stats of write_lac requests"
@@ -269,6 +295,16 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         help = "the number of exceptions received from this channel"
     )
     private final Counter exceptionCounter;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_WRITE_MESSAGES,
+        help = "the number of requests written on this channel"
+    )
+    private final Counter writeMessagesCounter;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_FLUSHES,
+        help = "the number of flushes of this channel, consolidated when nettyFlushConsolidationEnabled is set"
+    )
+    private final Counter flushesCounter;
     @StatsDoc(
         name = BookKeeperClientStats.ADD_OP_OUTSTANDING,
         help = "the number of outstanding add_entry requests"
@@ -340,6 +376,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     private final ExtensionRegistry extRegistry;
     private final SecurityHandlerFactory shFactory;
     private volatile boolean isWritable = true;
+    // the recent latencies of the entry reads sent to the bookie, shared by its channels, null if not tracked
+    private final DecayingLatencyHistogram readLatencyHistogram;
     private long lastBookieUnavailableLogTimestamp = 0;
 
     public PerChannelBookieClient(OrderedExecutor executor, EventLoopGroup eventLoopGroup,
@@ -377,6 +415,21 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                   PerChannelBookieClientPool pcbcPool,
                                   SecurityHandlerFactory shFactory,
                                   BookieAddressResolver bookieAddressResolver) throws SecurityException {
+        this(conf, executor, eventLoopGroup, allocator, bookieId, parentStatsLogger, authProviderFactory, extRegistry,
+                pcbcPool, shFactory, bookieAddressResolver, null);
+    }
+
+    PerChannelBookieClient(ClientConfiguration conf, OrderedExecutor executor,
+                           EventLoopGroup eventLoopGroup,
+                           ByteBufAllocator allocator,
+                           BookieId bookieId,
+                           StatsLogger parentStatsLogger, ClientAuthProvider.Factory authProviderFactory,
+                           ExtensionRegistry extRegistry,
+                           PerChannelBookieClientPool pcbcPool,
+                           SecurityHandlerFactory shFactory,
+                           BookieAddressResolver bookieAddressResolver,
+                           DecayingLatencyHistogram readLatencyHistogram) throws SecurityException {
+        this.readLatencyHistogram = readLatencyHistogram;
         this.maxFrameSize = conf.getNettyMaxFrameSizeBytes();
         this.conf = conf;
         this.bookieId = bookieId;
@@ -392,8 +445,13 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         this.addEntryTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getAddEntryTimeout());
         this.readEntryTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getReadEntryTimeout());
         this.getBookieInfoTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getBookieInfoTimeout());
+        this.completions = new CompletionRegistry<>(TimeUnit.SECONDS.toNanos(conf.getTimeoutMonitorIntervalSec()),
+                                                    COMPLETION_TIMEOUT_WHEEL_SIZE, MathUtils.nowInNano());
         this.startTLSTimeout = conf.getStartTLSTimeout();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
+        this.rangeAddEnabled = conf.isRangeAddEnabled() && !useV2WireProtocol;
+        this.rangeAddMaxEntries = conf.getRangeAddMaxEntries();
+        this.rangeAddMaxSizeBytes = conf.getRangeAddMaxSizeBytes();
         this.preserveMdcForTaskExecution = conf.getPreserveMdcForTaskExecution();
 
         this.authProviderFactory = authProviderFactory;
@@ -415,6 +473,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         getListOfEntriesOfLedgerCompletionOpLogger = statsLogger
                 .getOpStatsLogger(BookKeeperClientStats.GET_LIST_OF_ENTRIES_OF_LEDGER_OP);
         readTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_READ);
+        rangeReadOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_RANGE_READ_OP);
+        rangeReadTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_RANGE_READ);
+        rangeAddOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_RANGE_ADD_OP);
+        rangeAddTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_RANGE_ADD);
         addTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_ADD);
         writeLacTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_WRITE_LAC);
         forceLedgerTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_FORCE);
@@ -425,6 +487,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         getListOfEntriesOfLedgerCompletionTimeoutOpLogger = statsLogger
                 .getOpStatsLogger(BookKeeperClientStats.TIMEOUT_GET_LIST_OF_ENTRIES_OF_LEDGER);
         exceptionCounter = statsLogger.getCounter(BookKeeperClientStats.NETTY_EXCEPTION_CNT);
+        writeMessagesCounter = statsLogger.getCounter(BookKeeperClientStats.CHANNEL_WRITE_MESSAGES);
+        flushesCounter = statsLogger.getCounter(BookKeeperClientStats.CHANNEL_FLUSHES);
         connectTimer = statsLogger.getOpStatsLogger(BookKeeperClientStats.CLIENT_CONNECT_TIMER);
         addEntryOutstanding = statsLogger.getCounter(BookKeeperClientStats.ADD_OP_OUTSTANDING);
         readEntryOutstanding = statsLogger.getCounter(BookKeeperClientStats.READ_OP_OUTSTANDING);
@@ -518,7 +582,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     }
 
     protected long getNumPendingCompletionRequests() {
-        return completionObjects.size();
+        return completions.size();
     }
 
     protected ChannelFuture connect() {
@@ -538,13 +602,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         // Set up the ClientBootStrap so we can create a new Channel connection to the bookie.
         Bootstrap bootstrap = new Bootstrap();
         bootstrap.group(eventLoopGroup);
-        if (eventLoopGroup instanceof EpollEventLoopGroup) {
-            bootstrap.channel(EpollSocketChannel.class);
-        } else if (eventLoopGroup instanceof DefaultEventLoopGroup) {
-            bootstrap.channel(LocalChannel.class);
-        } else {
-            bootstrap.channel(NioSocketChannel.class);
-        }
+        bootstrap.channel(EventLoopUtil.getClientSocketChannelClass(eventLoopGroup));
 
         bootstrap.option(ChannelOption.ALLOCATOR, this.allocator);
         bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, conf.getClientConnectTimeoutMillis());
@@ -579,6 +637,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         new LengthFieldBasedFrameDecoder(maxFrameSize, 0, 4, 0, 4));
                 pipeline.addLast("lengthprepender", new LengthFieldPrepender(4));
                 pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.RequestEncoder(extRegistry));
+                FlushStatsHandler.addLast(pipeline, conf, writeMessagesCounter, flushesCounter);
                 pipeline.addLast(
                     "bookieProtoDecoder",
                     new BookieProtoEncoding.ResponseDecoder(extRegistry, useV2WireProtocol, shFactory != null));
@@ -667,12 +726,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     void writeLac(final long ledgerId, final byte[] masterKey, final long lac, ByteBufList toSend, WriteLacCallback cb,
             Object ctx) {
         final long txnId = getTxnId();
-        final CompletionKey completionKey = new V3CompletionKey(txnId,
-                                                                OperationType.WRITE_LAC);
         // writeLac is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
-                              new WriteLacCompletion(completionKey, cb,
-                                                     ctx, lac));
+        final CompletionValue completion = new WriteLacCompletion(cb, ctx, lac);
+        final long registrationId = putCompletion(txnId, OperationType.WRITE_LAC, completion);
 
         // Build the request
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -697,7 +753,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 .setHeader(headerBuilder)
                 .setWriteLacRequest(writeLacBuilder)
                 .build();
-        writeAndFlush(channel, completionKey, writeLacRequest);
+        writeAndFlush(channel, completion, registrationId, writeLacRequest);
     }
 
     void forceLedger(final long ledgerId, ForceLedgerCallback cb, Object ctx) {
@@ -709,12 +765,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 return;
         }
         final long txnId = getTxnId();
-        final CompletionKey completionKey = new V3CompletionKey(txnId,
-                                                                OperationType.FORCE_LEDGER);
         // force is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
-                              new ForceLedgerCompletion(completionKey, cb,
-                                                     ctx, ledgerId));
+        final CompletionValue completion = new ForceLedgerCompletion(cb, ctx, ledgerId);
+        final long registrationId = putCompletion(txnId, OperationType.FORCE_LEDGER, completion);
 
         // Build the request
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -728,7 +781,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 .setHeader(headerBuilder)
                 .setForceLedgerRequest(writeLacBuilder)
                 .build();
-        writeAndFlush(channel, completionKey, forceLedgerRequest);
+        writeAndFlush(channel, completion, registrationId, forceLedgerRequest);
     }
 
     /**
@@ -754,23 +807,33 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
      */
     void addEntry(final long ledgerId, byte[] masterKey, final long entryId, ByteBufList toSend, WriteCallback cb,
                   Object ctx, final int options, boolean allowFastFail, final EnumSet<WriteFlag> writeFlags) {
+        if (rangeAddEnabled && rangeAddSupported) {
+            addEntryToRange(ledgerId, masterKey, entryId, toSend, cb, ctx, options, allowFastFail, writeFlags);
+        } else {
+            sendAddEntry(ledgerId, masterKey, entryId, toSend, cb, ctx, options, allowFastFail, writeFlags);
+        }
+    }
+
+    private void sendAddEntry(final long ledgerId, byte[] masterKey, final long entryId, ByteBufList toSend,
+                              WriteCallback cb, Object ctx, final int options, boolean allowFastFail,
+                              final EnumSet<WriteFlag> writeFlags) {
+        if (useV2WireProtocol && writeFlags.contains(WriteFlag.DEFERRED_SYNC)) {
+            LOG.error("invalid writeflags {} for v2 protocol", writeFlags);
+            executor.executeOrdered(ledgerId, () -> {
+                cb.writeComplete(BKException.Code.IllegalOpException, ledgerId, entryId, bookieId, ctx);
+            });
+            return;
+        }
         Object request = null;
-        CompletionKey completionKey = null;
+        final AddCompletion completion = acquireAddCompletion(cb, ctx, ledgerId, entryId);
+        final long registrationId;
         if (useV2WireProtocol) {
-            if (writeFlags.contains(WriteFlag.DEFERRED_SYNC)) {
-                LOG.error("invalid writeflags {} for v2 protocol", writeFlags);
-                executor.executeOrdered(ledgerId, () -> {
-                    cb.writeComplete(BKException.Code.IllegalOpException, ledgerId, entryId, bookieId, ctx);
-                });
-                return;
-            }
-            completionKey = acquireV2Key(ledgerId, entryId, OperationType.ADD_ENTRY);
+            registrationId = putV2Completion(ledgerId, entryId, OperationType.ADD_ENTRY, completion);
             request = BookieProtocol.AddRequest.create(
                     BookieProtocol.CURRENT_PROTOCOL_VERSION, ledgerId, entryId,
                     (short) options, masterKey, toSend);
         } else {
             final long txnId = getTxnId();
-            completionKey = new V3CompletionKey(txnId, OperationType.ADD_ENTRY);
 
             // Build the request and calculate the total size to be included in the packet.
             BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -781,21 +844,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
             }
 
-            ByteString body = null;
-            if (toSend.hasArray()) {
-                body = UnsafeByteOperations.unsafeWrap(toSend.array(), toSend.arrayOffset(), toSend.readableBytes());
-            } else {
-                for (int i = 0; i < toSend.size(); i++) {
-                    ByteString piece = UnsafeByteOperations.unsafeWrap(toSend.getBuffer(i).nioBuffer());
-                    // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
-                    body = (body == null) ? piece : body.concat(piece);
-                }
-            }
             AddRequest.Builder addBuilder = AddRequest.newBuilder()
                     .setLedgerId(ledgerId)
                     .setEntryId(entryId)
                     .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
-                    .setBody(body);
+                    .setBody(toByteString(toSend));
 
             if (((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD) {
                 addBuilder.setFlag(AddRequest.Flag.RECOVERY_ADD);
@@ -810,34 +863,203 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     .setHeader(headerBuilder)
                     .setAddRequest(addBuilder)
                     .build();
+            registrationId = putCompletion(txnId, OperationType.ADD_ENTRY, completion);
         }
 
-        putCompletionKeyValue(completionKey,
-                              acquireAddCompletion(completionKey,
-                                                   cb, ctx, ledgerId, entryId));
         final Channel c = channel;
         if (c == null) {
             // usually checked in writeAndFlush, but we have extra check
             // because we need to release toSend.
-            errorOut(completionKey);
+            errorOut(completion, registrationId);
             toSend.release();
             return;
         } else {
             // addEntry times out on backpressure
-            writeAndFlush(c, completionKey, request, allowFastFail);
+            writeAndFlush(c, completion, registrationId, request, allowFastFail);
+        }
+    }
+
+    private static ByteString toByteString(ByteBufList toSend) {
+        ByteString body = null;
+        if (toSend.hasArray()) {
+            body = UnsafeByteOperations.unsafeWrap(toSend.array(), toSend.arrayOffset(), toSend.readableBytes());
+        } else {
+            for (int i = 0; i < toSend.size(); i++) {
+                ByteString piece = UnsafeByteOperations.unsafeWrap(toSend.getBuffer(i).nioBuffer());
+                // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
+                body = (body == null) ? piece : body.concat(piece);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Queues an add to be sent with the following consecutive adds of the same ledger in a single
+     * <i>RANGE_ADD_ENTRY</i> request. A batch is sent once the adds queued while the event loop of the channel
+     * gets to it are collected, once it is full, or once an add that doesn't follow it is queued.
+     */
+    private void addEntryToRange(final long ledgerId, byte[] masterKey, final long entryId, ByteBufList toSend,
+                                 WriteCallback cb, Object ctx, final int options, boolean allowFastFail,
+                                 final EnumSet<WriteFlag> writeFlags) {
+        final Channel c = channel;
+        if (c == null) {
+            sendAddEntry(ledgerId, masterKey, entryId, toSend, cb, ctx, options, allowFastFail, writeFlags);
+            return;
+        }
+
+        // the batch holds the entry until it is acknowledged, in case it has to be sent again with a single add
+        toSend.retain();
+        PendingRangeAdd broken = null;
+        PendingRangeAdd full = null;
+        PendingRangeAdd started = null;
+        synchronized (pendingRangeAdds) {
+            PendingRangeAdd batch = pendingRangeAdds.get(ledgerId);
+            if (batch != null && !batch.canAppend(masterKey, entryId, toSend.readableBytes(),
+                                                  options, allowFastFail, writeFlags)) {
+                pendingRangeAdds.remove(ledgerId);
+                broken = batch;
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new PendingRangeAdd(ledgerId, masterKey, entryId, options, allowFastFail, writeFlags);
+                pendingRangeAdds.put(ledgerId, batch);
+                started = batch;
+            }
+            batch.append(toSend, cb, ctx);
+            if (batch.isFull()) {
+                pendingRangeAdds.remove(ledgerId);
+                full = batch;
+            }
+        }
+
+        if (broken != null) {
+            sendRangeAdd(broken);
+        }
+        if (full != null) {
+            sendRangeAdd(full);
+        } else if (started != null) {
+            final PendingRangeAdd batch = started;
+            try {
+                c.eventLoop().execute(() -> flushRangeAdd(batch));
+            } catch (RejectedExecutionException e) {
+                flushRangeAdd(batch);
+            }
+        }
+    }
+
+    private void flushRangeAdd(PendingRangeAdd batch) {
+        synchronized (pendingRangeAdds) {
+            if (!pendingRangeAdds.remove(batch.ledgerId, batch)) {
+                // already sent
+                return;
+            }
+        }
+        sendRangeAdd(batch);
+    }
+
+    private void sendRangeAdd(PendingRangeAdd batch) {
+        if (batch.size() == 1) {
+            ByteBufList toSend = batch.toSend.get(0);
+            sendAddEntry(batch.ledgerId, batch.masterKey, batch.firstEntryId, toSend, batch.cbs.get(0),
+                         batch.ctxs.get(0), batch.options, batch.allowFastFail, batch.writeFlags);
+            toSend.release();
+            return;
+        }
+
+        final long txnId = getTxnId();
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.RANGE_ADD_ENTRY)
+                .setTxnId(txnId);
+        if (((short) batch.options & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY) {
+            headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
+        }
+
+        RangeAddRequest.Builder rangeAddBuilder = RangeAddRequest.newBuilder()
+                .setLedgerId(batch.ledgerId)
+                .setFirstEntryId(batch.firstEntryId)
+                .setMasterKey(UnsafeByteOperations.unsafeWrap(batch.masterKey));
+        for (ByteBufList toSend : batch.toSend) {
+            rangeAddBuilder.addBody(toByteString(toSend));
+        }
+        if (((short) batch.options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD) {
+            rangeAddBuilder.setFlag(AddRequest.Flag.RECOVERY_ADD);
+        }
+        if (!batch.writeFlags.isEmpty()) {
+            rangeAddBuilder.setWriteFlags(WriteFlag.getWriteFlagsValue(batch.writeFlags));
+        }
+
+        final Request request = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setRangeAddRequest(rangeAddBuilder)
+                .build();
+
+        final CompletionValue completion = new RangeAddCompletion(batch);
+        final long registrationId = putCompletion(txnId, OperationType.RANGE_ADD_ENTRY, completion);
+        writeAndFlush(channel, completion, registrationId, request, batch.allowFastFail);
+    }
+
+    /**
+     * Consecutive adds of a ledger, with the same options, waiting to be sent with a single range add.
+     */
+    private final class PendingRangeAdd {
+        final long ledgerId;
+        final byte[] masterKey;
+        final long firstEntryId;
+        final int options;
+        final boolean allowFastFail;
+        final EnumSet<WriteFlag> writeFlags;
+        final List<ByteBufList> toSend = new ArrayList<>();
+        final List<WriteCallback> cbs = new ArrayList<>();
+        final List<Object> ctxs = new ArrayList<>();
+        long sizeBytes = 0;
+
+        PendingRangeAdd(long ledgerId, byte[] masterKey, long firstEntryId, int options,
+                        boolean allowFastFail, EnumSet<WriteFlag> writeFlags) {
+            this.ledgerId = ledgerId;
+            this.masterKey = masterKey;
+            this.firstEntryId = firstEntryId;
+            this.options = options;
+            this.allowFastFail = allowFastFail;
+            this.writeFlags = writeFlags;
+        }
+
+        int size() {
+            return toSend.size();
+        }
+
+        boolean canAppend(byte[] masterKey, long entryId, int entrySize, int options,
+                          boolean allowFastFail, EnumSet<WriteFlag> writeFlags) {
+            return entryId == firstEntryId + size()
+                && sizeBytes + entrySize <= rangeAddMaxSizeBytes
+                && options == this.options
+                && allowFastFail == this.allowFastFail
+                && writeFlags.equals(this.writeFlags)
+                && (masterKey == this.masterKey || Arrays.equals(masterKey, this.masterKey));
+        }
+
+        void append(ByteBufList entry, WriteCallback cb, Object ctx) {
+            toSend.add(entry);
+            cbs.add(cb);
+            ctxs.add(ctx);
+            sizeBytes += entry.readableBytes();
+        }
+
+        boolean isFull() {
+            return size() >= rangeAddMaxEntries || sizeBytes >= rangeAddMaxSizeBytes;
         }
     }
 
     public void readLac(final long ledgerId, ReadLacCallback cb, Object ctx) {
         Object request = null;
-        CompletionKey completionKey = null;
+        final CompletionValue completion = new ReadLacCompletion(cb, ctx, ledgerId);
+        final long registrationId;
         if (useV2WireProtocol) {
             request = new BookieProtocol.ReadRequest(BookieProtocol.CURRENT_PROTOCOL_VERSION,
                                                      ledgerId, 0, (short) 0, null);
-            completionKey = acquireV2Key(ledgerId, 0, OperationType.READ_LAC);
+            registrationId = putV2Completion(ledgerId, 0, OperationType.READ_LAC, completion);
         } else {
             final long txnId = getTxnId();
-            completionKey = new V3CompletionKey(txnId, OperationType.READ_LAC);
 
             // Build the request and calculate the total size to be included in the packet.
             BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -850,17 +1072,15 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     .setHeader(headerBuilder)
                     .setReadLacRequest(readLacBuilder)
                     .build();
+            registrationId = putCompletion(txnId, OperationType.READ_LAC, completion);
         }
-        putCompletionKeyValue(completionKey,
-                              new ReadLacCompletion(completionKey, cb,
-                                                    ctx, ledgerId));
-        writeAndFlush(channel, completionKey, request);
+        writeAndFlush(channel, completion, registrationId, request);
     }
 
     public void getListOfEntriesOfLedger(final long ledgerId, GetListOfEntriesOfLedgerCallback cb) {
         final long txnId = getTxnId();
-        final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.GET_LIST_OF_ENTRIES_OF_LEDGER);
-        completionObjects.put(completionKey, new GetListOfEntriesOfLedgerCompletion(completionKey, cb, ledgerId));
+        final CompletionValue completion = new GetListOfEntriesOfLedgerCompletion(cb, ledgerId);
+        final long registrationId = putCompletion(txnId, OperationType.GET_LIST_OF_ENTRIES_OF_LEDGER, completion);
 
         // Build the request.
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder().setVersion(ProtocolVersion.VERSION_THREE)
@@ -872,7 +1092,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         final Request getListOfEntriesOfLedgerRequest = Request.newBuilder().setHeader(headerBuilder)
                 .setGetListOfEntriesOfLedgerRequest(getListOfEntriesOfLedgerRequestBuilder).build();
 
-        writeAndFlush(channel, completionKey, getListOfEntriesOfLedgerRequest);
+        writeAndFlush(channel, completion, registrationId, getListOfEntriesOfLedgerRequest);
     }
 
     /**
@@ -914,14 +1134,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                    byte[] masterKey,
                                    boolean allowFastFail) {
         Object request = null;
-        CompletionKey completionKey = null;
+        long txnId = -1L;
         if (useV2WireProtocol) {
             request = new BookieProtocol.ReadRequest(BookieProtocol.CURRENT_PROTOCOL_VERSION,
                     ledgerId, entryId, (short) flags, masterKey);
-            completionKey = acquireV2Key(ledgerId, entryId, OperationType.READ_ENTRY);
         } else {
-            final long txnId = getTxnId();
-            completionKey = new V3CompletionKey(txnId, OperationType.READ_ENTRY);
+            txnId = getTxnId();
 
             // Build the request and calculate the total size to be included in the packet.
             BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -977,18 +1195,83 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     .build();
         }
 
-        ReadCompletion readCompletion = new ReadCompletion(completionKey, cb, ctx, ledgerId, entryId);
-        putCompletionKeyValue(completionKey, readCompletion);
+        // acquired once the request is valid, so that it is always registered
+        ReadCompletion readCompletion = acquireReadCompletion(cb, ctx, ledgerId, entryId);
+        // a long poll read waits for the lac to advance, its latency isn't the one of the bookie
+        readCompletion.trackLatency = null == timeOutInMillis;
+        final long registrationId;
+        if (useV2WireProtocol) {
+            registrationId = putV2Completion(ledgerId, entryId, OperationType.READ_ENTRY, readCompletion);
+        } else {
+            registrationId = putCompletion(txnId, OperationType.READ_ENTRY, readCompletion);
+        }
+
+        writeAndFlush(channel, readCompletion, registrationId, request, allowFastFail);
+    }
+
+    /**
+     * Range Reads.
+     */
+    public void readEntries(final long ledgerId,
+                            final long firstEntryId,
+                            final long lastEntryId,
+                            final int maxCount,
+                            final long maxSize,
+                            ReadEntriesCallback cb,
+                            Object ctx,
+                            int flags,
+                            boolean allowFastFail) {
+        if (useV2WireProtocol) {
+            LOG.error("Range reads are not supported by the v2 protocol, ledger {} entries [{}, {}]",
+                      ledgerId, firstEntryId, lastEntryId);
+            cb.readEntriesComplete(BKException.Code.ProtocolVersionException,
+                                   ledgerId, firstEntryId, Collections.emptyList(), ctx);
+            return;
+        }
+        if (firstEntryId < 0 || lastEntryId < firstEntryId) {
+            LOG.error("Invalid range read of ledger {} entries [{}, {}]", ledgerId, firstEntryId, lastEntryId);
+            cb.readEntriesComplete(BKException.Code.IncorrectParameterException,
+                                   ledgerId, firstEntryId, Collections.emptyList(), ctx);
+            return;
+        }
+
+        final long txnId = getTxnId();
+
+        // Build the request and calculate the total size to be included in the packet.
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.RANGE_READ_ENTRY)
+                .setTxnId(txnId);
+        if (((short) flags & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY) {
+            headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
+        }
+
+        RangeReadRequest.Builder rangeReadBuilder = RangeReadRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId)
+                .setLastEntryId(lastEntryId);
+        if (maxCount > 0) {
+            rangeReadBuilder.setMaxCount(maxCount);
+        }
+        if (maxSize > 0) {
+            rangeReadBuilder.setMaxSize(maxSize);
+        }
+
+        final Request request = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setRangeReadRequest(rangeReadBuilder)
+                .build();
 
-        writeAndFlush(channel, completionKey, request, allowFastFail);
+        final CompletionValue completion = new RangeReadCompletion(cb, ctx, ledgerId, firstEntryId);
+        final long registrationId = putCompletion(txnId, OperationType.RANGE_READ_ENTRY, completion);
+
+        writeAndFlush(channel, completion, registrationId, request, allowFastFail);
     }
 
     public void getBookieInfo(final long requested, GetBookieInfoCallback cb, Object ctx) {
         final long txnId = getTxnId();
-        final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.GET_BOOKIE_INFO);
-        completionObjects.put(completionKey,
-                              new GetBookieInfoCompletion(
-                                      completionKey, cb, ctx));
+        final CompletionValue completion = new GetBookieInfoCompletion(cb, ctx);
+        final long registrationId = putCompletion(txnId, OperationType.GET_BOOKIE_INFO, completion);
 
         // Build the request and calculate the total size to be included in the packet.
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -1004,17 +1287,13 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 .setGetBookieInfoRequest(getBookieInfoBuilder)
                 .build();
 
-        writeAndFlush(channel, completionKey, getBookieInfoRequest);
+        writeAndFlush(channel, completion, registrationId, getBookieInfoRequest);
     }
 
-    private static final BiPredicate<CompletionKey, CompletionValue> timeoutCheck = (key, value) -> {
-        return value.maybeTimeout();
-    };
+    private static final Consumer<CompletionValue> timeoutHandler = CompletionValue::timeout;
 
     public void checkTimeoutOnPendingOperations() {
-        int timedOutOperations = completionObjects.removeIf(timeoutCheck);
-
-        timedOutOperations += completionObjectsV2Conflicts.removeIf(timeoutCheck);
+        int timedOutOperations = completions.expire(MathUtils.nowInNano(), timeoutHandler);
 
         if (timedOutOperations > 0) {
             LOG.info("Timed-out {} operations to channel {} for {}",
@@ -1100,18 +1379,26 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     }
 
     private void writeAndFlush(final Channel channel,
-                               final CompletionKey key,
+                               final CompletionValue completion,
+                               final long registrationId,
                                final Object request) {
-        writeAndFlush(channel, key, request, false);
+        writeAndFlush(channel, completion, registrationId, request, false);
     }
 
+    /**
+     * Writes the request of a registered completion.
+     *
+     * <p>The completion may be answered, recycled and registered for another request before the write completes, so
+     * the write completion only acts on the given registration of the completion.
+     */
     private void writeAndFlush(final Channel channel,
-                           final CompletionKey key,
+                           final CompletionValue completion,
+                           final long registrationId,
                            final Object request,
                            final boolean allowFastFail) {
         if (channel == null) {
             LOG.warn("Operation {} failed: channel == null", StringUtils.requestToString(request));
-            errorOut(key);
+            errorOut(completion, registrationId);
             return;
         }
 
@@ -1125,7 +1412,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             LOG.warn("Operation {} failed: TooManyRequestsException",
                     StringUtils.requestToString(request));
 
-            errorOut(key, BKException.Code.TooManyRequestsException);
+            errorOut(completion, registrationId, BKException.Code.TooManyRequestsException);
             return;
         }
 
@@ -1135,45 +1422,38 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             ChannelPromise promise = channel.newPromise().addListener(future -> {
                 if (future.isSuccess()) {
                     nettyOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
-                    CompletionValue completion = completionObjects.get(key);
-                    if (completion != null) {
+                    if (completions.isRegistered(completion, registrationId)) {
                         completion.setOutstanding();
                     }
                 } else {
                     nettyOpLogger.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                    errorOut(completion, registrationId);
                 }
             });
 
             channel.writeAndFlush(request, promise);
         } catch (Throwable e) {
             LOG.warn("Operation {} failed", StringUtils.requestToString(request), e);
-            errorOut(key);
+            errorOut(completion, registrationId);
         }
     }
 
-    void errorOut(final CompletionKey key) {
+    void errorOut(final CompletionValue completion, final long registrationId) {
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Removing completion key: {}", key);
+            LOG.debug("Removing completion: {}", completion);
         }
-        CompletionValue completion = completionObjects.remove(key);
-        if (completion != null) {
+        // it may have been completed in the meantime, or even recycled and registered for another request
+        if (completions.remove(completion, registrationId)) {
             completion.errorOut();
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut());
         }
     }
 
-    void errorOut(final CompletionKey key, final int rc) {
+    void errorOut(final CompletionValue completion, final long registrationId, final int rc) {
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Removing completion key: {}", key);
+            LOG.debug("Removing completion: {}", completion);
         }
-        CompletionValue completion = completionObjects.remove(key);
-        if (completion != null) {
+        if (completions.remove(completion, registrationId)) {
             completion.errorOut(rc);
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut(rc));
         }
     }
 
@@ -1202,14 +1482,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
      */
 
     void errorOutOutstandingEntries(int rc) {
-        Optional<CompletionKey> multikey = completionObjectsV2Conflicts.getAnyKey();
-        while (multikey.isPresent()) {
-            multikey.ifPresent(k -> errorOut(k, rc));
-            multikey = completionObjectsV2Conflicts.getAnyKey();
-        }
-        for (CompletionKey key : completionObjects.keys()) {
-            errorOut(key, rc);
-        }
+        completions.removeAll(completion -> completion.errorOut(rc));
     }
 
     void recordError() {
@@ -1330,9 +1603,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         OperationType operationType = getOperationType(response.getOpCode());
         StatusCode status = getStatusCodeFromErrorCode(response.errorCode);
 
-        CompletionKey key = acquireV2Key(response.ledgerId, response.entryId, operationType);
-        CompletionValue completionValue = getCompletionValue(key);
-        key.release();
+        CompletionValue completionValue = completions.removeV2(response.ledgerId, response.entryId,
+                                                               operationType.getNumber());
 
         if (null == completionValue) {
             // Unexpected response, so log it. The txnId should have been present.
@@ -1447,8 +1719,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     private void readV3Response(final Response response) {
         final BKPacketHeader header = response.getHeader();
 
-        final CompletionKey key = newCompletionKey(header.getTxnId(), header.getOperation());
-        final CompletionValue completionValue = completionObjects.get(key);
+        final CompletionValue completionValue = completions.remove(header.getTxnId(),
+                                                                   header.getOperation().getNumber());
 
         if (null == completionValue) {
             // Unexpected response, so log it. The txnId should have been present.
@@ -1473,8 +1745,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 }
             });
         }
-
-        completionObjects.remove(key);
     }
 
     void initTLSHandshake() {
@@ -1559,11 +1829,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
      */
 
     // visible for testing
-    abstract class CompletionValue {
+    abstract class CompletionValue extends CompletionRegistry.Entry<CompletionValue> {
         private final OpStatsLogger opLogger;
         private final OpStatsLogger timeoutOpLogger;
         private final String operationName;
-        private final Map<String, String> mdcContextMap;
+        private Map<String, String> mdcContextMap;
         protected Object ctx;
         protected long ledgerId;
         protected long entryId;
@@ -1584,7 +1854,18 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             this.mdcContextMap = preserveMdcForTaskExecution ? MDC.getCopyOfContextMap() : null;
         }
 
-        private long latency() {
+        /**
+         * Prepares a recycled completion for a new request.
+         */
+        void reset(Object ctx, long ledgerId, long entryId) {
+            this.ctx = ctx;
+            this.ledgerId = ledgerId;
+            this.entryId = entryId;
+            this.startTime = MathUtils.nowInNano();
+            this.mdcContextMap = preserveMdcForTaskExecution ? MDC.getCopyOfContextMap() : null;
+        }
+
+        long latency() {
             return MathUtils.elapsedNanos(startTime);
         }
 
@@ -1601,19 +1882,15 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
         }
 
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= readEntryTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        long timeoutNanos() {
+            return readEntryTimeoutNanos;
         }
 
         void timeout() {
-            errorOut(BKException.Code.TimeoutException);
+            // before erroring out, as the completion may be recycled once completed
             timeoutOpLogger.registerSuccessfulEvent(latency(),
                                                     TimeUnit.NANOSECONDS);
+            errorOut(BKException.Code.TimeoutException);
         }
 
         protected void logResponse(StatusCode status, Object... extraInfo) {
@@ -1673,14 +1950,18 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
         public abstract void handleV3Response(
                 BookkeeperProtocol.Response response);
+
+        @Override
+        public String toString() {
+            return String.format("%s(ledger=%d, entry=%d)", operationName, ledgerId, entryId);
+        }
     }
 
     // visible for testing
     class WriteLacCompletion extends CompletionValue {
         final WriteLacCallback cb;
 
-        public WriteLacCompletion(final CompletionKey key,
-                                  final WriteLacCallback originalCallback,
+        public WriteLacCompletion(final WriteLacCallback originalCallback,
                                   final Object originalCtx,
                                   final long ledgerId) {
             super("WriteLAC",
@@ -1694,7 +1975,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         logOpResult(rc);
                         originalCallback.writeLacComplete(rc, ledgerId,
                                                           addr, originalCtx);
-                        key.release();
                     }
                 };
         }
@@ -1728,8 +2008,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     class ForceLedgerCompletion extends CompletionValue {
         final ForceLedgerCallback cb;
 
-        public ForceLedgerCompletion(final CompletionKey key,
-                                  final ForceLedgerCallback originalCallback,
+        public ForceLedgerCompletion(final ForceLedgerCallback originalCallback,
                                   final Object originalCtx,
                                   final long ledgerId) {
             super("ForceLedger",
@@ -1743,7 +2022,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         logOpResult(rc);
                         originalCallback.forceLedgerComplete(rc, ledgerId,
                                                           addr, originalCtx);
-                        key.release();
                     }
                 };
         }
@@ -1778,8 +2056,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     class ReadLacCompletion extends CompletionValue {
         final ReadLacCallback cb;
 
-        public ReadLacCompletion(final CompletionKey key,
-                                 ReadLacCallback originalCallback,
+        public ReadLacCompletion(ReadLacCallback originalCallback,
                                  final Object ctx, final long ledgerId) {
             super("ReadLAC", ctx, ledgerId, BookieProtocol.LAST_ADD_CONFIRMED,
                   readLacOpLogger, readLacTimeoutOpLogger);
@@ -1792,7 +2069,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         logOpResult(rc);
                         originalCallback.readLacComplete(
                                 rc, ledgerId, lacBuffer, lastEntryBuffer, ctx);
-                        key.release();
                     }
                 };
         }
@@ -1834,29 +2110,52 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    private final Recycler<ReadCompletion> readCompletionRecycler = new Recycler<ReadCompletion>() {
+            @Override
+            protected ReadCompletion newObject(Recycler.Handle<ReadCompletion> handle) {
+                return new ReadCompletion(handle);
+            }
+        };
+
+    ReadCompletion acquireReadCompletion(final ReadEntryCallback originalCallback,
+                                         final Object originalCtx,
+                                         final long ledgerId, final long entryId) {
+        ReadCompletion completion = readCompletionRecycler.get();
+        completion.reset(originalCallback, originalCtx, ledgerId, entryId);
+        return completion;
+    }
+
     // visible for testing
-    class ReadCompletion extends CompletionValue {
-        final ReadEntryCallback cb;
+    class ReadCompletion extends CompletionValue implements ReadEntryCallback {
+        final Recycler.Handle<ReadCompletion> handle;
 
-        public ReadCompletion(final CompletionKey key,
-                              final ReadEntryCallback originalCallback,
-                              final Object originalCtx,
-                              long ledgerId, final long entryId) {
-            super("Read", originalCtx, ledgerId, entryId,
-                  readEntryOpLogger, readTimeoutOpLogger);
+        ReadEntryCallback originalCallback = null;
+        boolean trackLatency = false;
 
-            this.cb = new ReadEntryCallback() {
-                    @Override
-                    public void readEntryComplete(int rc, long ledgerId,
-                                                  long entryId, ByteBuf buffer,
-                                                  Object ctx) {
-                        logOpResult(rc);
-                        originalCallback.readEntryComplete(rc,
-                                                           ledgerId, entryId,
-                                                           buffer, originalCtx);
-                        key.release();
-                    }
-                };
+        ReadCompletion(Recycler.Handle<ReadCompletion> handle) {
+            super("Read", null, -1, -1, readEntryOpLogger, readTimeoutOpLogger);
+            this.handle = handle;
+        }
+
+        void reset(final ReadEntryCallback originalCallback,
+                   final Object originalCtx,
+                   final long ledgerId, final long entryId) {
+            this.originalCallback = originalCallback;
+            reset(originalCtx, ledgerId, entryId);
+        }
+
+        @Override
+        public void readEntryComplete(int rc, long ledgerId,
+                                      long entryId, ByteBuf buffer,
+                                      Object ctx) {
+            logOpResult(rc);
+            if (trackLatency && null != readLatencyHistogram && isBookieReadLatency(rc)) {
+                readLatencyHistogram.recordLatency(latency());
+            }
+            originalCallback.readEntryComplete(rc, ledgerId, entryId, buffer, ctx);
+            originalCallback = null;
+            this.ctx = null;
+            handle.recycle(this);
         }
 
         @Override
@@ -1867,8 +2166,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         @Override
         public void errorOut(final int rc) {
             errorOutAndRunCallback(
-                    () -> cb.readEntryComplete(rc, ledgerId,
-                                               entryId, null, ctx));
+                    () -> readEntryComplete(rc, ledgerId,
+                                            entryId, null, ctx));
         }
 
         @Override
@@ -1932,21 +2231,99 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             if (lacUpdateTimestamp > -1L && (ctx instanceof ReadLastConfirmedAndEntryContext)) {
                 ((ReadLastConfirmedAndEntryContext) ctx).setLacUpdateTimestamp(lacUpdateTimestamp);
             }
-            cb.readEntryComplete(rc, ledgerId, entryId, buffer.slice(), ctx);
+            readEntryComplete(rc, ledgerId, entryId, buffer.slice(), ctx);
+        }
+    }
+
+    // visible for testing
+    class RangeReadCompletion extends CompletionValue {
+        final ReadEntriesCallback cb;
+
+        public RangeReadCompletion(final ReadEntriesCallback originalCallback,
+                                   final Object originalCtx,
+                                   long ledgerId, final long firstEntryId) {
+            super("RangeRead", originalCtx, ledgerId, firstEntryId,
+                  rangeReadOpLogger, rangeReadTimeoutOpLogger);
+
+            this.cb = new ReadEntriesCallback() {
+                    @Override
+                    public void readEntriesComplete(int rc, long ledgerId,
+                                                    long firstEntryId, List<ByteBuf> entries,
+                                                    Object ctx) {
+                        logOpResult(rc);
+                        originalCallback.readEntriesComplete(rc,
+                                                             ledgerId, firstEntryId,
+                                                             entries, originalCtx);
+                    }
+                };
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(
+                    () -> cb.readEntriesComplete(rc, ledgerId,
+                                                 entryId, Collections.emptyList(), ctx));
+        }
+
+        @Override
+        public void setOutstanding() {
+            readEntryOutstanding.inc();
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            readEntryOutstanding.dec();
+            RangeReadResponse rangeReadResponse = response.getRangeReadResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? rangeReadResponse.getStatus() : response.getStatus();
+
+            List<ByteBuf> entries;
+            if (StatusCode.EOK == status) {
+                entries = new ArrayList<>(rangeReadResponse.getBodyCount());
+                for (ByteString body : rangeReadResponse.getBodyList()) {
+                    entries.add(Unpooled.wrappedBuffer(body.asReadOnlyByteBuffer()));
+                }
+            } else {
+                entries = Collections.emptyList();
+            }
+
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", ledgerId, "firstEntry", entryId, "numEntries", entries.size());
+            }
+
+            if (rangeReadResponse.hasMaxLAC() && (ctx instanceof ReadEntryCallbackCtx)) {
+                ((ReadEntryCallbackCtx) ctx).setLastAddConfirmed(rangeReadResponse.getMaxLAC());
+            }
+
+            int rc;
+            if (StatusCode.EBADREQ == status && !response.hasRangeReadResponse()) {
+                // bookies that predate range reads reject the unknown operation as a bad request, without a range
+                // read response, unlike the bad requests rejected by the range read processor
+                rc = BKException.Code.IllegalOpException;
+            } else {
+                rc = convertStatus(status, BKException.Code.ReadException);
+            }
+            cb.readEntriesComplete(rc, ledgerId, entryId, entries, ctx);
+            // meaningless using unpooled, but client may expect to hold the last reference
+            entries.forEach(ByteBuf::release);
         }
     }
 
     class StartTLSCompletion extends CompletionValue {
         final StartTLSCallback cb;
 
-        public StartTLSCompletion(final CompletionKey key) {
+        public StartTLSCompletion() {
             super("StartTLS", null, -1, -1,
                   startTLSOpLogger, startTLSTimeoutOpLogger);
             this.cb = new StartTLSCallback() {
                 @Override
                 public void startTLSComplete(int rc, Object ctx) {
                     logOpResult(rc);
-                    key.release();
                 }
             };
         }
@@ -1991,8 +2368,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     class GetBookieInfoCompletion extends CompletionValue {
         final GetBookieInfoCallback cb;
 
-        public GetBookieInfoCompletion(final CompletionKey key,
-                                       final GetBookieInfoCallback origCallback,
+        public GetBookieInfoCompletion(final GetBookieInfoCallback origCallback,
                                        final Object origCtx) {
             super("GetBookieInfo", origCtx, 0L, 0L,
                   getBookieInfoOpLogger, getBookieInfoTimeoutOpLogger);
@@ -2002,19 +2378,13 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                                   Object ctx) {
                     logOpResult(rc);
                     origCallback.getBookieInfoComplete(rc, bInfo, origCtx);
-                    key.release();
                 }
             };
         }
 
         @Override
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= getBookieInfoTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        long timeoutNanos() {
+            return getBookieInfoTimeoutNanos;
         }
 
         @Override
@@ -2051,8 +2421,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     class GetListOfEntriesOfLedgerCompletion extends CompletionValue {
         final GetListOfEntriesOfLedgerCallback cb;
 
-        public GetListOfEntriesOfLedgerCompletion(final CompletionKey key,
-                final GetListOfEntriesOfLedgerCallback origCallback, final long ledgerId) {
+        public GetListOfEntriesOfLedgerCompletion(final GetListOfEntriesOfLedgerCallback origCallback,
+                final long ledgerId) {
             super("GetListOfEntriesOfLedger", null, ledgerId, 0L, getListOfEntriesOfLedgerCompletionOpLogger,
                     getListOfEntriesOfLedgerCompletionTimeoutOpLogger);
             this.cb = new GetListOfEntriesOfLedgerCallback() {
@@ -2061,7 +2431,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         AvailabilityOfEntriesOfLedger availabilityOfEntriesOfLedger) {
                     logOpResult(rc);
                     origCallback.getListOfEntriesOfLedgerComplete(rc, ledgerId, availabilityOfEntriesOfLedger);
-                    key.release();
                 }
             };
         }
@@ -2110,12 +2479,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
         };
 
-    AddCompletion acquireAddCompletion(final CompletionKey key,
-                                       final WriteCallback originalCallback,
+    AddCompletion acquireAddCompletion(final WriteCallback originalCallback,
                                        final Object originalCtx,
                                        final long ledgerId, final long entryId) {
         AddCompletion completion = addCompletionRecycler.get();
-        completion.reset(key, originalCallback, originalCtx, ledgerId, entryId);
+        completion.reset(originalCallback, originalCtx, ledgerId, entryId);
         return completion;
     }
 
@@ -2123,7 +2491,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     class AddCompletion extends CompletionValue implements WriteCallback {
         final Recycler.Handle<AddCompletion> handle;
 
-        CompletionKey key = null;
         WriteCallback originalCallback = null;
 
         AddCompletion(Recycler.Handle<AddCompletion> handle) {
@@ -2131,16 +2498,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             this.handle = handle;
         }
 
-        void reset(final CompletionKey key,
-                   final WriteCallback originalCallback,
+        void reset(final WriteCallback originalCallback,
                    final Object originalCtx,
                    final long ledgerId, final long entryId) {
-            this.key = key;
             this.originalCallback = originalCallback;
-            this.ctx = originalCtx;
-            this.ledgerId = ledgerId;
-            this.entryId = entryId;
-            this.startTime = MathUtils.nowInNano();
+            reset(originalCtx, ledgerId, entryId);
         }
 
         @Override
@@ -2149,18 +2511,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                   Object ctx) {
             logOpResult(rc);
             originalCallback.writeComplete(rc, ledgerId, entryId, addr, ctx);
-            key.release();
             handle.recycle(this);
         }
 
         @Override
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= addEntryTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        long timeoutNanos() {
+            return addEntryTimeoutNanos;
         }
 
         @Override
@@ -2209,55 +2565,100 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
-    // visable for testing
-    CompletionKey newCompletionKey(long txnId, OperationType operationType) {
-        return new V3CompletionKey(txnId, operationType);
-    }
+    class RangeAddCompletion extends CompletionValue {
+        final PendingRangeAdd batch;
 
-    class V3CompletionKey extends CompletionKey {
+        RangeAddCompletion(PendingRangeAdd batch) {
+            super("RangeAdd", null, batch.ledgerId, batch.firstEntryId, rangeAddOpLogger, rangeAddTimeoutOpLogger);
+            this.batch = batch;
+        }
 
-        public V3CompletionKey(long txnId, OperationType operationType) {
-            super(txnId, operationType);
+        @Override
+        long timeoutNanos() {
+            return addEntryTimeoutNanos;
         }
 
         @Override
-        public boolean equals(Object obj) {
-            if (!(obj instanceof V3CompletionKey)) {
-                return false;
-            }
-            V3CompletionKey that = (V3CompletionKey) obj;
-            return this.txnId == that.txnId && this.operationType == that.operationType;
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
         }
 
         @Override
-        public int hashCode() {
-            return ((int) txnId);
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(() -> {
+                logOpResult(rc);
+                for (int i = 0; i < batch.size(); i++) {
+                    writeComplete(i, rc);
+                }
+            });
         }
 
         @Override
-        public String toString() {
-            return String.format("TxnId(%d), OperationType(%s)", txnId, operationType);
+        public void setOutstanding() {
+            addEntryOutstanding.add(batch.size());
         }
 
-    }
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            addEntryOutstanding.add(-batch.size());
+            RangeAddResponse rangeAddResponse = response.getRangeAddResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? rangeAddResponse.getStatus() : response.getStatus();
 
-    abstract class CompletionKey {
-        final long txnId;
-        OperationType operationType;
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", ledgerId, "firstEntry", entryId, "numEntries", batch.size());
+            }
+
+            if (StatusCode.EBADREQ == status && !response.hasRangeAddResponse()) {
+                // bookies that predate range adds reject the operation as a bad request
+                if (rangeAddSupported) {
+                    LOG.info("Bookie {} doesn't support range adds, falling back to single entry adds", bookieId);
+                    rangeAddSupported = false;
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    ByteBufList toSend = batch.toSend.get(i);
+                    sendAddEntry(ledgerId, batch.masterKey, entryId + i, toSend, batch.cbs.get(i), batch.ctxs.get(i),
+                                 batch.options, batch.allowFastFail, batch.writeFlags);
+                    toSend.release();
+                }
+                return;
+            }
 
-        CompletionKey(long txnId,
-                      OperationType operationType) {
-            this.txnId = txnId;
-            this.operationType = operationType;
+            int rc = convertStatus(status, BKException.Code.WriteException);
+            logOpResult(rc);
+            boolean hasEntryStatus = rangeAddResponse.getEntryStatusCount() == batch.size();
+            for (int i = 0; i < batch.size(); i++) {
+                writeComplete(i, hasEntryStatus
+                    ? convertStatus(rangeAddResponse.getEntryStatus(i), BKException.Code.WriteException) : rc);
+            }
         }
 
-        public void release() {}
+        private void writeComplete(int index, int rc) {
+            batch.cbs.get(index).writeComplete(rc, ledgerId, entryId + index, bookieId, batch.ctxs.get(index));
+            batch.toSend.get(index).release();
+        }
     }
 
     /**
      * Note : Helper functions follow
      */
 
+    /**
+     * Whether a read completed with <i>rc</i> tells the latency of the bookie: it was answered by the bookie
+     * or it timed out, rather than failed before reaching the bookie or rejected by an overloaded bookie.
+     */
+    private static boolean isBookieReadLatency(int rc) {
+        switch (rc) {
+            case BKException.Code.OK:
+            case BKException.Code.NoSuchEntryException:
+            case BKException.Code.NoSuchLedgerExistsException:
+            case BKException.Code.TimeoutException:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * @param status
      * @return {@link BKException.Code.UNINITIALIZED} if the statuscode is unknown.
@@ -2285,85 +2686,22 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
-    private void putCompletionKeyValue(CompletionKey key, CompletionValue value) {
-        CompletionValue existingValue = completionObjects.putIfAbsent(key, value);
-        if (existingValue != null) { // will only happen for V2 keys, as V3 have unique txnid
-            // There's a pending read request on same ledger/entry. Use the multimap to track all of them
-            completionObjectsV2Conflicts.put(key, value);
-        }
+    private long putCompletion(long txnId, OperationType operationType, CompletionValue completion) {
+        return completions.put(txnId, operationType.getNumber(), completion,
+                        completion.startTime + completion.timeoutNanos());
     }
 
-    private CompletionValue getCompletionValue(CompletionKey key) {
-        CompletionValue completionValue = completionObjects.remove(key);
-        if (completionValue == null) {
-            // If there's no completion object here, try in the multimap
-            completionValue = completionObjectsV2Conflicts.removeAny(key).orElse(null);
-        }
-        return completionValue;
+    // there may be several pending requests for the same ledger/entry, e.g. speculative reads
+    private long putV2Completion(long ledgerId, long entryId, OperationType operationType,
+                                 CompletionValue completion) {
+        return completions.put(ledgerId, entryId, operationType.getNumber(), completion,
+                        completion.startTime + completion.timeoutNanos());
     }
 
     private long getTxnId() {
         return txnIdGenerator.incrementAndGet();
     }
 
-    private final Recycler<V2CompletionKey> v2KeyRecycler = new Recycler<V2CompletionKey>() {
-            @Override
-            protected V2CompletionKey newObject(
-                    Recycler.Handle<V2CompletionKey> handle) {
-                return new V2CompletionKey(handle);
-            }
-        };
-
-    V2CompletionKey acquireV2Key(long ledgerId, long entryId,
-                             OperationType operationType) {
-        V2CompletionKey key = v2KeyRecycler.get();
-        key.reset(ledgerId, entryId, operationType);
-        return key;
-    }
-
-    private class V2CompletionKey extends CompletionKey {
-        private final Handle<V2CompletionKey> recyclerHandle;
-        long ledgerId;
-        long entryId;
-
-        private V2CompletionKey(Handle<V2CompletionKey> handle) {
-            super(-1, null);
-            this.recyclerHandle = handle;
-        }
-
-        void reset(long ledgerId, long entryId, OperationType operationType) {
-            this.ledgerId = ledgerId;
-            this.entryId = entryId;
-            this.operationType = operationType;
-        }
-
-        @Override
-        public boolean equals(Object object) {
-            if (!(object instanceof V2CompletionKey)) {
-                return  false;
-            }
-            V2CompletionKey that = (V2CompletionKey) object;
-            return this.entryId == that.entryId
-                && this.ledgerId == that.ledgerId
-                && this.operationType == that.operationType;
-        }
-
-        @Override
-        public int hashCode() {
-            return Long.hashCode(ledgerId) * 31 + Long.hashCode(entryId);
-        }
-
-        @Override
-        public String toString() {
-            return String.format("%d:%d %s", ledgerId, entryId, operationType);
-        }
-
-        @Override
-        public void release() {
-            recyclerHandle.recycle(this);
-        }
-    }
-
     Request.Builder withRequestContext(Request.Builder builder) {
         if (preserveMdcForTaskExecution) {
             return appendRequestContext(builder);
@@ -2534,9 +2872,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         LOG.info("Initializing TLS to {}", channel);
         assert state == ConnectionState.CONNECTING;
         final long txnId = getTxnId();
-        final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.START_TLS);
-        completionObjects.put(completionKey,
-                              new StartTLSCompletion(completionKey));
+        final CompletionValue completion = new StartTLSCompletion();
+        final long registrationId = putCompletion(txnId, OperationType.START_TLS, completion);
         BookkeeperProtocol.Request.Builder h = withRequestContext(BookkeeperProtocol.Request.newBuilder());
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
                 .setVersion(ProtocolVersion.VERSION_THREE)
@@ -2545,7 +2882,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         h.setHeader(headerBuilder.build());
         h.setStartTLSRequest(BookkeeperProtocol.StartTLSRequest.newBuilder().build());
         state = ConnectionState.START_TLS;
-        writeAndFlush(channel, completionKey, h.build());
+        writeAndFlush(channel, completion, registrationId, h.build());
     }
 
     private void failTLS(int rc) {
@@ -0,0 +1,271 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.bookie.BookieException.OperationRejectedException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A processor for v3 range add requests.
+ *
+ * <p>It adds the consecutive entries {@code [firstEntryId, firstEntryId + n)} of a ledger, carried by a single
+ * request, and sends back a single response once all of them are persisted (or acknowledged, for deferred sync
+ * writes). The response holds the status of each entry, so that the client can complete each of its adds
+ * individually. If the request fails before the entries are handed to the bookie, the response only holds the
+ * status of the request, which applies to all the entries. If the bookie fails to add one of the entries, the
+ * entries before it are still persisted, and it and the entries after it get {@link StatusCode#EIO}.
+ *
+ * <p>Recovery adds hand the entries to the bookie one at a time. If one of them fails, the following ones are
+ * rejected with its status, and the response is sent once the entries handed to the bookie before it complete.
+ */
+class RangeAddEntryProcessorV3 extends PacketProcessorBaseV3 {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RangeAddEntryProcessorV3.class);
+
+    private final RangeAddRequest rangeAddRequest;
+    private final long ledgerId;
+    private final long firstEntryId;
+    private final StatusCode[] entryStatus;
+    private final AtomicInteger pendingEntries;
+    private final AtomicBoolean responded = new AtomicBoolean(false);
+    private long startTimeNanos;
+
+    public RangeAddEntryProcessorV3(Request request,
+                                    Channel channel,
+                                    BookieRequestProcessor requestProcessor) {
+        super(request, channel, requestProcessor);
+        requestProcessor.onAddRequestStart(channel);
+        this.rangeAddRequest = request.getRangeAddRequest();
+        this.ledgerId = rangeAddRequest.getLedgerId();
+        this.firstEntryId = rangeAddRequest.getFirstEntryId();
+        this.entryStatus = new StatusCode[rangeAddRequest.getBodyCount()];
+        this.pendingEntries = new AtomicInteger(entryStatus.length);
+        this.startTimeNanos = MathUtils.nowInNano();
+    }
+
+    private final WriteCallback wcb = new WriteCallback() {
+        @Override
+        public void writeComplete(int rc, long ledgerId, long entryId, BookieId addr, Object ctx) {
+            StatusCode status;
+            switch (rc) {
+                case BookieProtocol.EOK:
+                    status = StatusCode.EOK;
+                    break;
+                case BookieProtocol.EIO:
+                    status = StatusCode.EIO;
+                    break;
+                default:
+                    status = StatusCode.EUA;
+                    break;
+            }
+            entryStatus[(int) (entryId - firstEntryId)] = status;
+            if (pendingEntries.decrementAndGet() == 0) {
+                sendEntriesResponse();
+            }
+        }
+    };
+
+    // Returns null if the entries were handed to the bookie, and the response will be sent by the write callback
+    private StatusCode addEntries() {
+        if (!isVersionCompatible()) {
+            return StatusCode.EBADVERSION;
+        }
+
+        if (requestProcessor.getBookie().isReadOnly()
+            && !(RequestUtils.isHighPriority(request)
+                    && requestProcessor.getBookie().isAvailableForHighPriorityWrites())) {
+            LOG.warn("BookieServer is running as readonly mode, so rejecting the request from the client!");
+            return StatusCode.EREADONLY;
+        }
+
+        if (entryStatus.length == 0) {
+            return StatusCode.EBADREQ;
+        }
+
+        final EnumSet<WriteFlag> writeFlags;
+        if (rangeAddRequest.hasWriteFlags()) {
+            writeFlags = WriteFlag.getWriteFlags(rangeAddRequest.getWriteFlags());
+        } else {
+            writeFlags = WriteFlag.NONE;
+        }
+        final boolean ackBeforeSync = writeFlags.contains(WriteFlag.DEFERRED_SYNC);
+        byte[] masterKey = rangeAddRequest.getMasterKey().toByteArray();
+        List<ByteBuf> entries = new ArrayList<>(entryStatus.length);
+        for (ByteString body : rangeAddRequest.getBodyList()) {
+            ByteBuf entry = Unpooled.wrappedBuffer(body.asReadOnlyByteBuffer());
+            // the entries must be the consecutive entries of the ledger of the request
+            if (entry.readableBytes() < 16
+                    || entry.getLong(entry.readerIndex()) != ledgerId
+                    || entry.getLong(entry.readerIndex() + 8) != firstEntryId + entries.size()) {
+                LOG.warn("Entry {} of request {} doesn't belong to its range", entries.size(), this);
+                return StatusCode.EBADREQ;
+            }
+            entries.add(entry);
+        }
+        int submittedEntries = 0;
+        try {
+            if (RequestUtils.hasFlag(rangeAddRequest, AddRequest.Flag.RECOVERY_ADD)) {
+                for (ByteBuf entry : entries) {
+                    requestProcessor.getBookie().recoveryAddEntry(entry, wcb, channel, masterKey);
+                    submittedEntries++;
+                }
+            } else {
+                requestProcessor.getBookie().addEntries(entries, ackBeforeSync, wcb, channel, masterKey);
+            }
+            return null;
+        } catch (OperationRejectedException e) {
+            // Avoid to log each occurence of this exception as this can happen when the ledger storage is
+            // unable to keep up with the write rate.
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Operation rejected while writing {}", request, e);
+            }
+            return rejectEntries(submittedEntries, StatusCode.EIO);
+        } catch (IOException e) {
+            LOG.error("Error writing {} entries from entry:{} to ledger:{}",
+                    entries.size(), firstEntryId, ledgerId, e);
+            return rejectEntries(submittedEntries, StatusCode.EIO);
+        } catch (BookieException.LedgerFencedException e) {
+            LOG.error("Ledger fenced while writing {} entries from entry:{} to ledger:{}",
+                    entries.size(), firstEntryId, ledgerId, e);
+            return rejectEntries(submittedEntries, StatusCode.EFENCED);
+        } catch (BookieException e) {
+            LOG.error("Unauthorized access to ledger:{} while writing {} entries from entry:{}",
+                    ledgerId, entries.size(), firstEntryId, e);
+            return rejectEntries(submittedEntries, StatusCode.EUA);
+        } catch (Throwable t) {
+            LOG.error("Unexpected exception while writing {} entries from {}@{} : ",
+                    entries.size(), firstEntryId, ledgerId, t);
+            // some bad request which cause unexpected exception
+            return rejectEntries(submittedEntries, StatusCode.EBADREQ);
+        }
+    }
+
+    /**
+     * Rejects the entries which were not handed to the bookie when adding one of them failed.
+     *
+     * @return the status of the request if none of the entries was handed to the bookie, otherwise null, the
+     *         response holding the status of each entry being sent once the entries handed to the bookie complete
+     */
+    private StatusCode rejectEntries(int submittedEntries, StatusCode status) {
+        if (submittedEntries == 0) {
+            return status;
+        }
+        for (int i = submittedEntries; i < entryStatus.length; i++) {
+            entryStatus[i] = status;
+        }
+        if (pendingEntries.addAndGet(submittedEntries - entryStatus.length) == 0) {
+            sendEntriesResponse();
+        }
+        return null;
+    }
+
+    @Override
+    public void safeRun() {
+        startTimeNanos = MathUtils.nowInNano();
+        StatusCode status = addEntries();
+        if (null != status) {
+            sendResponse(status);
+        }
+    }
+
+    private void sendEntriesResponse() {
+        StatusCode status = StatusCode.EOK;
+        for (StatusCode code : entryStatus) {
+            if (StatusCode.EOK != code) {
+                status = code;
+                break;
+            }
+        }
+        RangeAddResponse.Builder rangeAddResponse = newRangeAddResponse(status);
+        for (StatusCode code : entryStatus) {
+            rangeAddResponse.addEntryStatus(code);
+        }
+        sendResponse(rangeAddResponse);
+    }
+
+    /**
+     * Sends a response with a status applying to all the entries of the request.
+     */
+    void sendResponse(StatusCode status) {
+        sendResponse(newRangeAddResponse(status));
+    }
+
+    private RangeAddResponse.Builder newRangeAddResponse(StatusCode status) {
+        return RangeAddResponse.newBuilder()
+                .setStatus(status)
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId);
+    }
+
+    private void sendResponse(RangeAddResponse.Builder rangeAddResponse) {
+        // a failure may be reported while some of the entries are still being written
+        if (!responded.compareAndSet(false, true)) {
+            return;
+        }
+        StatusCode status = rangeAddResponse.getStatus();
+        RequestStats requestStats = requestProcessor.getRequestStats();
+        if (StatusCode.EOK == status) {
+            requestStats.getRangeAddEntryStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            requestStats.getRangeAddNumEntriesStats().registerSuccessfulValue(entryStatus.length);
+        } else {
+            requestStats.getRangeAddEntryStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            requestStats.getRangeAddNumEntriesStats().registerFailedValue(entryStatus.length);
+        }
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(status)
+                .setRangeAddResponse(rangeAddResponse);
+        sendResponse(status, response.build(), requestStats.getRangeAddRequestStats());
+        requestProcessor.onAddRequestFinish();
+    }
+
+    /**
+     * this toString method filters out body and masterKey from the output.
+     * masterKey contains the password of the ledger and body is customer data,
+     * so it is not appropriate to have these in logs or system output.
+     */
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.util.ReferenceCountUtil;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A processor for v3 range read requests.
+ *
+ * <p>It reads the contiguous entries {@code [firstEntryId, lastEntryId]} of a ledger and sends them
+ * back in a single response. The bookie stops at the first missing entry, or once the count or size
+ * limits of the request (or the maximum frame size of the bookie) are reached. The client is expected
+ * to issue another request for the entries that were not returned.
+ */
+class RangeReadEntryProcessorV3 extends PacketProcessorBaseV3 {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RangeReadEntryProcessorV3.class);
+
+    /**
+     * Room left in a frame for the response header and the per-entry protobuf overhead.
+     */
+    private static final int FRAME_OVERHEAD_BYTES = 64 * 1024;
+
+    protected final RangeReadRequest rangeReadRequest;
+    protected final long ledgerId;
+    protected final long firstEntryId;
+    protected final long lastEntryId;
+
+    public RangeReadEntryProcessorV3(Request request,
+                                     Channel channel,
+                                     BookieRequestProcessor requestProcessor) {
+        super(request, channel, requestProcessor);
+        requestProcessor.onReadRequestStart(channel);
+
+        this.rangeReadRequest = request.getRangeReadRequest();
+        this.ledgerId = rangeReadRequest.getLedgerId();
+        this.firstEntryId = rangeReadRequest.getFirstEntryId();
+        this.lastEntryId = rangeReadRequest.getLastEntryId();
+    }
+
+    private long getMaxCount() {
+        long numEntries = lastEntryId - firstEntryId + 1;
+        if (rangeReadRequest.hasMaxCount() && rangeReadRequest.getMaxCount() > 0) {
+            return Math.min(numEntries, rangeReadRequest.getMaxCount());
+        }
+        return numEntries;
+    }
+
+    private long getMaxSize() {
+        long maxFrameSize = Math.max(
+                requestProcessor.getServerCfg().getNettyMaxFrameSizeBytes() - FRAME_OVERHEAD_BYTES,
+                FRAME_OVERHEAD_BYTES);
+        if (rangeReadRequest.hasMaxSize() && rangeReadRequest.getMaxSize() > 0) {
+            return Math.min(maxFrameSize, rangeReadRequest.getMaxSize());
+        }
+        return maxFrameSize;
+    }
+
+    private RangeReadResponse getRangeReadResponse() {
+        final long startTimeNanos = MathUtils.nowInNano();
+
+        RangeReadResponse.Builder rangeReadResponse = RangeReadResponse.newBuilder()
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId);
+
+        if (!isVersionCompatible()) {
+            return buildResponse(rangeReadResponse, StatusCode.EBADVERSION, startTimeNanos);
+        }
+
+        if (firstEntryId < 0 || lastEntryId < firstEntryId) {
+            LOG.error("Invalid range read request on ledger {} : [{}, {}] from address: {}",
+                    ledgerId, firstEntryId, lastEntryId, channel.remoteAddress());
+            return buildResponse(rangeReadResponse, StatusCode.EBADREQ, startTimeNanos);
+        }
+
+        final long maxCount = getMaxCount();
+        final long maxSize = getMaxSize();
+        long totalSize = 0;
+        long entryId = firstEntryId;
+        try {
+            while (entryId <= lastEntryId && rangeReadResponse.getBodyCount() < maxCount) {
+                ByteBuf entryBody;
+                try {
+                    entryBody = requestProcessor.getBookie().readEntry(ledgerId, entryId);
+                } catch (Bookie.NoEntryException e) {
+                    if (rangeReadResponse.getBodyCount() > 0) {
+                        // return the entries read so far, the client will retry the rest
+                        break;
+                    }
+                    throw e;
+                }
+                try {
+                    int entrySize = entryBody.readableBytes();
+                    if (rangeReadResponse.getBodyCount() > 0 && totalSize + entrySize > maxSize) {
+                        break;
+                    }
+                    rangeReadResponse.addBody(ByteString.copyFrom(entryBody.nioBuffer()));
+                    totalSize += entrySize;
+                } finally {
+                    ReferenceCountUtil.release(entryBody);
+                }
+                entryId++;
+            }
+            rangeReadResponse.setMaxLAC(requestProcessor.getBookie().readLastAddConfirmed(ledgerId));
+            requestProcessor.getRequestStats().getRangeReadNumEntriesStats()
+                    .registerSuccessfulValue(rangeReadResponse.getBodyCount());
+            return buildResponse(rangeReadResponse, StatusCode.EOK, startTimeNanos);
+        } catch (Bookie.NoLedgerException e) {
+            LOG.info("No ledger found while range reading entry: {} from ledger: {}", entryId, ledgerId);
+            return buildResponse(rangeReadResponse, StatusCode.ENOLEDGER, startTimeNanos);
+        } catch (Bookie.NoEntryException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No entry found while range reading entry: {} from ledger: {}", entryId, ledgerId);
+            }
+            return buildResponse(rangeReadResponse, StatusCode.ENOENTRY, startTimeNanos);
+        } catch (IOException e) {
+            LOG.error("IOException while range reading entry: {} from ledger {} ", entryId, ledgerId, e);
+            return buildResponse(rangeReadResponse, StatusCode.EIO, startTimeNanos);
+        }
+    }
+
+    private RangeReadResponse buildResponse(RangeReadResponse.Builder rangeReadResponse,
+                                            StatusCode statusCode,
+                                            long startTimeNanos) {
+        if (StatusCode.EOK == statusCode) {
+            requestProcessor.getRequestStats().getRangeReadEntryStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        } else {
+            // drop the partial result, the client will fall back to the other replicas
+            rangeReadResponse.clearBody();
+            requestProcessor.getRequestStats().getRangeReadEntryStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        }
+        rangeReadResponse.setStatus(statusCode);
+        return rangeReadResponse.build();
+    }
+
+    @Override
+    public void safeRun() {
+        requestProcessor.getRequestStats().getReadEntrySchedulingDelayStats().registerSuccessfulEvent(
+            MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+
+        sendResponse(getRangeReadResponse());
+    }
+
+    protected void sendResponse(RangeReadResponse rangeReadResponse) {
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(rangeReadResponse.getStatus())
+                .setRangeReadResponse(rangeReadResponse);
+        sendResponse(response.getStatus(),
+                     response.build(),
+                     requestProcessor.getRequestStats().getRangeReadRequestStats());
+        requestProcessor.onReadRequestFinish();
+    }
+
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
@@ -19,6 +19,10 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
+import io.netty.channel.FileRegion;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.util.Recycler;
 import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
@@ -42,19 +46,31 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
 
     private ExecutorService fenceThreadPool;
     private boolean throttleReadResponses;
+    private int fileRegionMinSize;
 
     public static ReadEntryProcessor create(ReadRequest request,
                                             Channel channel,
                                             BookieRequestProcessor requestProcessor,
                                             ExecutorService fenceThreadPool,
-                                            boolean throttleReadResponses) {
+                                            boolean throttleReadResponses,
+                                            int fileRegionMinSize) {
         ReadEntryProcessor rep = RECYCLER.get();
         rep.init(request, channel, requestProcessor);
         rep.fenceThreadPool = fenceThreadPool;
         rep.throttleReadResponses = throttleReadResponses;
+        rep.fileRegionMinSize = fileRegionMinSize;
         return rep;
     }
 
+    /**
+     * File regions are only written by the NIO and epoll socket transports, and not through the TLS handler.
+     * The io_uring and local transports don't support them.
+     */
+    private static boolean supportsFileRegion(Channel channel) {
+        return (channel instanceof NioSocketChannel || channel instanceof EpollSocketChannel)
+                && channel.pipeline().get(SslHandler.class) == null;
+    }
+
     @Override
     protected void processPacket() {
         if (LOG.isDebugEnabled()) {
@@ -76,6 +92,15 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
                     throw BookieException.create(BookieException.Code.UnauthorizedAccessException);
                 }
             }
+            if (fenceResult == null && fileRegionMinSize > 0 && supportsFileRegion(channel)) {
+                // large entries are transferred from the entry log file to the socket without being copied
+                FileRegion dataRegion = requestProcessor.getBookie().readEntryRegion(request.getLedgerId(),
+                        request.getEntryId(), fileRegionMinSize);
+                if (dataRegion != null) {
+                    sendResponse(dataRegion, startTimeNanos);
+                    return;
+                }
+            }
             data = requestProcessor.getBookie().readEntry(request.getLedgerId(), request.getEntryId());
             if (LOG.isDebugEnabled()) {
                 LOG.debug("##### Read entry ##### {} -- ref-count: {}", data.readableBytes(), data.refCnt());
@@ -128,7 +153,17 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
             logger.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
             response = ResponseBuilder.buildErrorResponse(errorCode, request);
         }
+        sendReadResponse(errorCode, response);
+    }
+
+    private void sendResponse(FileRegion dataRegion, long startTimeNanos) {
+        requestProcessor.getRequestStats().getReadEntryStats()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        sendReadResponse(BookieProtocol.EOK, ResponseBuilder.buildReadResponse(dataRegion, request));
+    }
 
+    private void sendReadResponse(int errorCode, BookieProtocol.Response response) {
+        final RequestStats stats = requestProcessor.getRequestStats();
         if (throttleReadResponses) {
             sendResponseAndWait(errorCode, response, stats.getReadRequestStats());
         } else {
@@ -32,6 +32,12 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_BOOKIE_INFO
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_BOOKIE_INFO_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_LIST_OF_ENTRIES_OF_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RANGE_ADD_ENTRY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RANGE_ADD_ENTRY_NUM_ENTRIES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RANGE_ADD_ENTRY_REQUEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RANGE_READ_ENTRY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RANGE_READ_ENTRY_NUM_ENTRIES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RANGE_READ_ENTRY_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_BLOCKED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_BLOCKED_WAIT;
@@ -49,6 +55,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAC;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAC_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAST_ENTRY_NOENTRY_ERROR;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.VIRTUAL_THREAD_PINNED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_LAC;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_LAC_REQUEST;
 
@@ -135,6 +142,12 @@ public class RequestStats {
         help = "operation stats of ReadEntry scheduling delays on a bookie"
     )
     final OpStatsLogger readEntrySchedulingDelayStats;
+    @StatsDoc(
+        name = VIRTUAL_THREAD_PINNED,
+        help = "time the virtual threads processing the reads were pinned to their carrier thread, when blocked in a"
+            + " synchronized section or a native call, for the pins of 1 millisecond or more"
+    )
+    final OpStatsLogger virtualThreadPinnedStats;
     @StatsDoc(
         name = READ_ENTRY_LONG_POLL_PRE_WAIT,
         help = "operation stats of LongPoll Reads pre wait time on a bookie",
@@ -160,6 +173,38 @@ public class RequestStats {
         help = "request stats of LongPoll Reads on a bookie"
     )
     final OpStatsLogger longPollReadRequestStats;
+    @StatsDoc(
+        name = RANGE_READ_ENTRY_REQUEST,
+        help = "request stats of RangeReadEntry on a bookie"
+    )
+    final OpStatsLogger rangeReadRequestStats;
+    @StatsDoc(
+        name = RANGE_READ_ENTRY,
+        help = "operation stats of RangeReadEntry on a bookie",
+        parent = RANGE_READ_ENTRY_REQUEST
+    )
+    final OpStatsLogger rangeReadEntryStats;
+    @StatsDoc(
+        name = RANGE_READ_ENTRY_NUM_ENTRIES,
+        help = "the number of entries returned by a RangeReadEntry request on a bookie"
+    )
+    final OpStatsLogger rangeReadNumEntriesStats;
+    @StatsDoc(
+        name = RANGE_ADD_ENTRY_REQUEST,
+        help = "request stats of RangeAddEntry on a bookie"
+    )
+    final OpStatsLogger rangeAddRequestStats;
+    @StatsDoc(
+        name = RANGE_ADD_ENTRY,
+        help = "operation stats of RangeAddEntry on a bookie",
+        parent = RANGE_ADD_ENTRY_REQUEST
+    )
+    final OpStatsLogger rangeAddEntryStats;
+    @StatsDoc(
+        name = RANGE_ADD_ENTRY_NUM_ENTRIES,
+        help = "the number of entries added by a RangeAddEntry request on a bookie"
+    )
+    final OpStatsLogger rangeAddNumEntriesStats;
     @StatsDoc(
         name = READ_LAST_ENTRY_NOENTRY_ERROR,
         help = "total NOENTRY errors of reading last entry on a bookie"
@@ -235,10 +280,17 @@ public class RequestStats {
         this.fenceReadRequestStats = statsLogger.getOpStatsLogger(READ_ENTRY_FENCE_REQUEST);
         this.fenceReadWaitStats = statsLogger.getOpStatsLogger(READ_ENTRY_FENCE_WAIT);
         this.readEntrySchedulingDelayStats = statsLogger.getOpStatsLogger(READ_ENTRY_SCHEDULING_DELAY);
+        this.virtualThreadPinnedStats = statsLogger.getOpStatsLogger(VIRTUAL_THREAD_PINNED);
         this.longPollPreWaitStats = statsLogger.getOpStatsLogger(READ_ENTRY_LONG_POLL_PRE_WAIT);
         this.longPollWaitStats = statsLogger.getOpStatsLogger(READ_ENTRY_LONG_POLL_WAIT);
         this.longPollReadStats = statsLogger.getOpStatsLogger(READ_ENTRY_LONG_POLL_READ);
         this.longPollReadRequestStats = statsLogger.getOpStatsLogger(READ_ENTRY_LONG_POLL_REQUEST);
+        this.rangeReadRequestStats = statsLogger.getOpStatsLogger(RANGE_READ_ENTRY_REQUEST);
+        this.rangeReadEntryStats = statsLogger.getOpStatsLogger(RANGE_READ_ENTRY);
+        this.rangeReadNumEntriesStats = statsLogger.getOpStatsLogger(RANGE_READ_ENTRY_NUM_ENTRIES);
+        this.rangeAddRequestStats = statsLogger.getOpStatsLogger(RANGE_ADD_ENTRY_REQUEST);
+        this.rangeAddEntryStats = statsLogger.getOpStatsLogger(RANGE_ADD_ENTRY);
+        this.rangeAddNumEntriesStats = statsLogger.getOpStatsLogger(RANGE_ADD_ENTRY_NUM_ENTRIES);
         this.readLastEntryNoEntryErrorCounter = statsLogger.getCounter(READ_LAST_ENTRY_NOENTRY_ERROR);
         this.writeLacStats = statsLogger.getOpStatsLogger(WRITE_LAC);
         this.writeLacRequestStats = statsLogger.getOpStatsLogger(WRITE_LAC_REQUEST);
@@ -48,6 +48,10 @@ class RequestUtils {
         return request.hasFlag() && request.getFlag() == flag;
     }
 
+    static boolean hasFlag(BookkeeperProtocol.RangeAddRequest request, BookkeeperProtocol.AddRequest.Flag flag) {
+        return request.hasFlag() && request.getFlag() == flag;
+    }
+
     /**
      * this toSafeString method filters out body and masterKey from the output.
      * masterKey contains the password of the ledger and body is customer data,
@@ -83,6 +87,32 @@ class RequestUtils {
                 stringHelper.add("timeOut", readRequest.getTimeOut());
             }
             return stringHelper.toString();
+        } else if (request.hasRangeReadRequest()) {
+            BookkeeperProtocol.RangeReadRequest rangeReadRequest = request.getRangeReadRequest();
+            includeHeaderFields(stringHelper, header);
+            stringHelper.add("ledgerId", rangeReadRequest.getLedgerId());
+            stringHelper.add("firstEntryId", rangeReadRequest.getFirstEntryId());
+            stringHelper.add("lastEntryId", rangeReadRequest.getLastEntryId());
+            if (rangeReadRequest.hasMaxCount()) {
+                stringHelper.add("maxCount", rangeReadRequest.getMaxCount());
+            }
+            if (rangeReadRequest.hasMaxSize()) {
+                stringHelper.add("maxSize", rangeReadRequest.getMaxSize());
+            }
+            return stringHelper.toString();
+        } else if (request.hasRangeAddRequest()) {
+            BookkeeperProtocol.RangeAddRequest rangeAddRequest = request.getRangeAddRequest();
+            includeHeaderFields(stringHelper, header);
+            stringHelper.add("ledgerId", rangeAddRequest.getLedgerId());
+            stringHelper.add("firstEntryId", rangeAddRequest.getFirstEntryId());
+            stringHelper.add("numEntries", rangeAddRequest.getBodyCount());
+            if (rangeAddRequest.hasFlag()) {
+                stringHelper.add("flag", rangeAddRequest.getFlag());
+            }
+            if (rangeAddRequest.hasWriteFlags()) {
+                stringHelper.add("writeFlags", rangeAddRequest.getWriteFlags());
+            }
+            return stringHelper.toString();
         } else if (request.hasWriteLacRequest()) {
             BookkeeperProtocol.WriteLacRequest writeLacRequest = request.getWriteLacRequest();
             includeHeaderFields(stringHelper, header);
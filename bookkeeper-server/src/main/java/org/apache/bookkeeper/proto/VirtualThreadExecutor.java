@@ -0,0 +1,203 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An executor running each task on a new virtual thread, with a bounded number of
+ * tasks running at once.
+ *
+ * <p>A task blocked on I/O only holds a virtual thread, so the number of I/Os in
+ * flight is bounded by the concurrency instead of a number of platform threads.
+ * A virtual thread blocking in a synchronized section is pinned to its carrier
+ * thread though, which blocks the carrier thread as well. The pins are recorded
+ * with the {@code jdk.VirtualThreadPinned} JFR event and reported to a stats
+ * logger, and logged at debug level with their stack trace.
+ *
+ * <p>Virtual threads are only available from Java 21, so they are created by
+ * reflection. See {@link #newVirtualThreadFactory(String)}.
+ */
+class VirtualThreadExecutor extends AbstractExecutorService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadExecutor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    // the pins shorter than the threshold are not recorded
+    private static final Duration PINNED_THRESHOLD = Duration.ofMillis(1);
+
+    /**
+     * Create a factory of virtual threads.
+     *
+     * @param name the prefix of the names of the threads
+     * @return the factory, or null if the virtual threads are not supported by the JVM
+     */
+    static ThreadFactory newVirtualThreadFactory(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (InvocationTargetException e) {
+            // the virtual threads are a preview feature which is not enabled
+            LOG.debug("Virtual threads are not enabled", e.getCause());
+            return null;
+        } catch (ReflectiveOperationException e) {
+            LOG.debug("Virtual threads are not supported", e);
+            return null;
+        }
+    }
+
+    private final ThreadFactory threadFactory;
+    private final Semaphore concurrency;
+    private final int maxPendingTasks;
+    private final AtomicInteger pendingTasks = new AtomicInteger(0);
+    private final AutoCloseable pinnedRecording;
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param threadFactory the factory of virtual threads
+     * @param maxConcurrency the maximum number of tasks running at once
+     * @param maxPendingTasks the maximum number of tasks running or waiting to run, 0 or negative for no limit
+     * @param pinnedStats the stats of the pins of the virtual threads
+     */
+    VirtualThreadExecutor(ThreadFactory threadFactory, int maxConcurrency, int maxPendingTasks,
+                          OpStatsLogger pinnedStats) {
+        this.threadFactory = threadFactory;
+        this.concurrency = new Semaphore(maxConcurrency);
+        this.maxPendingTasks = maxPendingTasks;
+        this.pinnedRecording = startPinnedRecording(pinnedStats);
+    }
+
+    private static AutoCloseable startPinnedRecording(OpStatsLogger pinnedStats) {
+        try {
+            Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+            Method getDuration = Class.forName("jdk.jfr.consumer.RecordedEvent").getMethod("getDuration");
+            Object stream = streamClass.getConstructor().newInstance();
+            Object settings = streamClass.getMethod("enable", String.class).invoke(stream, PINNED_EVENT);
+            Class.forName("jdk.jfr.EventSettings").getMethod("withThreshold", Duration.class)
+                .invoke(settings, PINNED_THRESHOLD);
+            Consumer<Object> onPinned = event -> {
+                try {
+                    Duration duration = (Duration) getDuration.invoke(event);
+                    pinnedStats.registerSuccessfulEvent(duration.toNanos(), TimeUnit.NANOSECONDS);
+                } catch (ReflectiveOperationException e) {
+                    LOG.debug("Failed to get the duration of {}", event, e);
+                }
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Virtual thread pinned to its carrier thread: {}", event);
+                }
+            };
+            streamClass.getMethod("onEvent", String.class, Consumer.class).invoke(stream, PINNED_EVENT, onPinned);
+            streamClass.getMethod("startAsync").invoke(stream);
+            return (AutoCloseable) stream;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.warn("Failed to record the pins of the virtual threads, they are not reported", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        if (maxPendingTasks > 0 && pendingTasks.get() >= maxPendingTasks) {
+            throw new RejectedExecutionException("Queue at limit of " + maxPendingTasks + " items");
+        }
+        pendingTasks.incrementAndGet();
+        try {
+            threadFactory.newThread(() -> {
+                concurrency.acquireUninterruptibly();
+                try {
+                    task.run();
+                } finally {
+                    concurrency.release();
+                    pendingTasks.decrementAndGet();
+                }
+            }).start();
+        } catch (RuntimeException | Error e) {
+            pendingTasks.decrementAndGet();
+            throw new RejectedExecutionException("Failed to start a virtual thread", e);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        if (null != pinnedRecording) {
+            try {
+                pinnedRecording.close();
+            } catch (Exception e) {
+                LOG.warn("Failed to stop recording the pins of the virtual threads", e);
+            }
+        }
+    }
+
+    /**
+     * Shut down the executor, the running tasks are not interrupted.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && pendingTasks.get() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        while (!isTerminated()) {
+            if (System.nanoTime() - deadlineNanos >= 0) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
@@ -19,12 +19,15 @@ package org.apache.bookkeeper.proto.checksum;
 */
 
 import com.scurrilous.circe.checksum.Crc32cIntChecksum;
+import com.scurrilous.circe.crc.JavaCrc32C;
 import com.scurrilous.circe.crc.Sse42Crc32C;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.util.concurrent.FastThreadLocal;
 
+import java.util.Arrays;
+
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.commons.lang3.mutable.MutableInt;
@@ -41,11 +44,19 @@ class CRC32CDigestManager extends DigestManager {
         }
     };
 
+    private static final FastThreadLocal<int[]> batchCrcs = new FastThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() throws Exception {
+            return new int[32];
+        }
+    };
+
     public CRC32CDigestManager(long ledgerId, boolean useV2Protocol, ByteBufAllocator allocator) {
         super(ledgerId, useV2Protocol, allocator);
 
-        if (!Sse42Crc32C.isSupported() && !nonSupportedMessagePrinted) {
-            log.warn("Sse42Crc32C is not supported, will use a slower CRC32C implementation.");
+        if (!Sse42Crc32C.isSupported() && !JavaCrc32C.isSupported() && !nonSupportedMessagePrinted) {
+            log.warn("Neither Sse42Crc32C nor java.util.zip.CRC32C are supported, will use a slower CRC32C"
+                    + " implementation.");
             nonSupportedMessagePrinted = true;
         }
     }
@@ -62,6 +73,23 @@ class CRC32CDigestManager extends DigestManager {
         current.setValue(0);
     }
 
+    @Override
+    void populateValuesAndReset(ByteBuf[] buffers, int[] indexes, int numBuffers, ByteBuf[] digests,
+                                int numDigests) {
+        int[] crcs = batchCrcs.get();
+        if (crcs.length < numDigests) {
+            crcs = new int[Math.max(numDigests, crcs.length * 2)];
+            batchCrcs.set(crcs);
+        } else {
+            // the checksums are resumed from the values in the array
+            Arrays.fill(crcs, 0, numDigests, 0);
+        }
+        Crc32cIntChecksum.resumeChecksums(crcs, indexes, buffers, numBuffers);
+        for (int e = 0; e < numDigests; e++) {
+            digests[e].writeInt(crcs[e]);
+        }
+    }
+
     @Override
     void update(ByteBuf data) {
         MutableInt current = currentCrc.get();
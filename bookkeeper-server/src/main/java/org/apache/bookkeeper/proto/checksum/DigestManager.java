@@ -22,9 +22,12 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.FastThreadLocal;
 
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.bookkeeper.client.BKException.BKDigestMatchException;
 import org.apache.bookkeeper.client.LedgerHandle;
@@ -60,6 +63,25 @@ public abstract class DigestManager {
 
     abstract void populateValueAndReset(ByteBuf buffer);
 
+    /**
+     * Computes the digests of several entries at once.
+     *
+     * <p>The buffers of each entry are consecutive in <i>buffers</i>, <i>indexes[i]</i> being the entry of
+     * <i>buffers[i]</i>. The digest of the entry <i>e</i> is written to <i>digests[e]</i>. Digest types that
+     * are able to checksum many buffers with a single call override this method, the default implementation
+     * digests the entries one by one.
+     */
+    void populateValuesAndReset(ByteBuf[] buffers, int[] indexes, int numBuffers, ByteBuf[] digests,
+                                int numDigests) {
+        int i = 0;
+        for (int e = 0; e < numDigests; e++) {
+            while (i < numBuffers && indexes[i] == e) {
+                update(buffers[i++]);
+            }
+            populateValueAndReset(digests[e]);
+        }
+    }
+
     final int macCodeLength;
 
     public DigestManager(long ledgerId, boolean useV2Protocol, ByteBufAllocator allocator) {
@@ -252,6 +274,101 @@ public abstract class DigestManager {
         return dataReceived;
     }
 
+    /**
+     * Verify the digests of a batch of consecutive entries, and skip the metadata of the entries that match.
+     *
+     * <p>The entries are verified in order, up to the first entry that doesn't match. The digests of all the
+     * entries are computed all at once, into a single buffer.
+     *
+     * @param firstEntryId the id of the first entry of the batch
+     * @param dataReceived the entries received
+     * @return the number of entries, from the first one, whose digest matches. The reader index of these entries
+     *         is moved to their data, the other entries are left untouched.
+     */
+    public int verifyDigestsAndReturnData(long firstEntryId, List<ByteBuf> dataReceived) {
+        final int headerLength = METADATA_LENGTH + macCodeLength;
+        int count = 0;
+        while (count < dataReceived.size() && dataReceived.get(count).readableBytes() >= headerLength) {
+            count++;
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        ByteBuf digestsBuffer = allocator.buffer(count * macCodeLength);
+        BatchBuffers batch = BATCH_BUFFERS.get();
+        batch.ensureDigestsCapacity(count);
+        ByteBuf[] digests = batch.digests;
+        int numBuffers = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                ByteBuf entry = dataReceived.get(i);
+                digests[i] = digestsBuffer.slice(i * macCodeLength, macCodeLength).clear();
+                numBuffers = batch.add(numBuffers, entry.slice(0, METADATA_LENGTH), i);
+                numBuffers = batch.add(numBuffers, entry.slice(headerLength, entry.readableBytes() - headerLength), i);
+            }
+            populateValuesAndReset(batch.buffers, batch.indexes, numBuffers, digests, count);
+
+            for (int i = 0; i < count; i++) {
+                ByteBuf entry = dataReceived.get(i);
+                long entryId = firstEntryId + i;
+                if (digests[i].compareTo(entry.slice(METADATA_LENGTH, macCodeLength)) != 0) {
+                    logger.error("Mac mismatch for ledger-id: " + ledgerId + ", entry-id: " + entryId);
+                    return i;
+                }
+                long actualLedgerId = entry.getLong(0);
+                long actualEntryId = entry.getLong(8);
+                if (actualLedgerId != ledgerId || actualEntryId != entryId) {
+                    logger.error("Ledger-id/entry-id mismatch in authenticated message, expected: " + ledgerId
+                            + "/" + entryId + " , actual: " + actualLedgerId + "/" + actualEntryId);
+                    return i;
+                }
+                entry.readerIndex(headerLength);
+            }
+            return count;
+        } finally {
+            digestsBuffer.release();
+            batch.clear(numBuffers, count);
+        }
+    }
+
+    private static final FastThreadLocal<BatchBuffers> BATCH_BUFFERS = new FastThreadLocal<BatchBuffers>() {
+        @Override
+        protected BatchBuffers initialValue() {
+            return new BatchBuffers();
+        }
+    };
+
+    /**
+     * Per thread arrays holding the buffers of a batch, reused across batches.
+     */
+    private static final class BatchBuffers {
+        ByteBuf[] buffers = new ByteBuf[64];
+        int[] indexes = new int[64];
+        ByteBuf[] digests = new ByteBuf[32];
+
+        int add(int numBuffers, ByteBuf buffer, int index) {
+            if (numBuffers == buffers.length) {
+                buffers = Arrays.copyOf(buffers, numBuffers * 2);
+                indexes = Arrays.copyOf(indexes, numBuffers * 2);
+            }
+            buffers[numBuffers] = buffer;
+            indexes[numBuffers] = index;
+            return numBuffers + 1;
+        }
+
+        void ensureDigestsCapacity(int count) {
+            if (digests.length < count) {
+                digests = new ByteBuf[Math.max(count, digests.length * 2)];
+            }
+        }
+
+        void clear(int numBuffers, int numDigests) {
+            Arrays.fill(buffers, 0, numBuffers, null);
+            Arrays.fill(digests, 0, numDigests, null);
+        }
+    }
+
     /**
      * A representation of RecoveryData.
      */
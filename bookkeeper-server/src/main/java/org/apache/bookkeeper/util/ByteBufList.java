@@ -354,6 +354,22 @@ public class ByteBufList extends AbstractReferenceCounted {
                 } finally {
                     ReferenceCountUtil.safeRelease(b);
                 }
+            } else if (msg instanceof FileRegionFrame) {
+                FileRegionFrame frame = (FileRegionFrame) msg;
+
+                try {
+                    if (prependSize) {
+                        ByteBuf sizeBuffer = ctx.alloc().directBuffer(4, 4);
+                        sizeBuffer.writeInt((int) frame.size());
+                        ctx.write(sizeBuffer, ctx.voidPromise());
+                    }
+
+                    // The file region is released once transferred, or if the write fails
+                    ctx.write(frame.getHeader().retainedDuplicate(), ctx.voidPromise());
+                    ctx.write(frame.getRegion().retain(), promise);
+                } finally {
+                    ReferenceCountUtil.safeRelease(frame);
+                }
             } else {
                 ctx.write(msg, promise);
             }
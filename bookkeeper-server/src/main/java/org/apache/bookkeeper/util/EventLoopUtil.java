@@ -17,10 +17,19 @@
  */
 package org.apache.bookkeeper.util;
 
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultEventLoopGroup;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SelectStrategy;
+import io.netty.channel.ServerChannel;
 import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
 
 import java.util.concurrent.ThreadFactory;
 
@@ -35,24 +44,76 @@ import org.apache.commons.lang.SystemUtils;
 
 /**
  * Utility class to initialize Netty event loops.
+ *
+ * <p>The io_uring transport comes from the Netty incubator, which is an optional dependency. So its classes are
+ * loaded by name, and the Epoll transport is used if they are not on the classpath or the kernel doesn't support
+ * io_uring.
  */
 @Slf4j
 @UtilityClass
 public class EventLoopUtil {
+    private static final String IO_URING_PACKAGE = "io.netty.incubator.channel.uring.";
+    private static final String IO_URING_EVENT_LOOP_GROUP = IO_URING_PACKAGE + "IOUringEventLoopGroup";
+    private static final String IO_URING_SOCKET_CHANNEL = IO_URING_PACKAGE + "IOUringSocketChannel";
+    private static final String IO_URING_SERVER_SOCKET_CHANNEL = IO_URING_PACKAGE + "IOUringServerSocketChannel";
+
     public static EventLoopGroup getClientEventLoopGroup(ClientConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getNumIOThreads(), conf.isBusyWaitEnabled());
+        return getEventLoopGroup(threadFactory, conf.getNumIOThreads(), conf.isBusyWaitEnabled(),
+                conf.isIoUringEnabled());
     }
 
     public static EventLoopGroup getServerEventLoopGroup(ServerConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled());
+        return getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled(),
+                conf.isIoUringEnabled());
+    }
+
+    /**
+     * Get the class of the client channels to use with the given event loop group.
+     */
+    public static Class<? extends Channel> getClientSocketChannelClass(EventLoopGroup eventLoopGroup) {
+        if (eventLoopGroup instanceof EpollEventLoopGroup) {
+            return EpollSocketChannel.class;
+        } else if (eventLoopGroup instanceof DefaultEventLoopGroup) {
+            return LocalChannel.class;
+        } else if (isIoUringEventLoopGroup(eventLoopGroup)) {
+            return loadIoUringClass(eventLoopGroup, IO_URING_SOCKET_CHANNEL, Channel.class);
+        } else {
+            return NioSocketChannel.class;
+        }
+    }
+
+    /**
+     * Get the class of the server channels to use with the given event loop group.
+     */
+    public static Class<? extends ServerChannel> getServerSocketChannelClass(EventLoopGroup eventLoopGroup) {
+        if (eventLoopGroup instanceof EpollEventLoopGroup) {
+            return EpollServerSocketChannel.class;
+        } else if (eventLoopGroup instanceof DefaultEventLoopGroup) {
+            return LocalServerChannel.class;
+        } else if (isIoUringEventLoopGroup(eventLoopGroup)) {
+            return loadIoUringClass(eventLoopGroup, IO_URING_SERVER_SOCKET_CHANNEL, ServerChannel.class);
+        } else {
+            return NioServerSocketChannel.class;
+        }
     }
 
     private static EventLoopGroup getEventLoopGroup(ThreadFactory threadFactory,
-            int numThreads, boolean enableBusyWait) {
+            int numThreads, boolean enableBusyWait, boolean enableIoUring) {
         if (!SystemUtils.IS_OS_LINUX) {
             return new NioEventLoopGroup(numThreads, threadFactory);
         }
 
+        if (enableIoUring) {
+            if (enableBusyWait) {
+                log.warn("Busy-wait is not supported by the Netty io_uring event loop, using Epoll");
+            } else {
+                EventLoopGroup eventLoopGroup = getIoUringEventLoopGroup(threadFactory, numThreads);
+                if (eventLoopGroup != null) {
+                    return eventLoopGroup;
+                }
+            }
+        }
+
         try {
             if (!enableBusyWait) {
                 // Regular Epoll based event loop
@@ -82,4 +143,39 @@ public class EventLoopUtil {
             return new NioEventLoopGroup(numThreads, threadFactory);
         }
     }
+
+    private static EventLoopGroup getIoUringEventLoopGroup(ThreadFactory threadFactory, int numThreads) {
+        try {
+            Class<?> ioUring = Class.forName(IO_URING_PACKAGE + "IOUring");
+            if (!(Boolean) ioUring.getMethod("isAvailable").invoke(null)) {
+                Throwable cause = (Throwable) ioUring.getMethod("unavailabilityCause").invoke(null);
+                log.warn("Could not use Netty io_uring event loop: {}", cause.getMessage());
+                return null;
+            }
+            return (EventLoopGroup) Class.forName(IO_URING_EVENT_LOOP_GROUP)
+                    .getConstructor(int.class, ThreadFactory.class)
+                    .newInstance(numThreads, threadFactory);
+        } catch (ClassNotFoundException e) {
+            log.warn("Could not use Netty io_uring event loop: {} is not on the classpath",
+                    IO_URING_EVENT_LOOP_GROUP);
+            return null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("Could not use Netty io_uring event loop: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static boolean isIoUringEventLoopGroup(EventLoopGroup eventLoopGroup) {
+        return IO_URING_EVENT_LOOP_GROUP.equals(eventLoopGroup.getClass().getName());
+    }
+
+    private static <T> Class<? extends T> loadIoUringClass(EventLoopGroup eventLoopGroup, String className,
+                                                           Class<T> type) {
+        try {
+            return Class.forName(className, true, eventLoopGroup.getClass().getClassLoader()).asSubclass(type);
+        } catch (ClassNotFoundException e) {
+            // the event loop group was loaded, so its channels are on the classpath too
+            throw new IllegalStateException("Could not load " + className, e);
+        }
+    }
 }
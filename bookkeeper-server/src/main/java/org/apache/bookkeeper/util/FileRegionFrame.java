@@ -0,0 +1,75 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCounted;
+
+/**
+ * A frame made of a header {@link ByteBuf} followed by a {@link FileRegion}.
+ *
+ * <p>It lets the payload of a frame be transferred from a file to the socket (with {@code sendfile} on the
+ * native and NIO transports) while only the header is built in memory. Like {@link ByteBufList}, it is written
+ * on the channel by {@link ByteBufList#ENCODER} and {@link ByteBufList#ENCODER_WITH_SIZE}, the latter prepending
+ * the size of the whole frame. The frame owns both the header and the region, and releases them when released.
+ *
+ * <p>File regions are not supported by the TLS handler nor by the local transport, callers must only write
+ * these frames on plain socket channels.
+ */
+public class FileRegionFrame extends AbstractReferenceCounted {
+    private final ByteBuf header;
+    private final FileRegion region;
+
+    public FileRegionFrame(ByteBuf header, FileRegion region) {
+        this.header = header;
+        this.region = region;
+    }
+
+    public ByteBuf getHeader() {
+        return header;
+    }
+
+    public FileRegion getRegion() {
+        return region;
+    }
+
+    /**
+     * @return the size of the frame, in bytes
+     */
+    public long size() {
+        return header.readableBytes() + region.count();
+    }
+
+    @Override
+    public ReferenceCounted touch(Object hint) {
+        header.touch(hint);
+        region.touch(hint);
+        return this;
+    }
+
+    @Override
+    protected void deallocate() {
+        header.release();
+        region.release();
+    }
+}
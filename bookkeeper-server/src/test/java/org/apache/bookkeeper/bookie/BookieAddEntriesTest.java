@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.discover.BookieServiceInfo;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.prometheus.PrometheusMetricsProvider;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test adding a batch of entries through {@link BookieImpl#addEntries}.
+ */
+public class BookieAddEntriesTest {
+
+    private static final byte[] MASTER_KEY = "master-key".getBytes(StandardCharsets.UTF_8);
+    private static final int NUM_ENTRIES = 10;
+
+    /**
+     * A ledger storage failing to add a given entry.
+     */
+    public static class FailingLedgerStorage extends InterleavedLedgerStorage {
+        volatile long failEntryId = -1;
+
+        @Override
+        public long addEntry(ByteBuf entry) throws IOException {
+            if (entry.getLong(entry.readerIndex() + 8) == failEntryId) {
+                throw new IOException("Injected failure adding entry " + failEntryId);
+            }
+            return super.addEntry(entry);
+        }
+    }
+
+    private File journalDir;
+    private File ledgerDir;
+    private BookieImpl bookie;
+
+    @Before
+    public void setUp() throws Exception {
+        journalDir = Files.createTempDirectory("journal").toFile();
+        ledgerDir = Files.createTempDirectory("ledger").toFile();
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(journalDir));
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath())
+                .setLedgerDirNames(new String[] { ledgerDir.getPath() })
+                .setLedgerStorageClass(FailingLedgerStorage.class.getName())
+                .setJournalFlushWhenQueueEmpty(true)
+                .setDiskUsageThreshold(0.999f)
+                .setDiskUsageWarnThreshold(0.99f)
+                .setAllowLoopback(true);
+        bookie = new BookieImpl(conf, new PrometheusMetricsProvider().getStatsLogger(""),
+                UnpooledByteBufAllocator.DEFAULT, BookieServiceInfo.NO_INFO);
+        bookie.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != bookie) {
+            bookie.shutdown();
+        }
+        FileUtils.deleteDirectory(journalDir);
+        FileUtils.deleteDirectory(ledgerDir);
+    }
+
+    @Test
+    public void testAddEntries() throws Exception {
+        AddResults results = new AddResults(NUM_ENTRIES);
+        bookie.addEntries(createEntries(1, 0, NUM_ENTRIES), false, results, null, MASTER_KEY);
+
+        assertTrue("Entries weren't acknowledged", results.await());
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertEquals(BookieProtocol.EOK, results.getRc(entryId));
+            assertEntry(1, entryId);
+        }
+        // the entries were queued to the journal as a single queue entry, and all of them are accounted for
+        assertEquals(0L, getJournalQueueSize());
+    }
+
+    @Test
+    public void testAddEntriesFailsMidBatch() throws Exception {
+        ((FailingLedgerStorage) bookie.getLedgerStorage()).failEntryId = 4;
+
+        AddResults results = new AddResults(NUM_ENTRIES);
+        bookie.addEntries(createEntries(1, 0, NUM_ENTRIES), false, results, null, MASTER_KEY);
+
+        assertTrue("Entries weren't completed", results.await());
+        // the entries added before the failure are journaled and acknowledged
+        for (long entryId = 0; entryId < 4; entryId++) {
+            assertEquals(BookieProtocol.EOK, results.getRc(entryId));
+            assertEntry(1, entryId);
+        }
+        // and the failed one and the ones after it are rejected
+        for (long entryId = 4; entryId < NUM_ENTRIES; entryId++) {
+            assertEquals(BookieProtocol.EIO, results.getRc(entryId));
+            try {
+                bookie.readEntry(1, entryId);
+                fail("Entry " + entryId + " shouldn't have been added");
+            } catch (Bookie.NoEntryException e) {
+                // expected
+            }
+        }
+        assertEquals(0L, getJournalQueueSize());
+    }
+
+    @Test
+    public void testAddEntriesFailsOnFirstEntry() throws Exception {
+        ((FailingLedgerStorage) bookie.getLedgerStorage()).failEntryId = 0;
+
+        AddResults results = new AddResults(NUM_ENTRIES);
+        try {
+            bookie.addEntries(createEntries(1, 0, NUM_ENTRIES), false, results, null, MASTER_KEY);
+            fail("Should fail when no entry could be added");
+        } catch (IOException e) {
+            // expected
+        }
+        // none of the entries was completed through the callback
+        assertEquals(NUM_ENTRIES, results.latch.getCount());
+        assertEquals(0L, getJournalQueueSize());
+    }
+
+    @Test
+    public void testAddEntriesToFencedLedger() throws Exception {
+        AddResults results = new AddResults(2);
+        bookie.addEntries(createEntries(1, 0, 2), false, results, null, MASTER_KEY);
+        assertTrue(results.await());
+
+        assertTrue(bookie.fenceLedger(1, MASTER_KEY).get(10, TimeUnit.SECONDS));
+
+        AddResults fencedResults = new AddResults(2);
+        try {
+            bookie.addEntries(createEntries(1, 2, 2), false, fencedResults, null, MASTER_KEY);
+            fail("Should fail to add entries to a fenced ledger");
+        } catch (BookieException.LedgerFencedException e) {
+            // expected
+        }
+        assertEquals(2, fencedResults.latch.getCount());
+
+        // recovery adds still go through, one entry at a time
+        AddResults recoveryResults = new AddResults(2);
+        for (ByteBuf entry : createEntries(1, 2, 2)) {
+            bookie.recoveryAddEntry(entry, recoveryResults, null, MASTER_KEY);
+        }
+        assertTrue(recoveryResults.await());
+        for (long entryId = 0; entryId < 4; entryId++) {
+            assertEntry(1, entryId);
+        }
+        assertEquals(0L, getJournalQueueSize());
+    }
+
+    @Test
+    public void testAddEntriesWithWrongMasterKey() throws Exception {
+        AddResults results = new AddResults(1);
+        bookie.addEntries(createEntries(1, 0, 1), false, results, null, MASTER_KEY);
+        assertTrue(results.await());
+
+        try {
+            bookie.addEntries(createEntries(1, 1, 2), false, new AddResults(2), null,
+                    "wrong".getBytes(StandardCharsets.UTF_8));
+            fail("Should fail to add entries with a wrong master key");
+        } catch (BookieException.BookieUnauthorizedAccessException e) {
+            // expected
+        }
+    }
+
+    private long getJournalQueueSize() {
+        return bookie.journals.get(0).getJournalStats().getJournalQueueSize().get();
+    }
+
+    private void assertEntry(long ledgerId, long entryId) throws Exception {
+        ByteBuf entry = bookie.readEntry(ledgerId, entryId);
+        try {
+            assertEquals(ledgerId, entry.readLong());
+            assertEquals(entryId, entry.readLong());
+            assertEquals("entry-" + entryId, entry.toString(StandardCharsets.UTF_8));
+        } finally {
+            entry.release();
+        }
+    }
+
+    private static List<ByteBuf> createEntries(long ledgerId, long firstEntryId, int numEntries) {
+        List<ByteBuf> entries = new ArrayList<>(numEntries);
+        for (long entryId = firstEntryId; entryId < firstEntryId + numEntries; entryId++) {
+            ByteBuf entry = Unpooled.buffer();
+            entry.writeLong(ledgerId);
+            entry.writeLong(entryId);
+            entry.writeBytes(("entry-" + entryId).getBytes(StandardCharsets.UTF_8));
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static class AddResults implements WriteCallback {
+        private final Map<Long, Integer> rcs = new ConcurrentHashMap<>();
+        private final CountDownLatch latch;
+
+        AddResults(int numEntries) {
+            this.latch = new CountDownLatch(numEntries);
+        }
+
+        @Override
+        public void writeComplete(int rc, long ledgerId, long entryId, BookieId addr, Object ctx) {
+            rcs.put(entryId, rc);
+            latch.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return latch.await(10, TimeUnit.SECONDS);
+        }
+
+        int getRc(long entryId) {
+            return rcs.get(entryId);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assume.assumeTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test {@link DirectBufferedChannel}.
+ *
+ * <p>The tests are skipped when the JVM or the file system of the temporary directory don't support direct I/O.
+ */
+public class DirectBufferedChannelTest {
+
+    private final Random random = new Random(0);
+    private File dir;
+    private File file;
+    private int alignment;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue("Direct I/O is not supported by this JVM", DirectBufferedChannel.isSupported());
+        dir = Files.createTempDirectory("journal").toFile();
+        file = new File(dir, "test.txn");
+
+        // a flushed byte takes a whole block of the file
+        BufferedChannel channel;
+        try {
+            channel = open(0, 1);
+        } catch (IOException e) {
+            assumeNoException("Direct I/O is not supported in " + dir, e);
+            return;
+        }
+        channel.write(Unpooled.wrappedBuffer(new byte[] { 1 }));
+        channel.flush();
+        channel.close();
+        alignment = (int) file.length();
+        assertTrue("Unexpected block size " + alignment, alignment > 0 && Integer.bitCount(alignment) == 1);
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != dir) {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private BufferedChannel open(long position, int capacity) throws IOException {
+        FileChannel fc = new RandomAccessFile(file, "rw").getChannel();
+        fc.position(position);
+        try {
+            return DirectBufferedChannel.open(UnpooledByteBufAllocator.DEFAULT, file, fc, capacity);
+        } catch (IOException e) {
+            fc.close();
+            throw e;
+        }
+    }
+
+    @Test
+    public void testWritesStraddlingBufferBoundary() throws Exception {
+        // the buffer holds a single block, and every few records straddle two blocks
+        BufferedChannel channel = open(0, alignment);
+        byte[] data = new byte[3 * alignment + 50];
+        random.nextBytes(data);
+        int recordSize = 100;
+        for (int offset = 0; offset < data.length; offset += recordSize) {
+            channel.write(Unpooled.wrappedBuffer(data, offset, Math.min(recordSize, data.length - offset)));
+        }
+        assertEquals(data.length, channel.position());
+        // the full blocks were written when the buffer filled up
+        assertEquals(50, channel.getNumOfBytesInWriteBuffer());
+        assertEquals(3 * alignment, file.length());
+
+        channel.flush();
+        channel.close();
+
+        // the last block is zero-padded
+        assertFileContent(data, 4 * alignment);
+    }
+
+    @Test
+    public void testReadAfterFlush() throws Exception {
+        BufferedChannel channel = open(0, 4 * alignment);
+        byte[] data = new byte[alignment + alignment / 2];
+        random.nextBytes(data);
+        channel.write(Unpooled.wrappedBuffer(data));
+
+        // read from the write buffer
+        assertArrayEquals(data, read(channel, 0, data.length));
+
+        // the partial block is written, and kept in the buffer to be completed by the next flush
+        channel.flush();
+        assertEquals(alignment / 2, channel.getNumOfBytesInWriteBuffer());
+        assertEquals(alignment, channel.getFileChannelPosition());
+        assertFileContent(data, 2 * alignment);
+        assertArrayEquals(data, read(channel, 0, data.length));
+        assertArrayEquals(Arrays.copyOfRange(data, alignment - 10, data.length),
+                read(channel, alignment - 10, data.length - alignment + 10));
+
+        // the next flush rewrites the partial block completed
+        byte[] moreData = new byte[alignment];
+        random.nextBytes(moreData);
+        channel.write(Unpooled.wrappedBuffer(moreData));
+        channel.flush();
+        byte[] allData = concat(data, moreData);
+        assertFileContent(allData, 3 * alignment);
+        assertArrayEquals(allData, read(channel, 0, allData.length));
+        channel.close();
+    }
+
+    @Test
+    public void testForceWriteAndReopen() throws Exception {
+        BufferedChannel channel = open(0, 2 * alignment);
+        byte[] data = new byte[alignment + alignment / 2];
+        random.nextBytes(data);
+        channel.write(Unpooled.wrappedBuffer(data));
+
+        // only the full blocks are reported as persisted, the partial block will be written again
+        channel.flushAndForceWrite(false);
+        assertEquals(alignment, channel.forceWrite(false));
+        channel.close();
+        // closing twice is harmless
+        channel.close();
+        assertFileContent(data, 2 * alignment);
+
+        // reopened at the end of the data, the partial block is read back and completed
+        channel = open(data.length, 2 * alignment);
+        assertEquals(data.length, channel.position());
+        assertEquals(alignment / 2, channel.getNumOfBytesInWriteBuffer());
+        byte[] moreData = new byte[alignment];
+        random.nextBytes(moreData);
+        channel.write(Unpooled.wrappedBuffer(moreData));
+        channel.flushAndForceWrite(false);
+        channel.close();
+
+        assertFileContent(concat(data, moreData), 3 * alignment);
+    }
+
+    private static byte[] read(BufferedChannel channel, long position, int length) throws IOException {
+        ByteBuf dest = Unpooled.buffer(length, length);
+        assertEquals(length, channel.read(dest, position, length));
+        byte[] bytes = new byte[length];
+        dest.readBytes(bytes);
+        return bytes;
+    }
+
+    private void assertFileContent(byte[] data, int fileLength) throws IOException {
+        byte[] content = Files.readAllBytes(file.toPath());
+        assertEquals(fileLength, content.length);
+        assertArrayEquals(data, Arrays.copyOf(content, data.length));
+        assertArrayEquals(new byte[fileLength - data.length], Arrays.copyOfRange(content, data.length, fileLength));
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+}
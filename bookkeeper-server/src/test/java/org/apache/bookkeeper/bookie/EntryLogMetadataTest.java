@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the serialization of {@link EntryLogMetadata}.
+ */
+public class EntryLogMetadataTest {
+
+    @Test
+    public void testSerializeDeserialize() throws IOException {
+        EntryLogMetadata meta = new EntryLogMetadata(7);
+        meta.addLedgerSize(1, 100);
+        meta.addLedgerSize(2, 200);
+        meta.addLedgerSize(2, 50);
+        meta.addLedgerSize(3, 1000);
+        meta.removeLedgerIf(ledgerId -> ledgerId == 3);
+
+        EntryLogMetadata read = EntryLogMetadata.deserialize(toInput(serialize(meta)));
+
+        assertEquals(7, read.getEntryLogId());
+        assertEquals(1350, read.getTotalSize());
+        assertEquals(350, read.getRemainingSize());
+        assertEquals(meta.getUsage(), read.getUsage(), 0.0);
+        assertEquals(2, read.getLedgersMap().size());
+        assertEquals(100, read.getLedgersMap().get(1));
+        assertEquals(250, read.getLedgersMap().get(2));
+        assertFalse(read.containsLedger(3));
+    }
+
+    @Test
+    public void testSerializeDeserializeEmpty() throws IOException {
+        EntryLogMetadata read = EntryLogMetadata.deserialize(toInput(serialize(new EntryLogMetadata(3))));
+
+        assertEquals(3, read.getEntryLogId());
+        assertEquals(0, read.getTotalSize());
+        assertEquals(0, read.getRemainingSize());
+        assertTrue(read.isEmpty());
+    }
+
+    @Test
+    public void testVersion0Format() throws IOException {
+        EntryLogMetadata meta = new EntryLogMetadata(5);
+        meta.addLedgerSize(9, 64);
+
+        DataInputStream in = toInput(serialize(meta));
+        assertEquals(0, in.readShort());
+        assertEquals(5, in.readLong());
+        assertEquals(64, in.readLong());
+        assertEquals(64, in.readLong());
+        assertEquals(1, in.readInt());
+        assertEquals(9, in.readLong());
+        assertEquals(64, in.readLong());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testUnknownVersion() throws IOException {
+        byte[] data = serialize(new EntryLogMetadata(1));
+        data[1] = 1;
+        try {
+            EntryLogMetadata.deserialize(toInput(data));
+            fail("should fail to read an unknown version");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static byte[] serialize(EntryLogMetadata meta) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            meta.serialize(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream toInput(byte[] data) {
+        return new DataInputStream(new ByteArrayInputStream(data));
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the memory mapped reads of the rotated entry logs of {@link EntryLogger}.
+ */
+public class EntryLoggerTest {
+
+    private static final int NUM_ENTRIES = 10;
+
+    private File ledgerDir;
+    private EntryLogger entryLogger;
+
+    @Before
+    public void setUp() throws Exception {
+        ledgerDir = Files.createTempDirectory("ledger").toFile();
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() })
+                .setEntryLogMmapReadEnabled(true)
+                .setDiskUsageThreshold(0.999f)
+                .setDiskUsageWarnThreshold(0.99f);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        entryLogger = new EntryLogger(conf, ledgerDirsManager);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entryLogger.shutdown();
+        FileUtils.deleteDirectory(ledgerDir);
+    }
+
+    @Test
+    public void testReadsAfterLogRolls() throws Exception {
+        long[] locations = addEntries(1, 0, NUM_ENTRIES);
+        long logId = EntryLogger.logIdForOffset(locations[0]);
+
+        // the entry log being written is read through its channels
+        assertEntries(1, 0, locations);
+        assertFalse(entryLogger.isEntryLogMapped(logId));
+
+        // as is a rotated entry log until it is flushed
+        rollLog();
+        assertEntries(1, 0, locations);
+        assertFalse(entryLogger.isEntryLogMapped(logId));
+
+        entryLogger.flush();
+        assertEntries(1, 0, locations);
+        assertTrue(entryLogger.isEntryLogMapped(logId));
+
+        // the entries of the new entry log are read next to the mapped ones
+        long[] newLocations = addEntries(2, 0, NUM_ENTRIES);
+        long newLogId = EntryLogger.logIdForOffset(newLocations[0]);
+        assertNotEquals(logId, newLogId);
+        assertEntries(2, 0, newLocations);
+        assertEntries(1, 0, locations);
+        assertFalse(entryLogger.isEntryLogMapped(newLogId));
+    }
+
+    @Test
+    public void testReadsOfUnflushedTailData() throws Exception {
+        long[] flushedLocations = addEntries(1, 0, NUM_ENTRIES);
+        entryLogger.flush();
+
+        // the last entries are only in the write buffer of the current entry log
+        long[] tailLocations = addEntries(1, NUM_ENTRIES, NUM_ENTRIES);
+        assertEquals(EntryLogger.logIdForOffset(flushedLocations[0]), EntryLogger.logIdForOffset(tailLocations[0]));
+        assertEntries(1, 0, flushedLocations);
+        assertEntries(1, NUM_ENTRIES, tailLocations);
+
+        // the current entry log is never mapped, even once flushed
+        entryLogger.flush();
+        assertEntries(1, NUM_ENTRIES, tailLocations);
+        assertFalse(entryLogger.isEntryLogMapped(EntryLogger.logIdForOffset(tailLocations[0])));
+    }
+
+    @Test
+    public void testRemovedLogIsUnmapped() throws Exception {
+        long[] locations = addEntries(1, 0, NUM_ENTRIES);
+        long logId = EntryLogger.logIdForOffset(locations[0]);
+        rollLog();
+        entryLogger.flush();
+
+        // an entry still referenced, for instance by a pending response
+        ByteBuf entry = entryLogger.readEntry(1, 0, locations[0]);
+        assertTrue(entryLogger.isEntryLogMapped(logId));
+
+        assertTrue(entryLogger.removeEntryLog(logId));
+        assertFalse(entryLogger.isEntryLogMapped(logId));
+
+        // the mapping is only unmapped once the entries read from it are released
+        assertEntry(1, 0, entry);
+        entry.release();
+
+        try {
+            entryLogger.readEntry(1, 1, locations[1]);
+            fail("Should not read an entry of a removed entry log");
+        } catch (IOException e) {
+            // expected
+        }
+        assertFalse(entryLogger.isEntryLogMapped(logId));
+    }
+
+    private void rollLog() throws IOException {
+        ((EntryLogManagerBase) entryLogger.getEntryLogManager()).createNewLog(EntryLogger.UNASSIGNED_LEDGERID);
+    }
+
+    private long[] addEntries(long ledgerId, long firstEntryId, int numEntries) throws IOException {
+        long[] locations = new long[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            ByteBuf entry = entry(ledgerId, firstEntryId + i);
+            locations[i] = entryLogger.addEntry(ledgerId, entry);
+            entry.release();
+        }
+        return locations;
+    }
+
+    private void assertEntries(long ledgerId, long firstEntryId, long[] locations) throws IOException {
+        for (int i = 0; i < locations.length; i++) {
+            ByteBuf entry = entryLogger.readEntry(ledgerId, firstEntryId + i, locations[i]);
+            assertEntry(ledgerId, firstEntryId + i, entry);
+            entry.release();
+        }
+    }
+
+    private static void assertEntry(long ledgerId, long entryId, ByteBuf entry) {
+        ByteBuf expected = entry(ledgerId, entryId);
+        assertEquals("Entry " + ledgerId + "@" + entryId, expected, entry);
+        expected.release();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(128);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeBytes(("ledger-" + ledgerId + "-entry-" + entryId).getBytes(StandardCharsets.UTF_8));
+        return entry;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import org.apache.bookkeeper.bookie.storage.ldb.PersistentEntryLogMetadataMap;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test how {@link GarbageCollectorThread} keeps the entry log metadata in the persistent entry log metadata map.
+ */
+public class GarbageCollectorThreadTest {
+
+    private File ledgerDir;
+    private ServerConfiguration conf;
+    private EntryLogger entryLogger;
+    private CompactableLedgerStorage ledgerStorage;
+    private GarbageCollectorThread gcThread;
+
+    @Before
+    public void setUp() throws Exception {
+        ledgerDir = Files.createTempDirectory("ledger").toFile();
+        conf = new ServerConfiguration();
+        conf.setGcEntryLogMetadataCacheEnabled(true);
+        conf.setAllowLoopback(true);
+
+        LedgerDirsManager ledgerDirsManager = mock(LedgerDirsManager.class);
+        when(ledgerDirsManager.getAllLedgerDirs()).thenReturn(Collections.singletonList(ledgerDir));
+        when(ledgerDirsManager.getWritableLedgerDirsForNewLog()).thenReturn(Collections.singletonList(ledgerDir));
+
+        // entry logs 0, 1 and 2 are rotated, each one holding ledgers 1, 2 and 3, with ledger 3 already deleted
+        entryLogger = mock(EntryLogger.class);
+        when(entryLogger.getLedgerDirsManager()).thenReturn(ledgerDirsManager);
+        when(entryLogger.getLeastUnflushedLogId()).thenReturn(3L);
+        when(entryLogger.logExists(anyLong())).thenReturn(true);
+        when(entryLogger.getEntryLogMetadata(anyLong())).thenAnswer(invocation -> {
+            EntryLogMetadata meta = new EntryLogMetadata(invocation.getArgument(0));
+            meta.addLedgerSize(1, 100);
+            meta.addLedgerSize(2, 400);
+            meta.addLedgerSize(3, 500);
+            return meta;
+        });
+
+        ledgerStorage = mock(CompactableLedgerStorage.class);
+        when(ledgerStorage.getEntryLogger()).thenReturn(entryLogger);
+        when(ledgerStorage.ledgerExists(anyLong())).thenReturn(true);
+        when(ledgerStorage.ledgerExists(3L)).thenReturn(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != gcThread) {
+            gcThread.shutdown();
+        }
+        FileUtils.deleteDirectory(ledgerDir);
+    }
+
+    private GarbageCollectorThread newGcThread() throws Exception {
+        return new GarbageCollectorThread(conf, mock(LedgerManager.class), ledgerStorage, NullStatsLogger.INSTANCE,
+                Executors.newSingleThreadScheduledExecutor());
+    }
+
+    private void restartGcThread() throws Exception {
+        gcThread.shutdown();
+        gcThread = newGcThread();
+    }
+
+    @Test
+    public void testMetadataIsNotScannedAgainAfterRestart() throws Exception {
+        gcThread = newGcThread();
+        assertTrue(gcThread.getEntryLogMetaMap() instanceof PersistentEntryLogMetadataMap);
+        assertTrue(new File(ledgerDir, PersistentEntryLogMetadataMap.METADATA_CACHE).exists());
+
+        gcThread.extractMetaFromEntryLogs();
+        verify(entryLogger, times(3)).getEntryLogMetadata(anyLong());
+
+        restartGcThread();
+        gcThread.extractMetaFromEntryLogs();
+
+        // the metadata is read from the cache, without scanning the entry logs again
+        verify(entryLogger, times(3)).getEntryLogMetadata(anyLong());
+        for (long entryLogId = 0; entryLogId < 3; entryLogId++) {
+            EntryLogMetadata meta = gcThread.getEntryLogMetaMap().get(entryLogId);
+            assertEquals(1000, meta.getTotalSize());
+            assertEquals(500, meta.getRemainingSize());
+            assertFalse(meta.containsLedger(3));
+        }
+
+        // only the entry logs rotated since are scanned
+        when(entryLogger.getLeastUnflushedLogId()).thenReturn(4L);
+        gcThread.extractMetaFromEntryLogs();
+        verify(entryLogger, times(4)).getEntryLogMetadata(anyLong());
+        verify(entryLogger, times(1)).getEntryLogMetadata(3L);
+    }
+
+    @Test
+    public void testMetadataOfRemovedEntryLogIsDropped() throws Exception {
+        gcThread = newGcThread();
+        gcThread.extractMetaFromEntryLogs();
+
+        // the entry log was removed while the bookie was down, before its metadata
+        when(entryLogger.logExists(1L)).thenReturn(false);
+        restartGcThread();
+        gcThread.extractMetaFromEntryLogs();
+
+        assertNull(gcThread.getEntryLogMetaMap().get(1));
+        assertEquals(500, gcThread.getEntryLogMetaMap().get(0).getRemainingSize());
+    }
+
+    @Test
+    public void testCompactionWritesBackMetadata() throws Exception {
+        gcThread = newGcThread();
+        gcThread.extractMetaFromEntryLogs();
+
+        // ledger 2 is deleted after the metadata was extracted, and the compacted entry logs can't be removed
+        when(ledgerStorage.ledgerExists(2L)).thenReturn(false);
+        when(entryLogger.removeEntryLog(anyLong())).thenReturn(false);
+
+        gcThread.doCompactEntryLogs(0.6, 0);
+
+        // the entry logs were compacted without ledger 2, and their updated usage was written back
+        for (long entryLogId = 0; entryLogId < 3; entryLogId++) {
+            verify(entryLogger, times(1)).scanEntryLog(eq(entryLogId), any());
+            EntryLogMetadata meta = gcThread.getEntryLogMetaMap().get(entryLogId);
+            assertFalse(meta.containsLedger(2));
+            assertEquals(100, meta.getRemainingSize());
+        }
+
+        // and it is kept across restarts
+        restartGcThread();
+        assertEquals(100, gcThread.getEntryLogMetaMap().get(0).getRemainingSize());
+    }
+
+    @Test
+    public void testCompactionRemovesEntryLogWithoutActiveLedgers() throws Exception {
+        gcThread = newGcThread();
+        gcThread.extractMetaFromEntryLogs();
+
+        when(ledgerStorage.ledgerExists(anyLong())).thenReturn(false);
+        when(entryLogger.removeEntryLog(anyLong())).thenReturn(true);
+
+        gcThread.doCompactEntryLogs(0.6, 0);
+
+        // the entry logs are removed instead of being compacted
+        verify(entryLogger, never()).scanEntryLog(anyLong(), any());
+        for (long entryLogId = 0; entryLogId < 3; entryLogId++) {
+            verify(entryLogger, times(1)).removeEntryLog(entryLogId);
+            assertFalse(gcThread.getEntryLogMetaMap().containsKey(entryLogId));
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the adaptive group wait of the {@link Journal}.
+ */
+public class JournalTest {
+
+    private static final long MAX_GROUP_WAIT_MS = 100;
+    private static final long MAX_GROUP_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(MAX_GROUP_WAIT_MS);
+    private static final long MIN_GROUP_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private File journalDir;
+    private File ledgerDir;
+    private Journal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        journalDir = Files.createTempDirectory("journal").toFile();
+        ledgerDir = Files.createTempDirectory("ledger").toFile();
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(journalDir));
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != journal) {
+            journal.shutdown();
+        }
+        FileUtils.deleteDirectory(journalDir);
+        FileUtils.deleteDirectory(ledgerDir);
+    }
+
+    private void newJournal(boolean adaptiveGroupWait, long maxGroupWaitMs) {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath())
+                .setLedgerDirNames(new String[] { ledgerDir.getPath() })
+                .setJournalMaxGroupWaitMSec(maxGroupWaitMs)
+                .setJournalAdaptiveGroupWaitEnabled(adaptiveGroupWait)
+                .setJournalFlushWhenQueueEmpty(true)
+                .setDiskUsageThreshold(0.999f)
+                .setDiskUsageWarnThreshold(0.99f);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        journal = new Journal(0, BookieImpl.getCurrentDirectory(journalDir), conf, ledgerDirsManager);
+    }
+
+    @Test
+    public void testFixedGroupWait() throws Exception {
+        newJournal(false, MAX_GROUP_WAIT_MS);
+        assertEquals(MAX_GROUP_WAIT_NANOS, journal.getGroupWaitNanos());
+
+        // the measured fsync latency is ignored
+        for (int i = 0; i < 100; i++) {
+            journal.updateAvgSyncLatency(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertEquals(MAX_GROUP_WAIT_NANOS, journal.getGroupWaitNanos());
+    }
+
+    @Test
+    public void testAdaptiveGroupWaitWithoutMaxGroupWait() throws Exception {
+        // without a max group wait the entries are never grouped
+        newJournal(true, 0);
+        journal.updateAvgSyncLatency(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(0, journal.getGroupWaitNanos());
+    }
+
+    @Test
+    public void testAdaptiveGroupWaitFollowsSyncLatency() throws Exception {
+        newJournal(true, MAX_GROUP_WAIT_MS);
+        // the max group wait is used until the fsync latency is measured
+        assertEquals(MAX_GROUP_WAIT_NANOS, journal.getGroupWaitNanos());
+
+        // the moving average gives more weight to the recent syncs
+        long syncLatencyNanos = TimeUnit.MILLISECONDS.toNanos(2);
+        journal.updateAvgSyncLatency(syncLatencyNanos);
+        long groupWaitNanos = journal.getGroupWaitNanos();
+        assertTrue(groupWaitNanos < MAX_GROUP_WAIT_NANOS);
+        assertTrue(groupWaitNanos > syncLatencyNanos);
+        for (int i = 0; i < 100; i++) {
+            journal.updateAvgSyncLatency(syncLatencyNanos);
+            assertTrue(journal.getGroupWaitNanos() <= groupWaitNanos);
+            groupWaitNanos = journal.getGroupWaitNanos();
+        }
+        assertEquals(syncLatencyNanos, groupWaitNanos, syncLatencyNanos / 100);
+
+        // the wait follows a slower device, up to the max group wait
+        for (int i = 0; i < 100; i++) {
+            journal.updateAvgSyncLatency(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), journal.getGroupWaitNanos(),
+                TimeUnit.MILLISECONDS.toNanos(20) / 100);
+        for (int i = 0; i < 100; i++) {
+            journal.updateAvgSyncLatency(TimeUnit.SECONDS.toNanos(1));
+        }
+        assertEquals(MAX_GROUP_WAIT_NANOS, journal.getGroupWaitNanos());
+
+        // and a very fast device still gets some grouping
+        for (int i = 0; i < 200; i++) {
+            journal.updateAvgSyncLatency(1000);
+        }
+        assertEquals(MIN_GROUP_WAIT_NANOS, journal.getGroupWaitNanos());
+    }
+
+    @Test
+    public void testAdaptiveGroupWaitMeasuresJournalSyncs() throws Exception {
+        // a max group wait longer than any fsync of the test device
+        newJournal(true, TimeUnit.MINUTES.toMillis(10));
+        long maxGroupWaitNanos = journal.getGroupWaitNanos();
+        journal.start();
+
+        int numEntries = 10;
+        CountDownLatch done = new CountDownLatch(numEntries);
+        AtomicInteger failures = new AtomicInteger();
+        for (int entryId = 0; entryId < numEntries; entryId++) {
+            ByteBuf entry = Unpooled.buffer(32);
+            entry.writeLong(1);
+            entry.writeLong(entryId);
+            entry.writeLong(0);
+            entry.writeLong(0);
+            journal.logAddEntry(entry, false, (rc, ledgerId, journaledEntryId, addr, ctx) -> {
+                if (rc != BookieProtocol.EOK) {
+                    failures.incrementAndGet();
+                }
+                done.countDown();
+            }, null);
+            entry.release();
+            // each entry is synced on its own, as the queue is empty
+            Thread.sleep(10);
+        }
+
+        assertTrue("Entries weren't journaled", done.await(1, TimeUnit.MINUTES));
+        assertEquals(0, failures.get());
+        // the syncs were measured, and brought the wait down from the max group wait
+        assertTrue(journal.getGroupWaitNanos() < maxGroupWaitNanos);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.SimpleBookieServiceInfoProvider;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Test the read cache of {@link DbLedgerStorage}, with the configured policy and number of stripes.
+ */
+@RunWith(Parameterized.class)
+public class DbLedgerStorageReadCacheTest {
+
+    private static final byte[] MASTER_KEY = "master-key".getBytes(StandardCharsets.UTF_8);
+    private static final int NUM_ENTRIES = 10;
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> configurations() {
+        return Arrays.asList(
+                new Object[] { "fifo", SingleDirectoryDbLedgerStorage.READ_AHEAD_CACHE_POLICY_FIFO, 1 },
+                new Object[] { "fifo-striped", SingleDirectoryDbLedgerStorage.READ_AHEAD_CACHE_POLICY_FIFO, 4 },
+                new Object[] { "tinylfu", SingleDirectoryDbLedgerStorage.READ_AHEAD_CACHE_POLICY_TINY_LFU, 1 },
+                new Object[] { "tinylfu-striped", SingleDirectoryDbLedgerStorage.READ_AHEAD_CACHE_POLICY_TINY_LFU, 4 });
+    }
+
+    private final String readCachePolicy;
+    private final int readCacheStripes;
+    private final List<File> dirs = new ArrayList<>();
+    private StatsLogger statsLogger;
+    private DbLedgerStorage storage;
+
+    public DbLedgerStorageReadCacheTest(String name, String readCachePolicy, int readCacheStripes) {
+        this.readCachePolicy = readCachePolicy;
+        this.readCacheStripes = readCacheStripes;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        File journalDir = newDirectory();
+        File ledgerDir = newDirectory();
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath())
+                .setLedgerDirNames(new String[] { ledgerDir.getPath() })
+                .setLedgerStorageClass(DbLedgerStorage.class.getName())
+                .setDiskUsageThreshold(0.999f)
+                .setDiskUsageWarnThreshold(0.99f)
+                .setAllowLoopback(true);
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 16);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 16);
+        conf.setProperty(SingleDirectoryDbLedgerStorage.READ_AHEAD_CACHE_POLICY, readCachePolicy);
+        conf.setProperty(SingleDirectoryDbLedgerStorage.READ_AHEAD_CACHE_STRIPES, readCacheStripes);
+
+        // the stats loggers of the same name are the same mocks, and can be verified
+        statsLogger = mock(StatsLogger.class, RETURNS_DEEP_STUBS);
+        BookieImpl bookie = new BookieImpl(conf, statsLogger, UnpooledByteBufAllocator.DEFAULT,
+                new SimpleBookieServiceInfoProvider(conf));
+        storage = (DbLedgerStorage) bookie.getLedgerStorage();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != storage) {
+            storage.shutdown();
+        }
+        for (File dir : dirs) {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private File newDirectory() throws IOException {
+        File dir = Files.createTempDirectory("bkTest").toFile();
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(dir));
+        dirs.add(dir);
+        return dir;
+    }
+
+    @Test
+    public void testReadCacheImplementation() {
+        ReadCache readCache = storage.getLedgerStorageList().get(0).getReadCache();
+        if (SingleDirectoryDbLedgerStorage.READ_AHEAD_CACHE_POLICY_TINY_LFU.equals(readCachePolicy)) {
+            assertTrue(readCache instanceof SegmentedReadCache);
+        } else {
+            // without an admission policy, the entries are evicted in FIFO order by a single cache
+            assertFalse(readCache instanceof SegmentedReadCache);
+            assertEquals(readCacheStripes > 1, readCache instanceof StripedReadCache);
+        }
+    }
+
+    @Test
+    public void testReadCacheHitsAndMisses() throws Exception {
+        storage.setMasterKey(1, MASTER_KEY);
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            ByteBuf entry = entry(1, entryId);
+            storage.addEntry(entry);
+            entry.release();
+        }
+        // the entries are read back from the entry log, instead of the write cache
+        storage.flush();
+
+        OpStatsLogger hits = statsLogger.scopeLabel("policy", readCachePolicy).getOpStatsLogger("read-cache-hits");
+        OpStatsLogger misses = statsLogger.scopeLabel("policy", readCachePolicy)
+                .getOpStatsLogger("read-cache-misses");
+
+        // the first read misses, and reads ahead the next entries into the read cache
+        assertEntry(1, 0);
+        verify(misses, times(1)).registerSuccessfulEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        verify(hits, times(0)).registerSuccessfulEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        assertTrue(storage.getLedgerStorageList().get(0).getReadCacheCount() >= NUM_ENTRIES);
+
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertEntry(1, entryId);
+        }
+        verify(misses, times(1)).registerSuccessfulEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        verify(hits, times(NUM_ENTRIES)).registerSuccessfulEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+    }
+
+    private void assertEntry(long ledgerId, long entryId) throws Exception {
+        ByteBuf expected = entry(ledgerId, entryId);
+        ByteBuf entry = storage.getEntry(ledgerId, entryId);
+        assertEquals("Entry " + ledgerId + "@" + entryId, expected, entry);
+        expected.release();
+        entry.release();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(128);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1);
+        entry.writeBytes(("entry-" + entryId).getBytes(StandardCharsets.UTF_8));
+        return entry;
+    }
+}
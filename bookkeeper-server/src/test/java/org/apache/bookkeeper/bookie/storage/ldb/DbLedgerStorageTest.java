@@ -0,0 +1,476 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.CheckpointSource;
+import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.bookie.Checkpointer;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.StateManager;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test {@link DbLedgerStorage}.
+ */
+public class DbLedgerStorageTest {
+
+    private static final byte[] MASTER_KEY = "master-key".getBytes(StandardCharsets.UTF_8);
+    private static final int NUM_LEDGERS = 10;
+    private static final int ENTRIES_PER_LEDGER = 300;
+
+    /**
+     * A DbLedgerStorage whose directories can be made to fail their flushes, recording the completed checkpoints.
+     */
+    public static class FailingDbLedgerStorage extends DbLedgerStorage {
+        final List<Checkpoint> completedCheckpoints = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void initialize(ServerConfiguration conf, LedgerManager ledgerManager,
+                LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager, StateManager stateManager,
+                CheckpointSource checkpointSource, Checkpointer checkpointer, StatsLogger statsLogger,
+                ByteBufAllocator allocator) throws IOException {
+            CheckpointSource recordingCheckpointSource = new CheckpointSource() {
+                @Override
+                public Checkpoint newCheckpoint() {
+                    return checkpointSource.newCheckpoint();
+                }
+
+                @Override
+                public void checkpointComplete(Checkpoint checkpoint, boolean compact) throws IOException {
+                    completedCheckpoints.add(checkpoint);
+                    checkpointSource.checkpointComplete(checkpoint, compact);
+                }
+            };
+            super.initialize(conf, ledgerManager, ledgerDirsManager, indexDirsManager, stateManager,
+                    recordingCheckpointSource, checkpointer, statsLogger, allocator);
+        }
+
+        @Override
+        protected SingleDirectoryDbLedgerStorage newSingleDirectoryDbLedgerStorage(ServerConfiguration conf,
+                LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
+                StateManager stateManager, CheckpointSource checkpointSource, Checkpointer checkpointer,
+                StatsLogger statsLogger, ScheduledExecutorService gcExecutor, long writeCacheSize,
+                long readCacheSize) throws IOException {
+            return new FailingSingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager,
+                    indexDirsManager, stateManager, checkpointSource, checkpointer, statsLogger, allocator,
+                    gcExecutor, writeCacheSize, readCacheSize);
+        }
+    }
+
+    static class FailingSingleDirectoryDbLedgerStorage extends SingleDirectoryDbLedgerStorage {
+        // The number of entries appended before an append fails, negative for no failure
+        volatile long appendsBeforeFailure = -1;
+        // Run before appending each entry
+        volatile Runnable beforeAppend = null;
+        final List<TrackedBatch> batches = new CopyOnWriteArrayList<>();
+        final List<Checkpoint> checkpoints = new CopyOnWriteArrayList<>();
+
+        FailingSingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
+                LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager, StateManager stateManager,
+                CheckpointSource checkpointSource, Checkpointer checkpointer, StatsLogger statsLogger,
+                ByteBufAllocator allocator, ScheduledExecutorService gcExecutor,
+                long writeCacheSize, long readCacheSize) throws IOException {
+            super(conf, ledgerManager, ledgerDirsManager, indexDirsManager, stateManager, checkpointSource,
+                    checkpointer, statsLogger, allocator, gcExecutor, writeCacheSize, readCacheSize);
+        }
+
+        @Override
+        public void checkpoint(Checkpoint checkpoint) throws IOException {
+            checkpoints.add(checkpoint);
+            super.checkpoint(checkpoint);
+        }
+
+        @Override
+        long appendEntry(long ledgerId, ByteBuf entry) throws IOException {
+            if (beforeAppend != null) {
+                beforeAppend.run();
+            }
+            // The entries of a directory are appended by a single thread
+            if (appendsBeforeFailure == 0) {
+                throw new IOException("Injected failure appending an entry of ledger " + ledgerId);
+            } else if (appendsBeforeFailure > 0) {
+                appendsBeforeFailure--;
+            }
+            return super.appendEntry(ledgerId, entry);
+        }
+
+        @Override
+        Batch newLocationsBatch() {
+            TrackedBatch batch = new TrackedBatch(super.newLocationsBatch());
+            batches.add(batch);
+            return batch;
+        }
+    }
+
+    /**
+     * A batch recording whether it was flushed and closed.
+     */
+    static class TrackedBatch implements Batch {
+        private final Batch batch;
+        volatile boolean flushed = false;
+        volatile boolean closed = false;
+
+        TrackedBatch(Batch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            batch.put(key, value);
+        }
+
+        @Override
+        public void remove(byte[] key) throws IOException {
+            batch.remove(key);
+        }
+
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+            batch.deleteRange(beginKey, endKey);
+        }
+
+        @Override
+        public void clear() {
+            batch.clear();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            batch.flush();
+            flushed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            batch.close();
+            closed = true;
+        }
+    }
+
+    private final List<File> dirs = new ArrayList<>();
+    private DbLedgerStorage storage;
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != storage) {
+            for (SingleDirectoryDbLedgerStorage dir : storage.getLedgerStorageList()) {
+                ((FailingSingleDirectoryDbLedgerStorage) dir).appendsBeforeFailure = -1;
+            }
+            storage.shutdown();
+        }
+        for (File dir : dirs) {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private File newDirectory() throws IOException {
+        File dir = Files.createTempDirectory("bkTest").toFile();
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(dir));
+        dirs.add(dir);
+        return dir;
+    }
+
+    /**
+     * Create the storage, on a single ledger directory.
+     */
+    private DbLedgerStorage newStorage(int flushThreads) throws Exception {
+        return newStorage(1, flushThreads, 0);
+    }
+
+    private DbLedgerStorage newStorage(int numLedgerDirs, int flushThreads, int directoriesFlushThreads)
+            throws Exception {
+        File journalDir = newDirectory();
+        String[] ledgerDirs = new String[numLedgerDirs];
+        for (int i = 0; i < numLedgerDirs; i++) {
+            ledgerDirs[i] = newDirectory().getPath();
+        }
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath())
+                .setLedgerDirNames(ledgerDirs)
+                .setLedgerStorageClass(FailingDbLedgerStorage.class.getName())
+                .setDiskUsageThreshold(0.999f)
+                .setDiskUsageWarnThreshold(0.99f)
+                .setAllowLoopback(true);
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 16);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 16);
+        conf.setProperty(SingleDirectoryDbLedgerStorage.FLUSH_THREADS, flushThreads);
+        conf.setProperty(DbLedgerStorage.DIRECTORIES_FLUSH_THREADS, directoriesFlushThreads);
+        BookieImpl bookie = new BookieImpl(conf);
+        return (DbLedgerStorage) bookie.getLedgerStorage();
+    }
+
+    private FailingSingleDirectoryDbLedgerStorage getDirectoryStorage() {
+        return getDirectoryStorage(0);
+    }
+
+    private FailingSingleDirectoryDbLedgerStorage getDirectoryStorage(int dirIndex) {
+        return (FailingSingleDirectoryDbLedgerStorage) storage.getLedgerStorageList().get(dirIndex);
+    }
+
+    @Test
+    public void testFailedAppendAbortsSerialFlush() throws Exception {
+        testFailedAppendAbortsFlush(0);
+    }
+
+    @Test
+    public void testFailedAppendAbortsPipelinedFlush() throws Exception {
+        testFailedAppendAbortsFlush(2);
+    }
+
+    private void testFailedAppendAbortsFlush(int flushThreads) throws Exception {
+        storage = newStorage(flushThreads);
+        addEntries(0, ENTRIES_PER_LEDGER);
+
+        // fail after more than a chunk of locations was added to the index batch by the pipelined flush
+        getDirectoryStorage().appendsBeforeFailure = NUM_LEDGERS * ENTRIES_PER_LEDGER - 500;
+        try {
+            storage.flush();
+            fail("The flush should fail");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // the index batch is closed without being written
+        List<TrackedBatch> batches = getDirectoryStorage().batches;
+        assertEquals(1, batches.size());
+        assertTrue(batches.get(0).closed);
+        assertFalse(batches.get(0).flushed);
+
+        // so none of the entries is in the index, and they are still read from the write cache
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+            for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+                assertEquals(0L, storage.getLocation(ledgerId, entryId));
+                assertEntry(ledgerId, entryId);
+            }
+        }
+        assertTrue(storage.isFlushRequired());
+    }
+
+    @Test
+    public void testRecoveryAfterFailedSerialFlush() throws Exception {
+        testRecoveryAfterFailedFlush(0);
+    }
+
+    @Test
+    public void testRecoveryAfterFailedPipelinedFlush() throws Exception {
+        testRecoveryAfterFailedFlush(2);
+    }
+
+    private void testRecoveryAfterFailedFlush(int flushThreads) throws Exception {
+        storage = newStorage(flushThreads);
+        addEntries(0, ENTRIES_PER_LEDGER);
+
+        getDirectoryStorage().appendsBeforeFailure = 100;
+        try {
+            storage.flush();
+            fail("The flush should fail");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // the entries added after the failed flush are in the other write cache
+        addEntries(ENTRIES_PER_LEDGER, 2 * ENTRIES_PER_LEDGER);
+
+        // the next flush persists the entries left by the failed flush, and then the new ones
+        getDirectoryStorage().appendsBeforeFailure = -1;
+        storage.flush();
+
+        List<TrackedBatch> batches = getDirectoryStorage().batches;
+        assertEquals(3, batches.size());
+        for (TrackedBatch batch : batches) {
+            assertTrue(batch.closed);
+        }
+        assertTrue(batches.get(1).flushed);
+        assertTrue(batches.get(2).flushed);
+        assertFalse(storage.isFlushRequired());
+
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+            for (long entryId = 0; entryId < 2 * ENTRIES_PER_LEDGER; entryId++) {
+                assertNotEquals(0L, storage.getLocation(ledgerId, entryId));
+                assertEntry(ledgerId, entryId);
+            }
+        }
+    }
+
+    @Test
+    public void testFlushTakesOneCheckpoint() throws Exception {
+        storage = newStorage(2, 0, 2);
+        addEntries(0, ENTRIES_PER_LEDGER);
+
+        storage.flush();
+
+        // all the directories are flushed up to the same checkpoint, which is completed once
+        List<Checkpoint> completedCheckpoints = ((FailingDbLedgerStorage) storage).completedCheckpoints;
+        assertEquals(1, completedCheckpoints.size());
+        for (int dirIndex = 0; dirIndex < 2; dirIndex++) {
+            assertEquals(1, getDirectoryStorage(dirIndex).checkpoints.size());
+            assertSame(completedCheckpoints.get(0), getDirectoryStorage(dirIndex).checkpoints.get(0));
+        }
+        assertEntriesPersisted(0, 2);
+    }
+
+    @Test
+    public void testDirectoriesFlushedConcurrently() throws Exception {
+        storage = newStorage(2, 0, 2);
+        addEntries(0, ENTRIES_PER_LEDGER);
+
+        // each directory waits for the other one to be appending entries as well
+        CyclicBarrier bothAppending = new CyclicBarrier(2);
+        for (int dirIndex = 0; dirIndex < 2; dirIndex++) {
+            FailingSingleDirectoryDbLedgerStorage dir = getDirectoryStorage(dirIndex);
+            dir.beforeAppend = () -> {
+                dir.beforeAppend = null;
+                try {
+                    bothAppending.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new RuntimeException("The directories were not flushed concurrently", e);
+                }
+            };
+        }
+
+        storage.flush();
+
+        assertEquals(1, ((FailingDbLedgerStorage) storage).completedCheckpoints.size());
+        assertEntriesPersisted(0, 2);
+    }
+
+    @Test
+    public void testFailedDirectoryFlush() throws Exception {
+        storage = newStorage(2, 0, 2);
+        addEntries(0, ENTRIES_PER_LEDGER);
+
+        getDirectoryStorage(0).appendsBeforeFailure = 0;
+        try {
+            storage.flush();
+            fail("The flush should fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Injected failure"));
+        }
+
+        // the other directory is flushed all the same, but the checkpoint isn't complete
+        assertEquals(0, ((FailingDbLedgerStorage) storage).completedCheckpoints.size());
+        assertEquals(1, getDirectoryStorage(1).checkpoints.size());
+        assertEntriesPersisted(1, 2);
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId += 2) {
+            for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+                assertEquals(0L, storage.getLocation(ledgerId, entryId));
+                assertEntry(ledgerId, entryId);
+            }
+        }
+
+        // and the next flush completes it
+        getDirectoryStorage(0).appendsBeforeFailure = -1;
+        storage.flush();
+        assertEquals(1, ((FailingDbLedgerStorage) storage).completedCheckpoints.size());
+        assertEntriesPersisted(0, 1);
+    }
+
+    @Test
+    public void testReadCachePolicyConfig() {
+        ServerConfiguration conf = new ServerConfiguration();
+        // the admission policy is disabled by default
+        assertEquals(SingleDirectoryDbLedgerStorage.READ_AHEAD_CACHE_POLICY_FIFO,
+                SingleDirectoryDbLedgerStorage.getReadCachePolicy(conf));
+
+        conf.setProperty(SingleDirectoryDbLedgerStorage.READ_AHEAD_CACHE_POLICY, "tinylfu");
+        assertEquals(SingleDirectoryDbLedgerStorage.READ_AHEAD_CACHE_POLICY_TINY_LFU,
+                SingleDirectoryDbLedgerStorage.getReadCachePolicy(conf));
+
+        conf.setProperty(SingleDirectoryDbLedgerStorage.READ_AHEAD_CACHE_POLICY, "lru");
+        try {
+            SingleDirectoryDbLedgerStorage.getReadCachePolicy(conf);
+            fail("Should not accept an unknown read cache policy");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Assert that the entries of the ledgers stored in a directory, with {@code numDirs} directories, are persisted.
+     */
+    private void assertEntriesPersisted(int dirIndex, int numDirs) throws Exception {
+        for (long ledgerId = dirIndex; ledgerId < NUM_LEDGERS; ledgerId += numDirs) {
+            for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+                assertNotEquals(0L, storage.getLocation(ledgerId, entryId));
+                assertEntry(ledgerId, entryId);
+            }
+        }
+    }
+
+    private void addEntries(long firstEntryId, long lastEntryId) throws Exception {
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+            storage.setMasterKey(ledgerId, MASTER_KEY);
+        }
+        for (long entryId = firstEntryId; entryId < lastEntryId; entryId++) {
+            for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+                ByteBuf entry = Unpooled.buffer();
+                entry.writeLong(ledgerId);
+                entry.writeLong(entryId);
+                entry.writeLong(entryId - 1);
+                entry.writeBytes(getData(ledgerId, entryId).getBytes(StandardCharsets.UTF_8));
+                storage.addEntry(entry);
+                entry.release();
+            }
+        }
+    }
+
+    private void assertEntry(long ledgerId, long entryId) throws Exception {
+        ByteBuf entry = storage.getEntry(ledgerId, entryId);
+        try {
+            assertEquals(ledgerId, entry.readLong());
+            assertEquals(entryId, entry.readLong());
+            assertEquals(entryId - 1, entry.readLong());
+            assertEquals(getData(ledgerId, entryId), entry.toString(StandardCharsets.UTF_8));
+        } finally {
+            entry.release();
+        }
+    }
+
+    private static String getData(long ledgerId, long entryId) {
+        return "ledger-" + ledgerId + "-entry-" + entryId;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Test the removal of the locations of the deleted ledgers from {@link EntryLocationIndex}, with the range deletes of
+ * RocksDB and with the default range deletes going over the keys.
+ */
+@RunWith(Parameterized.class)
+public class EntryLocationIndexTest {
+
+    private static final int NUM_LEDGERS = 10;
+    private static final int ENTRIES_PER_LEDGER = 20;
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> storageFactories() {
+        return Arrays.asList(
+                new Object[] { "rocksdb", KeyValueStorageRocksDB.factory },
+                new Object[] { "default", KeyValueStorageTest.KeyIteratingStorage.factory(
+                        KeyValueStorageRocksDB.factory) });
+    }
+
+    private final KeyValueStorageFactory storageFactory;
+    private File dbDir;
+    private EntryLocationIndex index;
+
+    public EntryLocationIndexTest(String name, KeyValueStorageFactory storageFactory) {
+        this.storageFactory = storageFactory;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dbDir = Files.createTempDirectory("locations").toFile();
+        index = new EntryLocationIndex(new ServerConfiguration(), storageFactory, dbDir.getPath(),
+                NullStatsLogger.INSTANCE);
+        for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+            for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+                index.addLocation(ledgerId, entryId, location(ledgerId, entryId));
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.close();
+        FileUtils.deleteDirectory(dbDir);
+    }
+
+    @Test
+    public void testRemoveAdjacentDeletedLedgers() throws Exception {
+        // a run of deleted ledgers, between the live ledgers 2 and 7
+        for (long ledgerId = 3; ledgerId <= 6; ledgerId++) {
+            index.delete(ledgerId);
+        }
+        index.removeOffsetFromDeletedLedgers();
+
+        for (long ledgerId = 3; ledgerId <= 6; ledgerId++) {
+            assertLedgerRemoved(ledgerId);
+        }
+        assertLedgersLive(1, 2, 7, 8, 9, 10);
+    }
+
+    @Test
+    public void testRemoveRunsOfDeletedLedgers() throws Exception {
+        // runs at both ends and in the middle of the ledgers, with a single live ledger between the last two
+        long[] deletedLedgers = { 1, 2, 5, 6, 8, 9, 10 };
+        for (long ledgerId : deletedLedgers) {
+            index.delete(ledgerId);
+        }
+        index.removeOffsetFromDeletedLedgers();
+
+        for (long ledgerId : deletedLedgers) {
+            assertLedgerRemoved(ledgerId);
+        }
+        assertLedgersLive(3, 4, 7);
+    }
+
+    @Test
+    public void testRemoveSingleDeletedLedger() throws Exception {
+        index.delete(5);
+        index.removeOffsetFromDeletedLedgers();
+
+        assertLedgerRemoved(5);
+        assertLedgersLive(1, 2, 3, 4, 6, 7, 8, 9, 10);
+
+        // nothing else is removed by the next run
+        index.removeOffsetFromDeletedLedgers();
+        assertLedgersLive(1, 2, 3, 4, 6, 7, 8, 9, 10);
+    }
+
+    private void assertLedgersLive(long... ledgerIds) throws IOException {
+        for (long ledgerId : ledgerIds) {
+            for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+                assertEquals("Entry " + ledgerId + "@" + entryId, location(ledgerId, entryId),
+                        index.getLocation(ledgerId, entryId));
+            }
+            assertEquals(ENTRIES_PER_LEDGER - 1, index.getLastEntryInLedger(ledgerId));
+        }
+    }
+
+    private void assertLedgerRemoved(long ledgerId) throws IOException {
+        for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+            assertEquals("Entry " + ledgerId + "@" + entryId, 0, index.getLocation(ledgerId, entryId));
+        }
+        try {
+            index.getLastEntryInLedger(ledgerId);
+            fail("Should not find the entries of the removed ledger " + ledgerId);
+        } catch (Bookie.NoEntryException e) {
+            // expected
+        }
+    }
+
+    private static long location(long ledgerId, long entryId) {
+        return (ledgerId << 32) + entryId + 1;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit test {@link FrequencySketchAdmissionPolicy}.
+ */
+public class FrequencySketchAdmissionPolicyTest {
+
+    private static final int EXPECTED_ENTRIES = 1000;
+
+    @Test
+    public void testPromoteEntriesAccessedTwice() {
+        FrequencySketchAdmissionPolicy policy = new FrequencySketchAdmissionPolicy(EXPECTED_ENTRIES);
+        assertEquals(0, policy.frequency(1, 0));
+        assertFalse(policy.shouldPromote(1, 0));
+
+        policy.recordAccess(1, 0);
+        assertEquals(1, policy.frequency(1, 0));
+        assertFalse(policy.shouldPromote(1, 0));
+
+        policy.recordAccess(1, 0);
+        assertEquals(2, policy.frequency(1, 0));
+        assertTrue(policy.shouldPromote(1, 0));
+
+        // the other entries of the ledger are not affected
+        assertFalse(policy.shouldPromote(1, 1));
+        assertFalse(policy.shouldPromote(2, 0));
+    }
+
+    @Test
+    public void testRejectScannedEntries() {
+        FrequencySketchAdmissionPolicy policy = new FrequencySketchAdmissionPolicy(EXPECTED_ENTRIES);
+
+        // a reader scanning a ledger looks up each entry once
+        int promoted = 0;
+        for (long entryId = 0; entryId < EXPECTED_ENTRIES; entryId++) {
+            policy.recordAccess(1, entryId);
+            if (policy.shouldPromote(1, entryId)) {
+                promoted++;
+            }
+        }
+
+        // only the entries colliding in all the rows of the sketch are promoted
+        assertTrue("Promoted " + promoted + " scanned entries", promoted < EXPECTED_ENTRIES / 100);
+    }
+
+    @Test
+    public void testFrequenciesAreHalvedPeriodically() {
+        FrequencySketchAdmissionPolicy policy = new FrequencySketchAdmissionPolicy(EXPECTED_ENTRIES);
+        for (int i = 0; i < 8; i++) {
+            policy.recordAccess(1, 0);
+        }
+        assertEquals(8, policy.frequency(1, 0));
+
+        // the sketch of 1024 rows is reset after recording 10240 accesses
+        for (long entryId = 0; entryId < 10 * 1024; entryId++) {
+            policy.recordAccess(2, entryId);
+        }
+
+        int frequency = policy.frequency(1, 0);
+        assertTrue("Frequency " + frequency + " was not halved", frequency >= 4 && frequency < 8);
+    }
+
+    @Test
+    public void testCountersSaturate() {
+        FrequencySketchAdmissionPolicy policy = new FrequencySketchAdmissionPolicy(EXPECTED_ENTRIES);
+        for (int i = 0; i < 100; i++) {
+            policy.recordAccess(1, 0);
+        }
+        // the 4-bit counters don't overflow into their neighbours
+        assertEquals(15, policy.frequency(1, 0));
+        assertEquals(0, policy.frequency(1, 1));
+    }
+}
@@ -0,0 +1,597 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link KeyValueStorageLocationSegments}.
+ */
+public class KeyValueStorageLocationSegmentsTest {
+
+    private static final String SUB_PATH = "locations";
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private static ServerConfiguration conf(int sizeRatio, int maxSegments, long maxBufferedLocations) {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setProperty("dbStorage_locationSegments_sizeRatio", sizeRatio);
+        conf.setProperty("dbStorage_locationSegments_maxSegments", maxSegments);
+        conf.setProperty("dbStorage_locationSegments_maxBufferedLocations", maxBufferedLocations);
+        return conf;
+    }
+
+    private static byte[] key(long ledgerId, long entryId) {
+        byte[] key = new byte[16];
+        ArrayUtil.setLong(key, 0, ledgerId);
+        ArrayUtil.setLong(key, 8, entryId);
+        return key;
+    }
+
+    private static byte[] value(long location) {
+        byte[] value = new byte[8];
+        ArrayUtil.setLong(value, 0, location);
+        return value;
+    }
+
+    private static long location(long ledgerId, long entryId) {
+        return (ledgerId << 32) + entryId + 1;
+    }
+
+    private static void assertLocation(KeyValueStorage storage, long ledgerId, long entryId, long location)
+            throws IOException {
+        byte[] value = storage.get(key(ledgerId, entryId));
+        assertArrayEquals("location of " + ledgerId + "@" + entryId, value(location), value);
+    }
+
+    private static void assertDeleted(KeyValueStorage storage, long ledgerId, long entryId) throws IOException {
+        assertNull("location of " + ledgerId + "@" + entryId, storage.get(key(ledgerId, entryId)));
+    }
+
+    private static void assertEntry(Map.Entry<byte[], byte[]> entry, long ledgerId, long entryId) {
+        assertArrayEquals(key(ledgerId, entryId), entry.getKey());
+        assertArrayEquals(value(location(ledgerId, entryId)), entry.getValue());
+    }
+
+    private static void putLedger(KeyValueStorage storage, long ledgerId, long firstEntryId, long lastEntryId)
+            throws IOException {
+        Batch batch = storage.newBatch();
+        for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+            batch.put(key(ledgerId, entryId), value(location(ledgerId, entryId)));
+        }
+        batch.flush();
+        batch.close();
+    }
+
+    private static List<String> files(File directory, String suffix) {
+        List<String> names = new ArrayList<>();
+        for (String name : directory.list()) {
+            if (name.endsWith(suffix)) {
+                names.add(name);
+            }
+        }
+        names.sort(Comparator.naturalOrder());
+        return names;
+    }
+
+    private static String segmentName(long firstSeq, long lastSeq) {
+        return String.format("%016x-%016x.seg", firstSeq, lastSeq);
+    }
+
+    @Test
+    public void testUpdatesAcrossMemtableAndSegments() throws Exception {
+        File directory = tmpDir.newFolder();
+        ServerConfiguration conf = conf(4, 16, 1024 * 1024);
+        KeyValueStorageLocationSegments storage = new KeyValueStorageLocationSegments(directory.getPath(),
+                SUB_PATH, conf);
+
+        putLedger(storage, 1, 0, 9);
+        storage.sync();
+
+        // Updates in the memtable hiding the locations of the segment
+        putLedger(storage, 1, 10, 14);
+        storage.delete(key(1, 3));
+        storage.put(key(1, 4), value(1234));
+        storage.deleteRange(key(1, 6), key(1, 8));
+
+        for (int i = 0; i < 3; i++) {
+            for (long entryId : new long[] { 0, 1, 2, 5, 8, 9, 10, 14 }) {
+                assertLocation(storage, 1, entryId, location(1, entryId));
+            }
+            assertLocation(storage, 1, 4, 1234);
+            assertDeleted(storage, 1, 3);
+            assertDeleted(storage, 1, 6);
+            assertDeleted(storage, 1, 7);
+            assertDeleted(storage, 1, 15);
+            assertDeleted(storage, 2, 0);
+
+            assertEntry(storage.getFloor(key(1, Long.MAX_VALUE)), 1, 14);
+            assertEntry(storage.getFloor(key(1, 8)), 1, 5);
+            assertEntry(storage.getFloor(key(1, 4)), 1, 2);
+            assertNull(storage.getFloor(key(1, 0)));
+            assertEntry(storage.getCeil(key(1, 6)), 1, 8);
+            assertArrayEquals(value(1234), storage.getCeil(key(1, 3)).getValue());
+            assertNull(storage.getCeil(key(1, 15)));
+
+            if (i == 0) {
+                // Same checks once the memtable is written to a segment
+                storage.sync();
+            } else if (i == 1) {
+                storage.close();
+                storage = new KeyValueStorageLocationSegments(directory.getPath(), SUB_PATH, conf);
+            }
+        }
+        storage.close();
+    }
+
+    @Test
+    public void testBatchFlushDoesNotWriteSegments() throws Exception {
+        File directory = tmpDir.newFolder();
+        File locationsDir = new File(directory, SUB_PATH);
+        ServerConfiguration conf = conf(4, 16, 100);
+        KeyValueStorageLocationSegments storage = new KeyValueStorageLocationSegments(directory.getPath(),
+                SUB_PATH, conf);
+
+        for (long ledgerId = 0; ledgerId < 9; ledgerId++) {
+            putLedger(storage, ledgerId, 0, 9);
+        }
+        assertEquals(0, files(locationsDir, ".seg").size());
+        assertEquals(1, files(locationsDir, ".wal").size());
+
+        // The memtable is written to a segment once it holds enough locations
+        putLedger(storage, 9, 0, 9);
+        assertEquals(1, files(locationsDir, ".seg").size());
+        assertEquals(1, files(locationsDir, ".wal").size());
+
+        storage.close();
+    }
+
+    @Test
+    public void testFailedSyncKeepsUpdates() throws Exception {
+        File directory = tmpDir.newFolder();
+        File locationsDir = new File(directory, SUB_PATH);
+        ServerConfiguration conf = conf(4, 16, 1024 * 1024);
+        KeyValueStorageLocationSegments storage = new KeyValueStorageLocationSegments(directory.getPath(),
+                SUB_PATH, conf);
+
+        putLedger(storage, 1, 0, 9);
+
+        // The temporary file of the first segment cannot be created
+        File blocker = new File(locationsDir, segmentName(0, 0) + ".tmp");
+        assertTrue(blocker.mkdir());
+        try {
+            storage.sync();
+            fail("The sync should have failed");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertTrue(blocker.delete());
+
+        putLedger(storage, 2, 0, 9);
+        storage.delete(key(1, 5));
+        for (long entryId = 0; entryId < 10; entryId++) {
+            if (entryId != 5) {
+                assertLocation(storage, 1, entryId, location(1, entryId));
+            }
+            assertLocation(storage, 2, entryId, location(2, entryId));
+        }
+        assertDeleted(storage, 1, 5);
+
+        // The updates of the failed sync are written with the following ones, and their logs deleted
+        storage.sync();
+        assertEquals(Arrays.asList(segmentName(0, 1)), files(locationsDir, ".seg"));
+        assertEquals(Arrays.asList(String.format("%016x.wal", 2)), files(locationsDir, ".wal"));
+        storage.close();
+
+        storage = new KeyValueStorageLocationSegments(directory.getPath(), SUB_PATH, conf);
+        for (long entryId = 0; entryId < 10; entryId++) {
+            if (entryId != 5) {
+                assertLocation(storage, 1, entryId, location(1, entryId));
+            }
+            assertLocation(storage, 2, entryId, location(2, entryId));
+        }
+        assertDeleted(storage, 1, 5);
+        storage.close();
+    }
+
+    @Test
+    public void testReadsWhileSyncing() throws Exception {
+        File directory = tmpDir.newFolder();
+        KeyValueStorageLocationSegments storage = new KeyValueStorageLocationSegments(directory.getPath(),
+                SUB_PATH, conf(2, 4, 1024 * 1024));
+
+        int ledgers = 200;
+        AtomicBoolean done = new AtomicBoolean();
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try {
+                for (long ledgerId = 0; ledgerId < ledgers; ledgerId++) {
+                    putLedger(storage, ledgerId, 0, 99);
+                    storage.sync();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                done.set(true);
+            }
+        });
+
+        // The locations stay visible while they move from the memtable to the segments and get merged
+        Random random = new Random(1);
+        while (!done.get()) {
+            // The ledgers before the last one are complete
+            Map.Entry<byte[], byte[]> last = storage.getFloor(key(ledgers, 0));
+            long lastLedgerId = last != null ? ArrayUtil.getLong(last.getKey(), 0) : 0;
+            if (lastLedgerId == 0) {
+                continue;
+            }
+            long ledgerId = random.nextInt((int) lastLedgerId);
+            assertLocation(storage, ledgerId, 99, location(ledgerId, 99));
+            assertEntry(storage.getFloor(key(ledgerId, Long.MAX_VALUE)), ledgerId, 99);
+        }
+        writer.get(1, TimeUnit.MINUTES);
+
+        storage.awaitMerges();
+        for (long ledgerId = 0; ledgerId < ledgers; ledgerId++) {
+            assertLocation(storage, ledgerId, 0, location(ledgerId, 0));
+            assertLocation(storage, ledgerId, 99, location(ledgerId, 99));
+        }
+        assertEquals(ledgers * 100, storage.count());
+        storage.close();
+    }
+
+    @Test
+    public void testMergeDropsDeletesOnlyWithOldestSegment() throws Exception {
+        File directory = tmpDir.newFolder();
+        File locationsDir = new File(directory, SUB_PATH);
+        // Segments of similar sizes are merged
+        KeyValueStorageLocationSegments storage = new KeyValueStorageLocationSegments(directory.getPath(),
+                SUB_PATH, conf(1, 16, 1024 * 1024));
+
+        // Big oldest segment
+        putLedger(storage, 1, 0, 999);
+        putLedger(storage, 3, 0, 99);
+        storage.sync();
+
+        // Small segment with deletes, not merged with the oldest one
+        storage.delete(key(1, 5));
+        storage.deleteRange(key(3, 0), key(3, Long.MAX_VALUE));
+        storage.sync();
+        storage.awaitMerges();
+        assertEquals(2, files(locationsDir, ".seg").size());
+
+        // Small segment merged with the previous one, which still hides the keys of the oldest
+        putLedger(storage, 2, 0, 9);
+        storage.sync();
+        storage.awaitMerges();
+        assertEquals(Arrays.asList(segmentName(0, 0), segmentName(1, 2)), files(locationsDir, ".seg"));
+
+        assertDeleted(storage, 1, 5);
+        assertDeleted(storage, 3, 0);
+        assertDeleted(storage, 3, 50);
+        assertLocation(storage, 1, 4, location(1, 4));
+        assertLocation(storage, 2, 9, location(2, 9));
+        assertNull(storage.getCeil(key(3, 0)));
+        assertEntry(storage.getFloor(key(4, 0)), 2, 9);
+        assertEntry(storage.getFloor(key(1, 6)), 1, 4);
+        // The tombstone of 1@5 is still stored
+        assertEquals(1000 + 100 + 1 + 10, storage.count());
+
+        // Merging all the segments drops the deleted keys
+        storage.compact(key(0, 0), key(4, 0));
+        storage.awaitMerges();
+        assertEquals(Arrays.asList(segmentName(0, 2)), files(locationsDir, ".seg"));
+        assertEquals(999 + 10, storage.count());
+
+        assertDeleted(storage, 1, 5);
+        assertDeleted(storage, 3, 50);
+        assertLocation(storage, 1, 6, location(1, 6));
+        assertEntry(storage.getFloor(key(4, 0)), 2, 9);
+        storage.close();
+    }
+
+    @Test
+    public void testReopenAfterCrash() throws Exception {
+        File directory = tmpDir.newFolder();
+        File locationsDir = new File(directory, SUB_PATH);
+        ServerConfiguration conf = conf(1000, 16, 1024 * 1024);
+        KeyValueStorageLocationSegments storage = new KeyValueStorageLocationSegments(directory.getPath(),
+                SUB_PATH, conf);
+
+        putLedger(storage, 1, 0, 99);
+        storage.sync();
+        putLedger(storage, 2, 0, 99);
+        storage.sync();
+        storage.awaitMerges();
+        assertEquals(Arrays.asList(segmentName(0, 1)), files(locationsDir, ".seg"));
+
+        // Flushed updates, only in the write-ahead log
+        putLedger(storage, 3, 0, 49);
+        Batch batch = storage.newBatch();
+        batch.remove(key(1, 10));
+        batch.flush();
+        batch.close();
+
+        // Copy the files as they are when the bookie crashes
+        File crashDir = tmpDir.newFolder();
+        File crashLocationsDir = new File(crashDir, SUB_PATH);
+        assertTrue(crashLocationsDir.mkdir());
+        for (File file : locationsDir.listFiles()) {
+            Files.copy(file.toPath(), new File(crashLocationsDir, file.getName()).toPath(),
+                    StandardCopyOption.COPY_ATTRIBUTES);
+        }
+        storage.close();
+
+        List<String> wals = files(crashLocationsDir, ".wal");
+        assertEquals(Arrays.asList(String.format("%016x.wal", 2)), wals);
+        try (FileOutputStream out = new FileOutputStream(new File(crashLocationsDir, wals.get(0)), true)) {
+            // Record torn while it was appended
+            out.write(new byte[] { 0, 0, 0, 5, 1, 2, 3, 4, 5, 6, 7 });
+        }
+        // Input of a merge which was not deleted yet, and a merge interrupted before its completion
+        Files.write(new File(crashLocationsDir, segmentName(1, 1)).toPath(), new byte[] { 1, 2, 3 });
+        Files.write(new File(crashLocationsDir, segmentName(0, 2) + ".tmp").toPath(), new byte[] { 1, 2, 3 });
+
+        for (int i = 0; i < 2; i++) {
+            storage = new KeyValueStorageLocationSegments(crashDir.getPath(), SUB_PATH, conf);
+            storage.awaitMerges();
+            assertEquals(0, files(crashLocationsDir, ".tmp").size());
+            assertFalse(new File(crashLocationsDir, segmentName(1, 1)).exists());
+            assertFalse(new File(crashLocationsDir, wals.get(0)).exists());
+
+            for (long entryId = 0; entryId < 100; entryId++) {
+                if (entryId == 10) {
+                    assertDeleted(storage, 1, entryId);
+                } else {
+                    assertLocation(storage, 1, entryId, location(1, entryId));
+                }
+                assertLocation(storage, 2, entryId, location(2, entryId));
+            }
+            assertEntry(storage.getFloor(key(3, Long.MAX_VALUE)), 3, 49);
+            assertDeleted(storage, 3, 50);
+            storage.close();
+        }
+    }
+
+    @Test
+    public void testMergedSegmentsUnmappedOnceReleased() throws Exception {
+        File directory = tmpDir.newFolder();
+        File locationsDir = new File(directory, SUB_PATH);
+        // Segments of similar sizes are merged
+        KeyValueStorageLocationSegments storage = new KeyValueStorageLocationSegments(directory.getPath(),
+                SUB_PATH, conf(1, 16, 1024 * 1024));
+
+        putLedger(storage, 1, 0, 99);
+        storage.sync();
+        storage.awaitMerges();
+        LocationSegment first = storage.getSegments().get(0);
+        assertEquals(1, first.refCnt());
+
+        // The iterator keeps reading the first segment once it is merged
+        CloseableIterator<byte[]> iterator = storage.keys(key(1, 0), key(2, 0));
+
+        putLedger(storage, 2, 0, 99);
+        storage.sync();
+        storage.awaitMerges();
+        assertEquals(Arrays.asList(segmentName(0, 1)), files(locationsDir, ".seg"));
+        LocationSegment merged = storage.getSegments().get(0);
+        assertEquals(1, merged.refCnt());
+
+        // The first segment is unmapped once the iterator is closed
+        assertEquals(1, first.refCnt());
+        StringBuilder keys = new StringBuilder();
+        for (long entryId = 0; entryId < 100; entryId++) {
+            keys.append("1@").append(entryId).append(' ');
+        }
+        assertKeys(iterator, keys.toString().trim());
+        assertEquals(0, first.refCnt());
+        iterator.close();
+        assertEquals(0, first.refCnt());
+
+        // A merged segment which is not read any more is unmapped right away
+        putLedger(storage, 3, 0, 299);
+        storage.sync();
+        storage.awaitMerges();
+        assertEquals(Arrays.asList(segmentName(0, 2)), files(locationsDir, ".seg"));
+        assertEquals(0, merged.refCnt());
+        assertLocation(storage, 1, 50, location(1, 50));
+        assertLocation(storage, 2, 50, location(2, 50));
+        assertLocation(storage, 3, 250, location(3, 250));
+
+        // Closing the storage unmaps the segments once they are not read any more
+        LocationSegment last = storage.getSegments().get(0);
+        iterator = storage.keys();
+        storage.close();
+        assertEquals(1, last.refCnt());
+        iterator.close();
+        assertEquals(0, last.refCnt());
+    }
+
+    @Test
+    public void testIteratorBounds() throws Exception {
+        File directory = tmpDir.newFolder();
+        KeyValueStorageLocationSegments storage = new KeyValueStorageLocationSegments(directory.getPath(),
+                SUB_PATH, conf(4, 16, 1024 * 1024));
+
+        putLedger(storage, 1, 0, 4);
+        putLedger(storage, 2, 0, 4);
+        storage.sync();
+        putLedger(storage, 2, 5, 6);
+        putLedger(storage, 3, 0, 4);
+        storage.delete(key(2, 2));
+        storage.deleteRange(key(3, 1), key(3, 3));
+
+        assertKeys(storage.keys(key(2, 0), key(3, 0)), "2@0 2@1 2@3 2@4 2@5 2@6");
+        assertKeys(storage.keys(key(1, 3), key(2, 2)), "1@3 1@4 2@0 2@1");
+        assertKeys(storage.keys(key(2, 2), key(2, 3)), "");
+        assertKeys(storage.keys(key(2, 4), key(2, 4)), "");
+        assertKeys(storage.keys(key(3, 0), key(4, 0)), "3@0 3@3 3@4");
+        assertKeys(storage.keys(key(4, 0), key(5, 0)), "");
+        assertKeys(storage.keys(), "1@0 1@1 1@2 1@3 1@4 2@0 2@1 2@3 2@4 2@5 2@6 3@0 3@3 3@4");
+
+        StringBuilder entries = new StringBuilder();
+        try (CloseableIterator<Map.Entry<byte[], byte[]>> iterator = storage.iterator()) {
+            while (iterator.hasNext()) {
+                Map.Entry<byte[], byte[]> entry = iterator.next();
+                long ledgerId = ArrayUtil.getLong(entry.getKey(), 0);
+                long entryId = ArrayUtil.getLong(entry.getKey(), 8);
+                assertArrayEquals(value(location(ledgerId, entryId)), entry.getValue());
+                entries.append(ledgerId).append('@').append(entryId).append(' ');
+            }
+        }
+        assertEquals("1@0 1@1 1@2 1@3 1@4 2@0 2@1 2@3 2@4 2@5 2@6 3@0 3@3 3@4", entries.toString().trim());
+        storage.close();
+    }
+
+    private static void assertKeys(CloseableIterator<byte[]> iterator, String expected) throws IOException {
+        StringBuilder keys = new StringBuilder();
+        try {
+            while (iterator.hasNext()) {
+                byte[] key = iterator.next();
+                keys.append(ArrayUtil.getLong(key, 0)).append('@').append(ArrayUtil.getLong(key, 8)).append(' ');
+            }
+        } finally {
+            iterator.close();
+        }
+        assertEquals(expected, keys.toString().trim());
+    }
+
+    @Test
+    public void testRandomUpdatesMatchSortedMap() throws Exception {
+        for (long seed = 0; seed < 10; seed++) {
+            checkRandomUpdates(seed);
+        }
+    }
+
+    private static final Comparator<long[]> KEY_ORDER = (k1, k2) -> {
+        int res = Long.compareUnsigned(k1[0], k2[0]);
+        return res != 0 ? res : Long.compareUnsigned(k1[1], k2[1]);
+    };
+
+    private void checkRandomUpdates(long seed) throws Exception {
+        Random random = new Random(seed);
+        File directory = tmpDir.newFolder();
+        ServerConfiguration conf = conf(1 + random.nextInt(4), 2 + random.nextInt(4), 50 + random.nextInt(500));
+        KeyValueStorageLocationSegments storage = new KeyValueStorageLocationSegments(directory.getPath(),
+                SUB_PATH, conf);
+        TreeMap<long[], Long> expected = new TreeMap<>(KEY_ORDER);
+        int ledgers = 2 + random.nextInt(20);
+        int entries = 2 + random.nextInt(60);
+
+        for (int op = 0; op < 2000; op++) {
+            String context = "seed " + seed + ", operation " + op;
+            long ledgerId = random.nextInt(ledgers);
+            long entryId = random.nextInt(entries);
+            int type = random.nextInt(100);
+            if (type < 35) {
+                long location = 1 + random.nextInt(1000000);
+                storage.put(key(ledgerId, entryId), value(location));
+                expected.put(new long[] { ledgerId, entryId }, location);
+            } else if (type < 40) {
+                storage.delete(key(ledgerId, entryId));
+                expected.remove(new long[] { ledgerId, entryId });
+            } else if (type < 43) {
+                storage.deleteRange(key(ledgerId, 0), key(ledgerId, entryId));
+                expected.subMap(new long[] { ledgerId, 0 }, new long[] { ledgerId, entryId }).clear();
+            } else if (type < 55) {
+                Batch batch = storage.newBatch();
+                for (int i = random.nextInt(30); i > 0; i--) {
+                    long batchLedgerId = random.nextInt(ledgers);
+                    long batchEntryId = random.nextInt(entries);
+                    if (random.nextInt(10) < 8) {
+                        long location = 1 + random.nextInt(1000000);
+                        batch.put(key(batchLedgerId, batchEntryId), value(location));
+                        expected.put(new long[] { batchLedgerId, batchEntryId }, location);
+                    } else {
+                        batch.remove(key(batchLedgerId, batchEntryId));
+                        expected.remove(new long[] { batchLedgerId, batchEntryId });
+                    }
+                }
+                batch.flush();
+                batch.close();
+            } else if (type < 60) {
+                storage.sync();
+            } else if (type < 62) {
+                storage.compact(key(0, 0), key(ledgers, 0));
+            } else if (type < 64) {
+                storage.close();
+                storage = new KeyValueStorageLocationSegments(directory.getPath(), SUB_PATH, conf);
+            } else if (type < 80) {
+                Long location = expected.get(new long[] { ledgerId, entryId });
+                assertArrayEquals(context, location != null ? value(location) : null,
+                        storage.get(key(ledgerId, entryId)));
+            } else if (type < 90) {
+                assertSameEntry(context, expected.lowerEntry(new long[] { ledgerId, entryId }),
+                        storage.getFloor(key(ledgerId, entryId)));
+            } else {
+                assertSameEntry(context, expected.ceilingEntry(new long[] { ledgerId, entryId }),
+                        storage.getCeil(key(ledgerId, entryId)));
+            }
+        }
+
+        try (CloseableIterator<Map.Entry<byte[], byte[]>> iterator = storage.iterator()) {
+            for (Map.Entry<long[], Long> entry : expected.entrySet()) {
+                assertTrue(iterator.hasNext());
+                assertSameEntry("seed " + seed, entry, iterator.next());
+            }
+            assertFalse(iterator.hasNext());
+        }
+        storage.close();
+    }
+
+    private static void assertSameEntry(String context, Map.Entry<long[], Long> expected,
+            Map.Entry<byte[], byte[]> actual) {
+        if (expected == null) {
+            assertNull(context, actual);
+        } else {
+            assertArrayEquals(context, key(expected.getKey()[0], expected.getKey()[1]), actual.getKey());
+            assertArrayEquals(context, value(expected.getValue()), actual.getValue());
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map.Entry;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Test {@link KeyValueStorage#deleteRange(byte[], byte[])} of RocksDB, and its default implementation deleting the
+ * keys one by one.
+ */
+@RunWith(Parameterized.class)
+public class KeyValueStorageTest {
+
+    private static final int NUM_LEDGERS = 6;
+    private static final int ENTRIES_PER_LEDGER = 5;
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> storageFactories() {
+        return Arrays.asList(
+                new Object[] { "rocksdb", KeyValueStorageRocksDB.factory },
+                new Object[] { "default", KeyIteratingStorage.factory(KeyValueStorageRocksDB.factory) });
+    }
+
+    private final KeyValueStorageFactory storageFactory;
+    private File dbDir;
+    private KeyValueStorage storage;
+
+    public KeyValueStorageTest(String name, KeyValueStorageFactory storageFactory) {
+        this.storageFactory = storageFactory;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dbDir = Files.createTempDirectory("storage").toFile();
+        storage = storageFactory.newKeyValueStorage(dbDir.getPath(), "test", DbConfigType.Small,
+                new ServerConfiguration());
+        for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+            for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+                storage.put(key(ledgerId, entryId), key(entryId, ledgerId));
+            }
+        }
+        storage.sync();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        storage.close();
+        FileUtils.deleteDirectory(dbDir);
+    }
+
+    @Test
+    public void testDeleteRange() throws Exception {
+        // the begin key is included and the end key excluded
+        storage.deleteRange(key(2, 0), key(4, ENTRIES_PER_LEDGER - 1));
+
+        assertEquals(NUM_LEDGERS * ENTRIES_PER_LEDGER - 14, storage.count());
+        assertLedgerDeleted(2);
+        assertLedgerDeleted(3);
+        assertArrayEquals(key(ENTRIES_PER_LEDGER - 1, 4), storage.get(key(4, ENTRIES_PER_LEDGER - 1)));
+        assertLedgerExists(1);
+        assertLedgerExists(5);
+        assertLedgerExists(6);
+    }
+
+    @Test
+    public void testDeleteRangeOfSingleLedger() throws Exception {
+        storage.deleteRange(key(3, 0), key(3, Long.MAX_VALUE));
+
+        assertEquals((NUM_LEDGERS - 1) * ENTRIES_PER_LEDGER, storage.count());
+        assertLedgerDeleted(3);
+
+        // the neighbouring ledgers are still found by the floor and ceil lookups used by the indexes
+        Entry<byte[], byte[]> floor = storage.getFloor(key(3, Long.MAX_VALUE));
+        assertArrayEquals(key(2, ENTRIES_PER_LEDGER - 1), floor.getKey());
+        Entry<byte[], byte[]> ceil = storage.getCeil(key(3, 0));
+        assertArrayEquals(key(4, 0), ceil.getKey());
+        assertLedgerExists(2);
+        assertLedgerExists(4);
+    }
+
+    @Test
+    public void testDeleteRangeInBatch() throws Exception {
+        try (KeyValueStorage.Batch batch = storage.newBatch()) {
+            batch.deleteRange(key(1, 0), key(2, Long.MAX_VALUE));
+            batch.deleteRange(key(5, 0), key(5, Long.MAX_VALUE));
+            batch.flush();
+        }
+
+        assertEquals((NUM_LEDGERS - 3) * ENTRIES_PER_LEDGER, storage.count());
+        assertLedgerDeleted(1);
+        assertLedgerDeleted(2);
+        assertLedgerDeleted(5);
+        assertLedgerExists(3);
+        assertLedgerExists(4);
+        assertLedgerExists(6);
+    }
+
+    @Test
+    public void testDeleteEmptyRange() throws Exception {
+        storage.deleteRange(key(NUM_LEDGERS + 1, 0), key(NUM_LEDGERS + 10, 0));
+        storage.deleteRange(key(2, 0), key(2, 0));
+
+        assertEquals(NUM_LEDGERS * ENTRIES_PER_LEDGER, storage.count());
+        for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+            assertLedgerExists(ledgerId);
+        }
+    }
+
+    private void assertLedgerExists(long ledgerId) throws IOException {
+        for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+            assertArrayEquals("Entry " + ledgerId + "@" + entryId, key(entryId, ledgerId),
+                    storage.get(key(ledgerId, entryId)));
+        }
+    }
+
+    private void assertLedgerDeleted(long ledgerId) throws IOException {
+        for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+            assertNull("Entry " + ledgerId + "@" + entryId, storage.get(key(ledgerId, entryId)));
+        }
+    }
+
+    private static byte[] key(long first, long second) {
+        byte[] key = new byte[16];
+        ArrayUtil.setLong(key, 0, first);
+        ArrayUtil.setLong(key, 8, second);
+        return key;
+    }
+
+    /**
+     * A storage delegating to another one, but keeping the default {@link KeyValueStorage#deleteRange} which deletes
+     * the keys of the range one by one. The range deletes of its batches are done the same way when flushed.
+     */
+    static class KeyIteratingStorage implements KeyValueStorage {
+
+        static KeyValueStorageFactory factory(KeyValueStorageFactory delegateFactory) {
+            return (defaultBasePath, subPath, dbConfigType, conf) -> new KeyIteratingStorage(
+                    delegateFactory.newKeyValueStorage(defaultBasePath, subPath, dbConfigType, conf));
+        }
+
+        private final KeyValueStorage delegate;
+
+        KeyIteratingStorage(KeyValueStorage delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            delegate.put(key, value);
+        }
+
+        @Override
+        public byte[] get(byte[] key) throws IOException {
+            return delegate.get(key);
+        }
+
+        @Override
+        public int get(byte[] key, byte[] value) throws IOException {
+            return delegate.get(key, value);
+        }
+
+        @Override
+        public Entry<byte[], byte[]> getFloor(byte[] key) throws IOException {
+            return delegate.getFloor(key);
+        }
+
+        @Override
+        public Entry<byte[], byte[]> getCeil(byte[] key) throws IOException {
+            return delegate.getCeil(key);
+        }
+
+        @Override
+        public void delete(byte[] key) throws IOException {
+            delegate.delete(key);
+        }
+
+        @Override
+        public void compact(byte[] firstKey, byte[] lastKey) throws IOException {
+            delegate.compact(firstKey, lastKey);
+        }
+
+        @Override
+        public CloseableIterator<byte[]> keys() {
+            return delegate.keys();
+        }
+
+        @Override
+        public CloseableIterator<byte[]> keys(byte[] firstKey, byte[] lastKey) {
+            return delegate.keys(firstKey, lastKey);
+        }
+
+        @Override
+        public CloseableIterator<Entry<byte[], byte[]>> iterator() {
+            return delegate.iterator();
+        }
+
+        @Override
+        public void sync() throws IOException {
+            delegate.sync();
+        }
+
+        @Override
+        public long count() throws IOException {
+            return delegate.count();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public Batch newBatch() {
+            Batch batch = delegate.newBatch();
+            return new Batch() {
+                private final List<byte[][]> deletedRanges = new ArrayList<>();
+
+                @Override
+                public void put(byte[] key, byte[] value) throws IOException {
+                    batch.put(key, value);
+                }
+
+                @Override
+                public void remove(byte[] key) throws IOException {
+                    batch.remove(key);
+                }
+
+                @Override
+                public void deleteRange(byte[] beginKey, byte[] endKey) {
+                    deletedRanges.add(new byte[][] { beginKey.clone(), endKey.clone() });
+                }
+
+                @Override
+                public void clear() {
+                    batch.clear();
+                    deletedRanges.clear();
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    batch.flush();
+                    for (byte[][] range : deletedRanges) {
+                        KeyIteratingStorage.this.deleteRange(range[0], range[1]);
+                    }
+                    deletedRanges.clear();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    batch.close();
+                }
+            };
+        }
+    }
+}
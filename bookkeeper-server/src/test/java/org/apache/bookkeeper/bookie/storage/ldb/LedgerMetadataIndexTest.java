@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import com.google.protobuf.ByteString;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorageDataFormats.LedgerData;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Test the removal of the deleted ledgers from {@link LedgerMetadataIndex}, with the range deletes of RocksDB and
+ * with the default range deletes going over the keys.
+ */
+@RunWith(Parameterized.class)
+public class LedgerMetadataIndexTest {
+
+    private static final int NUM_LEDGERS = 10;
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> storageFactories() {
+        return Arrays.asList(
+                new Object[] { "rocksdb", KeyValueStorageRocksDB.factory },
+                new Object[] { "default", KeyValueStorageTest.KeyIteratingStorage.factory(
+                        KeyValueStorageRocksDB.factory) });
+    }
+
+    private final KeyValueStorageFactory storageFactory;
+    private File dbDir;
+    private LedgerMetadataIndex index;
+
+    public LedgerMetadataIndexTest(String name, KeyValueStorageFactory storageFactory) {
+        this.storageFactory = storageFactory;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dbDir = Files.createTempDirectory("ledgers").toFile();
+        index = newIndex();
+        for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+            index.set(ledgerId, LedgerData.newBuilder().setExists(true).setFenced(false)
+                    .setMasterKey(ByteString.copyFrom(masterKey(ledgerId))).build());
+        }
+        index.flush();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.close();
+        FileUtils.deleteDirectory(dbDir);
+    }
+
+    private LedgerMetadataIndex newIndex() throws IOException {
+        return new LedgerMetadataIndex(new ServerConfiguration(), storageFactory, dbDir.getPath(),
+                NullStatsLogger.INSTANCE);
+    }
+
+    /**
+     * Reopen the index, so that the ledgers are read back from the storage.
+     */
+    private void reopenIndex() throws IOException {
+        index.close();
+        index = newIndex();
+    }
+
+    @Test
+    public void testRemoveAdjacentDeletedLedgers() throws Exception {
+        // a run of deleted ledgers, between the live ledgers 2 and 7
+        for (long ledgerId = 3; ledgerId <= 6; ledgerId++) {
+            index.delete(ledgerId);
+        }
+        index.removeDeletedLedgers();
+        reopenIndex();
+
+        for (long ledgerId = 3; ledgerId <= 6; ledgerId++) {
+            assertLedgerRemoved(ledgerId);
+        }
+        assertLedgersLive(1, 2, 7, 8, 9, 10);
+    }
+
+    @Test
+    public void testRemoveRunsOfDeletedLedgers() throws Exception {
+        // runs at both ends and in the middle of the ledgers, with a single live ledger between the last two
+        long[] deletedLedgers = { 1, 2, 5, 6, 8, 9, 10 };
+        for (long ledgerId : deletedLedgers) {
+            index.delete(ledgerId);
+        }
+        // a ledger deleted twice is only removed once
+        index.delete(5);
+        index.removeDeletedLedgers();
+        reopenIndex();
+
+        for (long ledgerId : deletedLedgers) {
+            assertLedgerRemoved(ledgerId);
+        }
+        assertLedgersLive(3, 4, 7);
+    }
+
+    @Test
+    public void testRemoveSingleDeletedLedger() throws Exception {
+        index.delete(5);
+        index.removeDeletedLedgers();
+        reopenIndex();
+
+        assertLedgerRemoved(5);
+        assertLedgersLive(1, 2, 3, 4, 6, 7, 8, 9, 10);
+
+        // nothing else is removed by the next run
+        index.removeDeletedLedgers();
+        reopenIndex();
+        assertLedgersLive(1, 2, 3, 4, 6, 7, 8, 9, 10);
+    }
+
+    private void assertLedgersLive(long... ledgerIds) throws IOException {
+        for (long ledgerId : ledgerIds) {
+            assertArrayEquals("Ledger " + ledgerId, masterKey(ledgerId),
+                    index.get(ledgerId).getMasterKey().toByteArray());
+        }
+    }
+
+    private void assertLedgerRemoved(long ledgerId) throws IOException {
+        try {
+            index.get(ledgerId);
+            fail("Should not find the removed ledger " + ledgerId);
+        } catch (Bookie.NoLedgerException e) {
+            // expected
+        }
+    }
+
+    private static byte[] masterKey(long ledgerId) {
+        return ("ledger-" + ledgerId).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test {@link PersistentEntryLogMetadataMap}.
+ */
+public class PersistentEntryLogMetadataMapTest {
+
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private File metadataDir;
+    private PersistentEntryLogMetadataMap map;
+
+    @Before
+    public void setUp() throws Exception {
+        metadataDir = Files.createTempDirectory("metadata").toFile();
+        map = new PersistentEntryLogMetadataMap(metadataDir.getPath(), conf);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != map) {
+            map.close();
+        }
+        FileUtils.deleteDirectory(metadataDir);
+    }
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        assertFalse(map.containsKey(1));
+        assertNull(map.get(1));
+
+        map.put(1, newMetadata(1, 100, 200));
+        map.put(2, newMetadata(2, 300));
+
+        assertTrue(map.containsKey(1));
+        assertTrue(map.containsKey(2));
+        assertMetadataEquals(newMetadata(1, 100, 200), map.get(1));
+        assertMetadataEquals(newMetadata(2, 300), map.get(2));
+
+        // a put replaces the metadata
+        map.put(1, newMetadata(1, 100));
+        assertMetadataEquals(newMetadata(1, 100), map.get(1));
+
+        map.remove(1);
+        assertFalse(map.containsKey(1));
+        assertNull(map.get(1));
+        assertTrue(map.containsKey(2));
+
+        // removing a missing entry log is a no-op
+        map.remove(3);
+        assertTrue(map.containsKey(2));
+    }
+
+    @Test
+    public void testChangesAreOnlyWrittenByPut() throws Exception {
+        map.put(1, newMetadata(1, 100, 200));
+
+        // the map hands out a copy of the metadata
+        EntryLogMetadata meta = map.get(1);
+        meta.removeLedgerIf(ledgerId -> ledgerId == 1);
+        assertMetadataEquals(newMetadata(1, 100, 200), map.get(1));
+
+        map.put(1, meta);
+        EntryLogMetadata read = map.get(1);
+        assertFalse(read.containsLedger(1));
+        assertTrue(read.containsLedger(2));
+        assertEquals(300, read.getTotalSize());
+        assertEquals(200, read.getRemainingSize());
+    }
+
+    @Test
+    public void testForEach() throws Exception {
+        Map<Long, EntryLogMetadata> expected = new HashMap<>();
+        for (long entryLogId = 0; entryLogId < 10; entryLogId++) {
+            EntryLogMetadata meta = newMetadata(entryLogId, 10 * entryLogId + 1, 10 * entryLogId + 2);
+            expected.put(entryLogId, meta);
+            map.put(entryLogId, meta);
+        }
+        map.remove(5);
+        expected.remove(5L);
+
+        Map<Long, EntryLogMetadata> visited = new HashMap<>();
+        map.forEach((entryLogId, meta) -> {
+            assertEquals((long) entryLogId, meta.getEntryLogId());
+            visited.put(entryLogId, meta);
+        });
+
+        assertEquals(expected.keySet(), visited.keySet());
+        for (Map.Entry<Long, EntryLogMetadata> entry : expected.entrySet()) {
+            assertMetadataEquals(entry.getValue(), visited.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        map.put(1, newMetadata(1, 100, 200));
+        map.put(2, newMetadata(2, 300));
+        map.remove(2);
+        map.close();
+
+        map = new PersistentEntryLogMetadataMap(metadataDir.getPath(), conf);
+        assertTrue(map.containsKey(1));
+        assertFalse(map.containsKey(2));
+        assertMetadataEquals(newMetadata(1, 100, 200), map.get(1));
+        assertTrue(new File(metadataDir, PersistentEntryLogMetadataMap.METADATA_CACHE).isDirectory());
+    }
+
+    /**
+     * Create the metadata of an entry log holding ledgers 1, 2... of the given sizes.
+     */
+    private static EntryLogMetadata newMetadata(long entryLogId, long... ledgerSizes) {
+        EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+        for (int i = 0; i < ledgerSizes.length; i++) {
+            meta.addLedgerSize(i + 1, ledgerSizes[i]);
+        }
+        return meta;
+    }
+
+    private static void assertMetadataEquals(EntryLogMetadata expected, EntryLogMetadata actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getEntryLogId(), actual.getEntryLogId());
+        assertEquals(expected.getTotalSize(), actual.getTotalSize());
+        assertEquals(expected.getRemainingSize(), actual.getRemainingSize());
+        assertEquals(expected.getLedgersMap().asMap(), actual.getLedgersMap().asMap());
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.bookie.EntryLogger;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Unit test {@link ReadAheadManager}.
+ */
+public class ReadAheadManagerTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int NUM_ENTRIES = 30;
+    private static final int ENTRY_SIZE = 64;
+    // the entries of the ledger follow each other in the entry log, each after its size header
+    private static final long FIRST_LOCATION = 1024L;
+    private static final int MIN_WINDOW = 2;
+    private static final int MAX_WINDOW = 8;
+
+    private final EntryLogger entryLogger = mock(EntryLogger.class);
+    private final EntryLocationIndex entryLocationIndex = mock(EntryLocationIndex.class);
+    private final DbLedgerStorageStats stats = mock(DbLedgerStorageStats.class);
+    private final Counter readAheadHits = mock(Counter.class);
+    private final Counter readAheadWasted = mock(Counter.class);
+    private final OpStatsLogger readAheadBatchCountStats = mock(OpStatsLogger.class);
+    private ReadCache readCache;
+    private ReadAheadManager readAheadManager;
+
+    @Before
+    public void setUp() throws Exception {
+        when(stats.getReadAheadHits()).thenReturn(readAheadHits);
+        when(stats.getReadAheadWasted()).thenReturn(readAheadWasted);
+        when(stats.getReadAheadEntries()).thenReturn(mock(Counter.class));
+        when(stats.getReadAheadBatchCountStats()).thenReturn(readAheadBatchCountStats);
+        when(stats.getReadAheadBatchSizeStats()).thenReturn(mock(OpStatsLogger.class));
+
+        when(entryLocationIndex.getLocation(eq(LEDGER_ID), anyLong())).thenAnswer(invocation -> {
+            long entryId = invocation.getArgument(1);
+            return entryId < NUM_ENTRIES ? location(entryId) : 0L;
+        });
+        when(entryLogger.internalReadEntry(eq(LEDGER_ID), anyLong(), anyLong(), eq(false))).thenAnswer(invocation -> {
+            long entryId = (invocation.<Long>getArgument(2) - FIRST_LOCATION) / (4 + ENTRY_SIZE);
+            if (entryId >= NUM_ENTRIES) {
+                throw new IOException("End of the entry log");
+            }
+            return entry(entryId);
+        });
+
+        readCache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 1024 * 1024);
+        // the windows are read by the reading thread, so that they are complete once the read returns
+        readAheadManager = newReadAheadManager(Long.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() {
+        readAheadManager.close();
+        readCache.close();
+    }
+
+    private ReadAheadManager newReadAheadManager(long maxWindowBytes) {
+        return new ReadAheadManager(entryLogger, entryLocationIndex, readCache, stats,
+                MoreExecutors.newDirectExecutorService(), MIN_WINDOW, MAX_WINDOW, maxWindowBytes, 60 * 1000);
+    }
+
+    @Test
+    public void testSequentialReadsTriggerReadAhead() throws Exception {
+        read(0);
+        // the first window is read as soon as the first entry is missed
+        assertCached(1, 2);
+        assertFalse(readCache.hasEntry(LEDGER_ID, 3));
+
+        // the next window is read, twice as large, once the reader gets into the first one
+        read(1);
+        assertCached(3, 6);
+        assertFalse(readCache.hasEntry(LEDGER_ID, 7));
+
+        for (long entryId = 2; entryId < NUM_ENTRIES; entryId++) {
+            read(entryId);
+        }
+        // all the entries read after the first one were read ahead, up to the end of the ledger
+        verify(readAheadHits, times(NUM_ENTRIES - 1)).inc();
+        verify(readAheadWasted, never()).add(anyLong());
+        verify(entryLocationIndex, times(1)).getLocation(LEDGER_ID, NUM_ENTRIES);
+    }
+
+    @Test
+    public void testNoReadAheadOnRandomReads() throws Exception {
+        read(0);
+        assertCached(1, 2);
+
+        // the reader jumps elsewhere in the ledger, the read-ahead window is halved below the minimum
+        read(20);
+        verify(readAheadWasted).add(2L);
+        read(10);
+        read(25);
+        read(5);
+        assertFalse(readCache.hasEntry(LEDGER_ID, 21));
+        assertFalse(readCache.hasEntry(LEDGER_ID, 11));
+        assertFalse(readCache.hasEntry(LEDGER_ID, 26));
+        assertFalse(readCache.hasEntry(LEDGER_ID, 6));
+        verify(readAheadBatchCountStats, times(1)).registerSuccessfulValue(anyLong());
+
+        // the read-ahead is resumed once the ledger is read sequentially again
+        read(6);
+        assertCached(7, 8);
+        verify(readAheadBatchCountStats, times(2)).registerSuccessfulValue(anyLong());
+    }
+
+    @Test
+    public void testWindowIsBounded() throws Exception {
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            read(entryId);
+        }
+        // the window is doubled up to its maximum, and the last window stops at the end of the ledger
+        assertEquals(Arrays.asList(2L, 4L, 8L, 8L, 7L), windowSizes());
+    }
+
+    @Test
+    public void testWindowIsBoundedBySize() throws Exception {
+        readAheadManager.close();
+        readAheadManager = newReadAheadManager(3 * ENTRY_SIZE);
+
+        for (long entryId = 0; entryId < 12; entryId++) {
+            read(entryId);
+        }
+        // the windows of 4 entries and more are cut down to the size of 3 entries
+        List<Long> windowSizes = windowSizes();
+        assertEquals(Arrays.asList(2L, 3L, 3L, 3L), windowSizes.subList(0, 4));
+        for (long windowSize : windowSizes) {
+            assertTrue("Window of " + windowSize + " entries", windowSize <= 3);
+        }
+        assertCached(1, 11);
+    }
+
+    /**
+     * Read an entry the way {@link SingleDirectoryDbLedgerStorage} does.
+     */
+    private void read(long entryId) {
+        ByteBuf entry = readCache.get(LEDGER_ID, entryId);
+        if (entry != null) {
+            entry.release();
+            readAheadManager.onCacheHit(LEDGER_ID, entryId);
+            return;
+        }
+
+        entry = entry(entryId);
+        readCache.put(LEDGER_ID, entryId, entry);
+        readAheadManager.onCacheMiss(LEDGER_ID, entryId, location(entryId), entry.readableBytes());
+        entry.release();
+    }
+
+    private List<Long> windowSizes() {
+        ArgumentCaptor<Long> windowSizes = ArgumentCaptor.forClass(Long.class);
+        verify(readAheadBatchCountStats, atLeastOnce()).registerSuccessfulValue(windowSizes.capture());
+        return windowSizes.getAllValues();
+    }
+
+    private void assertCached(long firstEntryId, long lastEntryId) {
+        for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+            assertTrue("Entry " + entryId + " not read ahead", readCache.hasEntry(LEDGER_ID, entryId));
+        }
+    }
+
+    private static long location(long entryId) {
+        return FIRST_LOCATION + entryId * (4 + ENTRY_SIZE);
+    }
+
+    private static ByteBuf entry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        entry.writeZero(ENTRY_SIZE - 16);
+        return entry;
+    }
+}
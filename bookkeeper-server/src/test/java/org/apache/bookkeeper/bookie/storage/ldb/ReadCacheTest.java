@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Unit test {@link ReadCache} and {@link StripedReadCache}.
+ *
+ * <p>Both caches are sized so that a ledger gets two segments of 5 entries.
+ */
+@RunWith(Parameterized.class)
+public class ReadCacheTest {
+
+    private static final int ENTRY_SIZE = 1024;
+    private static final int SEGMENT_SIZE = 5 * ENTRY_SIZE;
+    private static final int NUM_STRIPES = 4;
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> caches() {
+        Function<ByteBufAllocator, ReadCache> readCache = allocator ->
+                new ReadCache(allocator, 2 * SEGMENT_SIZE, SEGMENT_SIZE);
+        Function<ByteBufAllocator, ReadCache> stripedReadCache = allocator ->
+                new StripedReadCache(allocator, NUM_STRIPES * 2 * SEGMENT_SIZE, NUM_STRIPES, SEGMENT_SIZE);
+        return Arrays.asList(
+                new Object[] { "default", readCache },
+                new Object[] { "striped", stripedReadCache });
+    }
+
+    private final Function<ByteBufAllocator, ReadCache> cacheFactory;
+    private ReadCache cache;
+
+    public ReadCacheTest(String name, Function<ByteBufAllocator, ReadCache> cacheFactory) {
+        this.cacheFactory = cacheFactory;
+    }
+
+    @Before
+    public void setUp() {
+        cache = cacheFactory.apply(UnpooledByteBufAllocator.DEFAULT);
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    public void testPutAndGet() {
+        assertEquals(0, cache.count());
+        assertEquals(0, cache.size());
+        assertNull(cache.get(1, 0));
+        assertFalse(cache.hasEntry(1, 0));
+
+        put(1, 0);
+        put(2, 0);
+
+        assertEquals(2, cache.count());
+        assertEquals(2 * ENTRY_SIZE, cache.size());
+        assertTrue(cache.hasEntry(1, 0));
+        assertEntry(1, 0);
+        assertEntry(2, 0);
+
+        // missing entries of cached ledgers are not found either
+        assertNull(cache.get(1, 1));
+        assertFalse(cache.hasEntry(1, 1));
+        assertNull(cache.get(3, 0));
+    }
+
+    @Test
+    public void testEvictOldestSegment() {
+        // fill both segments of the ledger
+        for (long entryId = 0; entryId < 10; entryId++) {
+            put(1, entryId);
+        }
+        assertEquals(10, cache.count());
+        assertEquals(2 * SEGMENT_SIZE, cache.size());
+        for (long entryId = 0; entryId < 10; entryId++) {
+            assertEntry(1, entryId);
+        }
+
+        // the next entry recycles the segment holding the oldest entries
+        put(1, 10);
+        assertEquals(6, cache.count());
+        assertEquals(SEGMENT_SIZE + ENTRY_SIZE, cache.size());
+        for (long entryId = 0; entryId < 5; entryId++) {
+            assertNull(cache.get(1, entryId));
+            assertFalse(cache.hasEntry(1, entryId));
+        }
+        for (long entryId = 5; entryId <= 10; entryId++) {
+            assertEntry(1, entryId);
+        }
+    }
+
+    @Test
+    public void testConcurrentReadsDuringEviction() throws Exception {
+        int numEntries = 1000;
+        AtomicLong lastEntryId = new AtomicLong(-1);
+        AtomicReference<String> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        Runnable reader = () -> {
+            while (done.getCount() > 0 && failure.get() == null) {
+                long last = lastEntryId.get();
+                if (last < 0) {
+                    continue;
+                }
+                // the recent entries, some of them being evicted meanwhile
+                long entryId = Math.max(0, last - ThreadLocalRandom.current().nextLong(20));
+                ByteBuf entry = cache.get(1, entryId);
+                if (entry != null) {
+                    ByteBuf expected = entry(1, entryId);
+                    if (!expected.equals(entry)) {
+                        failure.compareAndSet(null, "Corrupted entry " + entryId);
+                    }
+                    expected.release();
+                    entry.release();
+                }
+            }
+        };
+        Thread[] readers = new Thread[2];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(reader, "reader-" + i);
+            readers[i].start();
+        }
+
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            put(1, entryId);
+            lastEntryId.set(entryId);
+        }
+        done.countDown();
+        for (Thread thread : readers) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        assertEntry(1, numEntries - 1);
+    }
+
+    @Test
+    public void testStripesEvictIndependently() {
+        if (!(cache instanceof StripedReadCache)) {
+            return;
+        }
+
+        for (long ledgerId = 1; ledgerId <= 8; ledgerId++) {
+            put(ledgerId, 0);
+        }
+        assertEquals(8, cache.count());
+
+        // ledger 1 recycles the oldest segment of its stripe, which it shares with ledger 4 only
+        for (long entryId = 1; entryId <= 10; entryId++) {
+            put(1, entryId);
+        }
+        for (long entryId = 0; entryId < 4; entryId++) {
+            assertNull(cache.get(1, entryId));
+        }
+        assertNull(cache.get(4, 0));
+        for (long entryId = 4; entryId <= 10; entryId++) {
+            assertEntry(1, entryId);
+        }
+        for (long ledgerId : new long[] { 2, 3, 5, 6, 7, 8 }) {
+            assertEntry(ledgerId, 0);
+        }
+        assertEquals(7 + 6, cache.count());
+    }
+
+    private void put(long ledgerId, long entryId) {
+        ByteBuf entry = entry(ledgerId, entryId);
+        cache.put(ledgerId, entryId, entry);
+        entry.release();
+    }
+
+    private void assertEntry(long ledgerId, long entryId) {
+        ByteBuf expected = entry(ledgerId, entryId);
+        ByteBuf entry = cache.get(ledgerId, entryId);
+        assertEquals("Entry " + ledgerId + "@" + entryId, expected, entry);
+        expected.release();
+        entry.release();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        while (entry.isWritable()) {
+            entry.writeLong(entryId);
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test {@link SegmentedReadCache}.
+ *
+ * <p>Both areas of the cache have two segments of 5 entries.
+ */
+public class SegmentedReadCacheTest {
+
+    private static final ByteBufAllocator ALLOCATOR = UnpooledByteBufAllocator.DEFAULT;
+    private static final int ENTRY_SIZE = 1024;
+    private static final int SEGMENT_SIZE = 5 * ENTRY_SIZE;
+
+    private ReadCache probationCache;
+    private ReadCache protectedCache;
+    private SegmentedReadCache cache;
+
+    private void newCache(ReadCacheAdmissionPolicy admissionPolicy) {
+        probationCache = new ReadCache(ALLOCATOR, 2 * SEGMENT_SIZE, SEGMENT_SIZE);
+        protectedCache = new ReadCache(ALLOCATOR, 2 * SEGMENT_SIZE, SEGMENT_SIZE);
+        cache = new SegmentedReadCache(ALLOCATOR, probationCache, protectedCache, admissionPolicy);
+    }
+
+    @After
+    public void tearDown() {
+        if (null != cache) {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testPromoteEntryReadAgain() {
+        newCache(new FrequencySketchAdmissionPolicy(1000));
+
+        put(1, 0);
+        assertTrue(cache.hasEntry(1, 0));
+        assertEquals(1, probationCache.count());
+
+        // the first lookup leaves the entry in the probationary area
+        assertEntry(1, 0);
+        assertEquals(0, protectedCache.count());
+
+        // and the next one promotes it
+        assertEntry(1, 0);
+        assertEquals(1, protectedCache.count());
+        assertEquals(ENTRY_SIZE, protectedCache.size());
+        assertEquals(probationCache.count() + protectedCache.count(), cache.count());
+        assertEquals(probationCache.size() + protectedCache.size(), cache.size());
+
+        // it is then served from the protected area, without being promoted again
+        assertEntry(1, 0);
+        assertEquals(1, protectedCache.count());
+
+        // missing entries are not found, and not promoted
+        assertNull(cache.get(1, 1));
+        assertNull(cache.get(1, 1));
+        assertFalse(cache.hasEntry(1, 1));
+        assertEquals(1, protectedCache.count());
+    }
+
+    @Test
+    public void testScanDoesNotEvictProtectedEntries() {
+        newCache(new FrequencySketchAdmissionPolicy(1000));
+
+        put(1, 0);
+        assertEntry(1, 0);
+        assertEntry(1, 0);
+
+        // a reader scanning another ledger rotates the probationary segments many times
+        for (long entryId = 0; entryId < 50; entryId++) {
+            put(2, entryId);
+            assertEntry(2, entryId);
+        }
+        assertFalse(probationCache.hasEntry(1, 0));
+        assertNull(probationCache.get(2, 0));
+
+        // none of the scanned entries was promoted, and the hot entry is still cached
+        assertEquals(1, protectedCache.count());
+        assertEntry(1, 0);
+    }
+
+    @Test
+    public void testRejectedEntriesAreEvictedFromProbation() {
+        newCache(new ReadCacheAdmissionPolicy() {
+            @Override
+            public void recordAccess(long ledgerId, long entryId) {
+            }
+
+            @Override
+            public boolean shouldPromote(long ledgerId, long entryId) {
+                return false;
+            }
+        });
+
+        put(1, 0);
+        for (int i = 0; i < 5; i++) {
+            assertEntry(1, 0);
+        }
+        assertEquals(0, protectedCache.count());
+
+        // with nothing promoted, the cache evicts in FIFO order
+        for (long entryId = 1; entryId <= 10; entryId++) {
+            put(1, entryId);
+        }
+        assertNull(cache.get(1, 0));
+        assertFalse(cache.hasEntry(1, 0));
+        assertEquals(0, protectedCache.count());
+    }
+
+    @Test
+    public void testPromotionsEvictOldestProtectedSegment() {
+        newCache(new FrequencySketchAdmissionPolicy(1000));
+
+        // promote 11 entries, one more than the protected area holds
+        for (long entryId = 0; entryId <= 10; entryId++) {
+            put(1, entryId);
+            assertEntry(1, entryId);
+            assertEntry(1, entryId);
+        }
+
+        // the oldest protected segment was recycled, as was the oldest probationary one
+        assertEquals(6, protectedCache.count());
+        for (long entryId = 0; entryId < 5; entryId++) {
+            assertNull(cache.get(1, entryId));
+        }
+        for (long entryId = 5; entryId <= 10; entryId++) {
+            assertTrue(protectedCache.hasEntry(1, entryId));
+            assertEntry(1, entryId);
+        }
+    }
+
+    private void put(long ledgerId, long entryId) {
+        ByteBuf entry = entry(ledgerId, entryId);
+        cache.put(ledgerId, entryId, entry);
+        entry.release();
+    }
+
+    private void assertEntry(long ledgerId, long entryId) {
+        ByteBuf expected = entry(ledgerId, entryId);
+        ByteBuf entry = cache.get(ledgerId, entryId);
+        assertEquals("Entry " + ledgerId + "@" + entryId, expected, entry);
+        expected.release();
+        entry.release();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        while (entry.isWritable()) {
+            entry.writeLong(entryId);
+        }
+        return entry;
+    }
+}
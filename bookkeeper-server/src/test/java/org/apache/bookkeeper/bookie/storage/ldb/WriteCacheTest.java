@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test {@link WriteCache}.
+ */
+public class WriteCacheTest {
+
+    private static final int NUM_LEDGERS = 50;
+    private static final int ENTRIES_PER_LEDGER = 20;
+
+    private WriteCache cache;
+    private ExecutorService sortExecutor;
+
+    @Before
+    public void setUp() {
+        cache = new WriteCache(UnpooledByteBufAllocator.DEFAULT, 10 * 1024 * 1024);
+        sortExecutor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.close();
+        sortExecutor.shutdown();
+        sortExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testForEachIsSorted() {
+        List<long[]> entries = putEntriesInRandomOrder();
+
+        List<long[]> visited = new ArrayList<>();
+        cache.forEach((ledgerId, entryId, entry) -> {
+            assertEquals(getData(ledgerId, entryId), entry.toString(StandardCharsets.UTF_8));
+            visited.add(new long[] { ledgerId, entryId });
+        });
+
+        entries.sort(WriteCacheTest::compareEntries);
+        assertEntriesEqual(entries, visited);
+    }
+
+    @Test
+    public void testForEachPartitioned() {
+        int partitions = 4;
+        List<long[]> entries = putEntriesInRandomOrder();
+        cache.deleteLedger(7);
+        entries.removeIf(e -> e[0] == 7);
+
+        List<long[]> visited = new ArrayList<>();
+        cache.forEach((ledgerId, entryId, entry) -> {
+            assertEquals(getData(ledgerId, entryId), entry.toString(StandardCharsets.UTF_8));
+            visited.add(new long[] { ledgerId, entryId });
+        }, sortExecutor, partitions, NullStatsLogger.INSTANCE.getOpStatsLogger("sort"));
+
+        // the partitions are visited one after the other, each one sorted by (ledgerId, entryId)
+        entries.sort((e1, e2) -> {
+            int cmp = Integer.compare(MathUtils.signSafeMod(e1[0], partitions),
+                    MathUtils.signSafeMod(e2[0], partitions));
+            return cmp != 0 ? cmp : compareEntries(e1, e2);
+        });
+        assertEntriesEqual(entries, visited);
+    }
+
+    @Test
+    public void testForEachPartitionedWithEmptyPartitions() {
+        // more partitions than ledgers, and negative ledger ids are partitioned like the other ones
+        int partitions = 16;
+        List<long[]> entries = new ArrayList<>();
+        for (long ledgerId : new long[] { -3, 2, 5 }) {
+            for (long entryId = ENTRIES_PER_LEDGER - 1; entryId >= 0; entryId--) {
+                put(ledgerId, entryId);
+                entries.add(new long[] { ledgerId, entryId });
+            }
+        }
+
+        List<long[]> visited = new ArrayList<>();
+        cache.forEach((ledgerId, entryId, entry) -> visited.add(new long[] { ledgerId, entryId }),
+                sortExecutor, partitions, NullStatsLogger.INSTANCE.getOpStatsLogger("sort"));
+
+        // ledger -3 is in partition 13, after the partitions of ledgers 2 and 5
+        entries.sort((e1, e2) -> {
+            int cmp = Integer.compare(MathUtils.signSafeMod(e1[0], partitions),
+                    MathUtils.signSafeMod(e2[0], partitions));
+            return cmp != 0 ? cmp : compareEntries(e1, e2);
+        });
+        assertEquals(-3L, entries.get(entries.size() - 1)[0]);
+        assertEntriesEqual(entries, visited);
+    }
+
+    @Test
+    public void testForEachPartitionedOfEmptyCache() {
+        List<long[]> visited = new ArrayList<>();
+        cache.forEach((ledgerId, entryId, entry) -> visited.add(new long[] { ledgerId, entryId }),
+                sortExecutor, 4, NullStatsLogger.INSTANCE.getOpStatsLogger("sort"));
+        assertTrue(visited.isEmpty());
+    }
+
+    private List<long[]> putEntriesInRandomOrder() {
+        List<long[]> entries = new ArrayList<>();
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+            for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+                entries.add(new long[] { ledgerId, entryId });
+            }
+        }
+        Collections.shuffle(entries, new Random(1));
+        for (long[] entry : entries) {
+            put(entry[0], entry[1]);
+        }
+        return entries;
+    }
+
+    private void put(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.copiedBuffer(getData(ledgerId, entryId), StandardCharsets.UTF_8);
+        assertTrue(cache.put(ledgerId, entryId, entry));
+        entry.release();
+    }
+
+    private static String getData(long ledgerId, long entryId) {
+        return "ledger-" + ledgerId + "-entry-" + entryId;
+    }
+
+    private static int compareEntries(long[] e1, long[] e2) {
+        int cmp = Long.compare(e1[0], e2[0]);
+        return cmp != 0 ? cmp : Long.compare(e1[1], e2[1]);
+    }
+
+    private static void assertEntriesEqual(List<long[]> expected, List<long[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("Ledger of entry " + i, expected.get(i)[0], actual.get(i)[0]);
+            assertEquals("Entry " + i, expected.get(i)[1], actual.get(i)[1]);
+        }
+    }
+}
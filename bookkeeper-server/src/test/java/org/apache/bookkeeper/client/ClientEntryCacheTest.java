@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Version;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test {@link ClientEntryCache}, and the reads of the ledger handles through it.
+ */
+public class ClientEntryCacheTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final long OTHER_LEDGER_ID = 2L;
+    private static final int NUM_ENTRIES = 10;
+    private static final long LAST_ADD_CONFIRMED = 4L;
+    private static final int SEGMENT_SIZE = 1024;
+    private static final byte[] PASSWORD = "password".getBytes(StandardCharsets.UTF_8);
+
+    private final List<BookieId> ensemble = new ArrayList<>();
+    private ClientEntryCache cache;
+    private OrderedExecutor executor;
+    private BookieClient bookieClient;
+    private LedgerManager ledgerManager;
+    private ClientContext clientCtx;
+    private Versioned<LedgerMetadata> metadata;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new ClientEntryCache(UnpooledByteBufAllocator.DEFAULT, 4 * SEGMENT_SIZE, SEGMENT_SIZE,
+                NullStatsLogger.INSTANCE.getCounter("hits"), NullStatsLogger.INSTANCE.getCounter("misses"));
+
+        for (int i = 0; i < 3; i++) {
+            ensemble.add(BookieId.parse("bookie-" + i + ":3181"));
+        }
+        // a closed ledger, whose last add confirmed is its last entry
+        metadata = new Versioned<>(LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withEnsembleSize(3)
+                .withWriteQuorumSize(3)
+                .withAckQuorumSize(2)
+                .withPassword(PASSWORD)
+                .withDigestType(DigestType.CRC32C)
+                .newEnsembleEntry(0L, ensemble)
+                .withClosedState()
+                .withLastEntryId(LAST_ADD_CONFIRMED)
+                .withLength(getLength(LAST_ADD_CONFIRMED))
+                .build(), new LongVersion(0L));
+
+        ClientConfiguration conf = new ClientConfiguration()
+                .setEntryCacheSizeBytes(4 * SEGMENT_SIZE)
+                .setEntryCacheReadAheadEntries(0)
+                .setFirstSpeculativeReadTimeout(0);
+        executor = OrderedExecutor.newBuilder().name("entry-cache-test").numThreads(1).build();
+        bookieClient = mock(BookieClient.class);
+        when(bookieClient.isWritable(any(), anyLong())).thenReturn(true);
+        ledgerManager = mock(LedgerManager.class);
+
+        clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getLedgerManager()).thenReturn(ledgerManager);
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+        when(clientCtx.getPlacementPolicy()).thenReturn(mock(EnsemblePlacementPolicy.class));
+        when(clientCtx.getMainWorkerPool()).thenReturn(executor);
+        when(clientCtx.getMemoryLimiter()).thenReturn(ClientMemoryLimiter.UNLIMITED);
+        when(clientCtx.getEntryCache()).thenReturn(cache);
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testPutAndGet() {
+        putEntries(LEDGER_ID, 0, NUM_ENTRIES - 1);
+
+        List<LedgerEntry> entries = cache.getEntries(LEDGER_ID, 0, NUM_ENTRIES - 1);
+        assertEquals(NUM_ENTRIES, entries.size());
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            LedgerEntry entry = entries.get(i);
+            assertEquals(i, entry.getEntryId());
+            assertEquals(getLength(i), entry.getLength());
+            assertArrayEquals(getData(i), entry.getEntryBytes());
+            entry.close();
+        }
+
+        // the entries are returned up to the first one not in the cache
+        assertEquals(0, cache.getEntries(OTHER_LEDGER_ID, 0, NUM_ENTRIES - 1).size());
+        entries = cache.getEntries(LEDGER_ID, NUM_ENTRIES - 2, NUM_ENTRIES + 5);
+        assertEquals(2, entries.size());
+        entries.forEach(LedgerEntry::close);
+    }
+
+    @Test
+    public void testEntriesPastLastAddConfirmedAreNotCached() {
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            entries.add(LedgerEntryImpl.create(LEDGER_ID, entryId, getLength(entryId),
+                    Unpooled.wrappedBuffer(getData(entryId))));
+        }
+        try (LedgerEntries ledgerEntries = LedgerEntriesImpl.create(entries)) {
+            cache.putEntries(ledgerEntries, LAST_ADD_CONFIRMED);
+        }
+
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertEquals("Entry " + entryId, entryId <= LAST_ADD_CONFIRMED, cache.contains(LEDGER_ID, entryId));
+        }
+    }
+
+    @Test
+    public void testSizeBound() {
+        // each entry takes 108 bytes with its header, so 9 entries fit in a segment
+        int entrySize = 100;
+        long numEntries = 100;
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            cache.put(LEDGER_ID, entryId, entryId * entrySize, Unpooled.wrappedBuffer(new byte[entrySize]));
+            assertTrue("Cache size " + cache.size(), cache.size() <= 4 * SEGMENT_SIZE);
+        }
+        // all the segments are in use
+        assertTrue("Cache size " + cache.size(), cache.size() > 3 * SEGMENT_SIZE);
+
+        // the oldest entries were dropped with their segments
+        assertFalse(cache.contains(LEDGER_ID, 0));
+        assertTrue(cache.contains(LEDGER_ID, numEntries - 1));
+        int cachedEntries = 0;
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            cachedEntries += cache.contains(LEDGER_ID, entryId) ? 1 : 0;
+        }
+        assertTrue("Cached entries " + cachedEntries, cachedEntries <= 4 * (SEGMENT_SIZE / (entrySize + 8)));
+
+        // an entry larger than a segment is not cached
+        cache.put(OTHER_LEDGER_ID, 0, SEGMENT_SIZE, Unpooled.wrappedBuffer(new byte[SEGMENT_SIZE]));
+        assertFalse(cache.contains(OTHER_LEDGER_ID, 0));
+    }
+
+    @Test
+    public void testDroppedSegmentIsKeptWhileEntriesAreRead() {
+        putEntries(LEDGER_ID, 0, 0);
+        List<LedgerEntry> entries = cache.getEntries(LEDGER_ID, 0, 0);
+        assertEquals(1, entries.size());
+
+        // fill the cache until the segment of the entry is dropped
+        for (long entryId = 1; cache.contains(LEDGER_ID, 0); entryId++) {
+            cache.put(LEDGER_ID, entryId, 0, Unpooled.wrappedBuffer(new byte[100]));
+        }
+        LedgerEntry entry = entries.get(0);
+        assertArrayEquals(getData(0), entry.getEntryBytes());
+        entry.close();
+    }
+
+    @Test
+    public void testInvalidate() {
+        putEntries(LEDGER_ID, 0, NUM_ENTRIES - 1);
+        putEntries(OTHER_LEDGER_ID, 0, NUM_ENTRIES - 1);
+
+        cache.invalidate(LEDGER_ID);
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertFalse(cache.contains(LEDGER_ID, entryId));
+            assertTrue(cache.contains(OTHER_LEDGER_ID, entryId));
+        }
+    }
+
+    @Test
+    public void testReadsUpToLastAddConfirmedAreServedFromCache() throws Exception {
+        putEntries(LEDGER_ID, 0, NUM_ENTRIES - 1);
+        LedgerHandle lh = newLedgerHandle();
+
+        try (LedgerEntries entries = lh.readAsync(0, LAST_ADD_CONFIRMED).get(10, TimeUnit.SECONDS)) {
+            assertEntries(entries, 0, LAST_ADD_CONFIRMED);
+        }
+        verify(bookieClient, never()).readEntry(any(), anyLong(), anyLong(), any(), any(), anyInt());
+    }
+
+    @Test
+    public void testReadsPastLastAddConfirmedGoToBookies() throws Exception {
+        LedgerHandle lh = newLedgerHandle();
+        mockBookieReads(lh);
+        // e.g. cached by another handle of the ledger, which knows of a later last add confirmed
+        putEntries(LEDGER_ID, 0, NUM_ENTRIES - 1);
+
+        try (LedgerEntries entries = lh.readUnconfirmedAsync(0, NUM_ENTRIES - 1).get(10, TimeUnit.SECONDS)) {
+            assertEntries(entries, 0, NUM_ENTRIES - 1);
+        }
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            verify(bookieClient, times(entryId <= LAST_ADD_CONFIRMED ? 0 : 1)).readEntry(any(), eq(LEDGER_ID),
+                    eq(entryId), any(), any(), anyInt());
+        }
+    }
+
+    @Test
+    public void testEntriesReadPastLastAddConfirmedAreNotCached() throws Exception {
+        LedgerHandle lh = newLedgerHandle();
+        mockBookieReads(lh);
+
+        try (LedgerEntries entries = lh.readUnconfirmedAsync(0, NUM_ENTRIES - 1).get(10, TimeUnit.SECONDS)) {
+            assertEntries(entries, 0, NUM_ENTRIES - 1);
+        }
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertEquals("Entry " + entryId, entryId <= LAST_ADD_CONFIRMED, cache.contains(LEDGER_ID, entryId));
+        }
+    }
+
+    @Test
+    public void testRecoveryInvalidatesLedger() throws Exception {
+        putEntries(LEDGER_ID, 0, LAST_ADD_CONFIRMED);
+        putEntries(OTHER_LEDGER_ID, 0, LAST_ADD_CONFIRMED);
+        ReadOnlyLedgerHandle lh = new ReadOnlyLedgerHandle(clientCtx, LEDGER_ID, metadata,
+                BookKeeper.DigestType.CRC32C, PASSWORD, false);
+
+        // the ledger is already closed, the recovery doesn't change its metadata
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        lh.recover((rc, value) -> result.complete(rc));
+        assertEquals(BKException.Code.OK, result.get(10, TimeUnit.SECONDS).intValue());
+
+        assertFalse(cache.contains(LEDGER_ID, 0));
+        assertTrue(cache.contains(OTHER_LEDGER_ID, 0));
+    }
+
+    @Test
+    public void testDeleteInvalidatesLedger() throws Exception {
+        putEntries(LEDGER_ID, 0, LAST_ADD_CONFIRMED);
+        putEntries(OTHER_LEDGER_ID, 0, LAST_ADD_CONFIRMED);
+        when(ledgerManager.removeLedgerMetadata(anyLong(), any(Version.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        BookKeeper bk = mock(BookKeeper.class);
+        when(bk.getLedgerManager()).thenReturn(ledgerManager);
+        when(bk.getMainWorkerPool()).thenReturn(executor);
+        when(bk.getClientCtx()).thenReturn(clientCtx);
+
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        new LedgerDeleteOp(bk, clientCtx.getClientStats(), LEDGER_ID, (rc, ctx) -> result.complete(rc), null)
+                .initiate();
+        assertEquals(BKException.Code.OK, result.get(10, TimeUnit.SECONDS).intValue());
+
+        assertFalse(cache.contains(LEDGER_ID, 0));
+        assertTrue(cache.contains(OTHER_LEDGER_ID, 0));
+    }
+
+    private LedgerHandle newLedgerHandle() throws Exception {
+        return new LedgerHandle(clientCtx, LEDGER_ID, metadata, BookKeeper.DigestType.CRC32C, PASSWORD,
+                EnumSet.noneOf(WriteFlag.class));
+    }
+
+    private void mockBookieReads(LedgerHandle lh) {
+        doAnswer(invocation -> {
+            long entryId = invocation.getArgument(2);
+            ReadEntryCallback cb = invocation.getArgument(3);
+            ByteBufList packaged = lh.getDigestManager().computeDigestAndPackageForSending(entryId, entryId - 1,
+                    getLength(entryId), Unpooled.wrappedBuffer(getData(entryId)));
+            ByteBuf entry = ByteBufList.coalesce(packaged);
+            packaged.release();
+            cb.readEntryComplete(BKException.Code.OK, LEDGER_ID, entryId, entry, invocation.getArgument(4));
+            entry.release();
+            return null;
+        }).when(bookieClient).readEntry(any(), anyLong(), anyLong(), any(), any(), anyInt());
+    }
+
+    private void putEntries(long ledgerId, long firstEntryId, long lastEntryId) {
+        for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+            cache.put(ledgerId, entryId, getLength(entryId), Unpooled.wrappedBuffer(getData(entryId)));
+        }
+    }
+
+    private static void assertEntries(LedgerEntries entries, long firstEntryId, long lastEntryId) {
+        for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+            assertArrayEquals(getData(entryId), entries.getEntry(entryId).getEntryBytes());
+        }
+    }
+
+    private static long getLength(long entryId) {
+        long length = 0;
+        for (long i = 0; i <= entryId; i++) {
+            length += getData(i).length;
+        }
+        return length;
+    }
+
+    private static byte[] getData(long entryId) {
+        return ("entry-" + entryId).getBytes(StandardCharsets.UTF_8);
+    }
+}
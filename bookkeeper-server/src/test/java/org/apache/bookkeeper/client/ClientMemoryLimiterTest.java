@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that the pending adds and reads release their memory in the {@link ClientMemoryLimiter}, however they complete.
+ */
+public class ClientMemoryLimiterTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int NUM_ENTRIES = 5;
+    private static final int ENTRY_SIZE = 1000;
+    private static final long MEMORY_LIMIT = 4 * ENTRY_SIZE;
+    private static final byte[] PASSWORD = "password".getBytes(StandardCharsets.UTF_8);
+
+    private final List<BookieId> ensemble = new ArrayList<>();
+    // the requests sent to the bookies, completed by the tests with a return code
+    private final BlockingQueue<IntConsumer> pendingWrites = new LinkedBlockingQueue<>();
+    private final BlockingQueue<IntConsumer> pendingReads = new LinkedBlockingQueue<>();
+    private final List<ByteBuf> readBuffers = new ArrayList<>();
+    private OrderedExecutor executor;
+    private ClientMemoryLimiter memoryLimiter;
+    private LedgerHandle lh;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            ensemble.add(BookieId.parse("bookie-" + i + ":3181"));
+        }
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withEnsembleSize(3)
+                .withWriteQuorumSize(3)
+                .withAckQuorumSize(2)
+                .withPassword(PASSWORD)
+                .withDigestType(DigestType.CRC32C)
+                .newEnsembleEntry(0L, ensemble)
+                .build();
+
+        ClientConfiguration conf = new ClientConfiguration()
+                .setClientMemoryLimitBytes(MEMORY_LIMIT)
+                .setClientMemoryLimitWaitTimeoutMillis(100)
+                .setFirstSpeculativeReadTimeout(0);
+        executor = OrderedExecutor.newBuilder().name("memory-limiter-test").numThreads(1).build();
+        BookKeeperClientStats clientStats = BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE);
+        memoryLimiter = ClientMemoryLimiter.fromConfig(conf, clientStats);
+
+        BookieClient bookieClient = mock(BookieClient.class);
+        when(bookieClient.isWritable(any(), anyLong())).thenReturn(true);
+        doAnswer(invocation -> {
+            BookieId addr = invocation.getArgument(0);
+            long entryId = invocation.getArgument(3);
+            WriteCallback cb = invocation.getArgument(5);
+            Object ctx = invocation.getArgument(6);
+            pendingWrites.add(rc -> executor.executeOrdered(LEDGER_ID,
+                    () -> cb.writeComplete(rc, LEDGER_ID, entryId, addr, ctx)));
+            return null;
+        }).when(bookieClient).addEntry(any(), anyLong(), any(), anyLong(), any(), any(), any(), anyInt(),
+                anyBoolean(), any());
+        doAnswer(invocation -> {
+            long entryId = invocation.getArgument(2);
+            ReadEntryCallback cb = invocation.getArgument(3);
+            Object ctx = invocation.getArgument(4);
+            pendingReads.add(rc -> executor.executeOrdered(LEDGER_ID, () -> {
+                if (rc != BKException.Code.OK) {
+                    cb.readEntryComplete(rc, LEDGER_ID, entryId, null, ctx);
+                    return;
+                }
+                ByteBuf entry = createEntry(entryId);
+                readBuffers.add(entry);
+                cb.readEntryComplete(rc, LEDGER_ID, entryId, entry, ctx);
+                entry.release();
+            }));
+            return null;
+        }).when(bookieClient).readEntry(any(), anyLong(), anyLong(), any(), any(), anyInt());
+
+        LedgerManager ledgerManager = mock(LedgerManager.class);
+        // closing the ledger never completes, the pending adds are failed before its metadata is updated
+        when(ledgerManager.writeLedgerMetadata(anyLong(), any(), any())).thenReturn(new CompletableFuture<>());
+
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getLedgerManager()).thenReturn(ledgerManager);
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        when(clientCtx.getClientStats()).thenReturn(clientStats);
+        when(clientCtx.getPlacementPolicy()).thenReturn(mock(EnsemblePlacementPolicy.class));
+        when(clientCtx.getMainWorkerPool()).thenReturn(executor);
+        when(clientCtx.getMemoryLimiter()).thenReturn(memoryLimiter);
+        when(clientCtx.getEntryCache()).thenReturn(ClientEntryCache.DISABLED);
+
+        lh = new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata, new LongVersion(0L)),
+                BookKeeper.DigestType.CRC32C, PASSWORD, EnumSet.noneOf(WriteFlag.class));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testAddReleasesMemoryOnSuccess() throws Exception {
+        CompletableFuture<Integer> result = addEntry();
+        assertEquals(ENTRY_SIZE, memoryLimiter.currentUsage());
+
+        // the add completes with the ack quorum, before the third bookie responds
+        completeWrites(2, BKException.Code.OK);
+        assertEquals(BKException.Code.OK, result.get(10, TimeUnit.SECONDS).intValue());
+        assertUsage(0);
+
+        completeWrites(1, BKException.Code.OK);
+        assertUsage(0);
+    }
+
+    @Test
+    public void testAddReleasesMemoryOnError() throws Exception {
+        CompletableFuture<Integer> result = addEntry();
+        assertEquals(ENTRY_SIZE, memoryLimiter.currentUsage());
+
+        completeWrites(1, BKException.Code.ClientClosedException);
+        assertEquals(BKException.Code.ClientClosedException, result.get(10, TimeUnit.SECONDS).intValue());
+        assertUsage(0);
+    }
+
+    @Test
+    public void testAddReleasesMemoryOnTimeout() throws Exception {
+        CompletableFuture<Integer> result = addEntry();
+        awaitWrites(3);
+
+        // as done by the timeout monitor of the handle
+        lh.pendingAddOps.peek().timeoutQuorumWait();
+        assertEquals(BKException.Code.AddEntryQuorumTimeoutException, result.get(10, TimeUnit.SECONDS).intValue());
+        assertUsage(0);
+    }
+
+    @Test
+    public void testAddReleasesMemoryWhenLedgerIsClosed() throws Exception {
+        CompletableFuture<Integer> pending = addEntry();
+        awaitWrites(3);
+
+        // the pending adds are failed by the close
+        lh.asyncClose((rc, handle, ctx) -> { }, null);
+        assertEquals(BKException.Code.LedgerClosedException, pending.get(10, TimeUnit.SECONDS).intValue());
+        assertUsage(0);
+
+        // and the adds to the closed ledger are failed without holding memory
+        CompletableFuture<Integer> rejected = addEntry();
+        assertEquals(BKException.Code.LedgerClosedException, rejected.get(10, TimeUnit.SECONDS).intValue());
+        assertUsage(0);
+    }
+
+    @Test
+    public void testRequestsFailOverLimit() throws Exception {
+        // the last add which gets memory goes over the limit
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i <= MEMORY_LIMIT / ENTRY_SIZE; i++) {
+            results.add(addEntry());
+        }
+        assertEquals(MEMORY_LIMIT + ENTRY_SIZE, memoryLimiter.currentUsage());
+
+        // then neither an add nor a read get memory before the wait timeout
+        CompletableFuture<Integer> rejected = addEntry();
+        assertEquals(BKException.Code.TooManyRequestsException, rejected.get(10, TimeUnit.SECONDS).intValue());
+        assertReadFails(lh.readEntriesInternalAsync(0, 0, false), BKException.Code.TooManyRequestsException);
+        assertEquals(MEMORY_LIMIT + ENTRY_SIZE, memoryLimiter.currentUsage());
+
+        completeWrites(3 * results.size(), BKException.Code.OK);
+        for (CompletableFuture<Integer> result : results) {
+            assertEquals(BKException.Code.OK, result.get(10, TimeUnit.SECONDS).intValue());
+        }
+        assertUsage(0);
+    }
+
+    @Test
+    public void testReadReleasesMemoryOnSuccess() throws Exception {
+        CompletableFuture<LedgerEntries> result = lh.readEntriesInternalAsync(0, NUM_ENTRIES - 1, false);
+        assertEquals(0, memoryLimiter.currentUsage());
+
+        // the received entries are charged until the read completes
+        completeReads(NUM_ENTRIES - 1, BKException.Code.OK);
+        assertUsage((NUM_ENTRIES - 1) * getData(0).length);
+        assertFalse(result.isDone());
+
+        completeReads(1, BKException.Code.OK);
+        try (LedgerEntries entries = result.get(10, TimeUnit.SECONDS)) {
+            assertUsage(0);
+            for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+                assertEquals(new String(getData(entryId), StandardCharsets.UTF_8),
+                        new String(entries.getEntry(entryId).getEntryBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void testReadReleasesMemoryOnError() throws Exception {
+        CompletableFuture<LedgerEntries> result = lh.readEntriesInternalAsync(0, NUM_ENTRIES - 1, false);
+        completeReads(1, BKException.Code.OK);
+        assertUsage(getData(0).length);
+
+        failReads(result, BKException.Code.NoSuchEntryException);
+        assertUsage(0);
+        assertReadBuffersReleased();
+    }
+
+    @Test
+    public void testReadReleasesMemoryOnTimeout() throws Exception {
+        CompletableFuture<LedgerEntries> result = lh.readEntriesInternalAsync(0, NUM_ENTRIES - 1, false);
+        completeReads(1, BKException.Code.OK);
+        assertUsage(getData(0).length);
+
+        failReads(result, BKException.Code.TimeoutException);
+        assertUsage(0);
+        assertReadBuffersReleased();
+    }
+
+    @Test
+    public void testReadReleasesMemoryOnCancel() throws Exception {
+        CompletableFuture<LedgerEntries> result = lh.readEntriesInternalAsync(0, NUM_ENTRIES - 1, false);
+        completeReads(1, BKException.Code.OK);
+        assertTrue(result.cancel(true));
+
+        // the read goes on, and releases both the memory and the entries nobody is waiting for anymore
+        completeReads(NUM_ENTRIES - 1, BKException.Code.OK);
+        assertUsage(0);
+        assertReadBuffersReleased();
+    }
+
+    private CompletableFuture<Integer> addEntry() {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        lh.asyncAddEntry(new byte[ENTRY_SIZE], (rc, handle, entryId, ctx) -> result.complete(rc), null);
+        return result;
+    }
+
+    private void awaitWrites(int numWrites) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (pendingWrites.size() < numWrites) {
+            assertTrue("Expected " + numWrites + " writes", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void completeWrites(int numWrites, int rc) throws InterruptedException {
+        for (int i = 0; i < numWrites; i++) {
+            IntConsumer write = pendingWrites.poll(10, TimeUnit.SECONDS);
+            assertNotNull("Expected a write", write);
+            write.accept(rc);
+        }
+    }
+
+    private void completeReads(int numReads, int rc) throws InterruptedException {
+        for (int i = 0; i < numReads; i++) {
+            IntConsumer read = pendingReads.poll(10, TimeUnit.SECONDS);
+            assertNotNull("Expected a read", read);
+            read.accept(rc);
+        }
+    }
+
+    /**
+     * Fail the reads, and the reads of the other replicas they trigger, until <i>result</i> completes.
+     */
+    private void failReads(CompletableFuture<LedgerEntries> result, int rc) throws Exception {
+        while (!result.isDone()) {
+            IntConsumer read = pendingReads.poll(100, TimeUnit.MILLISECONDS);
+            if (read != null) {
+                read.accept(rc);
+            }
+        }
+        assertTrue(result.isCompletedExceptionally());
+    }
+
+    private static void assertReadFails(CompletableFuture<LedgerEntries> result, int expectedRc) throws Exception {
+        try {
+            result.get(10, TimeUnit.SECONDS).close();
+            fail("The read should have failed");
+        } catch (ExecutionException e) {
+            assertEquals(expectedRc, BKException.getExceptionCode(e.getCause()));
+        }
+    }
+
+    /**
+     * Wait for the callbacks being run by the worker pool, and check the memory usage.
+     */
+    private void assertUsage(long expected) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.executeOrdered(LEDGER_ID, latch::countDown);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(expected, memoryLimiter.currentUsage());
+    }
+
+    private void assertReadBuffersReleased() {
+        for (ByteBuf buffer : readBuffers) {
+            assertEquals(0, buffer.refCnt());
+        }
+    }
+
+    private ByteBuf createEntry(long entryId) {
+        byte[] data = getData(entryId);
+        ByteBufList packaged = lh.getDigestManager().computeDigestAndPackageForSending(entryId, entryId - 1,
+                (entryId + 1) * data.length, Unpooled.wrappedBuffer(data));
+        try {
+            return ByteBufList.coalesce(packaged);
+        } finally {
+            packaged.release();
+        }
+    }
+
+    private static byte[] getData(long entryId) {
+        return ("entry-" + entryId).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.Futures;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Unit test {@link LatencyBasedSpeculativeRequestExecutionPolicy}.
+ */
+public class LatencyBasedSpeculativeRequestExecutionPolicyTest {
+
+    private static final double PERCENTILE = 95.0;
+    private static final int DEFAULT_TIMEOUT_MS = 100;
+    private static final int MAX_TIMEOUT_MS = 1000;
+
+    private final LatencyBasedSpeculativeRequestExecutionPolicy policy =
+            new LatencyBasedSpeculativeRequestExecutionPolicy(PERCENTILE, DEFAULT_TIMEOUT_MS, MAX_TIMEOUT_MS);
+    private final SpeculativeRequestExecutor requestExecutor = mock(SpeculativeRequestExecutor.class);
+
+    @Test
+    public void testTimeoutFollowsLatencyOfBookie() {
+        when(requestExecutor.getExpectedLatencyNanos(PERCENTILE)).thenReturn(TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), policy.getSpeculativeRequestTimeoutNanos(requestExecutor));
+    }
+
+    @Test
+    public void testDefaultTimeoutWhenLatencyIsUnknown() {
+        when(requestExecutor.getExpectedLatencyNanos(PERCENTILE)).thenReturn(-1L);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIMEOUT_MS),
+                policy.getSpeculativeRequestTimeoutNanos(requestExecutor));
+
+        // the default timeout is bounded too
+        LatencyBasedSpeculativeRequestExecutionPolicy longDefaultPolicy =
+                new LatencyBasedSpeculativeRequestExecutionPolicy(PERCENTILE, 2 * MAX_TIMEOUT_MS, MAX_TIMEOUT_MS);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(MAX_TIMEOUT_MS),
+                longDefaultPolicy.getSpeculativeRequestTimeoutNanos(requestExecutor));
+    }
+
+    @Test
+    public void testTimeoutIsBounded() {
+        when(requestExecutor.getExpectedLatencyNanos(PERCENTILE)).thenReturn(TimeUnit.SECONDS.toNanos(30));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(MAX_TIMEOUT_MS),
+                policy.getSpeculativeRequestTimeoutNanos(requestExecutor));
+    }
+
+    @Test
+    public void testNextRequestTimedOnItsBookie() {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        when(requestExecutor.getExpectedLatencyNanos(PERCENTILE)).thenReturn(TimeUnit.MILLISECONDS.toNanos(20));
+        when(requestExecutor.issueSpeculativeRequest()).thenReturn(Futures.immediateFuture(true));
+
+        policy.initiateSpeculativeRequest(scheduler, requestExecutor);
+        ArgumentCaptor<Runnable> speculativeRequest = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(speculativeRequest.capture(), eq(TimeUnit.MILLISECONDS.toNanos(20)),
+                eq(TimeUnit.NANOSECONDS));
+
+        // the speculative request was sent to a slower bookie
+        when(requestExecutor.getExpectedLatencyNanos(PERCENTILE)).thenReturn(TimeUnit.MILLISECONDS.toNanos(50));
+        speculativeRequest.getValue().run();
+        verify(scheduler).schedule(any(Runnable.class), eq(TimeUnit.MILLISECONDS.toNanos(50)),
+                eq(TimeUnit.NANOSECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile() {
+        new LatencyBasedSpeculativeRequestExecutionPolicy(0, DEFAULT_TIMEOUT_MS, MAX_TIMEOUT_MS);
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the range reads of {@link PendingReadOp}.
+ */
+public class PendingReadOpRangeReadTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int NUM_ENTRIES = 10;
+    private static final byte[] PASSWORD = "password".getBytes(StandardCharsets.UTF_8);
+
+    private final List<BookieId> ensemble = new ArrayList<>();
+    private BookieClient bookieClient;
+    private ClientContext clientCtx;
+    private LedgerHandle lh;
+    // the number of entries the bookies return in a range read, 0 for all of them
+    private int maxEntriesPerRangeRead = 0;
+    private int rangeReadRc = BKException.Code.OK;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            ensemble.add(BookieId.parse("bookie-" + i + ":3181"));
+        }
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withEnsembleSize(3)
+                .withWriteQuorumSize(3)
+                .withAckQuorumSize(2)
+                .withPassword(PASSWORD)
+                .withDigestType(DigestType.CRC32C)
+                .newEnsembleEntry(0L, ensemble)
+                .build();
+
+        ClientConfiguration conf = new ClientConfiguration()
+                .setRangeReadEnabled(true)
+                .setFirstSpeculativeReadTimeout(0);
+        bookieClient = mock(BookieClient.class);
+        when(bookieClient.isRangeReadSupported(any())).thenReturn(true);
+        doAnswer(invocation -> {
+            long firstEntryId = invocation.getArgument(2);
+            long lastEntryId = invocation.getArgument(3);
+            ReadEntriesCallback cb = invocation.getArgument(6);
+            Object ctx = invocation.getArgument(7);
+            if (rangeReadRc != BKException.Code.OK) {
+                cb.readEntriesComplete(rangeReadRc, LEDGER_ID, firstEntryId, Collections.emptyList(), ctx);
+                return null;
+            }
+            if (maxEntriesPerRangeRead > 0) {
+                lastEntryId = Math.min(lastEntryId, firstEntryId + maxEntriesPerRangeRead - 1);
+            }
+            List<ByteBuf> entries = new ArrayList<>();
+            for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+                entries.add(createEntry(entryId));
+            }
+            cb.readEntriesComplete(BKException.Code.OK, LEDGER_ID, firstEntryId, entries, ctx);
+            entries.forEach(ByteBuf::release);
+            return null;
+        }).when(bookieClient).readEntries(any(), anyLong(), anyLong(), anyLong(), anyInt(), anyLong(),
+                any(), any(), anyInt(), anyBoolean());
+        doAnswer(invocation -> {
+            long entryId = invocation.getArgument(2);
+            ReadEntryCallback cb = invocation.getArgument(3);
+            ByteBuf entry = createEntry(entryId);
+            cb.readEntryComplete(BKException.Code.OK, LEDGER_ID, entryId, entry, invocation.getArgument(4));
+            entry.release();
+            return null;
+        }).when(bookieClient).readEntry(any(), anyLong(), anyLong(), any(), any(), anyInt());
+
+        clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+        when(clientCtx.getPlacementPolicy()).thenReturn(mock(EnsemblePlacementPolicy.class));
+
+        lh = new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata, new LongVersion(0L)),
+                BookKeeper.DigestType.CRC32C, PASSWORD, EnumSet.noneOf(WriteFlag.class));
+    }
+
+    @Test
+    public void testRangeRead() throws Exception {
+        readAndVerify();
+
+        verify(bookieClient, times(1)).readEntries(eq(ensemble.get(0)), eq(LEDGER_ID), eq(0L),
+                eq((long) NUM_ENTRIES - 1), anyInt(), anyLong(), any(), any(), anyInt(), anyBoolean());
+        verify(bookieClient, never()).readEntry(any(), anyLong(), anyLong(), any(), any(), anyInt());
+    }
+
+    @Test
+    public void testPartialRangeRead() throws Exception {
+        maxEntriesPerRangeRead = 4;
+
+        readAndVerify();
+
+        // the entries which were not returned are asked for again from the same bookie
+        for (long firstEntryId : new long[] { 0L, 4L, 8L }) {
+            verify(bookieClient, times(1)).readEntries(eq(ensemble.get(0)), eq(LEDGER_ID), eq(firstEntryId),
+                    eq((long) NUM_ENTRIES - 1), anyInt(), anyLong(), any(), any(), anyInt(), anyBoolean());
+        }
+        verify(bookieClient, times(3)).readEntries(any(), anyLong(), anyLong(), anyLong(), anyInt(), anyLong(),
+                any(), any(), anyInt(), anyBoolean());
+        verify(bookieClient, never()).readEntry(any(), anyLong(), anyLong(), any(), any(), anyInt());
+    }
+
+    @Test
+    public void testFallbackToSingleReadsWhenRangeReadIsUnsupported() throws Exception {
+        rangeReadRc = BKException.Code.IllegalOpException;
+
+        readAndVerify();
+
+        // the entries are read one by one from the same bookie
+        verify(bookieClient, times(NUM_ENTRIES)).readEntry(eq(ensemble.get(0)), eq(LEDGER_ID), anyLong(),
+                any(), any(), anyInt());
+    }
+
+    @Test
+    public void testNoRangeReadToBookieRejectingRangeReads() throws Exception {
+        when(bookieClient.isRangeReadSupported(any())).thenReturn(false);
+
+        readAndVerify();
+
+        verify(bookieClient, never()).readEntries(any(), anyLong(), anyLong(), anyLong(), anyInt(), anyLong(),
+                any(), any(), anyInt(), anyBoolean());
+        verify(bookieClient, times(NUM_ENTRIES)).readEntry(any(), eq(LEDGER_ID), anyLong(), any(), any(), anyInt());
+    }
+
+    @Test
+    public void testFailedRangeReadIsRetriedOnOtherReplicas() throws Exception {
+        // e.g. a bad request, which doesn't mean the bookie doesn't support range reads
+        rangeReadRc = BKException.Code.ReadException;
+
+        readAndVerify();
+
+        verify(bookieClient, never()).readEntry(eq(ensemble.get(0)), anyLong(), anyLong(), any(), any(), anyInt());
+        verify(bookieClient, times(NUM_ENTRIES)).readEntry(any(), eq(LEDGER_ID), anyLong(), any(), any(), anyInt());
+    }
+
+    private void readAndVerify() throws Exception {
+        PendingReadOp op = new PendingReadOp(lh, clientCtx, 0L, NUM_ENTRIES - 1, false);
+        op.initiate();
+        try (LedgerEntries entries = op.future().get(10, TimeUnit.SECONDS)) {
+            for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+                assertArrayEquals(getData(entryId), entries.getEntry(entryId).getEntryBytes());
+            }
+        }
+        assertEquals(NUM_ENTRIES, op.seq.size());
+    }
+
+    private ByteBuf createEntry(long entryId) {
+        byte[] data = getData(entryId);
+        ByteBufList packaged = lh.getDigestManager().computeDigestAndPackageForSending(entryId, entryId - 1,
+                (entryId + 1) * data.length, Unpooled.wrappedBuffer(data));
+        try {
+            return ByteBufList.coalesce(packaged);
+        } finally {
+            packaged.release();
+        }
+    }
+
+    private static byte[] getData(long entryId) {
+        return ("entry-" + entryId).getBytes(StandardCharsets.UTF_8);
+    }
+}
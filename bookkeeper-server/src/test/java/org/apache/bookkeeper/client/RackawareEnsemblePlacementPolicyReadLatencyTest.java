@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.util.HashedWheelTimer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.TopologyAwareEnsemblePlacementPolicy.DefaultResolver;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.net.NetworkTopology;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the ordering of the reads by read latency of the bookies in {@link RackawareEnsemblePlacementPolicyImpl}.
+ */
+public class RackawareEnsemblePlacementPolicyReadLatencyTest {
+
+    private final List<BookieId> ensemble = Arrays.asList(
+            BookieId.parse("127.0.0.1:3181"),
+            BookieId.parse("127.0.0.2:3181"),
+            BookieId.parse("127.0.0.3:3181"));
+    private final Map<BookieId, Long> readLatencies = new HashMap<>();
+    private final BookiesHealthInfo bookiesHealthInfo = new BookiesHealthInfo() {
+        @Override
+        public long getBookieFailureHistory(BookieId bookieSocketAddress) {
+            return -1L;
+        }
+
+        @Override
+        public long getBookiePendingRequests(BookieId bookieSocketAddress) {
+            return 0L;
+        }
+
+        @Override
+        public long getBookieReadLatencyNanos(BookieId bookieSocketAddress, double percentile) {
+            return readLatencies.getOrDefault(bookieSocketAddress, -1L);
+        }
+    };
+
+    private HashedWheelTimer timer;
+    private RackawareEnsemblePlacementPolicyImpl repp;
+
+    @Before
+    public void setUp() {
+        timer = new HashedWheelTimer();
+        repp = newPolicy(true);
+        repp.onClusterChanged(new HashSet<>(ensemble), new HashSet<>());
+    }
+
+    @After
+    public void tearDown() {
+        repp.uninitalize();
+        timer.stop();
+    }
+
+    private RackawareEnsemblePlacementPolicyImpl newPolicy(boolean reorderReadsByLatency) {
+        ClientConfiguration conf = new ClientConfiguration()
+                .setReorderReadSequenceEnabled(true)
+                .setReorderReadsByLatencyEnabled(reorderReadsByLatency);
+        return new RackawareEnsemblePlacementPolicyImpl().initialize(conf,
+                Optional.of(new DefaultResolver(() -> NetworkTopology.DEFAULT_REGION_AND_RACK)), timer,
+                SettableFeatureProvider.DISABLE_ALL, NullStatsLogger.INSTANCE,
+                BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+    }
+
+    @Test
+    public void testFastestBookieFirst() {
+        setReadLatenciesMillis(30, 10, 20);
+        assertEquals(Arrays.asList(1, 2, 0), reorderReadSequence(repp));
+    }
+
+    @Test
+    public void testBookiesWithUnknownLatencyFirst() {
+        // the latency of the second bookie is not known yet, it is tried first to learn it
+        setReadLatenciesMillis(10, -1, 5);
+        assertEquals(Arrays.asList(1, 2, 0), reorderReadSequence(repp));
+    }
+
+    @Test
+    public void testTiesKeepOrder() {
+        setReadLatenciesMillis(10, 10, 10);
+        assertEquals(Arrays.asList(0, 1, 2), reorderReadSequence(repp));
+
+        setReadLatenciesMillis(20, 10, 10);
+        assertEquals(Arrays.asList(1, 2, 0), reorderReadSequence(repp));
+    }
+
+    @Test
+    public void testUnavailableBookieLast() {
+        // the third bookie left the cluster, it is read from last however fast it was
+        repp.onClusterChanged(new HashSet<>(ensemble.subList(0, 2)), new HashSet<>());
+        setReadLatenciesMillis(30, 10, 1);
+        assertEquals(Arrays.asList(1, 0, 2), reorderReadSequence(repp));
+    }
+
+    @Test
+    public void testReorderByLatencyDisabled() {
+        RackawareEnsemblePlacementPolicyImpl disabled = newPolicy(false);
+        disabled.onClusterChanged(new HashSet<>(ensemble), new HashSet<>());
+        setReadLatenciesMillis(30, 10, 20);
+        assertEquals(Arrays.asList(0, 1, 2), reorderReadSequence(disabled));
+        disabled.uninitalize();
+    }
+
+    private void setReadLatenciesMillis(long... latenciesMillis) {
+        for (int i = 0; i < latenciesMillis.length; i++) {
+            long latency = latenciesMillis[i] < 0 ? -1L : TimeUnit.MILLISECONDS.toNanos(latenciesMillis[i]);
+            readLatencies.put(ensemble.get(i), latency);
+        }
+    }
+
+    private List<Integer> reorderReadSequence(RackawareEnsemblePlacementPolicyImpl policy) {
+        DistributionSchedule.WriteSet writeSet =
+                new RoundRobinDistributionSchedule(ensemble.size(), 2, ensemble.size()).getWriteSet(0);
+        DistributionSchedule.WriteSet reordered = policy.reorderReadSequence(ensemble, bookiesHealthInfo, writeSet);
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < reordered.size(); i++) {
+            order.add(reordered.get(i));
+        }
+        reordered.recycle();
+        return order;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.meta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Version;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test {@link CachingLedgerManager}.
+ */
+public class CachingLedgerManagerTest {
+
+    private static final long LEDGER_ID = 1L;
+
+    private final List<BookieId> ensemble = new ArrayList<>();
+    // the listeners registered on the underlying ledger manager
+    private final Map<Long, Set<LedgerMetadataListener>> listeners = new ConcurrentHashMap<>();
+    private LedgerManager underlying;
+    private CachingLedgerManager ledgerManager;
+    // the metadata in the metadata store
+    private Versioned<LedgerMetadata> storedMetadata;
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < 3; i++) {
+            ensemble.add(BookieId.parse("bookie-" + i + ":3181"));
+        }
+        underlying = mock(LedgerManager.class);
+        when(underlying.readLedgerMetadata(LEDGER_ID))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(storedMetadata));
+        doAnswer(invocation -> {
+            long ledgerId = invocation.getArgument(0);
+            listeners.computeIfAbsent(ledgerId, id -> ConcurrentHashMap.newKeySet()).add(invocation.getArgument(1));
+            return null;
+        }).when(underlying).registerLedgerMetadataListener(anyLong(), any());
+        doAnswer(invocation -> {
+            long ledgerId = invocation.getArgument(0);
+            listeners.getOrDefault(ledgerId, ConcurrentHashMap.newKeySet()).remove(invocation.getArgument(1));
+            return null;
+        }).when(underlying).unregisterLedgerMetadataListener(anyLong(), any());
+        ledgerManager = new CachingLedgerManager(underlying, 100, NullStatsLogger.INSTANCE.getCounter("hits"),
+                NullStatsLogger.INSTANCE.getCounter("misses"));
+    }
+
+    @Test
+    public void testClosedLedgerIsCached() throws Exception {
+        storedMetadata = closedMetadata(1L);
+
+        assertSame(storedMetadata, ledgerManager.readLedgerMetadata(LEDGER_ID).get());
+        assertSame(storedMetadata, ledgerManager.readLedgerMetadata(LEDGER_ID).get());
+        verify(underlying, times(1)).readLedgerMetadata(LEDGER_ID);
+        assertEquals(1, ledgerManager.getCachedLedgersCount());
+    }
+
+    @Test
+    public void testOpenLedgerIsNotCached() throws Exception {
+        storedMetadata = new Versioned<>(metadataBuilder().build(), new LongVersion(1L));
+
+        ledgerManager.readLedgerMetadata(LEDGER_ID).get();
+        ledgerManager.readLedgerMetadata(LEDGER_ID).get();
+        verify(underlying, times(2)).readLedgerMetadata(LEDGER_ID);
+        assertEquals(0, ledgerManager.getCachedLedgersCount());
+    }
+
+    @Test
+    public void testWatchedLedgerIsCachedUntilUnwatched() throws Exception {
+        LedgerMetadataListener clientListener = (ledgerId, metadata) -> { };
+        ledgerManager.registerLedgerMetadataListener(LEDGER_ID, clientListener);
+        storedMetadata = new Versioned<>(metadataBuilder().build(), new LongVersion(1L));
+        notifyListeners(storedMetadata);
+
+        assertSame(storedMetadata, ledgerManager.readLedgerMetadata(LEDGER_ID).get());
+        verify(underlying, times(0)).readLedgerMetadata(LEDGER_ID);
+
+        // the metadata of an open ledger is not kept up to date once it is not watched anymore
+        ledgerManager.unregisterLedgerMetadataListener(LEDGER_ID, clientListener);
+        ledgerManager.readLedgerMetadata(LEDGER_ID).get();
+        verify(underlying, times(1)).readLedgerMetadata(LEDGER_ID);
+    }
+
+    @Test
+    public void testWatchUpdatesCachedMetadata() throws Exception {
+        storedMetadata = closedMetadata(1L);
+        ledgerManager.readLedgerMetadata(LEDGER_ID).get();
+
+        // e.g. a bookie of the ensemble was re-replicated
+        List<BookieId> newEnsemble = new ArrayList<>(ensemble);
+        newEnsemble.set(0, BookieId.parse("bookie-3:3181"));
+        storedMetadata = new Versioned<>(LedgerMetadataBuilder.from(storedMetadata.getValue())
+                .replaceEnsembleEntry(0L, newEnsemble).build(), new LongVersion(2L));
+        notifyListeners(storedMetadata);
+        assertSame(storedMetadata, ledgerManager.readLedgerMetadata(LEDGER_ID).get());
+
+        // a late notification of an older version is ignored
+        notifyListeners(closedMetadata(1L));
+        assertSame(storedMetadata, ledgerManager.readLedgerMetadata(LEDGER_ID).get());
+        verify(underlying, times(1)).readLedgerMetadata(LEDGER_ID);
+    }
+
+    @Test
+    public void testWatchInvalidatesCachedMetadata() throws Exception {
+        storedMetadata = closedMetadata(1L);
+        ledgerManager.readLedgerMetadata(LEDGER_ID).get();
+
+        // a forced recovery puts the ledger back in recovery
+        storedMetadata = new Versioned<>(metadataBuilder().withInRecoveryState().build(), new LongVersion(2L));
+        notifyListeners(storedMetadata);
+        assertEquals(0, ledgerManager.getCachedLedgersCount());
+        assertSame(storedMetadata, ledgerManager.readLedgerMetadata(LEDGER_ID).get());
+        verify(underlying, times(2)).readLedgerMetadata(LEDGER_ID);
+
+        // the ledger is deleted
+        storedMetadata = closedMetadata(3L);
+        ledgerManager.readLedgerMetadata(LEDGER_ID).get();
+        assertEquals(1, ledgerManager.getCachedLedgersCount());
+        notifyListeners(null);
+        assertEquals(0, ledgerManager.getCachedLedgersCount());
+    }
+
+    @Test
+    public void testSuccessfulWriteIsCached() throws Exception {
+        storedMetadata = new Versioned<>(metadataBuilder().build(), new LongVersion(1L));
+        Versioned<LedgerMetadata> closed = closedMetadata(2L);
+        when(underlying.writeLedgerMetadata(eq(LEDGER_ID), any(), any(Version.class)))
+                .thenReturn(CompletableFuture.completedFuture(closed));
+
+        assertSame(closed, ledgerManager.writeLedgerMetadata(LEDGER_ID, closed.getValue(), new LongVersion(1L))
+                .get());
+        assertSame(closed, ledgerManager.readLedgerMetadata(LEDGER_ID).get());
+        verify(underlying, times(0)).readLedgerMetadata(LEDGER_ID);
+    }
+
+    @Test
+    public void testFailedWriteReadsLatestMetadata() throws Exception {
+        storedMetadata = closedMetadata(1L);
+        ledgerManager.readLedgerMetadata(LEDGER_ID).get();
+
+        // another client updated the metadata, and the notification is not received yet
+        storedMetadata = closedMetadata(2L);
+        failWrites();
+        assertWriteFails(closedMetadata(1L));
+
+        // the writer retries with the metadata of the store
+        assertSame(storedMetadata, ledgerManager.readLedgerMetadata(LEDGER_ID).get());
+        verify(underlying, times(2)).readLedgerMetadata(LEDGER_ID);
+    }
+
+    @Test
+    public void testReadConcurrentWithFailedWriteIsNotCached() throws Exception {
+        Versioned<LedgerMetadata> staleMetadata = closedMetadata(1L);
+        CompletableFuture<Versioned<LedgerMetadata>> staleRead = new CompletableFuture<>();
+        when(underlying.readLedgerMetadata(LEDGER_ID)).thenReturn(staleRead)
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(storedMetadata));
+        CompletableFuture<Versioned<LedgerMetadata>> read = ledgerManager.readLedgerMetadata(LEDGER_ID);
+
+        // the write conflicts with an update of another client, while the read is in progress
+        storedMetadata = closedMetadata(2L);
+        failWrites();
+        assertWriteFails(staleMetadata);
+
+        // the read completes with the metadata from before the update, which must not be cached
+        staleRead.complete(staleMetadata);
+        assertSame(staleMetadata, read.get());
+        assertEquals(0, ledgerManager.getCachedLedgersCount());
+        assertSame(storedMetadata, ledgerManager.readLedgerMetadata(LEDGER_ID).get());
+    }
+
+    private void failWrites() {
+        CompletableFuture<Versioned<LedgerMetadata>> conflict = new CompletableFuture<>();
+        conflict.completeExceptionally(new BKException.BKMetadataVersionException());
+        when(underlying.writeLedgerMetadata(anyLong(), any(), any(Version.class))).thenReturn(conflict);
+    }
+
+    private void assertWriteFails(Versioned<LedgerMetadata> current) throws InterruptedException {
+        try {
+            ledgerManager.writeLedgerMetadata(LEDGER_ID, current.getValue(), current.getVersion()).get();
+            fail("The write should conflict");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BKException.BKMetadataVersionException);
+        }
+        assertEquals(0, ledgerManager.getCachedLedgersCount());
+    }
+
+    private void notifyListeners(Versioned<LedgerMetadata> metadata) {
+        listeners.getOrDefault(LEDGER_ID, ConcurrentHashMap.newKeySet())
+                .forEach(listener -> listener.onChanged(LEDGER_ID, metadata));
+    }
+
+    private Versioned<LedgerMetadata> closedMetadata(long version) {
+        return new Versioned<>(metadataBuilder().withClosedState().withLastEntryId(version).withLength(version)
+                .build(), new LongVersion(version));
+    }
+
+    private LedgerMetadataBuilder metadataBuilder() {
+        return LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withEnsembleSize(3)
+                .withWriteQuorumSize(3)
+                .withAckQuorumSize(2)
+                .withPassword("password".getBytes(StandardCharsets.UTF_8))
+                .withDigestType(DigestType.CRC32C)
+                .newEnsembleEntry(0L, ensemble);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test how {@link BookieClientImpl} remembers the bookies which rejected a range read.
+ */
+public class BookieClientImplRangeReadTest {
+
+    private final BookieId bookie1 = BookieId.parse("127.0.0.1:3181");
+    private final BookieId bookie2 = BookieId.parse("127.0.0.2:3181");
+
+    private EventLoopGroup eventLoopGroup;
+    private OrderedExecutor executor;
+    private ScheduledExecutorService scheduler;
+    private BookieClientImpl bookieClient;
+
+    @Before
+    public void setUp() throws Exception {
+        eventLoopGroup = new NioEventLoopGroup(1);
+        executor = OrderedExecutor.newBuilder().name("range-read-test").numThreads(1).build();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        bookieClient = new BookieClientImpl(new ClientConfiguration(), eventLoopGroup,
+                UnpooledByteBufAllocator.DEFAULT, executor, scheduler, NullStatsLogger.INSTANCE,
+                BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        bookieClient.close();
+        eventLoopGroup.shutdownGracefully();
+        executor.shutdown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testRangeReadRejectionIsPerBookie() throws Exception {
+        assertTrue(bookieClient.isRangeReadSupported(bookie1));
+        assertTrue(bookieClient.isRangeReadSupported(bookie2));
+
+        bookieClient.recordRangeReadRejection(bookie1);
+
+        assertFalse(bookieClient.isRangeReadSupported(bookie1));
+        assertTrue(bookieClient.isRangeReadSupported(bookie2));
+    }
+
+    @Test
+    public void testRangeReadToRejectingBookieFailsImmediately() throws Exception {
+        bookieClient.recordRangeReadRejection(bookie1);
+
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        bookieClient.readEntries(bookie1, 1L, 0L, 9L, 10, 0L,
+                (rc, ledgerId, firstEntryId, entries, ctx) -> result.complete(rc),
+                null, BookieProtocol.FLAG_NONE, false);
+
+        assertEquals(BKException.Code.IllegalOpException, (int) result.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRangeReadRejectionExpires() throws Exception {
+        bookieClient.recordRangeReadRejection(bookie1);
+        assertFalse(bookieClient.isRangeReadSupported(bookie1));
+
+        // the bookie is tried again once the retry interval passed, in case it got upgraded
+        bookieClient.setRangeReadRetryIntervalNanos(0L);
+        assertTrue(bookieClient.isRangeReadSupported(bookie1));
+
+        // and it is forgotten, a new rejection being needed to stop the range reads again
+        bookieClient.setRangeReadRetryIntervalNanos(TimeUnit.MINUTES.toNanos(10));
+        assertTrue(bookieClient.isRangeReadSupported(bookie1));
+        bookieClient.recordRangeReadRejection(bookie1);
+        assertFalse(bookieClient.isRangeReadSupported(bookie1));
+    }
+}
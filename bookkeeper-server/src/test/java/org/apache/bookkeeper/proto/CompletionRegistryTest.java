@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link CompletionRegistry}.
+ */
+public class CompletionRegistryTest {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final int READ = 2;
+
+    private static class TestCompletion extends CompletionRegistry.Entry<TestCompletion> {
+    }
+
+    @Test
+    public void testLateFailureOfRecycledV3Completion() {
+        CompletionRegistry<TestCompletion> registry = new CompletionRegistry<>(TICK_NANOS, 64, 0);
+        TestCompletion completion = new TestCompletion();
+
+        long firstId = registry.put(1, READ, completion, TIMEOUT_NANOS);
+        assertTrue(registry.isRegistered(completion, firstId));
+
+        // answered, then recycled and registered for another request
+        assertSame(completion, registry.remove(1, READ));
+        assertFalse(registry.isRegistered(completion, firstId));
+        long secondId = registry.put(2, READ, completion, TIMEOUT_NANOS);
+
+        // the write of the first request fails late
+        assertFalse(registry.isRegistered(completion, firstId));
+        assertFalse(registry.remove(completion, firstId));
+        assertTrue(registry.isRegistered(completion, secondId));
+        assertEquals(1, registry.size());
+
+        assertSame(completion, registry.remove(2, READ));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testLateFailureOfRecycledV2Completion() {
+        CompletionRegistry<TestCompletion> registry = new CompletionRegistry<>(TICK_NANOS, 64, 0);
+        TestCompletion completion = new TestCompletion();
+
+        long firstId = registry.put(1, 1, READ, completion, TIMEOUT_NANOS);
+        assertSame(completion, registry.removeV2(1, 1, READ));
+
+        // registered again with the same key, as a read retried on the same bookie
+        long secondId = registry.put(1, 1, READ, completion, TIMEOUT_NANOS);
+        assertFalse(firstId == secondId);
+        assertFalse(registry.isRegistered(completion, firstId));
+        assertFalse(registry.remove(completion, firstId));
+        assertTrue(registry.isRegistered(completion, secondId));
+
+        // and with another key
+        assertSame(completion, registry.removeV2(1, 1, READ));
+        long thirdId = registry.put(1, 2, READ, completion, TIMEOUT_NANOS);
+        assertFalse(registry.remove(completion, firstId));
+        assertFalse(registry.remove(completion, secondId));
+        assertEquals(1, registry.size());
+
+        assertTrue(registry.remove(completion, thirdId));
+        assertNull(registry.removeV2(1, 2, READ));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testFailureClaimsOnlyItsOwnCompletion() {
+        CompletionRegistry<TestCompletion> registry = new CompletionRegistry<>(TICK_NANOS, 64, 0);
+        TestCompletion first = new TestCompletion();
+        TestCompletion second = new TestCompletion();
+
+        // speculative reads of the same entry
+        long firstId = registry.put(1, 1, READ, first, TIMEOUT_NANOS);
+        long secondId = registry.put(1, 1, READ, second, TIMEOUT_NANOS);
+
+        assertTrue(registry.remove(second, secondId));
+        assertFalse(registry.remove(second, secondId));
+        assertSame(first, registry.removeV2(1, 1, READ));
+        assertFalse(registry.remove(first, firstId));
+    }
+
+    @Test
+    public void testFailedCompletionDoesNotExpire() {
+        CompletionRegistry<TestCompletion> registry = new CompletionRegistry<>(TICK_NANOS, 64, 0);
+        TestCompletion completion = new TestCompletion();
+        List<TestCompletion> expired = new ArrayList<>();
+
+        long firstId = registry.put(1, READ, completion, TIMEOUT_NANOS);
+        assertTrue(registry.remove(completion, firstId));
+        assertEquals(0, registry.expire(2 * TIMEOUT_NANOS, expired::add));
+
+        long secondId = registry.put(2, 2, READ, completion, 3 * TIMEOUT_NANOS);
+        assertFalse(registry.remove(completion, firstId));
+        assertEquals(1, registry.expire(4 * TIMEOUT_NANOS, expired::add));
+        assertSame(completion, expired.get(0));
+        assertFalse(registry.remove(completion, secondId));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Ticker;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Unit test {@link DecayingLatencyHistogram}.
+ */
+public class DecayingLatencyHistogramTest {
+
+    private static final long HALF_LIFE_SECONDS = 10;
+    private static final long SNAPSHOT_INTERVAL_SECONDS = 1;
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    private DecayingLatencyHistogram newHistogram(long minSamples) {
+        return new DecayingLatencyHistogram(HALF_LIFE_SECONDS, SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS,
+                minSamples, ticker);
+    }
+
+    @Test
+    public void testBuckets() {
+        long previousUpperBound = -1;
+        for (long micros = 0; micros < 1_000_000; micros++) {
+            int index = DecayingLatencyHistogram.bucketIndex(micros);
+            long upperBound = DecayingLatencyHistogram.bucketUpperBound(index);
+            assertTrue("Upper bound of " + micros, micros <= upperBound);
+            // four buckets per power of two
+            assertTrue("Upper bound of " + micros, upperBound <= micros * 1.25);
+            assertTrue(upperBound >= previousUpperBound);
+            if (upperBound != previousUpperBound) {
+                // the upper bound of the previous bucket
+                assertEquals(previousUpperBound, micros - 1);
+            }
+            previousUpperBound = upperBound;
+        }
+        assertEquals(0, DecayingLatencyHistogram.bucketIndex(-1));
+        int last = DecayingLatencyHistogram.bucketIndex(Long.MAX_VALUE);
+        assertEquals(last, DecayingLatencyHistogram.bucketIndex(1L << 50));
+    }
+
+    @Test
+    public void testPercentileAccuracy() {
+        DecayingLatencyHistogram histogram = newHistogram(1);
+        // 1 to 1000 ms, shuffled
+        List<Long> latencies = new ArrayList<>();
+        for (long millis = 1; millis <= 1000; millis++) {
+            latencies.add(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        Collections.shuffle(latencies, new Random(0));
+        latencies.forEach(histogram::recordLatency);
+
+        for (double percentile : new double[] { 1, 25, 50, 90, 99, 100 }) {
+            long expected = TimeUnit.MILLISECONDS.toNanos((long) (percentile * 10));
+            long actual = histogram.getPercentileNanos(percentile);
+            assertTrue("p" + percentile + " = " + actual, expected <= actual && actual <= expected * 1.25);
+        }
+    }
+
+    @Test
+    public void testTooFewSamples() {
+        DecayingLatencyHistogram histogram = newHistogram(10);
+        for (int i = 0; i < 9; i++) {
+            histogram.recordLatency(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        assertEquals(-1L, histogram.getPercentileNanos(50));
+
+        histogram.recordLatency(TimeUnit.MILLISECONDS.toNanos(5));
+        ticker.advance(SNAPSHOT_INTERVAL_SECONDS);
+        assertLatencyMillis(5, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    public void testSnapshotInterval() {
+        DecayingLatencyHistogram histogram = newHistogram(1);
+        histogram.recordLatency(TimeUnit.MILLISECONDS.toNanos(5));
+        assertLatencyMillis(5, histogram.getPercentileNanos(100));
+
+        // the latencies recorded since the last snapshot are only seen once the snapshot interval is over
+        histogram.recordLatency(TimeUnit.MILLISECONDS.toNanos(100));
+        assertLatencyMillis(5, histogram.getPercentileNanos(100));
+        ticker.advance(SNAPSHOT_INTERVAL_SECONDS);
+        assertLatencyMillis(100, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void testDecay() {
+        DecayingLatencyHistogram histogram = newHistogram(10);
+        for (int i = 0; i < 100; i++) {
+            histogram.recordLatency(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        assertLatencyMillis(5, histogram.getPercentileNanos(50));
+
+        // the bookie slows down, the old latencies are halved
+        ticker.advance(HALF_LIFE_SECONDS);
+        assertLatencyMillis(5, histogram.getPercentileNanos(50));
+        for (int i = 0; i < 100; i++) {
+            histogram.recordLatency(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        ticker.advance(SNAPSHOT_INTERVAL_SECONDS);
+        // 50 fast and 100 slow latencies
+        assertLatencyMillis(5, histogram.getPercentileNanos(30));
+        assertLatencyMillis(100, histogram.getPercentileNanos(50));
+
+        // the latencies of a bookie not heard of for a few half-lives are forgotten
+        ticker.advance(HALF_LIFE_SECONDS * 4);
+        assertEquals(-1L, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    public void testDecayOverManyHalfLives() {
+        DecayingLatencyHistogram histogram = newHistogram(1);
+        histogram.recordLatency(TimeUnit.MILLISECONDS.toNanos(5));
+        ticker.advance(HALF_LIFE_SECONDS * 1000);
+        assertEquals(-1L, histogram.getPercentileNanos(50));
+
+        // the histogram is usable again once the bookie is back
+        histogram.recordLatency(TimeUnit.MILLISECONDS.toNanos(20));
+        ticker.advance(SNAPSHOT_INTERVAL_SECONDS);
+        assertLatencyMillis(20, histogram.getPercentileNanos(50));
+    }
+
+    private static void assertLatencyMillis(long expectedMillis, long actualNanos) {
+        long expectedNanos = TimeUnit.MILLISECONDS.toNanos(expectedMillis);
+        assertTrue("Expected " + expectedMillis + " ms but was " + actualNanos + " ns",
+                expectedNanos <= actualNanos && actualNanos <= expectedNanos * 1.25);
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos = 0;
+
+        void advance(long seconds) {
+            nanos += TimeUnit.SECONDS.toNanos(seconds);
+        }
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.Counter;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test {@link FlushStatsHandler}.
+ */
+public class FlushStatsHandlerTest {
+
+    private final Counter messagesCounter = mock(Counter.class);
+    private final Counter flushesCounter = mock(Counter.class);
+    private EmbeddedChannel channel;
+
+    @After
+    public void tearDown() {
+        if (channel != null) {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    public void testCountsMessagesAndFlushes() {
+        channel = newChannel(new ServerConfiguration().setNettyFlushConsolidationEnabled(false));
+        channel.write("a");
+        channel.write("b");
+        channel.flush();
+        channel.writeAndFlush("c");
+
+        verify(messagesCounter, times(3)).inc();
+        verify(flushesCounter, times(2)).inc();
+        assertOutbound("a", "b", "c");
+    }
+
+    @Test
+    public void testFlushesNotConsolidatedWhenDisabled() {
+        channel = newChannel(new ServerConfiguration().setNettyFlushConsolidationEnabled(false));
+        // each request read is answered with its own flush
+        channel.writeInbound("a", "b", "c");
+
+        verify(messagesCounter, times(3)).inc();
+        verify(flushesCounter, times(3)).inc();
+        assertOutbound("a", "b", "c");
+    }
+
+    @Test
+    public void testFlushesConsolidatedUntilReadComplete() {
+        channel = newChannel(new ServerConfiguration().setNettyFlushConsolidationEnabled(true));
+        channel.writeInbound("a", "b", "c");
+
+        verify(messagesCounter, times(3)).inc();
+        verify(flushesCounter, times(1)).inc();
+        assertOutbound("a", "b", "c");
+    }
+
+    @Test
+    public void testFlushesConsolidatedOutsideOfRead() {
+        channel = newChannel(new ServerConfiguration().setNettyFlushConsolidationEnabled(true));
+        // e.g. the responses written by the worker threads
+        channel.writeAndFlush("a");
+        channel.writeAndFlush("b");
+        verify(flushesCounter, never()).inc();
+
+        // the flush task of the event loop flushes both responses
+        channel.runPendingTasks();
+        verify(messagesCounter, times(2)).inc();
+        verify(flushesCounter, times(1)).inc();
+        assertOutbound("a", "b");
+    }
+
+    @Test
+    public void testMaxPendingFlushes() {
+        channel = newChannel(new ServerConfiguration()
+                .setNettyFlushConsolidationEnabled(true)
+                .setNettyFlushConsolidationMaxPendingFlushes(2));
+        // flushed after the second and the fourth response, and the last one once the read is complete
+        channel.writeInbound("a", "b", "c", "d", "e");
+
+        verify(messagesCounter, times(5)).inc();
+        verify(flushesCounter, times(3)).inc();
+        assertOutbound("a", "b", "c", "d", "e");
+    }
+
+    private EmbeddedChannel newChannel(ServerConfiguration conf) {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        FlushStatsHandler.addLast(channel.pipeline(), conf, messagesCounter, flushesCounter);
+        // answers each message read with the same message, like the bookie answers each request
+        channel.pipeline().addLast("echo", new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                ctx.writeAndFlush(msg);
+            }
+        });
+        return channel;
+    }
+
+    private void assertOutbound(Object... expected) {
+        for (Object msg : expected) {
+            assertEquals(msg, channel.readOutbound());
+        }
+        assertNull(channel.readOutbound());
+        assertTrue(channel.inboundMessages().isEmpty());
+    }
+}
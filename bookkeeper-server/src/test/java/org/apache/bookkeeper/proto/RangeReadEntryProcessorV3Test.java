@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test {@link RangeReadEntryProcessorV3}.
+ */
+public class RangeReadEntryProcessorV3Test {
+
+    private static final long LEDGER_ID = 1234L;
+    private static final int NUM_ENTRIES = 10;
+
+    private Channel channel;
+    private Bookie bookie;
+    private BookieRequestProcessor requestProcessor;
+    private final AtomicReference<Object> writtenObject = new AtomicReference<>();
+
+    @Before
+    public void setUp() throws Exception {
+        channel = mock(Channel.class);
+        when(channel.isWritable()).thenReturn(true);
+        when(channel.writeAndFlush(any())).thenAnswer(invocationOnMock -> {
+            writtenObject.set(invocationOnMock.getArgument(0));
+            return mock(ChannelFuture.class);
+        });
+
+        bookie = mock(Bookie.class);
+        when(bookie.readEntry(eq(LEDGER_ID), anyLong())).thenAnswer(invocationOnMock -> {
+            long entryId = invocationOnMock.getArgument(1);
+            if (entryId >= NUM_ENTRIES) {
+                throw new Bookie.NoEntryException(LEDGER_ID, entryId);
+            }
+            return Unpooled.copiedBuffer(getEntryData(entryId), StandardCharsets.UTF_8);
+        });
+        when(bookie.readLastAddConfirmed(LEDGER_ID)).thenReturn((long) NUM_ENTRIES - 1);
+
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getServerCfg()).thenReturn(new ServerConfiguration());
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        when(requestProcessor.getWaitTimeoutOnBackpressureMillis()).thenReturn(-1L);
+    }
+
+    @Test
+    public void testReadRange() throws Exception {
+        RangeReadResponse response = readRange(2, 6, 0, 0);
+
+        assertEquals(StatusCode.EOK, response.getStatus());
+        assertEntries(response, 2, 5);
+        assertEquals(NUM_ENTRIES - 1, response.getMaxLAC());
+    }
+
+    @Test
+    public void testReadRangeStopsAtMaxCount() throws Exception {
+        RangeReadResponse response = readRange(0, NUM_ENTRIES - 1, 3, 0);
+
+        // a partial response, the client asks for the other entries again
+        assertEquals(StatusCode.EOK, response.getStatus());
+        assertEntries(response, 0, 3);
+    }
+
+    @Test
+    public void testReadRangeStopsAtMaxSize() throws Exception {
+        int entrySize = getEntryData(0).length();
+        RangeReadResponse response = readRange(0, NUM_ENTRIES - 1, 0, 2 * entrySize + 1);
+
+        assertEquals(StatusCode.EOK, response.getStatus());
+        assertEntries(response, 0, 2);
+    }
+
+    @Test
+    public void testReadRangeReturnsFirstEntryOverMaxSize() throws Exception {
+        RangeReadResponse response = readRange(0, NUM_ENTRIES - 1, 0, 1);
+
+        assertEquals(StatusCode.EOK, response.getStatus());
+        assertEntries(response, 0, 1);
+    }
+
+    @Test
+    public void testReadRangeStopsAtMissingEntry() throws Exception {
+        RangeReadResponse response = readRange(NUM_ENTRIES - 3, NUM_ENTRIES + 5, 0, 0);
+
+        assertEquals(StatusCode.EOK, response.getStatus());
+        assertEntries(response, NUM_ENTRIES - 3, 3);
+    }
+
+    @Test
+    public void testReadRangeOfMissingEntries() throws Exception {
+        RangeReadResponse response = readRange(NUM_ENTRIES, NUM_ENTRIES + 5, 0, 0);
+
+        assertEquals(StatusCode.ENOENTRY, response.getStatus());
+        assertEquals(0, response.getBodyCount());
+    }
+
+    @Test
+    public void testInvalidRange() throws Exception {
+        // the bad request is answered with a range read response, which tells the client it isn't an unknown
+        // operation
+        Response response = process(newRequest(5, 4, 0, 0));
+        assertEquals(StatusCode.EBADREQ, response.getStatus());
+        assertTrue(response.hasRangeReadResponse());
+        assertEquals(StatusCode.EBADREQ, response.getRangeReadResponse().getStatus());
+
+        response = process(newRequest(-1, 4, 0, 0));
+        assertEquals(StatusCode.EBADREQ, response.getStatus());
+        assertTrue(response.hasRangeReadResponse());
+    }
+
+    private RangeReadResponse readRange(long firstEntryId, long lastEntryId, int maxCount, long maxSize) {
+        Response response = process(newRequest(firstEntryId, lastEntryId, maxCount, maxSize));
+        assertEquals(response.getRangeReadResponse().getStatus(), response.getStatus());
+        assertEquals(LEDGER_ID, response.getRangeReadResponse().getLedgerId());
+        assertEquals(firstEntryId, response.getRangeReadResponse().getFirstEntryId());
+        return response.getRangeReadResponse();
+    }
+
+    private Response process(Request request) {
+        writtenObject.set(null);
+        new RangeReadEntryProcessorV3(request, channel, requestProcessor).run();
+        assertTrue(writtenObject.get() instanceof Response);
+        return (Response) writtenObject.get();
+    }
+
+    private static Request newRequest(long firstEntryId, long lastEntryId, int maxCount, long maxSize) {
+        RangeReadRequest.Builder rangeReadRequest = RangeReadRequest.newBuilder()
+                .setLedgerId(LEDGER_ID)
+                .setFirstEntryId(firstEntryId)
+                .setLastEntryId(lastEntryId);
+        if (maxCount > 0) {
+            rangeReadRequest.setMaxCount(maxCount);
+        }
+        if (maxSize > 0) {
+            rangeReadRequest.setMaxSize(maxSize);
+        }
+        return Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.RANGE_READ_ENTRY)
+                        .setTxnId(1L))
+                .setRangeReadRequest(rangeReadRequest)
+                .build();
+    }
+
+    private static void assertEntries(RangeReadResponse response, long firstEntryId, int numEntries) {
+        assertEquals(numEntries, response.getBodyCount());
+        for (int i = 0; i < numEntries; i++) {
+            assertEquals(getEntryData(firstEntryId + i), response.getBody(i).toStringUtf8());
+        }
+    }
+
+    private static String getEntryData(long entryId) {
+        return "entry-" + entryId;
+    }
+}
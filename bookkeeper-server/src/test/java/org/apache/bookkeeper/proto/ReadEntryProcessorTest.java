@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.FileRegion;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.ssl.SslHandler;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookieProtocol.ReadRequest;
+import org.apache.bookkeeper.proto.BookieProtocol.ReadResponse;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test the zero-copy reads of {@link ReadEntryProcessor}.
+ */
+public class ReadEntryProcessorTest {
+
+    private static final long LEDGER_ID = 1234L;
+    private static final long ENTRY_ID = 5L;
+    private static final int FILE_REGION_MIN_SIZE = 1024;
+    private static final String ENTRY_DATA = "ledger-1234-entry-5";
+
+    private Bookie bookie;
+    private BookieRequestProcessor requestProcessor;
+    private FileRegion fileRegion;
+    private final AtomicReference<Object> writtenObject = new AtomicReference<>();
+
+    @Before
+    public void setUp() throws Exception {
+        fileRegion = mock(FileRegion.class);
+        bookie = mock(Bookie.class);
+        when(bookie.readEntryRegion(eq(LEDGER_ID), eq(ENTRY_ID), anyInt())).thenReturn(fileRegion);
+        when(bookie.readEntry(LEDGER_ID, ENTRY_ID))
+                .thenAnswer(invocationOnMock -> Unpooled.copiedBuffer(ENTRY_DATA, StandardCharsets.UTF_8));
+
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getServerCfg()).thenReturn(new ServerConfiguration());
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        when(requestProcessor.getWaitTimeoutOnBackpressureMillis()).thenReturn(-1L);
+    }
+
+    @Test
+    public void testZeroCopyRead() throws Exception {
+        ReadResponse response = read(mockChannel(NioSocketChannel.class, false), FILE_REGION_MIN_SIZE);
+
+        assertEquals(BookieProtocol.EOK, response.getErrorCode());
+        assertSame(fileRegion, response.getDataRegion());
+        assertFalse(response.hasData());
+        verify(bookie).readEntryRegion(LEDGER_ID, ENTRY_ID, FILE_REGION_MIN_SIZE);
+        verify(bookie, never()).readEntry(anyLong(), anyLong());
+
+        // the epoll transport writes file regions with sendfile too
+        writtenObject.set(null);
+        response = read(mockChannel(EpollSocketChannel.class, false), FILE_REGION_MIN_SIZE);
+        assertSame(fileRegion, response.getDataRegion());
+    }
+
+    @Test
+    public void testSmallEntryIsCopied() throws Exception {
+        // the entry is smaller than the minimum size of a file region
+        when(bookie.readEntryRegion(eq(LEDGER_ID), eq(ENTRY_ID), anyInt())).thenReturn(null);
+
+        ReadResponse response = read(mockChannel(NioSocketChannel.class, false), FILE_REGION_MIN_SIZE);
+
+        verify(bookie).readEntryRegion(LEDGER_ID, ENTRY_ID, FILE_REGION_MIN_SIZE);
+        assertCopiedEntry(response);
+    }
+
+    @Test
+    public void testZeroCopyReadDisabled() throws Exception {
+        ReadResponse response = read(mockChannel(NioSocketChannel.class, false), 0);
+
+        verify(bookie, never()).readEntryRegion(anyLong(), anyLong(), anyInt());
+        assertCopiedEntry(response);
+    }
+
+    @Test
+    public void testTlsFallsBackToCopy() throws Exception {
+        // the TLS handler has to encrypt the entry, it can't be sent from the file
+        ReadResponse response = read(mockChannel(NioSocketChannel.class, true), FILE_REGION_MIN_SIZE);
+
+        verify(bookie, never()).readEntryRegion(anyLong(), anyLong(), anyInt());
+        assertCopiedEntry(response);
+    }
+
+    @Test
+    public void testIoUringFallsBackToCopy() throws Exception {
+        // the io_uring transport is not on the test classpath, its channels are socket channels of another transport
+        ReadResponse response = read(mockChannel(SocketChannel.class, false), FILE_REGION_MIN_SIZE);
+
+        verify(bookie, never()).readEntryRegion(anyLong(), anyLong(), anyInt());
+        assertCopiedEntry(response);
+    }
+
+    @Test
+    public void testLocalChannelFallsBackToCopy() throws Exception {
+        ReadResponse response = read(mockChannel(LocalChannel.class, false), FILE_REGION_MIN_SIZE);
+
+        verify(bookie, never()).readEntryRegion(anyLong(), anyLong(), anyInt());
+        assertCopiedEntry(response);
+    }
+
+    private <T extends Channel> T mockChannel(Class<T> channelClass, boolean tls) {
+        T channel = mock(channelClass);
+        ChannelPipeline pipeline = mock(ChannelPipeline.class);
+        when(pipeline.get(SslHandler.class)).thenReturn(tls ? mock(SslHandler.class) : null);
+        when(channel.pipeline()).thenReturn(pipeline);
+        when(channel.isWritable()).thenReturn(true);
+        when(channel.writeAndFlush(any(), any())).thenAnswer(invocationOnMock -> {
+            writtenObject.set(invocationOnMock.getArgument(0));
+            return mock(ChannelFuture.class);
+        });
+        return channel;
+    }
+
+    private ReadResponse read(Channel channel, int fileRegionMinSize) {
+        ReadRequest request = new ReadRequest(BookieProtocol.CURRENT_PROTOCOL_VERSION, LEDGER_ID, ENTRY_ID,
+                BookieProtocol.FLAG_NONE, null);
+        ReadEntryProcessor processor = ReadEntryProcessor.create(request, channel, requestProcessor, null, false,
+                fileRegionMinSize);
+        processor.run();
+
+        assertTrue(writtenObject.get() instanceof ReadResponse);
+        return (ReadResponse) writtenObject.get();
+    }
+
+    private static void assertCopiedEntry(ReadResponse response) {
+        assertEquals(BookieProtocol.EOK, response.getErrorCode());
+        assertNull(response.getDataRegion());
+        ByteBuf data = response.getData();
+        assertEquals(ENTRY_DATA, data.toString(StandardCharsets.UTF_8));
+        data.release();
+    }
+}
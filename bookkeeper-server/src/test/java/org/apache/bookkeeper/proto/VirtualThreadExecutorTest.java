@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Test;
+
+/**
+ * Unit test {@link VirtualThreadExecutor}. The executor is run with platform threads, so that it is tested on the
+ * JVMs without virtual threads as well.
+ */
+public class VirtualThreadExecutorTest {
+
+    private static boolean isVirtualThreadsSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static VirtualThreadExecutor newExecutor(int maxConcurrency, int maxPendingTasks) {
+        return new VirtualThreadExecutor(Executors.defaultThreadFactory(), maxConcurrency, maxPendingTasks,
+                NullStatsLogger.INSTANCE.getOpStatsLogger("pinned"));
+    }
+
+    @Test
+    public void testNewVirtualThreadFactory() throws Exception {
+        ThreadFactory threadFactory = VirtualThreadExecutor.newVirtualThreadFactory("test-virtual-thread");
+        if (!isVirtualThreadsSupported()) {
+            // the read worker threads are used instead
+            assertNull(threadFactory);
+            return;
+        }
+        assertNotNull(threadFactory);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread thread = threadFactory.newThread(done::countDown);
+        assertTrue(thread.getName().startsWith("test-virtual-thread-"));
+        thread.start();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMaxConcurrency() throws Exception {
+        int maxConcurrency = 2;
+        int numTasks = 10;
+        VirtualThreadExecutor executor = newExecutor(maxConcurrency, 0);
+        AtomicInteger running = new AtomicInteger(0);
+        AtomicInteger maxRunning = new AtomicInteger(0);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(numTasks);
+        for (int i = 0; i < numTasks; i++) {
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        // wait for the tasks allowed to run to be running
+        long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (running.get() < maxConcurrency && System.nanoTime() < deadlineNanos) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(maxConcurrency, running.get());
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(maxConcurrency, maxRunning.get());
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMaxPendingTasks() throws Exception {
+        int maxPendingTasks = 4;
+        VirtualThreadExecutor executor = newExecutor(1, maxPendingTasks);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(maxPendingTasks);
+        Runnable task = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        };
+        // the running task counts as pending as well
+        for (int i = 0; i < maxPendingTasks; i++) {
+            executor.execute(task);
+        }
+        try {
+            executor.execute(task);
+            fail("Should reject a task over the limit of pending tasks");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // the tasks are accepted again once the pending ones are done
+        CountDownLatch accepted = new CountDownLatch(1);
+        long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (accepted.getCount() > 0 && System.nanoTime() < deadlineNanos) {
+            try {
+                executor.execute(accepted::countDown);
+            } catch (RejectedExecutionException e) {
+                // the last tasks are finishing
+                Thread.sleep(10);
+            }
+        }
+        assertTrue(accepted.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        VirtualThreadExecutor executor = newExecutor(1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+
+        executor.shutdown();
+        assertTrue(executor.isShutdown());
+        try {
+            executor.execute(() -> { });
+            fail("Should reject a task once shut down");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        // the running task isn't interrupted, and the executor terminates once it is done
+        assertFalse(executor.isTerminated());
+        assertFalse(executor.awaitTermination(100, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(executor.isTerminated());
+    }
+
+    @Test
+    public void testFailedThreadStartIsRejected() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor(r -> {
+            throw new IllegalStateException("Injected failure creating a thread");
+        }, 1, 1, NullStatsLogger.INSTANCE.getOpStatsLogger("pinned"));
+        for (int i = 0; i < 2; i++) {
+            try {
+                executor.execute(() -> { });
+                fail("Should reject a task which can't be started");
+            } catch (RejectedExecutionException e) {
+                // and the task doesn't count as pending, so it isn't rejected for being over the limit next time
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+        executor.shutdown();
+        assertTrue(executor.isTerminated());
+    }
+}
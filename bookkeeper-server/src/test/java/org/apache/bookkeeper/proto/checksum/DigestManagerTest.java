@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto.checksum;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Checks that the batched digests of {@link DigestManager} match the digests computed entry by entry.
+ */
+@RunWith(Parameterized.class)
+public class DigestManagerTest {
+
+    private static final long LEDGER_ID = 1234L;
+    private static final int NUM_ENTRIES = 20;
+    private static final byte[] PASSWORD = "password".getBytes(StandardCharsets.UTF_8);
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> digestTypes() {
+        return Arrays.asList(new Object[][] {
+            { "crc32", DigestType.CRC32 },
+            { "crc32c", DigestType.CRC32C },
+            { "hmac", DigestType.HMAC },
+        });
+    }
+
+    private final DigestType digestType;
+    private final Random random = new Random(0);
+    private final List<ByteBuf> entries = new ArrayList<>();
+    private DigestManager digestManager;
+
+    public DigestManagerTest(String name, DigestType digestType) {
+        this.digestType = digestType;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        digestManager = DigestManager.instantiate(LEDGER_ID, PASSWORD, digestType, UnpooledByteBufAllocator.DEFAULT,
+                false);
+    }
+
+    @After
+    public void tearDown() {
+        entries.forEach(ByteBuf::release);
+    }
+
+    @Test
+    public void testBatchDigestsMatchPerEntryDigests() {
+        // the CRC32C batch is checksummed with a single native call when all the buffers are direct
+        for (boolean direct : new boolean[] { false, true }) {
+            List<ByteBuf> payloads = new ArrayList<>();
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                payloads.add(payload(random.nextInt(1000), direct));
+            }
+
+            int macCodeLength = digestManager.getMacCodeLength();
+            ByteBuf[] buffers = new ByteBuf[NUM_ENTRIES];
+            int[] indexes = new int[NUM_ENTRIES];
+            ByteBuf[] digests = new ByteBuf[NUM_ENTRIES];
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                buffers[i] = payloads.get(i);
+                indexes[i] = i;
+                digests[i] = Unpooled.buffer(macCodeLength);
+            }
+            digestManager.populateValuesAndReset(buffers, indexes, NUM_ENTRIES, digests, NUM_ENTRIES);
+
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                ByteBuf expected = Unpooled.buffer(macCodeLength);
+                digestManager.update(payloads.get(i));
+                digestManager.populateValueAndReset(expected);
+                assertEquals("Digest of entry " + i, expected, digests[i]);
+                expected.release();
+                digests[i].release();
+            }
+            payloads.forEach(ByteBuf::release);
+        }
+    }
+
+    @Test
+    public void testVerifyBatch() throws Exception {
+        for (boolean direct : new boolean[] { false, true }) {
+            entries.forEach(ByteBuf::release);
+            entries.clear();
+            addEntries(0, NUM_ENTRIES, direct);
+
+            assertEquals(NUM_ENTRIES, digestManager.verifyDigestsAndReturnData(0, entries));
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                // the batch leaves the entries as the per-entry verification does
+                ByteBuf entry = entries.get(i);
+                ByteBuf expected = entry.duplicate().readerIndex(0);
+                assertEquals(digestManager.verifyDigestAndReturnData(i, expected), entry);
+            }
+        }
+    }
+
+    @Test
+    public void testVerifyBatchStopsAtCorruptedEntry() {
+        addEntries(0, NUM_ENTRIES, true);
+        ByteBuf corrupted = entries.get(5);
+        int last = corrupted.writerIndex() - 1;
+        corrupted.setByte(last, corrupted.getByte(last) + 1);
+
+        assertEquals(5, digestManager.verifyDigestsAndReturnData(0, entries));
+        assertReaderIndexes(5);
+    }
+
+    @Test
+    public void testVerifyBatchStopsAtUnexpectedEntry() {
+        addEntries(0, 3, false);
+        addEntries(10, 3, false);
+
+        assertEquals(3, digestManager.verifyDigestsAndReturnData(0, entries));
+        assertReaderIndexes(3);
+    }
+
+    @Test
+    public void testVerifyBatchStopsAtTruncatedEntry() {
+        addEntries(0, 3, false);
+        entries.add(Unpooled.buffer(8).writeLong(LEDGER_ID));
+        addEntries(4, 3, false);
+
+        assertEquals(3, digestManager.verifyDigestsAndReturnData(0, entries));
+        assertReaderIndexes(3);
+    }
+
+    private void assertReaderIndexes(int numVerified) {
+        int headerLength = DigestManager.METADATA_LENGTH + digestManager.getMacCodeLength();
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals("Entry " + i, i < numVerified ? headerLength : 0, entries.get(i).readerIndex());
+        }
+    }
+
+    private void addEntries(long firstEntryId, int numEntries, boolean direct) {
+        for (long entryId = firstEntryId; entryId < firstEntryId + numEntries; entryId++) {
+            ByteBuf payload = payload(random.nextInt(1000), false);
+            ByteBufList packaged = digestManager.computeDigestAndPackageForSending(entryId, entryId - 1,
+                    payload.readableBytes(), payload);
+            ByteBuf entry = ByteBufList.coalesce(packaged);
+            packaged.release();
+            if (direct) {
+                ByteBuf directEntry = Unpooled.directBuffer(entry.readableBytes()).writeBytes(entry);
+                entry.release();
+                entry = directEntry;
+            }
+            entries.add(entry);
+        }
+    }
+
+    private ByteBuf payload(int length, boolean direct) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return direct ? Unpooled.directBuffer(length).writeBytes(bytes) : Unpooled.wrappedBuffer(bytes);
+    }
+}
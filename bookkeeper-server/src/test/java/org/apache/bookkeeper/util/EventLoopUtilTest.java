@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeFalse;
+
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.concurrent.ThreadFactory;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.lang.SystemUtils;
+import org.junit.Test;
+
+/**
+ * Unit test {@link EventLoopUtil}.
+ */
+public class EventLoopUtilTest {
+
+    private final ThreadFactory threadFactory = new DefaultThreadFactory("event-loop-util-test");
+
+    @Test
+    public void testIoUringFallsBackWhenJarIsMissing() throws Exception {
+        // the io_uring transport is only on the classpath with the io_uring profile
+        assumeFalse(isOnClasspath("io.netty.incubator.channel.uring.IOUringEventLoopGroup"));
+
+        ClientConfiguration clientConf = new ClientConfiguration().setIoUringEnabled(true);
+        assertFallback(EventLoopUtil.getClientEventLoopGroup(clientConf, threadFactory));
+
+        ServerConfiguration serverConf = new ServerConfiguration().setIoUringEnabled(true);
+        assertFallback(EventLoopUtil.getServerEventLoopGroup(serverConf, threadFactory));
+    }
+
+    @Test
+    public void testChannelClasses() throws Exception {
+        EventLoopGroup nioGroup = new NioEventLoopGroup(1, threadFactory);
+        assertEquals(NioSocketChannel.class, EventLoopUtil.getClientSocketChannelClass(nioGroup));
+        assertEquals(NioServerSocketChannel.class, EventLoopUtil.getServerSocketChannelClass(nioGroup));
+        nioGroup.shutdownGracefully().sync();
+
+        EventLoopGroup localGroup = new DefaultEventLoopGroup(1, threadFactory);
+        assertEquals(LocalChannel.class, EventLoopUtil.getClientSocketChannelClass(localGroup));
+        assertEquals(LocalServerChannel.class, EventLoopUtil.getServerSocketChannelClass(localGroup));
+        localGroup.shutdownGracefully().sync();
+    }
+
+    private static void assertFallback(EventLoopGroup eventLoopGroup) throws InterruptedException {
+        try {
+            if (SystemUtils.IS_OS_LINUX && Epoll.isAvailable()) {
+                assertEquals(EpollEventLoopGroup.class, eventLoopGroup.getClass());
+                assertEquals(EpollSocketChannel.class, EventLoopUtil.getClientSocketChannelClass(eventLoopGroup));
+                assertEquals(EpollServerSocketChannel.class,
+                        EventLoopUtil.getServerSocketChannelClass(eventLoopGroup));
+            } else {
+                assertEquals(NioEventLoopGroup.class, eventLoopGroup.getClass());
+                assertEquals(NioSocketChannel.class, EventLoopUtil.getClientSocketChannelClass(eventLoopGroup));
+                assertEquals(NioServerSocketChannel.class,
+                        EventLoopUtil.getServerSocketChannelClass(eventLoopGroup));
+            }
+        } finally {
+            eventLoopGroup.shutdownGracefully().sync();
+        }
+    }
+
+    private static boolean isOnClasspath(String className) {
+        try {
+            Class.forName(className);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
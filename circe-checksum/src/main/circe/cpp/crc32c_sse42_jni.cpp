@@ -47,6 +47,24 @@ JNIEXPORT jint JNICALL Java_com_scurrilous_circe_crc_Sse42Crc32C_nativeUnsafe
     return (jint) crc32c((uint32_t) current, (const void *) address, (size_t) length, (const chunk_config*) config);
 }
 
+extern "C"
+JNIEXPORT void JNICALL Java_com_scurrilous_circe_crc_Sse42Crc32C_nativeUnsafeBatch
+(JNIEnv *env, jclass, jintArray current, jintArray indexes, jlongArray addresses, jlongArray lengths, jint count,
+ jlong config) {
+    jint *crcs = (jint *) env->GetPrimitiveArrayCritical(current, 0);
+    const jint *idx = (const jint *) env->GetPrimitiveArrayCritical(indexes, 0);
+    const jlong *addr = (const jlong *) env->GetPrimitiveArrayCritical(addresses, 0);
+    const jlong *len = (const jlong *) env->GetPrimitiveArrayCritical(lengths, 0);
+    for (jint i = 0; i < count; ++i) {
+        crcs[idx[i]] = (jint) crc32c((uint32_t) crcs[idx[i]], (const void *) addr[i], (size_t) len[i],
+                                     (const chunk_config*) config);
+    }
+    env->ReleasePrimitiveArrayCritical(lengths, (void*) len, JNI_ABORT);
+    env->ReleasePrimitiveArrayCritical(addresses, (void*) addr, JNI_ABORT);
+    env->ReleasePrimitiveArrayCritical(indexes, (void*) idx, JNI_ABORT);
+    env->ReleasePrimitiveArrayCritical(current, (void*) crcs, 0);
+}
+
 extern "C"
 JNIEXPORT jlong JNICALL Java_com_scurrilous_circe_crc_Sse42Crc32C_allocConfig
   (JNIEnv *env, jclass, jintArray chunkWords) {
@@ -22,9 +22,15 @@ import static com.scurrilous.circe.params.CrcParameters.CRC32C;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.scurrilous.circe.IncrementalIntHash;
+import com.scurrilous.circe.crc.JavaCrc32C;
 import com.scurrilous.circe.crc.Sse42Crc32C;
 import com.scurrilous.circe.crc.StandardCrcProvider;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.FastThreadLocal;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,35 +38,129 @@ public class Crc32cIntChecksum {
 
     private static final Logger log = LoggerFactory.getLogger(Crc32cIntChecksum.class);
 
+    /**
+     * System property forcing the CRC32C implementation: {@code sse42}, {@code java} or {@code table}, or
+     * {@code fastest} to time the available hardware assisted ones when the class is loaded and use the fastest.
+     */
+    public static final String IMPLEMENTATION_PROPERTY = "circe.checksum.crc32c.implementation";
+
+    private static final String FASTEST_IMPLEMENTATION = "fastest";
+
+    private static final int CALIBRATION_BUFFER_SIZE = 32 * 1024;
+    // many small checksums get the JIT compiler to compile the implementations faster than a few large ones
+    private static final int CALIBRATION_WARMUP_ROUNDS = 10000;
+    private static final int CALIBRATION_WARMUP_SIZE = 512;
+    private static final int CALIBRATION_ROUNDS = 20;
+
     @VisibleForTesting
     final static IncrementalIntHash CRC32C_HASH;
 
     static {
+        CRC32C_HASH = selectHash();
+    }
+
+    /**
+     * Selects the CRC32C implementation among the available ones: the JNI library using the SSE4.2 instruction, the
+     * JDK implementation intrinsified by the JIT compiler (Java 9+), and the table based Java implementation.
+     * Unless one is forced with {@link #IMPLEMENTATION_PROPERTY}, the first available one in this order is used. The
+     * selection by timing them on a few heap and direct buffers is opt-in, since it takes tens of milliseconds on the
+     * first checksum and may select a different implementation on each run.
+     */
+    private static IncrementalIntHash selectHash() {
+        Map<String, IncrementalIntHash> candidates = new LinkedHashMap<>();
         if (Sse42Crc32C.isSupported()) {
-            CRC32C_HASH = new Crc32cSse42Provider().getIncrementalInt(CRC32C);
-            log.info("SSE4.2 CRC32C provider initialized");
+            candidates.put("sse42", new Crc32cSse42Provider().getIncrementalInt(CRC32C));
         } else {
-            CRC32C_HASH = new StandardCrcProvider().getIncrementalInt(CRC32C);
-            log.warn("Failed to load Circe JNI library. Falling back to Java based CRC32c provider");
+            log.warn("Failed to load Circe JNI library");
+        }
+        if (JavaCrc32C.isSupported()) {
+            candidates.put("java", new JavaCrc32C());
+        }
+        IncrementalIntHash table = new StandardCrcProvider().getIncrementalInt(CRC32C);
+
+        String forced = System.getProperty(IMPLEMENTATION_PROPERTY);
+        if (forced != null && !FASTEST_IMPLEMENTATION.equals(forced)) {
+            IncrementalIntHash hash = "table".equals(forced) ? table : candidates.get(forced);
+            if (hash != null) {
+                log.info("Using {} CRC32C implementation", forced);
+                return hash;
+            }
+            log.warn("CRC32C implementation {} is not available, available ones are {} and table", forced,
+                candidates.keySet());
+        }
+        if (candidates.isEmpty()) {
+            log.warn("Falling back to the table based Java CRC32C implementation");
+            return table;
+        }
+        if (candidates.size() == 1 || !FASTEST_IMPLEMENTATION.equals(forced)) {
+            Map.Entry<String, IncrementalIntHash> candidate = candidates.entrySet().iterator().next();
+            log.info("Using {} CRC32C implementation", candidate.getKey());
+            return candidate.getValue();
+        }
+
+        String selected = null;
+        long selectedNanos = Long.MAX_VALUE;
+        Map<String, Long> nanos = new LinkedHashMap<>();
+        for (Map.Entry<String, IncrementalIntHash> candidate : candidates.entrySet()) {
+            long candidateNanos = calibrate(candidate.getValue());
+            nanos.put(candidate.getKey(), candidateNanos);
+            if (candidateNanos < selectedNanos) {
+                selected = candidate.getKey();
+                selectedNanos = candidateNanos;
+            }
+        }
+        log.info("Using {} CRC32C implementation, checksum time of {} bytes in nanos: {}", selected,
+            2 * CALIBRATION_BUFFER_SIZE, nanos);
+        return candidates.get(selected);
+    }
+
+    /**
+     * Returns the best time taken by <i>hash</i> to checksum a heap and a direct buffer, once warmed up so that the
+     * JIT compiler had a chance to compile it.
+     */
+    @VisibleForTesting
+    static long calibrate(IncrementalIntHash hash) {
+        ByteBuf heap = Unpooled.buffer(CALIBRATION_BUFFER_SIZE);
+        ByteBuf direct = Unpooled.directBuffer(CALIBRATION_BUFFER_SIZE);
+        try {
+            for (int i = 0; i < CALIBRATION_BUFFER_SIZE; i++) {
+                heap.writeByte(i);
+                direct.writeByte(i);
+            }
+            int checksum = 0;
+            for (int i = 0; i < CALIBRATION_WARMUP_ROUNDS; i++) {
+                int offset = (i * 64) % (CALIBRATION_BUFFER_SIZE - CALIBRATION_WARMUP_SIZE);
+                checksum = resumeChecksum(hash, checksum, heap.slice(offset, CALIBRATION_WARMUP_SIZE));
+                checksum = resumeChecksum(hash, checksum, direct.slice(offset, CALIBRATION_WARMUP_SIZE));
+            }
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+                long start = System.nanoTime();
+                checksum = resumeChecksum(hash, checksum, heap);
+                checksum = resumeChecksum(hash, checksum, direct);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            calibrationChecksum = checksum;
+            return best;
+        } finally {
+            heap.release();
+            direct.release();
         }
     }
 
+    // keeps the calibration from being optimized away
+    private static volatile int calibrationChecksum;
+
     /**
      * Computes crc32c checksum: if it is able to load crc32c native library then it computes using that native library
-     * which is faster as it computes using hardware machine instruction else it computes using crc32c algo.
+     * which is faster as it computes using hardware machine instruction, else it computes using the JDK implementation
+     * if available, or the crc32c algo.
      *
      * @param payload
      * @return
      */
     public static int computeChecksum(ByteBuf payload) {
-        if (payload.hasMemoryAddress() && (CRC32C_HASH instanceof Sse42Crc32C)) {
-            return CRC32C_HASH.calculate(payload.memoryAddress() + payload.readerIndex(), payload.readableBytes());
-        } else if (payload.hasArray()) {
-            return CRC32C_HASH.calculate(payload.array(), payload.arrayOffset() + payload.readerIndex(),
-                payload.readableBytes());
-        } else {
-            return CRC32C_HASH.calculate(payload.nioBuffer());
-        }
+        return resumeChecksum(CRC32C_HASH, 0, payload);
     }
 
 
@@ -72,14 +172,90 @@ public class Crc32cIntChecksum {
      * @return
      */
     public static int resumeChecksum(int previousChecksum, ByteBuf payload) {
-        if (payload.hasMemoryAddress() && (CRC32C_HASH instanceof Sse42Crc32C)) {
-            return CRC32C_HASH.resume(previousChecksum, payload.memoryAddress() + payload.readerIndex(),
+        return resumeChecksum(CRC32C_HASH, previousChecksum, payload);
+    }
+
+    @VisibleForTesting
+    static int resumeChecksum(IncrementalIntHash hash, int previousChecksum, ByteBuf payload) {
+        if (payload.hasMemoryAddress() && (hash instanceof Sse42Crc32C)) {
+            return hash.resume(previousChecksum, payload.memoryAddress() + payload.readerIndex(),
                 payload.readableBytes());
         } else if (payload.hasArray()) {
-            return CRC32C_HASH.resume(previousChecksum, payload.array(), payload.arrayOffset() + payload.readerIndex(),
+            return hash.resume(previousChecksum, payload.array(), payload.arrayOffset() + payload.readerIndex(),
                 payload.readableBytes());
+        } else if (payload.nioBufferCount() > 1) {
+            // don't merge the components of composite buffers
+            int checksum = previousChecksum;
+            for (ByteBuffer buffer : payload.nioBuffers()) {
+                checksum = hash.resume(checksum, buffer);
+            }
+            return checksum;
         } else {
-            return CRC32C_HASH.resume(previousChecksum, payload.nioBuffer());
+            return hash.resume(previousChecksum, payload.nioBuffer());
+        }
+    }
+
+    /**
+     * Computes incremental checksums of several payloads at once: for each {@code i} in {@code [0, count)},
+     * {@code checksums[indexes[i]]} is resumed with {@code payloads[i]}. The payloads of the same checksum are
+     * processed in order.
+     *
+     * <p>When the native library is loaded and all the payloads are off-heap, the checksums are computed with a
+     * single native call.
+     *
+     * @param checksums : previously computed checksums, updated in place
+     * @param indexes : the index in checksums of the checksum of each payload
+     * @param payloads
+     * @param count : the number of payloads
+     */
+    public static void resumeChecksums(int[] checksums, int[] indexes, ByteBuf[] payloads, int count) {
+        resumeChecksums(CRC32C_HASH, checksums, indexes, payloads, count);
+    }
+
+    @VisibleForTesting
+    static void resumeChecksums(IncrementalIntHash hash, int[] checksums, int[] indexes, ByteBuf[] payloads,
+                                int count) {
+        if (hash instanceof Sse42Crc32C && count > 1 && allHaveMemoryAddress(payloads, count)) {
+            BatchArrays arrays = BATCH_ARRAYS.get();
+            arrays.ensureCapacity(count);
+            for (int i = 0; i < count; i++) {
+                arrays.addresses[i] = payloads[i].memoryAddress() + payloads[i].readerIndex();
+                arrays.lengths[i] = payloads[i].readableBytes();
+            }
+            ((Sse42Crc32C) hash).resumeUnsafe(checksums, indexes, arrays.addresses, arrays.lengths, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                checksums[indexes[i]] = resumeChecksum(hash, checksums[indexes[i]], payloads[i]);
+            }
+        }
+    }
+
+    private static boolean allHaveMemoryAddress(ByteBuf[] payloads, int count) {
+        for (int i = 0; i < count; i++) {
+            if (!payloads[i].hasMemoryAddress()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final FastThreadLocal<BatchArrays> BATCH_ARRAYS = new FastThreadLocal<BatchArrays>() {
+        @Override
+        protected BatchArrays initialValue() {
+            return new BatchArrays();
+        }
+    };
+
+    private static final class BatchArrays {
+        long[] addresses = new long[16];
+        long[] lengths = new long[16];
+
+        void ensureCapacity(int count) {
+            if (addresses.length < count) {
+                int capacity = Math.max(count, addresses.length * 2);
+                addresses = new long[capacity];
+                lengths = new long[capacity];
+            }
         }
     }
 
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.scurrilous.circe.crc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+import com.scurrilous.circe.IncrementalIntHash;
+import com.scurrilous.circe.impl.AbstractIncrementalIntHash;
+import com.scurrilous.circe.params.CrcParameters;
+
+/**
+ * Implementation of CRC-32C using {@code java.util.zip.CRC32C}, which is available since Java 9 and whose updates
+ * are intrinsified by the JIT compiler with the CRC instructions of the CPU.
+ * <p>
+ * {@code CRC32C} can only start from the empty input. To resume a checksum, the CRC register of a new
+ * {@code CRC32C} is first brought to the state it had after the previous input, by updating it with the 4 bytes
+ * computed by {@link #prefix(int)}, before updating it with the new input.
+ */
+public final class JavaCrc32C extends AbstractIncrementalIntHash implements IncrementalIntHash {
+
+    // reflected CRC-32C polynomial
+    private static final int POLY = 0x82f63b78;
+
+    // PREFIX_TABLES[i][b] = (b << (8 * i)) * x^-32 mod POLY
+    private static final int[][] PREFIX_TABLES = new int[4][256];
+
+    static {
+        // updating a CRC register with 4 bytes w multiplies (register ^ w) by x^32, invert this multiplication
+        final int[] inverse = invertMultModP(x2nModP(5));
+        for (int i = 0; i < 4; i++) {
+            for (int b = 0; b < 256; b++) {
+                int value = 0;
+                for (int bit = 0; bit < 8; bit++) {
+                    if ((b & (1 << bit)) != 0)
+                        value ^= inverse[8 * i + bit];
+                }
+                PREFIX_TABLES[i][b] = value;
+            }
+        }
+    }
+
+    private static final MethodHandle NEW_CRC32C;
+    private static final MethodHandle UPDATE_BUFFER;
+
+    static {
+        MethodHandle newCrc32c = null;
+        MethodHandle updateBuffer = null;
+        try {
+            final Class<?> clazz = Class.forName("java.util.zip.CRC32C");
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            newCrc32c = lookup.findConstructor(clazz, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Checksum.class));
+            updateBuffer = lookup.findVirtual(Checksum.class, "update",
+                    MethodType.methodType(void.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            newCrc32c = null;
+            updateBuffer = null;
+        }
+        NEW_CRC32C = newCrc32c;
+        UPDATE_BUFFER = updateBuffer;
+    }
+
+    /**
+     * Returns whether {@code java.util.zip.CRC32C} is available in this JVM.
+     * 
+     * @return true if this class is supported, false if not
+     */
+    public static boolean isSupported() {
+        return NEW_CRC32C != null;
+    }
+
+    public JavaCrc32C() {
+        if (!isSupported())
+            throw new UnsupportedOperationException("java.util.zip.CRC32C is not available");
+    }
+
+    @Override
+    public String algorithm() {
+        return CrcParameters.CRC32C.algorithm();
+    }
+
+    @Override
+    public int length() {
+        return 4;
+    }
+
+    @Override
+    public int resume(int current, ByteBuffer input) {
+        if (!input.hasRemaining())
+            return current;
+        final Checksum crc = newChecksum(current);
+        try {
+            UPDATE_BUFFER.invokeExact(crc, input);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+        return (int) crc.getValue();
+    }
+
+    @Override
+    protected int initial() {
+        return 0;
+    }
+
+    @Override
+    protected int resumeUnchecked(int current, byte[] input, int index, int length) {
+        if (length == 0)
+            return current;
+        final Checksum crc = newChecksum(current);
+        crc.update(input, index, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Returns a new {@code CRC32C} resuming from the checksum <i>current</i>.
+     */
+    private static Checksum newChecksum(int current) {
+        final Checksum crc;
+        try {
+            crc = (Checksum) NEW_CRC32C.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+        if (current != 0) {
+            final int prefix = prefix(current);
+            crc.update(prefix);
+            crc.update(prefix >>> 8);
+            crc.update(prefix >>> 16);
+            crc.update(prefix >>> 24);
+        }
+        return crc;
+    }
+
+    /**
+     * Returns the 4 bytes, in little-endian order, bringing the register of a new {@code CRC32C} to the state it has
+     * after an input whose checksum is <i>current</i>.
+     */
+    static int prefix(int current) {
+        // the register is the complement of the checksum, and starts at all ones
+        final int register = ~current;
+        return ~(PREFIX_TABLES[0][register & 0xff] ^ PREFIX_TABLES[1][(register >>> 8) & 0xff]
+                ^ PREFIX_TABLES[2][(register >>> 16) & 0xff] ^ PREFIX_TABLES[3][register >>> 24]);
+    }
+
+    // a * b mod POLY, in the reflected representation
+    private static int multModP(int a, int b) {
+        int m = 1 << 31;
+        int p = 0;
+        for (;;) {
+            if ((a & m) != 0) {
+                p ^= b;
+                if ((a & (m - 1)) == 0)
+                    break;
+            }
+            m >>>= 1;
+            b = (b & 1) != 0 ? (b >>> 1) ^ POLY : b >>> 1;
+        }
+        return p;
+    }
+
+    // x^(2^k) mod POLY
+    private static int x2nModP(int k) {
+        int p = 1 << 30; // x^1
+        for (int n = 0; n < k; n++) {
+            p = multModP(p, p);
+        }
+        return p;
+    }
+
+    /**
+     * Returns the images of the 32 unit vectors by the inverse of the multiplication by <i>factor</i> mod POLY.
+     */
+    private static int[] invertMultModP(int factor) {
+        final int[] images = new int[32];
+        final int[] preimages = new int[32];
+        for (int i = 0; i < 32; i++) {
+            images[i] = multModP(factor, 1 << i);
+            preimages[i] = 1 << i;
+        }
+        // Gauss-Jordan elimination, until images[i] == 1 << i
+        for (int bit = 0; bit < 32; bit++) {
+            int pivot = bit;
+            while ((images[pivot] & (1 << bit)) == 0) {
+                pivot++;
+            }
+            int tmp = images[pivot];
+            images[pivot] = images[bit];
+            images[bit] = tmp;
+            tmp = preimages[pivot];
+            preimages[pivot] = preimages[bit];
+            preimages[bit] = tmp;
+            for (int i = 0; i < 32; i++) {
+                if (i != bit && (images[i] & (1 << bit)) != 0) {
+                    images[i] ^= images[bit];
+                    preimages[i] ^= preimages[bit];
+                }
+            }
+        }
+        return preimages;
+    }
+}
@@ -106,6 +106,31 @@ public final class Sse42Crc32C extends AbstractIncrementalIntHash implements Inc
         return nativeUnsafe(current, address, length, config);
     }
 
+    /**
+     * Resumes the computation of several checksums at once, with a single native call.
+     *
+     * <p>For each {@code i} in {@code [0, count)}, {@code current[indexes[i]]} is updated with the
+     * {@code lengths[i]} bytes at {@code addresses[i]}. Several regions may update the same checksum, they
+     * are then processed in order.
+     *
+     * @param current the checksums to resume, updated in place
+     * @param indexes the index in {@code current} of the checksum of each region
+     * @param addresses the memory address of each region
+     * @param lengths the length of each region
+     * @param count the number of regions
+     */
+    public void resumeUnsafe(int[] current, int[] indexes, long[] addresses, long[] lengths, int count) {
+        if (count > indexes.length || count > addresses.length || count > lengths.length) {
+            throw new IndexOutOfBoundsException("count: " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            if (indexes[i] < 0 || indexes[i] >= current.length) {
+                throw new IndexOutOfBoundsException("index: " + indexes[i]);
+            }
+        }
+        nativeUnsafeBatch(current, indexes, addresses, lengths, count, config);
+    }
+
     @Override
     protected int initial() {
         return 0;
@@ -124,6 +149,9 @@ public final class Sse42Crc32C extends AbstractIncrementalIntHash implements Inc
 
     private static native int nativeUnsafe(int current, long address, long length, long config);
 
+    private static native void nativeUnsafeBatch(int[] current, int[] indexes, long[] addresses, long[] lengths,
+                                                 int count, long config);
+
     private static native long allocConfig(int[] chunkWords);
 
     private static native void freeConfig(long config);
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.scurrilous.circe.checksum;
+
+import static com.scurrilous.circe.params.CrcParameters.CRC32C;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+
+import com.scurrilous.circe.IncrementalIntHash;
+import com.scurrilous.circe.crc.JavaCrc32C;
+import com.scurrilous.circe.crc.Sse42Crc32C;
+import com.scurrilous.circe.crc.StandardCrcProvider;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Checks that every available CRC32C implementation computes the same checksums as the table based one, and that
+ * resuming a checksum gives the checksum of the concatenated inputs.
+ */
+@RunWith(Parameterized.class)
+public class Crc32cIntChecksumTest {
+
+    private static final int MAX_LENGTH = 300;
+
+    private static final IncrementalIntHash TABLE = new StandardCrcProvider().getIncrementalInt(CRC32C);
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> implementations() {
+        Collection<Object[]> implementations = new ArrayList<>();
+        implementations.add(new Object[] { "table", TABLE });
+        if (JavaCrc32C.isSupported()) {
+            implementations.add(new Object[] { "java", new JavaCrc32C() });
+        }
+        if (Sse42Crc32C.isSupported()) {
+            implementations.add(new Object[] { "sse42", new Crc32cSse42Provider().getIncrementalInt(CRC32C) });
+        }
+        return implementations;
+    }
+
+    private final IncrementalIntHash hash;
+
+    public Crc32cIntChecksumTest(String name, IncrementalIntHash hash) {
+        this.hash = hash;
+    }
+
+    @Test
+    public void testCheckValue() {
+        assertEquals(0xe3069283, hash.calculate("123456789".getBytes(US_ASCII)));
+        assertEquals(0, hash.calculate(new byte[0]));
+    }
+
+    @Test
+    public void testResumeFromChecksum() {
+        byte[] data = randomBytes(MAX_LENGTH, 1);
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+            int expected = TABLE.calculate(data, 0, length);
+            assertEquals("length " + length, expected, hash.calculate(data, 0, length));
+            for (int split = 0; split <= length; split++) {
+                int first = hash.calculate(data, 0, split);
+                assertEquals("length " + length + " split at " + split,
+                    expected, hash.resume(first, data, split, length - split));
+            }
+        }
+    }
+
+    @Test
+    public void testResumeFromRandomChecksums() {
+        Random random = new Random(2);
+        for (int i = 0; i < 10000; i++) {
+            // any checksum is the checksum of some input, resuming from it must match the reference
+            int current = random.nextInt();
+            byte[] data = randomBytes(random.nextInt(64), random.nextLong());
+            assertEquals(TABLE.resume(current, data), hash.resume(current, data));
+        }
+    }
+
+    @Test
+    public void testResumeBuffers() {
+        byte[] data = randomBytes(MAX_LENGTH, 3);
+        ByteBuf heap = Unpooled.wrappedBuffer(data);
+        ByteBuf direct = Unpooled.directBuffer(data.length).writeBytes(data);
+        try {
+            for (int length = 0; length <= MAX_LENGTH; length += 7) {
+                int expected = TABLE.calculate(data, 0, length);
+                for (int split = 0; split <= length; split += 3) {
+                    int first = Crc32cIntChecksum.resumeChecksum(hash, 0, heap.slice(0, split));
+                    assertEquals(expected,
+                        Crc32cIntChecksum.resumeChecksum(hash, first, heap.slice(split, length - split)));
+
+                    first = Crc32cIntChecksum.resumeChecksum(hash, 0, direct.slice(0, split));
+                    assertEquals(expected,
+                        Crc32cIntChecksum.resumeChecksum(hash, first, direct.slice(split, length - split)));
+
+                    ByteBuffer buffer = direct.nioBuffer(split, length - split);
+                    assertEquals(expected, hash.resume(hash.calculate(data, 0, split), buffer));
+                }
+            }
+        } finally {
+            direct.release();
+        }
+    }
+
+    @Test
+    public void testResumeCompositeBuffer() {
+        byte[] data = randomBytes(MAX_LENGTH, 4);
+        ByteBuf composite = Unpooled.wrappedBuffer(
+            Unpooled.directBuffer(100).writeBytes(data, 0, 100),
+            Unpooled.wrappedBuffer(data, 100, 50),
+            Unpooled.directBuffer(MAX_LENGTH - 150).writeBytes(data, 150, MAX_LENGTH - 150));
+        try {
+            assertEquals(TABLE.calculate(data), Crc32cIntChecksum.resumeChecksum(hash, 0, composite));
+        } finally {
+            composite.release();
+        }
+    }
+
+    @Test
+    public void testResumeChecksumsMatchesResumeChecksum() {
+        checkResumeChecksums(false, false);
+        checkResumeChecksums(true, true);
+        checkResumeChecksums(true, false);
+    }
+
+    /**
+     * Checksums 20 entries of two payloads each, a header and a data buffer, in a single batch, and checks them
+     * against the checksums of the entries computed one by one.
+     */
+    private void checkResumeChecksums(boolean directHeaders, boolean directData) {
+        int numEntries = 20;
+        Random random = new Random(5);
+        ByteBuf[] payloads = new ByteBuf[2 * numEntries];
+        int[] indexes = new int[2 * numEntries];
+        int[] checksums = new int[numEntries];
+        int[] expected = new int[numEntries];
+        try {
+            for (int e = 0; e < numEntries; e++) {
+                ByteBuf header = buffer(randomBytes(32, random.nextLong()), directHeaders);
+                ByteBuf data = buffer(randomBytes(random.nextInt(MAX_LENGTH), random.nextLong()), directData);
+                payloads[2 * e] = header;
+                payloads[2 * e + 1] = data;
+                indexes[2 * e] = e;
+                indexes[2 * e + 1] = e;
+                // resume from a previous checksum, as the batch does
+                checksums[e] = random.nextInt();
+                expected[e] = Crc32cIntChecksum.resumeChecksum(hash, checksums[e], header);
+                expected[e] = Crc32cIntChecksum.resumeChecksum(hash, expected[e], data);
+            }
+            Crc32cIntChecksum.resumeChecksums(hash, checksums, indexes, payloads, payloads.length);
+            for (int e = 0; e < numEntries; e++) {
+                assertEquals("entry " + e, expected[e], checksums[e]);
+            }
+        } finally {
+            for (ByteBuf payload : payloads) {
+                if (payload != null) {
+                    payload.release();
+                }
+            }
+        }
+    }
+
+    private static ByteBuf buffer(byte[] bytes, boolean direct) {
+        return direct ? Unpooled.directBuffer(bytes.length).writeBytes(bytes) : Unpooled.wrappedBuffer(bytes);
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
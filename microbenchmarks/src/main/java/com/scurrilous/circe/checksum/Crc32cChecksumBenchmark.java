@@ -0,0 +1,148 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.scurrilous.circe.checksum;
+
+import static com.scurrilous.circe.params.CrcParameters.CRC32C;
+
+import com.scurrilous.circe.IncrementalIntHash;
+import com.scurrilous.circe.crc.JavaCrc32C;
+import com.scurrilous.circe.crc.Sse42Crc32C;
+import com.scurrilous.circe.crc.StandardCrcProvider;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks of the CRC32C implementations of {@link Crc32cIntChecksum}, on heap, direct and composite buffers.
+ */
+public class Crc32cChecksumBenchmark {
+
+    /**
+     * Implementation.
+     */
+    public enum Implementation {
+        SSE42,
+        JAVA,
+        TABLE,
+        SELECTED
+    }
+
+    /**
+     * BufferType.
+     */
+    public enum BufferType {
+        HEAP,
+        DIRECT,
+        COMPOSITE
+    }
+
+    /**
+     * ChecksumState.
+     */
+    @State(Scope.Thread)
+    public static class ChecksumState {
+
+        @Param
+        public Implementation implementation;
+        @Param
+        public BufferType bufferType;
+        @Param({"64", "1024", "65536"})
+        public int size;
+
+        private IncrementalIntHash hash;
+        private ByteBuf buffer;
+
+        @Setup(Level.Trial)
+        public void doSetup() {
+            switch (implementation) {
+            case SSE42:
+                if (!Sse42Crc32C.isSupported()) {
+                    throw new IllegalStateException("Sse42Crc32C is not supported");
+                }
+                hash = new Crc32cSse42Provider().getIncrementalInt(CRC32C);
+                break;
+            case JAVA:
+                hash = new JavaCrc32C();
+                break;
+            case TABLE:
+                hash = new StandardCrcProvider().getIncrementalInt(CRC32C);
+                break;
+            default:
+                hash = Crc32cIntChecksum.CRC32C_HASH;
+                break;
+            }
+
+            byte[] data = new byte[size];
+            ThreadLocalRandom.current().nextBytes(data);
+            switch (bufferType) {
+            case HEAP:
+                buffer = PooledByteBufAllocator.DEFAULT.heapBuffer(size, size).writeBytes(data);
+                break;
+            case DIRECT:
+                buffer = PooledByteBufAllocator.DEFAULT.directBuffer(size, size).writeBytes(data);
+                break;
+            default:
+                // header and payload, as packaged by the digest managers
+                CompositeByteBuf composite = PooledByteBufAllocator.DEFAULT.compositeDirectBuffer(2);
+                int headerSize = Math.min(32, size);
+                composite.addComponent(true,
+                        PooledByteBufAllocator.DEFAULT.directBuffer(headerSize).writeBytes(data, 0, headerSize));
+                composite.addComponent(true, PooledByteBufAllocator.DEFAULT.directBuffer(size - headerSize)
+                        .writeBytes(data, headerSize, size - headerSize));
+                buffer = composite;
+                break;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() {
+            buffer.release();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 5, time = 5, timeUnit = TimeUnit.SECONDS)
+    @Threads(1)
+    @Fork(value = 1)
+    public int resumeChecksum(ChecksumState state) {
+        return Crc32cIntChecksum.resumeChecksum(state.hash, 0x12345678, state.buffer);
+    }
+}
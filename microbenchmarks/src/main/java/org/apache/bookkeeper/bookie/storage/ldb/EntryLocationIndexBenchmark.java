@@ -0,0 +1,194 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Microbenchmarks comparing the lookup latency of the {@link EntryLocationIndex} stored in RocksDB and in the
+ * {@link KeyValueStorageLocationSegments}.
+ *
+ * <p>The setup fills the index in batches, like the flushes of the write cache, then deletes one ledger out of ten.
+ * Once the background merges of the location segments are complete, it logs the write amplification, as the bytes
+ * written by the process over the size of the keys and values, and the disk usage of the index. The write
+ * amplification is only available on Linux.
+ * <pre>
+ * ./run.sh EntryLocationIndexBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class EntryLocationIndexBenchmark {
+
+    private static final int KEY_VALUE_SIZE = 16 + 8;
+    private static final int DELETED_LEDGERS_RATIO = 10;
+
+    /**
+     * State holding the index under test.
+     */
+    @State(Scope.Benchmark)
+    public static class IndexState {
+        @Param({ "rocksdb", "segments" })
+        private String storageType;
+
+        @Param({ "10000" })
+        private int ledgers;
+
+        @Param({ "1000" })
+        private int entriesPerLedger;
+
+        @Param({ "100" })
+        private int flushes;
+
+        private File directory;
+        private KeyValueStorage storage;
+        private EntryLocationIndex index;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            directory = Files.createTempDirectory("entry-location-index").toFile();
+            ServerConfiguration conf = new ServerConfiguration();
+            conf.setProperty(DbLedgerStorage.LOCATIONS_INDEX_STORAGE, storageType);
+
+            long bytesWrittenBefore = processBytesWritten();
+            KeyValueStorageFactory factory = DbLedgerStorage.getLocationsIndexStorageFactory(conf);
+            index = new EntryLocationIndex(conf, (basePath, subPath, dbConfigType, c) -> {
+                storage = factory.newKeyValueStorage(basePath, subPath, dbConfigType, c);
+                return storage;
+            }, directory.getPath(), NullStatsLogger.INSTANCE);
+
+            // Each flush adds the next entries of every ledger, sorted by ledger like the write cache
+            int entriesPerFlush = Math.max(1, entriesPerLedger / flushes);
+            long location = 1L << 32;
+            for (int firstEntryId = 0; firstEntryId < entriesPerLedger; firstEntryId += entriesPerFlush) {
+                Batch batch = index.newBatch();
+                for (long ledgerId = 0; ledgerId < ledgers; ledgerId++) {
+                    for (long entryId = firstEntryId;
+                            entryId < Math.min(firstEntryId + entriesPerFlush, entriesPerLedger); entryId++) {
+                        index.addLocation(batch, ledgerId, entryId, location);
+                        location += 1024;
+                    }
+                }
+                batch.flush();
+                batch.close();
+            }
+
+            for (long ledgerId = 0; ledgerId < ledgers; ledgerId += DELETED_LEDGERS_RATIO) {
+                index.delete(ledgerId);
+            }
+            index.removeOffsetFromDeletedLedgers();
+            if (storage instanceof KeyValueStorageLocationSegments) {
+                // The RocksDB compaction of the deleted ledgers is synchronous
+                ((KeyValueStorageLocationSegments) storage).awaitMerges();
+            }
+
+            long bytesWritten = processBytesWritten() - bytesWrittenBefore;
+            long logicalBytes = (long) ledgers * entriesPerLedger * KEY_VALUE_SIZE;
+            long diskUsage = diskUsage(directory.toPath());
+            String writeAmplification = bytesWrittenBefore < 0 ? "n/a"
+                    : String.format("%.2f", (double) bytesWritten / logicalBytes);
+            String bytesPerLocation = String.format("%.2f", (double) diskUsage / ledgers / entriesPerLedger);
+            log.info("{}: write amplification: {}, disk usage: {} bytes ({} bytes per location)", storageType,
+                    writeAmplification, diskUsage, bytesPerLocation);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            index.close();
+            try (Stream<Path> paths = Files.walk(directory.toPath())) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+
+        private long randomLiveLedger() {
+            long ledgerId = ThreadLocalRandom.current().nextInt(ledgers);
+            return ledgerId % DELETED_LEDGERS_RATIO == 0 && ledgerId + 1 < ledgers ? ledgerId + 1 : ledgerId;
+        }
+    }
+
+    /**
+     * @return the bytes the process caused to be written to the storage, or -1 if not available
+     */
+    private static long processBytesWritten() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/io"), StandardCharsets.US_ASCII)) {
+                if (line.startsWith("write_bytes:")) {
+                    return Long.parseLong(line.substring("write_bytes:".length()).trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not available on this platform
+        }
+        return -1;
+    }
+
+    private static long diskUsage(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    @Benchmark
+    public long getLocation(IndexState s) throws IOException {
+        return s.index.getLocation(s.randomLiveLedger(), ThreadLocalRandom.current().nextInt(s.entriesPerLedger));
+    }
+
+    @Benchmark
+    public long getLastEntryInLedger(IndexState s) throws IOException {
+        return s.index.getLastEntryInLedger(s.randomLiveLedger());
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(EntryLocationIndexBenchmark.class);
+}
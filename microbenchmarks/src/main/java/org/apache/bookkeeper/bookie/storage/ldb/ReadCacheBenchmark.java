@@ -0,0 +1,130 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Microbenchmarks comparing the hit and insert throughput of the {@link ReadCache} and the
+ * {@link StripedReadCache}.
+ *
+ * <p>The number of reader/writer threads is set with the JMH {@code -t} option, e.g. to compare
+ * both caches from 1 to 64 threads:
+ * <pre>
+ * for t in 1 4 16 64; do ./run.sh ReadCacheBenchmark -t $t; done
+ * </pre>
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class ReadCacheBenchmark {
+
+    private static final long CACHE_SIZE = 256 * 1024 * 1024;
+    private static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final int NUM_LEDGERS = 64;
+
+    /**
+     * State holding the read cache under test.
+     */
+    @State(Scope.Benchmark)
+    public static class CacheState {
+        @Param({ "ReadCache", "StripedReadCache" })
+        private String cacheType;
+
+        @Param({ "16" })
+        private int stripes;
+
+        @Param({ "1024" })
+        private int entrySize;
+
+        private ReadCache cache;
+        private ByteBuf entry;
+        private long entriesPerLedger;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+            if ("StripedReadCache".equals(cacheType)) {
+                cache = new StripedReadCache(allocator, CACHE_SIZE, stripes, MAX_SEGMENT_SIZE);
+            } else {
+                cache = new ReadCache(allocator, CACHE_SIZE, MAX_SEGMENT_SIZE);
+            }
+
+            byte[] data = new byte[entrySize];
+            ThreadLocalRandom.current().nextBytes(data);
+            entry = Unpooled.wrappedBuffer(data);
+
+            // Only fill a fraction of the cache, so that the entries still fit when the ledgers
+            // are not evenly spread over the stripes
+            entriesPerLedger = CACHE_SIZE / 8 / entrySize / NUM_LEDGERS;
+            for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+                for (long entryId = 0; entryId < entriesPerLedger; entryId++) {
+                    cache.put(ledgerId, entryId, entry);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            cache.close();
+            entry.release();
+        }
+    }
+
+    @Benchmark
+    public void get(CacheState s, Blackhole bh) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ByteBuf res = s.cache.get(random.nextInt(NUM_LEDGERS), random.nextLong(s.entriesPerLedger));
+        bh.consume(res);
+        if (res != null) {
+            res.release();
+        }
+    }
+
+    @Benchmark
+    public void put(CacheState s) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        s.cache.put(random.nextInt(NUM_LEDGERS), random.nextLong(Long.MAX_VALUE), s.entry);
+    }
+}
@@ -23,6 +23,7 @@ import com.google.common.collect.ImmutableMap;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -40,6 +41,7 @@ import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
 
 /**
  * Microbenchmarks for different executors providers.
@@ -74,9 +76,62 @@ public class OrderedExecutorBenchmark {
         }
     }
 
+    /**
+     * State of an ordered executor with a few threads, whose tasks are submitted with
+     * uniform or skewed ordering keys. With skewed keys, most tasks are submitted with
+     * a few hot keys, all hashed to the same thread.
+     */
+    @State(Scope.Benchmark)
+    public static class OrderedTestState {
+        private static final int NUM_THREADS = 4;
+        private static final int NUM_KEYS = 1000;
+        private static final int NUM_HOT_KEYS = 4;
+
+        @Param({ "uniform", "skewed" })
+        private String keyDistribution;
+
+        @Param({ "false", "true" })
+        private boolean workStealing;
+
+        @Param({ "1000" })
+        private long taskCpuTokens;
+
+        private OrderedExecutor executor;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            executor = OrderedExecutor.newBuilder()
+                    .numThreads(NUM_THREADS)
+                    .enableWorkStealing(workStealing)
+                    .build();
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            executor.shutdown();
+        }
+
+        long nextKey() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if ("skewed".equals(keyDistribution) && random.nextInt(10) != 0) {
+                // the hot keys are all hashed to the first thread
+                return (long) random.nextInt(NUM_HOT_KEYS) * NUM_THREADS;
+            }
+            return random.nextInt(NUM_KEYS);
+        }
+    }
+
     @Benchmark
     public void submitAndWait(TestState s) throws Exception {
         s.executor.submit(() -> {
         }).get();
     }
+
+    @Benchmark
+    public void submitOrderedAndWait(OrderedTestState s) throws Exception {
+        s.executor.submitOrdered(s.nextKey(), () -> {
+            Blackhole.consumeCPU(s.taskCpuTokens);
+            return null;
+        }).get();
+    }
 }
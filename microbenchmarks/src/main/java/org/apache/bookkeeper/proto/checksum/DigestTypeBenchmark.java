@@ -28,9 +28,12 @@ import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.util.ByteBufList;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
@@ -165,6 +168,93 @@ public class DigestTypeBenchmark {
         }
     }
 
+    /**
+     * BatchState.
+     */
+    @State(Scope.Thread)
+    public static class BatchState {
+
+        @Param
+        public Digest digest;
+        @Param({"1024", "8192", "65536"})
+        public int entrySize;
+        @Param({"16", "128"})
+        public int batchSize;
+
+        private DigestManager digestManager;
+        private List<ByteBuf> entries;
+
+        @Setup(Level.Trial)
+        public void doSetup() throws Exception {
+            final byte[] password = "password".getBytes(StandardCharsets.UTF_8);
+            DigestType digestType;
+            switch (digest) {
+            case CRC32:
+                digestType = DigestType.CRC32;
+                break;
+            case CRC32_C:
+                digestType = DigestType.CRC32C;
+                break;
+            default:
+                digestType = DigestType.HMAC;
+                break;
+            }
+            digestManager = DigestManager.instantiate(ThreadLocalRandom.current().nextLong(0, Long.MAX_VALUE),
+                    password, digestType, PooledByteBufAllocator.DEFAULT, true);
+
+            // the entries as received from a bookie
+            entries = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                ByteBuf data = Unpooled.wrappedBuffer(randomBytes(entrySize));
+                ByteBufList packaged = digestManager.computeDigestAndPackageForSending(i, i - 1,
+                        (long) (i + 1) * entrySize, data);
+                ByteBuf entry = PooledByteBufAllocator.DEFAULT.directBuffer(packaged.readableBytes());
+                for (int j = 0; j < packaged.size(); j++) {
+                    ByteBuf b = packaged.getBuffer(j);
+                    entry.writeBytes(b, b.readerIndex(), b.readableBytes());
+                }
+                packaged.release();
+                entries.add(entry);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() {
+            for (ByteBuf entry : entries) {
+                entry.release();
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 5, time = 12, timeUnit = TimeUnit.SECONDS)
+    @Threads(2)
+    @Fork(value = 1, warmups = 1)
+    public void verifySingle(BatchState state) throws Exception {
+        for (int i = 0; i < state.batchSize; i++) {
+            ByteBuf entry = state.entries.get(i);
+            entry.readerIndex(0);
+            state.digestManager.verifyDigestAndReturnData(i, entry);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 5, time = 12, timeUnit = TimeUnit.SECONDS)
+    @Threads(2)
+    @Fork(value = 1, warmups = 1)
+    public int verifyBatch(BatchState state) {
+        for (ByteBuf entry : state.entries) {
+            entry.readerIndex(0);
+        }
+        return state.digestManager.verifyDigestsAndReturnData(0, state.entries);
+    }
+
     @Benchmark
     @BenchmarkMode(Mode.Throughput)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)